@@ -28,6 +28,18 @@ public class SimpleOutputFileCollection(private val outputFiles: List<OutputFile
     override fun asList(): List<OutputFile> = outputFiles
 }
 
+/**
+ * Receives output files as soon as they are complete, so that they don't have to be kept in memory until the end of compilation
+ */
+public trait OutputFileSink {
+    public fun write(file: OutputFile)
+
+    /**
+     * Reads back the contents of a file written to this sink before
+     */
+    public fun read(relativePath: String): ByteArray
+}
+
 public trait OutputFile {
     public val relativePath: String
     public val sourceFiles: List<File>
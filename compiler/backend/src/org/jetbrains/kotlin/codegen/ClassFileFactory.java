@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen;
 
 import com.google.common.collect.Lists;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.Function;
@@ -24,15 +25,22 @@ import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.kotlin.backend.common.output.OutputFileSink;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
 import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.resolve.inline.InlineUtil;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.backend.common.output.OutputFile;
 import org.jetbrains.kotlin.backend.common.output.OutputFileCollection;
+import org.jetbrains.org.objectweb.asm.ClassReader;
 import org.jetbrains.org.objectweb.asm.Type;
+import org.jetbrains.org.objectweb.asm.util.TraceClassVisitor;
 
 import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.*;
 
 public class ClassFileFactory implements OutputFileCollection {
@@ -42,12 +50,23 @@ public class ClassFileFactory implements OutputFileCollection {
     private final Map<String, ClassBuilderAndSourceFileList> generators = new LinkedHashMap<String, ClassBuilderAndSourceFileList>();
 
     private boolean isDone = false;
+    private OutputFileSink outputSink = null;
 
     public ClassFileFactory(@NotNull GenerationState state, @NotNull ClassBuilderFactory builderFactory) {
         this.state = state;
         this.builderFactory = builderFactory;
     }
 
+    /**
+     * Makes the factory pass complete class files to the given sink on {@link #writeFinishedClasses()} and {@link #done()}
+     * and release their contents, which are read back from the sink if requested afterwards. Classes declared in inline functions
+     * are written only on {@link #done()}, because the inliner may read them when compiling the call sites.
+     */
+    public void setOutputSink(@Nullable OutputFileSink outputSink) {
+        assert generators.isEmpty() : "Output sink should be set before generation";
+        this.outputSink = outputSink;
+    }
+
     @NotNull
     public ClassBuilder newVisitor(
             @NotNull JvmDeclarationOrigin origin,
@@ -61,12 +80,40 @@ public class ClassFileFactory implements OutputFileCollection {
             @NotNull JvmDeclarationOrigin origin,
             @NotNull Type asmType,
             @NotNull Collection<? extends PsiFile> sourceFiles) {
-        String outputFilePath = asmType.getInternalName() + ".class";
+        final String outputFilePath = asmType.getInternalName() + ".class";
         List<File> ioSourceFiles = toIoFilesIgnoringNonPhysical(sourceFiles);
-        state.getProgress().reportOutput(ioSourceFiles, new File(outputFilePath));
         ClassBuilder answer = builderFactory.newClassBuilder(origin);
-        generators.put(outputFilePath, new ClassBuilderAndSourceFileList(answer, ioSourceFiles));
-        return answer;
+        final ClassBuilderAndSourceFileList output = new ClassBuilderAndSourceFileList(
+                answer, ioSourceFiles, outputSink != null && isDeclaredInInlineFunction(origin.getDescriptor())
+        );
+
+        ParallelCodegen.Task task = ParallelCodegen.getCurrentTask();
+        if (task == null) {
+            addOutput(outputFilePath, output);
+        }
+        else {
+            task.recordOutput(outputFilePath, output, new Runnable() {
+                @Override
+                public void run() {
+                    addOutput(outputFilePath, output);
+                }
+            });
+        }
+        return outputSink != null ? new FinishTrackingClassBuilder(answer, output) : answer;
+    }
+
+    private static boolean isDeclaredInInlineFunction(@Nullable DeclarationDescriptor descriptor) {
+        for (DeclarationDescriptor current = descriptor; current != null; current = current.getContainingDeclaration()) {
+            if (InlineUtil.isInline(current)) return true;
+        }
+        return false;
+    }
+
+    private void addOutput(@NotNull String outputFilePath, @NotNull ClassBuilderAndSourceFileList output) {
+        state.getProgress().reportOutput(output.sourceFiles, new File(outputFilePath));
+        synchronized (generators) {
+            generators.put(outputFilePath, output);
+        }
     }
 
     void done() {
@@ -75,6 +122,33 @@ public class ClassFileFactory implements OutputFileCollection {
             for (PackageCodegen codegen : package2codegen.values()) {
                 codegen.done();
             }
+            writeClasses(true);
+        }
+    }
+
+    /**
+     * Passes the classes which are complete by now to the output sink, if there is one.
+     */
+    public void writeFinishedClasses() {
+        writeClasses(false);
+    }
+
+    private void writeClasses(boolean all) {
+        if (outputSink == null) return;
+
+        List<OutputFile> outputFiles = new ArrayList<OutputFile>();
+        synchronized (generators) {
+            for (Map.Entry<String, ClassBuilderAndSourceFileList> entry : generators.entrySet()) {
+                ClassBuilderAndSourceFileList output = entry.getValue();
+                if (output.classBuilder != null && (all || output.isFinished && !output.isNeededForInlining)) {
+                    outputFiles.add(new OutputClassFile(entry.getKey(), output));
+                }
+            }
+        }
+
+        for (OutputFile outputFile : outputFiles) {
+            outputSink.write(outputFile);
+            ((OutputClassFile) outputFile).output.classBuilder = null;
         }
     }
 
@@ -82,18 +156,34 @@ public class ClassFileFactory implements OutputFileCollection {
     @Override
     public List<OutputFile> asList() {
         done();
-        return ContainerUtil.map(generators.keySet(), new Function<String, OutputFile>() {
-            @Override
-            public OutputFile fun(String relativeClassFilePath) {
-                return new OutputClassFile(relativeClassFilePath);
-            }
-        });
+        synchronized (generators) {
+            return ContainerUtil.map(generators.entrySet(), new Function<Map.Entry<String, ClassBuilderAndSourceFileList>, OutputFile>() {
+                @Override
+                public OutputFile fun(Map.Entry<String, ClassBuilderAndSourceFileList> entry) {
+                    return new OutputClassFile(entry.getKey(), entry.getValue());
+                }
+            });
+        }
     }
 
     @Override
     @Nullable
     public OutputFile get(@NotNull String relativePath) {
-        return generators.containsKey(relativePath) ? new OutputClassFile(relativePath) : null;
+        ClassBuilderAndSourceFileList output;
+
+        // During parallel code generation, classes generated by the tasks which would have run earlier are visible
+        ParallelCodegen.Task task = ParallelCodegen.getCurrentTask();
+        Ref<Object> outputOfTask = task != null ? task.findOutput(relativePath) : null;
+        if (outputOfTask != null) {
+            output = (ClassBuilderAndSourceFileList) outputOfTask.get();
+        }
+        else {
+            synchronized (generators) {
+                output = generators.get(relativePath);
+            }
+        }
+
+        return output != null ? new OutputClassFile(relativePath, output) : null;
     }
 
     @NotNull
@@ -137,9 +227,11 @@ public class ClassFileFactory implements OutputFileCollection {
 
     private class OutputClassFile implements OutputFile {
         private final String relativeClassFilePath;
+        private final ClassBuilderAndSourceFileList output;
 
-        public OutputClassFile(String relativeClassFilePath) {
+        public OutputClassFile(String relativeClassFilePath, ClassBuilderAndSourceFileList output) {
             this.relativeClassFilePath = relativeClassFilePath;
+            this.output = output;
         }
 
         @NotNull
@@ -151,24 +243,31 @@ public class ClassFileFactory implements OutputFileCollection {
         @NotNull
         @Override
         public List<File> getSourceFiles() {
-            ClassBuilderAndSourceFileList pair = generators.get(relativeClassFilePath);
-            if (pair == null) {
-                throw new IllegalStateException("No record for binary file " + relativeClassFilePath);
-            }
-
-            return pair.sourceFiles;
+            return output.sourceFiles;
         }
 
         @NotNull
         @Override
         public byte[] asByteArray() {
-            return builderFactory.asBytes(generators.get(relativeClassFilePath).classBuilder);
+            ClassBuilder classBuilder = output.classBuilder;
+            if (classBuilder == null) {
+                // The bytecode isn't kept after the class is written, read it back from the output
+                assert outputSink != null : "Class builder is released without an output sink: " + relativeClassFilePath;
+                return outputSink.read(relativeClassFilePath);
+            }
+            return builderFactory.asBytes(classBuilder);
         }
 
         @NotNull
         @Override
         public String asText() {
-            return builderFactory.asText(generators.get(relativeClassFilePath).classBuilder);
+            ClassBuilder classBuilder = output.classBuilder;
+            if (classBuilder == null) {
+                StringWriter writer = new StringWriter();
+                new ClassReader(asByteArray()).accept(new TraceClassVisitor(new PrintWriter(writer)), 0);
+                return writer.toString();
+            }
+            return builderFactory.asText(classBuilder);
         }
 
         @NotNull
@@ -179,18 +278,62 @@ public class ClassFileFactory implements OutputFileCollection {
     }
 
     private static final class ClassBuilderAndSourceFileList {
-        private final ClassBuilder classBuilder;
+        // Null once the class file is passed to the output sink
+        private volatile ClassBuilder classBuilder;
         private final List<File> sourceFiles;
+        private final boolean isNeededForInlining;
+        private volatile boolean isFinished = false;
 
-        private ClassBuilderAndSourceFileList(ClassBuilder classBuilder, List<File> sourceFiles) {
+        private ClassBuilderAndSourceFileList(ClassBuilder classBuilder, List<File> sourceFiles, boolean isNeededForInlining) {
             this.classBuilder = classBuilder;
             this.sourceFiles = sourceFiles;
+            this.isNeededForInlining = isNeededForInlining;
+        }
+    }
+
+    private static final class FinishTrackingClassBuilder extends DelegatingClassBuilder {
+        private final ClassBuilder delegate;
+        private final ClassBuilderAndSourceFileList output;
+
+        private FinishTrackingClassBuilder(@NotNull ClassBuilder delegate, @NotNull ClassBuilderAndSourceFileList output) {
+            this.delegate = delegate;
+            this.output = output;
+        }
+
+        @NotNull
+        @Override
+        protected ClassBuilder getDelegate() {
+            return delegate;
+        }
+
+        @Override
+        public void done() {
+            super.done();
+            output.isFinished = true;
         }
     }
 
     public void removeInlinedClasses(Set<String> classNamesToRemove) {
+        ParallelCodegen.Task task = ParallelCodegen.getCurrentTask();
         for (String classInternalName : classNamesToRemove) {
-            generators.remove(classInternalName + ".class");
+            final String outputFilePath = classInternalName + ".class";
+            if (task == null) {
+                removeOutput(outputFilePath);
+            }
+            else {
+                task.recordOutput(outputFilePath, null, new Runnable() {
+                    @Override
+                    public void run() {
+                        removeOutput(outputFilePath);
+                    }
+                });
+            }
+        }
+    }
+
+    private void removeOutput(@NotNull String outputFilePath) {
+        synchronized (generators) {
+            generators.remove(outputFilePath);
         }
     }
 
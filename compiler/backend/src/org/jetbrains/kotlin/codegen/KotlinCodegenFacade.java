@@ -19,6 +19,7 @@ package org.jetbrains.kotlin.codegen;
 import com.google.common.collect.Sets;
 import com.intellij.util.containers.MultiMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.MethodOptimizationPool;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus;
 import org.jetbrains.kotlin.name.FqName;
@@ -27,9 +28,7 @@ import org.jetbrains.kotlin.psi.JetScript;
 import org.jetbrains.kotlin.resolve.ScriptNameUtil;
 import org.jetbrains.org.objectweb.asm.Type;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 import static org.jetbrains.kotlin.codegen.binding.CodegenBinding.registerClassNameForScript;
 
@@ -68,13 +67,33 @@ public class KotlinCodegenFacade {
         }
 
         Set<FqName> packagesWithObsoleteParts = new HashSet<FqName>(state.getPackagesWithObsoleteParts());
-        for (FqName fqName : Sets.union(packagesWithObsoleteParts, packageFqNameToFiles.keySet())) {
+        Set<FqName> packages = Sets.union(packagesWithObsoleteParts, packageFqNameToFiles.keySet());
+
+        // All classes are done by the end of the compilation, so nothing is submitted to the pool after it's shut down
+        MethodOptimizationPool optimizationPool =
+                state.getMethodOptimizationThreads() > 0 ? new MethodOptimizationPool(state.getMethodOptimizationThreads()) : null;
+        state.setMethodOptimizationPool(optimizationPool);
+        try {
+            if (state.getParallelCodegenThreads() > 0) {
+                generatePackagesInParallel(state, packages, packageFqNameToFiles, errorHandler);
+            }
+            else {
+                for (FqName fqName : packages) {
+                    ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
+                    generatePackage(state, fqName, packageFqNameToFiles.get(fqName), errorHandler);
+                    state.getFactory().writeFinishedClasses();
+                }
+            }
+
             ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
-            generatePackage(state, fqName, packageFqNameToFiles.get(fqName), errorHandler);
+            state.getFactory().done();
+        }
+        finally {
+            if (optimizationPool != null) {
+                state.setMethodOptimizationPool(null);
+                optimizationPool.shutdown();
+            }
         }
-
-        ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
-        state.getFactory().done();
     }
 
     public static void generatePackage(
@@ -87,5 +106,33 @@ public class KotlinCodegenFacade {
         codegen.generate(errorHandler);
     }
 
+    private static void generatePackagesInParallel(
+            @NotNull GenerationState state,
+            @NotNull Collection<FqName> packages,
+            @NotNull MultiMap<FqName, JetFile> packageFqNameToFiles,
+            @NotNull CompilationErrorHandler errorHandler
+    ) {
+        ParallelCodegen parallel = new ParallelCodegen(state.getParallelCodegenThreads());
+        try {
+            List<PackageCodegen> codegens = new ArrayList<PackageCodegen>(packages.size());
+            for (FqName fqName : packages) {
+                ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
+                PackageCodegen codegen = state.getFactory().forPackage(fqName, packageFqNameToFiles.get(fqName));
+                codegen.submit(parallel, errorHandler);
+                codegens.add(codegen);
+            }
+
+            // Package facades are generated here while the workers proceed with the files of the following packages
+            for (PackageCodegen codegen : codegens) {
+                ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
+                codegen.generateSubmitted();
+                state.getFactory().writeFinishedClasses();
+            }
+        }
+        finally {
+            parallel.shutdown();
+        }
+    }
+
     private KotlinCodegenFacade() {}
 }
@@ -82,6 +82,7 @@ public class PackageCodegen {
     private final PackageFragmentDescriptor packageFragment;
     private final PackageFragmentDescriptor compiledPackageFragment;
     private final List<DeserializedCallableMemberDescriptor> previouslyCompiledCallables;
+    private List<SubmittedFile> submittedFiles = null;
 
     public PackageCodegen(@NotNull GenerationState state, @NotNull Collection<JetFile> files, @NotNull FqName fqName) {
         this.state = state;
@@ -213,26 +214,81 @@ public class PackageCodegen {
 
         for (JetFile file : files) {
             ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
-            try {
-                ClassBuilder builder = generate(file, generateCallableMemberTasks);
-                if (builder != null) {
-                    bindings.add(builder.getSerializationBindings());
+            generate(file, errorHandler, bindings, generateCallableMemberTasks);
+        }
+
+        generatePackageFacadeIfNeeded(bindings, generateCallableMemberTasks);
+    }
+
+    /**
+     * Starts generating the files of this package on the given pool. The package facade is generated by {@link #generateSubmitted()}
+     * when all the files are done.
+     */
+    public void submit(@NotNull ParallelCodegen parallel, @NotNull final CompilationErrorHandler errorHandler) {
+        assert submittedFiles == null : "Package is already submitted: " + packageClassType;
+        submittedFiles = new ArrayList<SubmittedFile>(files.size());
+
+        final CompilationErrorHandler deferringErrorHandler = ParallelCodegen.deferringErrorHandler(errorHandler);
+        for (final JetFile file : files) {
+            final SubmittedFile submittedFile = new SubmittedFile();
+            submittedFile.task = parallel.submit(new Runnable() {
+                @Override
+                public void run() {
+                    ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
+                    generate(file, deferringErrorHandler, submittedFile.bindings, submittedFile.generateCallableMemberTasks);
                 }
+            });
+            submittedFiles.add(submittedFile);
+        }
+    }
+
+    public void generateSubmitted() {
+        assert submittedFiles != null : "Package is not submitted: " + packageClassType;
+
+        List<JvmSerializationBindings> bindings = new ArrayList<JvmSerializationBindings>(files.size() + 1);
+
+        Map<CallableMemberDescriptor, Runnable> generateCallableMemberTasks = new HashMap<CallableMemberDescriptor, Runnable>();
+
+        for (SubmittedFile submittedFile : submittedFiles) {
+            submittedFile.task.commit();
+            bindings.addAll(submittedFile.bindings);
+            generateCallableMemberTasks.putAll(submittedFile.generateCallableMemberTasks);
+        }
+        submittedFiles = null;
+
+        generatePackageFacadeIfNeeded(bindings, generateCallableMemberTasks);
+    }
+
+    private void generate(
+            @NotNull JetFile file,
+            @NotNull CompilationErrorHandler errorHandler,
+            @NotNull List<JvmSerializationBindings> bindings,
+            @NotNull Map<CallableMemberDescriptor, Runnable> generateCallableMemberTasks
+    ) {
+        try {
+            ClassBuilder builder = generate(file, generateCallableMemberTasks);
+            if (builder != null) {
+                bindings.add(builder.getSerializationBindings());
             }
-            catch (ProcessCanceledException e) {
-                throw e;
-            }
-            catch (Throwable e) {
-                VirtualFile vFile = file.getVirtualFile();
-                errorHandler.reportException(e, vFile == null ? "no file" : vFile.getUrl());
-                DiagnosticUtils.throwIfRunningOnServer(e);
-                if (ApplicationManager.getApplication().isInternal()) {
-                    //noinspection CallToPrintStackTrace
-                    e.printStackTrace();
-                }
+        }
+        catch (ProcessCanceledException e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            VirtualFile vFile = file.getVirtualFile();
+            errorHandler.reportException(e, vFile == null ? "no file" : vFile.getUrl());
+            DiagnosticUtils.throwIfRunningOnServer(e);
+            if (ApplicationManager.getApplication().isInternal()) {
+                //noinspection CallToPrintStackTrace
+                e.printStackTrace();
             }
         }
+    }
 
+    private void generatePackageFacadeIfNeeded(
+            @NotNull List<JvmSerializationBindings> bindings,
+            @NotNull Map<CallableMemberDescriptor, Runnable> generateCallableMemberTasks
+    ) {
         generateDelegationsToPreviouslyCompiled(generateCallableMemberTasks);
 
         if (!generateCallableMemberTasks.isEmpty()) {
@@ -412,4 +468,11 @@ public class PackageCodegen {
     public void done() {
         v.done();
     }
+
+    private static class SubmittedFile {
+        private ParallelCodegen.Task task;
+        // Filled on the worker thread, read after the task is committed
+        private final List<JvmSerializationBindings> bindings = new ArrayList<JvmSerializationBindings>(1);
+        private final Map<CallableMemberDescriptor, Runnable> generateCallableMemberTasks = new HashMap<CallableMemberDescriptor, Runnable>();
+    }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen;
+
+import com.intellij.openapi.util.Ref;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.diagnostics.Diagnostic;
+import org.jetbrains.kotlin.diagnostics.DiagnosticSink;
+import org.jetbrains.kotlin.utils.UtilsPackage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates class files for independent source files on a thread pool.
+ *
+ * Everything a task does that is visible outside of it (new class files, removal of inlined classes, diagnostics, errors) is recorded
+ * in the task and performed on the calling thread by {@link Task#commit()}. Tasks are committed in the order they were submitted,
+ * so the output and the diagnostics are the same as if the files were generated one after another.
+ *
+ * The number of threads is taken from {@link GenerationState#getParallelCodegenThreads()}. Parallel generation is turned off by default,
+ * the command line compiler turns it on if the "kotlin.parallel.codegen.threads" system property is set to a positive number.
+ */
+public class ParallelCodegen {
+    public static final String THREADS_PROPERTY = "kotlin.parallel.codegen.threads";
+
+    public static int getThreadCount() {
+        return Integer.getInteger(THREADS_PROPERTY, 0);
+    }
+
+    public static boolean isEnabled() {
+        return getThreadCount() > 0;
+    }
+
+    private static final ThreadLocal<Task> CURRENT_TASK = new ThreadLocal<Task>();
+
+    // Returns the task being run on the current thread, or null if this is not a code generation worker
+    @Nullable
+    static Task getCurrentTask() {
+        return CURRENT_TASK.get();
+    }
+
+    private final ExecutorService executor;
+    private Task lastTask = null;
+
+    public ParallelCodegen(int threadCount) {
+        executor = Executors.newFixedThreadPool(threadCount, new CodegenThreadFactory());
+    }
+
+    @NotNull
+    public Task submit(@NotNull final Runnable generate) {
+        final Task task = new Task(lastTask);
+        lastTask = task;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                CURRENT_TASK.set(task);
+                try {
+                    generate.run();
+                }
+                catch (Throwable e) {
+                    task.exception = e;
+                }
+                finally {
+                    CURRENT_TASK.remove();
+                    task.finished.countDown();
+                }
+            }
+        });
+        return task;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @NotNull
+    public static DiagnosticSink deferringDiagnosticSink(@NotNull final DiagnosticSink diagnostics) {
+        return new DiagnosticSink() {
+            @Override
+            public void report(@NotNull final Diagnostic diagnostic) {
+                Task task = getCurrentTask();
+                if (task == null) {
+                    diagnostics.report(diagnostic);
+                    return;
+                }
+                task.defer(new Runnable() {
+                    @Override
+                    public void run() {
+                        diagnostics.report(diagnostic);
+                    }
+                });
+            }
+        };
+    }
+
+    @NotNull
+    public static CompilationErrorHandler deferringErrorHandler(@NotNull final CompilationErrorHandler errorHandler) {
+        return new CompilationErrorHandler() {
+            @Override
+            public void reportException(final Throwable exception, final String fileUrl) {
+                Task task = getCurrentTask();
+                if (task == null) {
+                    errorHandler.reportException(exception, fileUrl);
+                    return;
+                }
+                task.defer(new Runnable() {
+                    @Override
+                    public void run() {
+                        errorHandler.reportException(exception, fileUrl);
+                    }
+                });
+            }
+        };
+    }
+
+    public static final class Task {
+        private final Task previous;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final List<Runnable> actions = new ArrayList<Runnable>();
+        // Values are null for removed outputs
+        private final Map<String, Object> outputs = new HashMap<String, Object>();
+        private volatile Throwable exception = null;
+        private boolean committed = false;
+
+        private Task(@Nullable Task previous) {
+            this.previous = previous;
+        }
+
+        void defer(@NotNull Runnable action) {
+            actions.add(action);
+        }
+
+        void recordOutput(@NotNull String relativePath, @Nullable Object output, @NotNull Runnable commitAction) {
+            outputs.put(relativePath, output);
+            actions.add(commitAction);
+        }
+
+        /**
+         * Looks for the output at the given path among the outputs of this task and of the tasks submitted before it,
+         * waiting for them to finish. Returns null if none of them has generated or removed such an output.
+         */
+        @Nullable
+        Ref<Object> findOutput(@NotNull String relativePath) {
+            for (Task task = this; task != null; task = task.previous) {
+                if (task != this) {
+                    task.await();
+                }
+                if (task.outputs.containsKey(relativePath)) {
+                    return Ref.create(task.outputs.get(relativePath));
+                }
+            }
+            return null;
+        }
+
+        public void commit() {
+            assert !committed : "Task is already committed";
+            committed = true;
+
+            await();
+            for (Runnable action : actions) {
+                action.run();
+            }
+            if (exception != null) {
+                throw UtilsPackage.rethrow(exception);
+            }
+        }
+
+        private void await() {
+            try {
+                finished.await();
+            }
+            catch (InterruptedException e) {
+                throw UtilsPackage.rethrow(e);
+            }
+        }
+    }
+
+    private static class CodegenThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "Kotlin codegen " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -28,6 +28,12 @@ import java.util.*;
 
 import static org.jetbrains.kotlin.codegen.JvmCodegenUtil.getDirectMember;
 
+/**
+ * Lambdas and objects declared in an inline function are generated both with the function and at each call site it is inlined into
+ * from sources, which may happen on several threads at once (see ParallelCodegen). So the state is guarded by the closure itself,
+ * and collections are returned as snapshots. Every generation of the same body captures the same values in the same order,
+ * so the resulting contents don't depend on which thread gets there first.
+ */
 public final class MutableClosure implements CalculatedClosure {
     private final ClassDescriptor enclosingClass;
     private final CallableDescriptor enclosingFunWithReceiverDescriptor;
@@ -62,16 +68,16 @@ public final class MutableClosure implements CalculatedClosure {
     }
 
     @Override
-    public ClassDescriptor getCaptureThis() {
+    public synchronized ClassDescriptor getCaptureThis() {
         return captureThis ? enclosingClass : null;
     }
 
-    public void setCaptureThis() {
+    public synchronized void setCaptureThis() {
         this.captureThis = true;
     }
 
     @Override
-    public JetType getCaptureReceiverType() {
+    public synchronized JetType getCaptureReceiverType() {
         if (captureReceiver) {
             ReceiverParameterDescriptor parameter = getEnclosingReceiverDescriptor();
             assert parameter != null : "Receiver parameter should exist in " + enclosingFunWithReceiverDescriptor;
@@ -81,7 +87,7 @@ public final class MutableClosure implements CalculatedClosure {
         return null;
     }
 
-    public void setCaptureReceiver() {
+    public synchronized void setCaptureReceiver() {
         if (enclosingFunWithReceiverDescriptor == null) {
             throw new IllegalStateException("Extension receiver parameter should exist");
         }
@@ -90,38 +96,45 @@ public final class MutableClosure implements CalculatedClosure {
 
     @NotNull
     @Override
-    public Map<DeclarationDescriptor, EnclosedValueDescriptor> getCaptureVariables() {
-        return captureVariables != null ? captureVariables : Collections.<DeclarationDescriptor, EnclosedValueDescriptor>emptyMap();
+    public synchronized Map<DeclarationDescriptor, EnclosedValueDescriptor> getCaptureVariables() {
+        return captureVariables != null
+               ? new LinkedHashMap<DeclarationDescriptor, EnclosedValueDescriptor>(captureVariables)
+               : Collections.<DeclarationDescriptor, EnclosedValueDescriptor>emptyMap();
+    }
+
+    @Nullable
+    public synchronized EnclosedValueDescriptor getCapturedVariable(@NotNull DeclarationDescriptor descriptor) {
+        return captureVariables != null ? captureVariables.get(descriptor) : null;
     }
 
     @NotNull
     @Override
-    public List<Pair<String, Type>> getRecordedFields() {
-        return recordedFields != null ? recordedFields : Collections.<Pair<String, Type>>emptyList();
+    public synchronized List<Pair<String, Type>> getRecordedFields() {
+        return recordedFields != null ? new ArrayList<Pair<String, Type>>(recordedFields) : Collections.<Pair<String, Type>>emptyList();
     }
 
-    public void recordField(String name, Type type) {
+    public synchronized void recordField(String name, Type type) {
         if (recordedFields == null) {
             recordedFields = new LinkedList<Pair<String, Type>>();
         }
         recordedFields.add(new Pair<String, Type>(name, type));
     }
 
-    public void captureVariable(EnclosedValueDescriptor value) {
+    public synchronized void captureVariable(EnclosedValueDescriptor value) {
         if (captureVariables == null) {
             captureVariables = new LinkedHashMap<DeclarationDescriptor, EnclosedValueDescriptor>();
         }
         captureVariables.put(value.getDescriptor(), value);
     }
 
-    public void setCapturedParameterOffsetInConstructor(DeclarationDescriptor descriptor, int offset) {
+    public synchronized void setCapturedParameterOffsetInConstructor(DeclarationDescriptor descriptor, int offset) {
         if (parameterOffsetInConstructor == null) {
             parameterOffsetInConstructor = new LinkedHashMap<DeclarationDescriptor, Integer>();
         }
         parameterOffsetInConstructor.put(descriptor, offset);
     }
 
-    public int getCapturedParameterOffsetInConstructor(DeclarationDescriptor descriptor) {
+    public synchronized int getCapturedParameterOffsetInConstructor(DeclarationDescriptor descriptor) {
         Integer result = parameterOffsetInConstructor != null ? parameterOffsetInConstructor.get(descriptor) : null;
         return result != null ? result.intValue() : -1;
     }
@@ -270,7 +270,7 @@ public abstract class CodegenContext<T extends DeclarationDescriptor> {
     public StackValue lookupInContext(DeclarationDescriptor d, @Nullable StackValue result, GenerationState state, boolean ignoreNoOuter) {
         StackValue myOuter = null;
         if (closure != null) {
-            EnclosedValueDescriptor answer = closure.getCaptureVariables().get(d);
+            EnclosedValueDescriptor answer = closure.getCapturedVariable(d);
             if (answer != null) {
                 return StackValue.changeReceiverForFieldAndSharedVar(answer.getInnerValue(), result);
             }
@@ -56,7 +56,6 @@ import org.jetbrains.org.objectweb.asm.tree.InsnList;
 import org.jetbrains.org.objectweb.asm.tree.LabelNode;
 import org.jetbrains.org.objectweb.asm.tree.MethodNode;
 
-import java.io.IOException;
 import java.util.*;
 
 import static org.jetbrains.kotlin.codegen.AsmUtil.getMethodAsmFlags;
@@ -175,7 +174,7 @@ public class InlineCodegen extends CallGenerator {
     }
 
     @NotNull
-    private SMAPAndMethodNode createMethodNode(boolean callDefault) throws ClassNotFoundException, IOException {
+    private SMAPAndMethodNode createMethodNode(boolean callDefault) {
         JvmMethodSignature jvmSignature = typeMapper.mapSignature(functionDescriptor, context.getContextKind());
 
         Method asmMethod;
@@ -196,10 +195,10 @@ public class InlineCodegen extends CallGenerator {
                 /*use facade class*/
                 containerClassId = PackageClassUtils.getPackageClassId(containerClassId.getPackageFqName());
             }
-            nodeAndSMAP = InlineCodegenUtil.getMethodNode(file.contentsToByteArray(),
-                                                          asmMethod.getName(),
-                                                          asmMethod.getDescriptor(),
-                                                          containerClassId);
+            nodeAndSMAP = state.getInlineMethodNodeCache().getMethodNode(file,
+                                                                         asmMethod.getName(),
+                                                                         asmMethod.getDescriptor(),
+                                                                         containerClassId);
 
             if (nodeAndSMAP == null) {
                 throw new RuntimeException("Couldn't obtain compiled function body for " + descriptorName(functionDescriptor));
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.inline;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import kotlin.jvm.functions.Function0;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.name.ClassId;
+import org.jetbrains.kotlin.util.PerformanceCounter;
+import org.jetbrains.kotlin.utils.UtilsPackage;
+import org.jetbrains.org.objectweb.asm.tree.MethodNode;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the bodies of compiled inline functions, so that a library class file is read and parsed once per compilation
+ * and not at each call site of its inline functions.
+ *
+ * The inliner modifies the method node it is given, so each call site gets its own copy of the cached node.
+ * SMAPs parsed from class files are not modified and are shared.
+ */
+public class InlineMethodNodeCache {
+    private static final PerformanceCounter parseCounter = PerformanceCounter.Companion.create("Inline function body parse");
+    private static final PerformanceCounter copyCounter = PerformanceCounter.Companion.create("Inline function body copy from cache");
+
+    private final ConcurrentMap<Key, Template> templates = new ConcurrentHashMap<Key, Template>();
+
+    @Nullable
+    public SMAPAndMethodNode getMethodNode(
+            @NotNull final VirtualFile file,
+            @NotNull final String methodName,
+            @NotNull final String methodDescriptor,
+            @NotNull final ClassId classId
+    ) {
+        Key key = new Key(file, methodName, methodDescriptor, classId);
+        Template template = templates.get(key);
+        if (template == null) {
+            SMAPAndMethodNode parsed = parseCounter.time(new Function0<SMAPAndMethodNode>() {
+                @Override
+                public SMAPAndMethodNode invoke() {
+                    try {
+                        return InlineCodegenUtil.getMethodNode(file.contentsToByteArray(), methodName, methodDescriptor, classId);
+                    }
+                    catch (Exception e) {
+                        throw UtilsPackage.rethrow(e);
+                    }
+                }
+            });
+            if (parsed == null) return null;
+
+            Template newTemplate = new Template(parsed.getNode(), parsed.getClassSMAP());
+            template = templates.putIfAbsent(key, newTemplate);
+            if (template == null) {
+                template = newTemplate;
+            }
+        }
+
+        final Template finalTemplate = template;
+        return copyCounter.time(new Function0<SMAPAndMethodNode>() {
+            @Override
+            public SMAPAndMethodNode invoke() {
+                return finalTemplate.copy();
+            }
+        });
+    }
+
+    private static class Template {
+        private final MethodNode node;
+        private final SMAP smap;
+
+        private Template(@NotNull MethodNode node, @NotNull SMAP smap) {
+            this.node = node;
+            this.smap = smap;
+        }
+
+        @NotNull
+        public SMAPAndMethodNode copy() {
+            MethodNode copy = new MethodNode(
+                    InlineCodegenUtil.API, node.access, node.name, node.desc, node.signature,
+                    node.exceptions.toArray(new String[node.exceptions.size()])
+            );
+            // Visiting a method node temporarily stores the new labels in its own labels, so it can't be done by several threads at once
+            synchronized (this) {
+                node.accept(copy);
+            }
+            return new SMAPAndMethodNode(copy, smap);
+        }
+    }
+
+    private static class Key {
+        private final String fileUrl;
+        private final long timeStamp;
+        private final long length;
+        private final String methodName;
+        private final String methodDescriptor;
+        private final ClassId classId;
+
+        private Key(@NotNull VirtualFile file, @NotNull String methodName, @NotNull String methodDescriptor, @NotNull ClassId classId) {
+            // The time stamp and the length of the file identify its contents without reading it
+            this.fileUrl = file.getUrl();
+            this.timeStamp = file.getTimeStamp();
+            this.length = file.getLength();
+            this.methodName = methodName;
+            this.methodDescriptor = methodDescriptor;
+            this.classId = classId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return timeStamp == key.timeStamp &&
+                   length == key.length &&
+                   fileUrl.equals(key.fileUrl) &&
+                   methodName.equals(key.methodName) &&
+                   methodDescriptor.equals(key.methodDescriptor) &&
+                   classId.equals(key.classId);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = fileUrl.hashCode();
+            result = 31 * result + (int) (timeStamp ^ (timeStamp >>> 32));
+            result = 31 * result + (int) (length ^ (length >>> 32));
+            result = 31 * result + methodName.hashCode();
+            result = 31 * result + methodDescriptor.hashCode();
+            result = 31 * result + classId.hashCode();
+            return result;
+        }
+    }
+}
@@ -18,20 +18,34 @@ package org.jetbrains.kotlin.codegen.optimization
 
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
+import org.jetbrains.kotlin.codegen.optimization.transformer.SharedBasicFrames
 import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
 import org.jetbrains.kotlin.codegen.optimization.common.isMeaningful
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
 
 public class DeadCodeEliminationMethodTransformer : MethodTransformer() {
     override fun transform(internalClassName: String, methodNode: MethodNode) {
-        val frames = MethodTransformer.analyze(internalClassName, methodNode, OptimizationBasicInterpreter())
+        removeDeadCode(methodNode, MethodTransformer.analyze(internalClassName, methodNode, OptimizationBasicInterpreter()))
+    }
+
+    override fun transform(internalClassName: String, methodNode: MethodNode, sharedFrames: SharedBasicFrames) {
+        if (removeDeadCode(methodNode, sharedFrames.get())) {
+            sharedFrames.invalidate()
+        }
+    }
+
+    private fun removeDeadCode(methodNode: MethodNode, frames: Array<Frame<BasicValue>?>): Boolean {
         val insnList = methodNode.instructions
         val insnsArray = insnList.toArray()
 
         // Do not remove not meaningful nodes (labels/linenumbers) because they can be referred
         // by try/catch blocks or local variables table
         // We remove unneeded ones further after all optimizations by calling CommonPackage.prepareForEmitting(methodNode)
-        insnsArray.zip(frames).filter {
+        val deadInsns = insnsArray.zip(frames).filter {
             it.second == null && it.first.isMeaningful
-        }.forEach { insnList.remove(it.first) }
+        }
+        deadInsns.forEach { insnList.remove(it.first) }
+        return deadInsns.isNotEmpty()
     }
 }
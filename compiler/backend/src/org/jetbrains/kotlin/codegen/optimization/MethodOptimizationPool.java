@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread pool on which finished methods are transformed while the code generator proceeds with the following methods.
+ * The transformed methods are written to their class in the order they were generated when the class is done,
+ * see {@link OptimizationClassBuilder#done()}.
+ *
+ * A pool is created for a single compilation by {@link org.jetbrains.kotlin.codegen.KotlinCodegenFacade#compileCorrectFiles}
+ * when {@link org.jetbrains.kotlin.codegen.state.GenerationState#getMethodOptimizationThreads()} is positive, and is shut down
+ * when the compilation finishes, successfully or not.
+ */
+public class MethodOptimizationPool {
+    public static final String THREADS_PROPERTY = "kotlin.parallel.optimization.threads";
+
+    /**
+     * @return the number of threads set by the "kotlin.parallel.optimization.threads" system property, 0 by default
+     */
+    public static int getThreadCount() {
+        return Integer.getInteger(THREADS_PROPERTY, 0);
+    }
+
+    private final ExecutorService executor;
+
+    public MethodOptimizationPool(int threadCount) {
+        if (threadCount <= 0) throw new IllegalArgumentException("Thread count should be positive: " + threadCount);
+        this.executor = Executors.newFixedThreadPool(threadCount, new OptimizationThreadFactory());
+    }
+
+    @NotNull
+    public <T> Future<T> submit(@NotNull Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class OptimizationThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "Kotlin bytecode optimization " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
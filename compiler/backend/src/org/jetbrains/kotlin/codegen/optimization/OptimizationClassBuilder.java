@@ -23,13 +23,24 @@ import org.jetbrains.kotlin.codegen.DelegatingClassBuilder;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class OptimizationClassBuilder extends DelegatingClassBuilder {
     private final ClassBuilder delegate;
     private final boolean disableOptimization;
+    private final MethodOptimizationPool pool;
+    // Methods being transformed on the pool, in the order they were generated
+    private final List<OptimizationMethodVisitor> pendingMethods = new ArrayList<OptimizationMethodVisitor>();
 
     public OptimizationClassBuilder(@NotNull ClassBuilder delegate, boolean disableOptimization) {
+        this(delegate, disableOptimization, null);
+    }
+
+    public OptimizationClassBuilder(@NotNull ClassBuilder delegate, boolean disableOptimization, @Nullable MethodOptimizationPool pool) {
         this.delegate = delegate;
         this.disableOptimization = disableOptimization;
+        this.pool = pool;
     }
 
     @NotNull
@@ -48,10 +59,24 @@ public class OptimizationClassBuilder extends DelegatingClassBuilder {
             @Nullable String signature,
             @Nullable String[] exceptions
     ) {
-        return new OptimizationMethodVisitor(
+        OptimizationMethodVisitor visitor = new OptimizationMethodVisitor(
                 super.newMethod(origin, access, name, desc, signature, exceptions),
-                disableOptimization,
+                disableOptimization, pool,
                 access, name, desc, signature, exceptions
         );
+        if (pool != null) {
+            pendingMethods.add(visitor);
+        }
+        return visitor;
+    }
+
+    @Override
+    public void done() {
+        for (OptimizationMethodVisitor method : pendingMethods) {
+            method.emitTransformed();
+        }
+        pendingMethods.clear();
+
+        super.done();
     }
 }
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen.optimization;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.codegen.ClassBuilder;
 import org.jetbrains.kotlin.codegen.ClassBuilderFactory;
 import org.jetbrains.kotlin.codegen.ClassBuilderMode;
@@ -25,12 +26,22 @@ import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 public class OptimizationClassBuilderFactory implements ClassBuilderFactory {
     private final ClassBuilderFactory delegate;
     private final boolean disableOptimization;
+    // Class builders may be created on parallel codegen workers
+    private volatile MethodOptimizationPool pool = null;
 
     public OptimizationClassBuilderFactory(ClassBuilderFactory delegate, boolean disableOptimization) {
         this.delegate = delegate;
         this.disableOptimization = disableOptimization;
     }
 
+    /**
+     * Sets the pool methods of the class builders created afterwards are transformed on. The pool is owned by the caller,
+     * which should shut it down only after all these class builders are done.
+     */
+    public void setPool(@Nullable MethodOptimizationPool pool) {
+        this.pool = pool;
+    }
+
     @NotNull
     @Override
     public ClassBuilderMode getClassBuilderMode() {
@@ -40,7 +51,7 @@ public class OptimizationClassBuilderFactory implements ClassBuilderFactory {
     @NotNull
     @Override
     public ClassBuilder newClassBuilder(@NotNull JvmDeclarationOrigin origin) {
-        return new OptimizationClassBuilder(delegate.newClassBuilder(origin), disableOptimization);
+        return new OptimizationClassBuilder(delegate.newClassBuilder(origin), disableOptimization, pool);
     }
 
     @Override
@@ -23,6 +23,8 @@ import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantBoxingMethodTra
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantNullCheckMethodTransformer;
 import org.jetbrains.kotlin.codegen.optimization.common.CommonPackage;
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer;
+import org.jetbrains.kotlin.codegen.optimization.transformer.SharedBasicFrames;
+import org.jetbrains.kotlin.utils.UtilsPackage;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 import org.jetbrains.org.objectweb.asm.Opcodes;
 import org.jetbrains.org.objectweb.asm.tree.LocalVariableNode;
@@ -32,6 +34,10 @@ import org.jetbrains.org.objectweb.asm.util.TraceMethodVisitor;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class OptimizationMethodVisitor extends MethodVisitor {
     private static final int MEMORY_LIMIT_BY_METHOD_MB = 50;
@@ -51,6 +57,8 @@ public class OptimizationMethodVisitor extends MethodVisitor {
     private final MethodNode methodNode;
     private final MethodVisitor delegate;
     private final boolean disableOptimization;
+    private final MethodOptimizationPool pool;
+    private Future<?> transformation = null;
 
     public OptimizationMethodVisitor(
             @NotNull MethodVisitor delegate,
@@ -60,6 +68,23 @@ public class OptimizationMethodVisitor extends MethodVisitor {
             @NotNull String desc,
             @Nullable String signature,
             @Nullable String[] exceptions
+    ) {
+        this(delegate, disableOptimization, null, access, name, desc, signature, exceptions);
+    }
+
+    /**
+     * If the pool is given, the method is transformed on it after {@link #visitEnd()}, and is written to the delegate
+     * only by {@link #emitTransformed()}.
+     */
+    public OptimizationMethodVisitor(
+            @NotNull MethodVisitor delegate,
+            boolean disableOptimization,
+            @Nullable MethodOptimizationPool pool,
+            int access,
+            @NotNull String name,
+            @NotNull String desc,
+            @Nullable String signature,
+            @Nullable String[] exceptions
     ) {
         super(Opcodes.ASM5);
         this.delegate = delegate;
@@ -67,6 +92,7 @@ public class OptimizationMethodVisitor extends MethodVisitor {
         this.methodNode.localVariables = new ArrayList<LocalVariableNode>(5);
         this.mv = InlineCodegenUtil.wrapWithMaxLocalCalc(methodNode);
         this.disableOptimization = disableOptimization;
+        this.pool = pool;
     }
 
     @Override
@@ -78,18 +104,59 @@ public class OptimizationMethodVisitor extends MethodVisitor {
 
         super.visitEnd();
 
+        if (pool == null) {
+            transform();
+            emit();
+        }
+        else {
+            transformation = pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    transform();
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits for the transformation started on the pool and writes the transformed method to the delegate.
+     * Does nothing if the method wasn't visited to the end.
+     */
+    public void emitTransformed() {
+        if (transformation == null) return;
+
+        try {
+            transformation.get();
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Couldn't optimize method " + methodNode.name + methodNode.desc, e.getCause());
+        }
+        catch (InterruptedException e) {
+            throw UtilsPackage.rethrow(e);
+        }
+        transformation = null;
+
+        emit();
+    }
+
+    private void transform() {
         if (shouldBeTransformed(methodNode)) {
+            // Frames of the basic interpreter are reused by the following transformers until some of them changes the code
+            SharedBasicFrames sharedFrames = new SharedBasicFrames("fake", methodNode);
             for (MethodTransformer transformer : MANDATORY_TRANSFORMERS) {
-                transformer.transform("fake", methodNode);
+                transformer.transform("fake", methodNode, sharedFrames);
             }
             if (canBeOptimized(methodNode) && !disableOptimization) {
                 for (MethodTransformer transformer : OPTIMIZATION_TRANSFORMERS) {
-                    transformer.transform("fake", methodNode);
+                    transformer.transform("fake", methodNode, sharedFrames);
                 }
             }
             CommonPackage.prepareForEmitting(methodNode);
         }
+    }
 
+    private void emit() {
         methodNode.accept(new EndIgnoringMethodVisitorDecorator(Opcodes.ASM5, delegate));
 
 
@@ -123,6 +190,23 @@ public class OptimizationMethodVisitor extends MethodVisitor {
 
     @Nullable
     public TraceMethodVisitor getTraceMethodVisitorIfPossible() {
+        // The method node mustn't be read while it's being transformed on the pool
+        if (transformation != null) {
+            try {
+                transformation.get();
+            }
+            catch (ExecutionException ignored) {
+                // Render the method as the failed transformation left it
+            }
+            catch (CancellationException e) {
+                return null;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
         TraceMethodVisitor traceMethodVisitor = new TraceMethodVisitor(new Textifier());
         try {
             methodNode.accept(traceMethodVisitor);
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen.optimization
 
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
+import org.jetbrains.kotlin.codegen.optimization.transformer.SharedBasicFrames
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
 import org.jetbrains.org.objectweb.asm.tree.AbstractInsnNode
 import org.jetbrains.org.objectweb.asm.tree.LabelNode
@@ -29,6 +30,16 @@ public class RedundantGotoMethodTransformer : MethodTransformer() {
      * Removes redundant GOTO's, i.e. to subsequent labels
      */
     override fun transform(internalClassName: String, methodNode: MethodNode) {
+        removeRedundantGotos(methodNode)
+    }
+
+    override fun transform(internalClassName: String, methodNode: MethodNode, sharedFrames: SharedBasicFrames) {
+        if (removeRedundantGotos(methodNode)) {
+            sharedFrames.invalidate()
+        }
+    }
+
+    private fun removeRedundantGotos(methodNode: MethodNode): Boolean {
         val insns = methodNode.instructions.toArray()
         val insnsToRemove = arrayListOf<AbstractInsnNode>()
 
@@ -52,5 +63,6 @@ public class RedundantGotoMethodTransformer : MethodTransformer() {
         for (insnToRemove in insnsToRemove) {
             methodNode.instructions.remove(insnToRemove)
         }
+        return insnsToRemove.isNotEmpty()
     }
 }
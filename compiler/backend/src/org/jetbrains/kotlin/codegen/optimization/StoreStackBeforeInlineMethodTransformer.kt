@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen.optimization
 
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
+import org.jetbrains.kotlin.codegen.optimization.transformer.SharedBasicFrames
 import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
 import org.jetbrains.kotlin.codegen.inline.InlineCodegenUtil
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
@@ -31,13 +32,27 @@ import com.intellij.util.containers.Stack
 
 class StoreStackBeforeInlineMethodTransformer : MethodTransformer() {
     override fun transform(internalClassName: String, methodNode: MethodNode) {
-        val frames = MethodTransformer.analyze(internalClassName, methodNode, OptimizationBasicInterpreter())
+        transform(methodNode) { MethodTransformer.analyze(internalClassName, methodNode, OptimizationBasicInterpreter()) }
+    }
+
+    override fun transform(internalClassName: String, methodNode: MethodNode, sharedFrames: SharedBasicFrames) {
+        if (transform(methodNode) { sharedFrames.get() }) {
+            sharedFrames.invalidate()
+        }
+    }
+
+    private fun transform(methodNode: MethodNode, computeFrames: () -> Array<Frame<BasicValue>?>): Boolean {
+        // Most methods have nothing inlined, no need to analyze them
+        if (methodNode.instructions.toArray().none { isInlineMarker(it) }) return false
+
+        val frames = computeFrames()
         if (needToProcess(methodNode, frames)) {
             process(methodNode, frames)
         }
         else {
             removeInlineMarkers(methodNode)
         }
+        return true
     }
 }
 
@@ -49,4 +49,14 @@ public abstract class MethodTransformer {
     }
 
     abstract public void transform(@NotNull String internalClassName, @NotNull MethodNode methodNode);
+
+    /**
+     * Transforms the method when it's run in a sequence with other transformers. Transformers which analyze the method with
+     * {@link org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter} override this to reuse the frames
+     * computed before; by default the shared frames are assumed to be changed by the transformation.
+     */
+    public void transform(@NotNull String internalClassName, @NotNull MethodNode methodNode, @NotNull SharedBasicFrames sharedFrames) {
+        transform(internalClassName, methodNode);
+        sharedFrames.invalidate();
+    }
 }
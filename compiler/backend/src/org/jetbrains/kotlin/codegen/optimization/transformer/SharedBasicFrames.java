@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.transformer;
+
+import kotlin.jvm.KotlinSignature;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter;
+import org.jetbrains.org.objectweb.asm.tree.MethodNode;
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue;
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame;
+
+/**
+ * Frames of {@link OptimizationBasicInterpreter} for a method which are shared by the transformers run on it one after another.
+ * The frames are computed on the first request and stay valid until some transformer changes the instructions and calls {@link #invalidate()}.
+ */
+public class SharedBasicFrames {
+    private final String internalClassName;
+    private final MethodNode methodNode;
+    private Frame<BasicValue>[] frames = null;
+
+    public SharedBasicFrames(@NotNull String internalClassName, @NotNull MethodNode methodNode) {
+        this.internalClassName = internalClassName;
+        this.methodNode = methodNode;
+    }
+
+    @KotlinSignature("fun get(): Array<Frame<BasicValue>?>")
+    @NotNull
+    public Frame<BasicValue>[] get() {
+        if (frames == null) {
+            frames = MethodTransformer.analyze(internalClassName, methodNode, new OptimizationBasicInterpreter());
+        }
+        return frames;
+    }
+
+    public void invalidate() {
+        frames = null;
+    }
+}
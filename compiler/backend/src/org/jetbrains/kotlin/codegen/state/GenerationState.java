@@ -23,7 +23,9 @@ import org.jetbrains.kotlin.builtins.ReflectionTypes;
 import org.jetbrains.kotlin.codegen.*;
 import org.jetbrains.kotlin.codegen.binding.CodegenBinding;
 import org.jetbrains.kotlin.codegen.extensions.ClassBuilderInterceptorExtension;
+import org.jetbrains.kotlin.codegen.inline.InlineMethodNodeCache;
 import org.jetbrains.kotlin.codegen.intrinsics.IntrinsicMethods;
+import org.jetbrains.kotlin.codegen.optimization.MethodOptimizationPool;
 import org.jetbrains.kotlin.codegen.optimization.OptimizationClassBuilderFactory;
 import org.jetbrains.kotlin.codegen.when.MappingsClassesForWhenByEnum;
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
@@ -83,6 +85,7 @@ public class GenerationState {
     private final IntrinsicMethods intrinsics;
     private final SamWrapperClasses samWrapperClasses = new SamWrapperClasses(this);
     private final InlineCycleReporter inlineCycleReporter;
+    private final InlineMethodNodeCache inlineMethodNodeCache = new InlineMethodNodeCache();
     private final MappingsClassesForWhenByEnum mappingsClassesForWhenByEnum = new MappingsClassesForWhenByEnum(this);
     private final BindingTrace bindingTrace;
     private final JetTypeMapper typeMapper;
@@ -97,6 +100,9 @@ public class GenerationState {
     private final DiagnosticSink diagnostics;
     private final Collection<FqName> packagesWithObsoleteParts;
     private final ClassBuilderFactory interceptedBuilderFactory;
+    private final OptimizationClassBuilderFactory optimizationClassBuilderFactory;
+    private int parallelCodegenThreads = 0;
+    private int methodOptimizationThreads = 0;
 
     @Nullable
     private final String moduleId; // for PackageCodegen in incremental compilation mode
@@ -149,7 +155,11 @@ public class GenerationState {
 
         this.intrinsics = new IntrinsicMethods();
 
-        builderFactory = new OptimizationClassBuilderFactory(builderFactory, disableOptimization);
+        // Diagnostics reported by parallel codegen workers are replayed in the order of the files, others are reported right away
+        diagnostics = ParallelCodegen.deferringDiagnosticSink(diagnostics);
+
+        this.optimizationClassBuilderFactory = new OptimizationClassBuilderFactory(builderFactory, disableOptimization);
+        builderFactory = optimizationClassBuilderFactory;
 
         ClassBuilderFactory interceptedBuilderFactory = new BuilderFactoryForDuplicateSignatureDiagnostics(
                 builderFactory, this.bindingContext, diagnostics);
@@ -231,6 +241,11 @@ public class GenerationState {
         return inlineCycleReporter;
     }
 
+    @NotNull
+    public InlineMethodNodeCache getInlineMethodNodeCache() {
+        return inlineMethodNodeCache;
+    }
+
     @NotNull
     public MappingsClassesForWhenByEnum getMappingsClassesForWhenByEnum() {
         return mappingsClassesForWhenByEnum;
@@ -294,6 +309,32 @@ public class GenerationState {
         this.earlierScriptsForReplInterpreter = earlierScriptsForReplInterpreter;
     }
 
+    /**
+     * @return the number of threads source files are generated on, or 0 if they are generated on the calling thread
+     */
+    public int getParallelCodegenThreads() {
+        return parallelCodegenThreads;
+    }
+
+    public void setParallelCodegenThreads(int parallelCodegenThreads) {
+        this.parallelCodegenThreads = parallelCodegenThreads;
+    }
+
+    /**
+     * @return the number of threads finished methods are optimized on, or 0 if they are optimized right away on the generating thread
+     */
+    public int getMethodOptimizationThreads() {
+        return methodOptimizationThreads;
+    }
+
+    public void setMethodOptimizationThreads(int methodOptimizationThreads) {
+        this.methodOptimizationThreads = methodOptimizationThreads;
+    }
+
+    public void setMethodOptimizationPool(@Nullable MethodOptimizationPool pool) {
+        optimizationClassBuilderFactory.setPool(pool);
+    }
+
     @NotNull
     public ModuleDescriptor getModule() {
         return module;
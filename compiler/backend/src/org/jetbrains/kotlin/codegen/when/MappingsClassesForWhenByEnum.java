@@ -36,7 +36,7 @@ public class MappingsClassesForWhenByEnum {
         this.mappingsCodegen = new MappingClassesForWhenByEnumCodegen(state);
     }
 
-    public void generateMappingsClassForExpression(@NotNull JetWhenExpression expression) {
+    public synchronized void generateMappingsClassForExpression(@NotNull JetWhenExpression expression) {
         WhenByEnumsMapping mapping = state.getBindingContext().get(CodegenBinding.MAPPING_FOR_WHEN_BY_ENUM, expression);
 
         assert mapping != null : "mapping class should not be requested for non enum when";
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.jvm.compiler.CliLightClassGenerationSupport;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.resolve.TopDownAnalysisMode;
+import org.jetbrains.kotlin.resolve.jvm.TopDownAnalyzerFacadeForJVM;
+import org.jetbrains.kotlin.utils.PathUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.jetbrains.kotlin.cli.jvm.config.ConfigPackage.addJvmClasspathRoot;
+import static org.jetbrains.kotlin.cli.jvm.config.ConfigPackage.addJvmClasspathRoots;
+import static org.jetbrains.kotlin.config.ConfigPackage.addKotlinSourceRoot;
+
+/**
+ * Fixed sets of files from compiler/testData which the benchmarks run over, and the compiler environment to analyze them in.
+ *
+ * The repository is located by the "kotlin.benchmark.home" system property, which defaults to the working directory.
+ * Sources are compiled against the JDK and the runtime jar given by "kotlin.benchmark.runtime", which defaults to the one in dist.
+ */
+public final class BenchmarkCorpus {
+    public static final String HOME_PROPERTY = "kotlin.benchmark.home";
+    public static final String RUNTIME_PROPERTY = "kotlin.benchmark.runtime";
+
+    // Files to lex and parse, some of them have syntax errors on purpose
+    public static final List<String> SYNTAX = Collections.singletonList("compiler/testData/psi");
+
+    // Files to analyze and compile, each of them compiles without errors on its own
+    public static final List<String> CODEGEN = Arrays.asList(
+            "compiler/testData/codegen/box/classes",
+            "compiler/testData/codegen/box/closures",
+            "compiler/testData/codegen/box/controlStructures",
+            "compiler/testData/codegen/box/functions"
+    );
+
+    private BenchmarkCorpus() {
+    }
+
+    @NotNull
+    public static File getHome() {
+        return new File(System.getProperty(HOME_PROPERTY, "."));
+    }
+
+    // Kotlin files right in the given directories, in a stable order
+    @NotNull
+    public static List<File> getFiles(@NotNull List<String> directories) {
+        List<File> result = new ArrayList<File>();
+        for (String directory : directories) {
+            File[] files = new File(getHome(), directory).listFiles();
+            if (files == null) {
+                throw new IllegalStateException("Corpus directory not found: " + directory + ", set " + HOME_PROPERTY);
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(".kt")) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    @NotNull
+    public static String loadText(@NotNull File file) {
+        try {
+            return StringUtil.convertLineSeparators(FileUtil.loadFile(file, CharsetToolkit.UTF8));
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    public static KotlinCoreEnvironment createEnvironment(@NotNull Disposable disposable, @NotNull List<File> sources) {
+        File runtime = new File(System.getProperty(RUNTIME_PROPERTY, new File(getHome(), "dist/kotlinc/lib/kotlin-runtime.jar").getPath()));
+        if (!runtime.isFile()) {
+            throw new IllegalStateException("Runtime not found: " + runtime + ", set " + RUNTIME_PROPERTY);
+        }
+
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.NONE);
+        addJvmClasspathRoots(configuration, PathUtil.getJdkClassesRoots());
+        addJvmClasspathRoot(configuration, runtime);
+        for (File source : sources) {
+            addKotlinSourceRoot(configuration, source.getPath());
+        }
+        return KotlinCoreEnvironment.createForProduction(disposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+    }
+
+    @NotNull
+    public static AnalysisResult analyze(@NotNull Project project, @NotNull List<JetFile> files) {
+        AnalysisResult result = TopDownAnalyzerFacadeForJVM.analyzeFilesWithJavaIntegrationNoIncremental(
+                TopDownAnalyzerFacadeForJVM.createContextWithSealedModule(project),
+                files,
+                new CliLightClassGenerationSupport.NoScopeRecordCliBindingTrace(),
+                TopDownAnalysisMode.TopLevelDeclarations
+        );
+        result.throwIfError();
+        return result;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzes the corpus completely, including function bodies. Most of the time is spent in call resolution and type inference.
+ * Each file is analyzed as a separate module, because files of the corpus may declare the same functions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class BodyResolveBenchmark {
+    private final Disposable disposable = Disposer.newDisposable();
+    private Project project;
+    private List<JetFile> files;
+
+    @Setup
+    public void setUp() {
+        KotlinCoreEnvironment environment =
+                BenchmarkCorpus.createEnvironment(disposable, BenchmarkCorpus.getFiles(BenchmarkCorpus.CODEGEN));
+        project = environment.getProject();
+        files = environment.getSourceFiles();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Disposer.dispose(disposable);
+    }
+
+    @Benchmark
+    public List<AnalysisResult> analyze() {
+        List<AnalysisResult> results = new ArrayList<AnalysisResult>(files.size());
+        for (JetFile file : files) {
+            results.add(BenchmarkCorpus.analyze(project, Collections.singletonList(file)));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.codegen.ClassBuilderFactories;
+import org.jetbrains.kotlin.codegen.CompilationErrorHandler;
+import org.jetbrains.kotlin.codegen.KotlinCodegenFacade;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates the bytecode for the corpus, which is analyzed once beforehand, so that only the backend is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class CodegenBenchmark {
+    private final Disposable disposable = Disposer.newDisposable();
+    private Project project;
+    private List<JetFile> files;
+    private List<AnalysisResult> results;
+
+    @Setup
+    public void setUp() {
+        KotlinCoreEnvironment environment =
+                BenchmarkCorpus.createEnvironment(disposable, BenchmarkCorpus.getFiles(BenchmarkCorpus.CODEGEN));
+        project = environment.getProject();
+        files = environment.getSourceFiles();
+        results = new ArrayList<AnalysisResult>(files.size());
+        for (JetFile file : files) {
+            results.add(BenchmarkCorpus.analyze(project, Collections.singletonList(file)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Disposer.dispose(disposable);
+    }
+
+    @Benchmark
+    public int generate() {
+        int classFiles = 0;
+        for (int i = 0; i < files.size(); i++) {
+            AnalysisResult result = results.get(i);
+            GenerationState state = new GenerationState(
+                    project, ClassBuilderFactories.BINARIES, result.getModuleDescriptor(), result.getBindingContext(),
+                    Collections.singletonList(files.get(i))
+            );
+            KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+            classFiles += state.getFactory().asList().size();
+            state.destroy();
+        }
+        return classFiles;
+    }
+}
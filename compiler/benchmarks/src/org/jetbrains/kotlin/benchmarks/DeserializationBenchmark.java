@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.descriptors.ClassDescriptor;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
+import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.resolve.lazy.ForceResolveUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the descriptors of the compiled runtime classes in several packages from scratch, as the compiler does for a library
+ * on the classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class DeserializationBenchmark {
+    private static final String[] PACKAGES = {"kotlin", "kotlin.jvm", "kotlin.properties", "kotlin.io", "kotlin.concurrent"};
+
+    private final Disposable disposable = Disposer.newDisposable();
+    private Project project;
+
+    @Setup
+    public void setUp() {
+        KotlinCoreEnvironment environment = BenchmarkCorpus.createEnvironment(disposable, Collections.<File>emptyList());
+        project = environment.getProject();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Disposer.dispose(disposable);
+    }
+
+    @Benchmark
+    public int deserialize() {
+        // A new module doesn't share any loaded descriptors with the modules of the previous invocations
+        ModuleDescriptor module = BenchmarkCorpus.analyze(project, Collections.<JetFile>emptyList()).getModuleDescriptor();
+        int classes = 0;
+        for (String packageName : PACKAGES) {
+            for (DeclarationDescriptor descriptor : module.getPackage(new FqName(packageName)).getMemberScope().getAllDescriptors()) {
+                ForceResolveUtil.forceResolveAllContents(descriptor);
+                if (descriptor instanceof ClassDescriptor) {
+                    classes++;
+                }
+            }
+        }
+        return classes;
+    }
+}
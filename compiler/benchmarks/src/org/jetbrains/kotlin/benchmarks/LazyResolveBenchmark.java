@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.psi.search.GlobalSearchScope;
+import org.jetbrains.kotlin.cli.jvm.compiler.CliLightClassGenerationSupport;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.context.ModuleContext;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
+import org.jetbrains.kotlin.descriptors.PackageFragmentProvider;
+import org.jetbrains.kotlin.descriptors.impl.CompositePackageFragmentProvider;
+import org.jetbrains.kotlin.descriptors.impl.ModuleDescriptorImpl;
+import org.jetbrains.kotlin.frontend.java.di.ContainerForTopDownAnalyzerForJvm;
+import org.jetbrains.kotlin.frontend.java.di.DiPackage;
+import org.jetbrains.kotlin.psi.JetDeclaration;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.resolve.jvm.TopDownAnalyzerFacadeForJVM;
+import org.jetbrains.kotlin.resolve.lazy.ForceResolveUtil;
+import org.jetbrains.kotlin.resolve.lazy.ResolveSession;
+import org.jetbrains.kotlin.resolve.lazy.declarations.FileBasedDeclarationProviderFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the descriptors of all declarations of the corpus on demand, the way the IDE does, without analyzing function bodies.
+ * Each file gets a fresh resolve session, so nothing is reused between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class LazyResolveBenchmark {
+    private final Disposable disposable = Disposer.newDisposable();
+    private Project project;
+    private List<JetFile> files;
+
+    @Setup
+    public void setUp() {
+        KotlinCoreEnvironment environment =
+                BenchmarkCorpus.createEnvironment(disposable, BenchmarkCorpus.getFiles(BenchmarkCorpus.CODEGEN));
+        project = environment.getProject();
+        files = environment.getSourceFiles();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Disposer.dispose(disposable);
+    }
+
+    @Benchmark
+    public int resolve() {
+        int descriptors = 0;
+        for (JetFile file : files) {
+            ResolveSession resolveSession = createResolveSession(file);
+            for (JetDeclaration declaration : file.getDeclarations()) {
+                DeclarationDescriptor descriptor = resolveSession.resolveToDescriptor(declaration);
+                ForceResolveUtil.forceResolveAllContents(descriptor);
+                descriptors++;
+            }
+        }
+        return descriptors;
+    }
+
+    private ResolveSession createResolveSession(JetFile file) {
+        ModuleContext context = TopDownAnalyzerFacadeForJVM.createContextWithSealedModule(project);
+        ContainerForTopDownAnalyzerForJvm container = DiPackage.createContainerForTopDownAnalyzerForJvm(
+                context,
+                new CliLightClassGenerationSupport.NoScopeRecordCliBindingTrace(),
+                new FileBasedDeclarationProviderFactory(context.getStorageManager(), Collections.singletonList(file)),
+                GlobalSearchScope.allScope(project)
+        );
+        ResolveSession resolveSession = container.getResolveSession();
+        ((ModuleDescriptorImpl) resolveSession.getModuleDescriptor()).initialize(new CompositePackageFragmentProvider(
+                Arrays.<PackageFragmentProvider>asList(
+                        resolveSession.getPackageFragmentProvider(),
+                        container.getJavaDescriptorResolver().getPackageFragmentProvider()
+                )
+        ));
+        return resolveSession;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.kotlin.lexer.JetLexer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the syntax corpus into tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class LexerBenchmark {
+    private List<String> texts;
+
+    @Setup
+    public void setUp() {
+        texts = new ArrayList<String>();
+        for (File file : BenchmarkCorpus.getFiles(BenchmarkCorpus.SYNTAX)) {
+            texts.add(BenchmarkCorpus.loadText(file));
+        }
+    }
+
+    @Benchmark
+    public int lex() {
+        int tokens = 0;
+        JetLexer lexer = new JetLexer();
+        for (String text : texts) {
+            lexer.start(text);
+            IElementType token;
+            while ((token = lexer.getTokenType()) != null) {
+                tokens += token.getIndex();
+                lexer.advance();
+            }
+        }
+        return tokens;
+    }
+}
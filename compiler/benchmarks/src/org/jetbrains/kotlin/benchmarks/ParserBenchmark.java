@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.psi.JetPsiFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the syntax trees of the corpus, including the lazily parsed blocks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ParserBenchmark {
+    private final Disposable disposable = Disposer.newDisposable();
+    private JetPsiFactory psiFactory;
+    private List<File> files;
+    private String[] texts;
+
+    @Setup
+    public void setUp() {
+        KotlinCoreEnvironment environment = BenchmarkCorpus.createEnvironment(disposable, Collections.<File>emptyList());
+        psiFactory = new JetPsiFactory(environment.getProject());
+        files = BenchmarkCorpus.getFiles(BenchmarkCorpus.SYNTAX);
+        texts = new String[files.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = BenchmarkCorpus.loadText(files.get(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Disposer.dispose(disposable);
+    }
+
+    @Benchmark
+    public int parse() {
+        int nodes = 0;
+        for (int i = 0; i < texts.length; i++) {
+            nodes += countNodes(psiFactory.createFile(files.get(i).getName(), texts[i]).getNode());
+        }
+        return nodes;
+    }
+
+    private static int countNodes(@NotNull ASTNode node) {
+        int result = 1;
+        for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+            result += countNodes(child);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.builtins.KotlinBuiltIns;
+import org.jetbrains.kotlin.descriptors.ClassDescriptor;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
+import org.jetbrains.kotlin.descriptors.FunctionDescriptor;
+import org.jetbrains.kotlin.types.JetType;
+import org.jetbrains.kotlin.types.checker.JetTypeChecker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks subtyping between each pair of types from a fixed set taken from the built-in classes: their own types,
+ * their supertypes and the return types of their member functions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TypeCheckerBenchmark {
+    private static final int MAX_TYPES = 300;
+
+    private List<JetType> types;
+
+    @Setup
+    public void setUp() {
+        Set<JetType> result = new LinkedHashSet<JetType>();
+        for (DeclarationDescriptor descriptor : KotlinBuiltIns.getInstance().getBuiltInsPackageScope().getAllDescriptors()) {
+            if (!(descriptor instanceof ClassDescriptor)) continue;
+
+            ClassDescriptor classDescriptor = (ClassDescriptor) descriptor;
+            result.add(classDescriptor.getDefaultType());
+            result.addAll(classDescriptor.getTypeConstructor().getSupertypes());
+            for (DeclarationDescriptor member : classDescriptor.getDefaultType().getMemberScope().getAllDescriptors()) {
+                if (member instanceof FunctionDescriptor) {
+                    JetType returnType = ((FunctionDescriptor) member).getReturnType();
+                    if (returnType != null) {
+                        result.add(returnType);
+                    }
+                }
+            }
+        }
+        types = new ArrayList<JetType>(result).subList(0, Math.min(result.size(), MAX_TYPES));
+    }
+
+    @Benchmark
+    public int checkSubtypes() {
+        int subtypes = 0;
+        for (JetType subtype : types) {
+            for (JetType supertype : types) {
+                if (JetTypeChecker.DEFAULT.isSubtypeOf(subtype, supertype)) {
+                    subtypes++;
+                }
+            }
+        }
+        return subtypes;
+    }
+}
@@ -58,6 +58,13 @@ public class K2JSCompilerArguments extends CommonCompilerArguments {
     @ValueDescription("<path>")
     public String outputPostfix;
 
+    @Argument(value = "Xtranslation-cache", description = "Keep the translation of each file in the given directory and reuse it for unchanged files")
+    @ValueDescription("<path>")
+    public String translationCache;
+
+    @Argument(value = "Xdce", description = "Remove the top-level functions and classes which are not used by the main function or on module load")
+    public boolean deadCodeElimination;
+
     @Override
     @NotNull
     public String executableScriptFileName() {
@@ -69,6 +69,13 @@ public class K2JVMCompilerArguments extends CommonCompilerArguments {
     @Argument(value = "Xreport-perf", description = "Report detailed performance statistics")
     public boolean reportPerf;
 
+    @Argument(value = "Xlibrary-cache", description = "Cache Kotlin class headers and package lists of library jars in the given directory")
+    @ValueDescription("<path>")
+    public String libraryCache;
+
+    @Argument(value = "Xstream-output", description = "Write class files to the destination as soon as they are generated")
+    public boolean streamOutput;
+
     @Override
     @NotNull
     public String executableScriptFileName() {
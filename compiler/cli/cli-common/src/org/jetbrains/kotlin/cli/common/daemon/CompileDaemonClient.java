@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.common.daemon;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.cli.common.KotlinVersion;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+import static org.jetbrains.kotlin.cli.common.daemon.CompileDaemonProtocol.*;
+
+/**
+ * Sends compilation requests to a running compile daemon (see CompileDaemon in the compiler).
+ *
+ * The daemon is only used if the "kotlin.daemon.enabled" system property is set to true. If the daemon is not running, is of another
+ * version or can't run the request, {@link #compile} returns null and the caller is expected to run the compiler in its own process.
+ *
+ * The daemon doesn't share the working directory with the client, so all paths in the arguments should be absolute.
+ * Services (such as the incremental cache or the lookup tracker) can't be passed to the daemon either, so the JPS plugin only uses it
+ * when incremental compilation is turned off, and builds with incremental compilation always compile in process.
+ */
+public class CompileDaemonClient {
+    public static final String ENABLED_PROPERTY = "kotlin.daemon.enabled";
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    private CompileDaemonClient() {
+    }
+
+    /**
+     * @return the exit code of the compiler, or null if the compilation could not be performed by the daemon
+     */
+    @Nullable
+    public static ExitCode compile(
+            @NotNull String compilerClassName,
+            @NotNull List<String> arguments,
+            @NotNull MessageCollector messageCollector
+    ) {
+        return compile(getPortFile(), compilerClassName, arguments, messageCollector);
+    }
+
+    @Nullable
+    static ExitCode compile(
+            @NotNull File portFile,
+            @NotNull String compilerClassName,
+            @NotNull List<String> arguments,
+            @NotNull MessageCollector messageCollector
+    ) {
+        DaemonAddress address = readPortFile(portFile);
+        if (address == null) return null;
+
+        try {
+            Socket socket = new Socket(InetAddress.getByName(null), address.port);
+            try {
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                writeString(output, address.token);
+                output.writeInt(VERSION);
+                writeString(output, KotlinVersion.VERSION);
+                writeString(output, compilerClassName);
+                output.writeInt(arguments.size());
+                for (String argument : arguments) {
+                    writeString(output, argument);
+                }
+                output.flush();
+
+                DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (true) {
+                    byte tag = input.readByte();
+                    switch (tag) {
+                        case MESSAGE:
+                            readMessage(input, messageCollector);
+                            break;
+                        case EXIT:
+                            return ExitCode.valueOf(readString(input));
+                        case REJECTED:
+                            return null;
+                        default:
+                            throw new IOException("Unexpected response from the compile daemon: " + tag);
+                    }
+                }
+            }
+            finally {
+                socket.close();
+            }
+        }
+        catch (IOException e) {
+            // The daemon is not running or has died, no need to report this since the caller compiles the code anyway
+            return null;
+        }
+    }
+
+    private static void readMessage(@NotNull DataInput input, @NotNull MessageCollector messageCollector) throws IOException {
+        CompilerMessageSeverity severity = CompilerMessageSeverity.valueOf(readString(input));
+        String message = readString(input);
+        String path = readString(input);
+        int line = input.readInt();
+        int column = input.readInt();
+        String lineContent = readString(input);
+        messageCollector.report(severity, message == null ? "" : message, CompilerMessageLocation.create(path, line, column, lineContent));
+    }
+
+    @Nullable
+    private static DaemonAddress readPortFile(@NotNull File portFile) {
+        if (!portFile.isFile()) return null;
+
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(portFile));
+            try {
+                String[] parts = reader.readLine().trim().split(" ");
+                return new DaemonAddress(Integer.parseInt(parts[0]), parts[1]);
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (Exception e) {
+            // The daemon is probably writing the file right now
+            return null;
+        }
+    }
+
+    private static class DaemonAddress {
+        private final int port;
+        private final String token;
+
+        private DaemonAddress(int port, @NotNull String token) {
+            this.port = port;
+            this.token = token;
+        }
+    }
+}
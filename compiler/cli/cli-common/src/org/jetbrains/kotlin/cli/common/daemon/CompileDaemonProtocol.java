@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.common.daemon;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.cli.common.KotlinVersion;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * The wire format of the compile daemon.
+ *
+ * The daemon listens on a loopback socket and writes its port and a secret token to the port file.
+ * A request is: the token, the protocol version, the compiler version, the name of a CLICompiler subclass and the command line arguments.
+ * A response is a sequence of messages, each starting with MESSAGE, followed by EXIT and the name of an ExitCode,
+ * or by REJECTED if the daemon can't run this request, in which case the client should compile in process.
+ */
+public class CompileDaemonProtocol {
+    public static final int VERSION = 1;
+
+    public static final String PORT_FILE_PROPERTY = "kotlin.daemon.port.file";
+
+    public static final byte MESSAGE = 1;
+    public static final byte EXIT = 2;
+    public static final byte REJECTED = 3;
+
+    // Limits what a malformed or malicious request can make the daemon allocate
+    public static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+    public static final int MAX_ARGUMENT_COUNT = 64 * 1024;
+
+    // The daemon only waits this long for the next part of a request
+    public static final int READ_TIMEOUT_MS = 30 * 1000;
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CompileDaemonProtocol() {
+    }
+
+    @NotNull
+    public static File getPortFile() {
+        String path = System.getProperty(PORT_FILE_PROPERTY);
+        if (path != null) return new File(path);
+
+        return new File(System.getProperty("user.home"), ".kotlin/daemon/" + KotlinVersion.VERSION + ".port");
+    }
+
+    // DataOutput.writeUTF() can't write strings longer than 64K, which is not enough for classpaths
+    public static void writeString(@NotNull DataOutput output, @Nullable String string) throws IOException {
+        if (string == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = string.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @Nullable
+    public static String readString(@NotNull DataInput input) throws IOException {
+        byte[] bytes = readBytes(input, MAX_STRING_LENGTH);
+        return bytes == null ? null : new String(bytes, UTF_8);
+    }
+
+    @Nullable
+    public static byte[] readBytes(@NotNull DataInput input, int maxLength) throws IOException {
+        int length = input.readInt();
+        if (length < 0) return null;
+        if (length > maxLength) throw new IOException("String is too long: " + length + " bytes");
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+}
@@ -38,7 +38,7 @@ public class OutputMessageUtil {
     }
 
     @NotNull
-    public static String formatOutputMessage(Collection<File> sourceFiles, File outputFile) {
+    public static String formatOutputMessage(Collection<? extends File> sourceFiles, File outputFile) {
         return OUTPUT_FILES_PREFIX + "\n" + outputFile.getPath() + "\n" +
                SOURCE_FILES_PREFIX + "\n" + StringUtil.join(sourceFiles, "\n");
     }
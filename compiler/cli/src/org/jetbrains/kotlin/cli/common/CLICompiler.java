@@ -33,6 +33,9 @@ import org.jetbrains.kotlin.config.Services;
 import org.jetbrains.kotlin.progress.CompilationCanceledException;
 import org.jetbrains.kotlin.progress.CompilationCanceledStatus;
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus;
+import org.jetbrains.kotlin.types.SubtypingCacheWithCounters;
+import org.jetbrains.kotlin.types.TypeInterner;
+import org.jetbrains.kotlin.types.checker.SubtypingCache;
 
 import java.io.PrintStream;
 import java.util.List;
@@ -138,6 +141,22 @@ public abstract class CLICompiler<A extends CommonCompilerArguments> {
         }
     }
 
+    /**
+     * Parses the command line arguments and compiles, reporting all problems including invalid arguments to the message collector
+     */
+    @NotNull
+    public ExitCode exec(@NotNull MessageCollector messageCollector, @NotNull Services services, @NotNull String[] args) {
+        A arguments = createArguments();
+        try {
+            arguments.freeArgs = Args.parse(arguments, args);
+        }
+        catch (IllegalArgumentException e) {
+            messageCollector.report(CompilerMessageSeverity.ERROR, e.getMessage(), CompilerMessageLocation.NO_LOCATION);
+            return INTERNAL_ERROR;
+        }
+        return exec(messageCollector, services, arguments);
+    }
+
     @NotNull
     public ExitCode exec(@NotNull MessageCollector messageCollector, @NotNull Services services, @NotNull A arguments) {
         printVersionIfNeeded(messageCollector, arguments);
@@ -167,6 +186,8 @@ public abstract class CLICompiler<A extends CommonCompilerArguments> {
                     K2JVMCompiler.Companion.resetInitStartTime();
                 }
                 Disposable rootDisposable = Disposer.newDisposable();
+                SubtypingCache.setCurrent(new SubtypingCacheWithCounters());
+                TypeInterner.setCurrent(TypeInterner.isEnabled() ? new TypeInterner() : null);
                 try {
                     MessageSeverityCollector severityCollector = new MessageSeverityCollector(groupingCollector);
                     ExitCode code = doExecute(arguments, services, severityCollector, rootDisposable);
@@ -188,6 +209,8 @@ public abstract class CLICompiler<A extends CommonCompilerArguments> {
                     }
                 }
                 finally {
+                    SubtypingCache.setCurrent(null);
+                    TypeInterner.setCurrent(null);
                     Disposer.dispose(rootDisposable);
                 }
             }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.common.daemon;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.cli.common.CLICompiler;
+import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.cli.common.KotlinVersion;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.js.K2JSCompiler;
+import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.config.Services;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import static org.jetbrains.kotlin.cli.common.daemon.CompileDaemonProtocol.*;
+
+/**
+ * A long-lived process which runs compilations requested by {@link CompileDaemonClient} one after another.
+ *
+ * Compared to a new process for each compilation, the JIT-compiled compiler code, built-ins and the application environment
+ * with the contents of classpath jars are reused. Compilations are not run in parallel because the compiler has global state.
+ *
+ * Usage: CompileDaemon [port file]
+ */
+public class CompileDaemon {
+    public static void main(String[] args) throws IOException {
+        File portFile = args.length > 0 ? new File(args[0]) : getPortFile();
+        new CompileDaemon(portFile).run();
+    }
+
+    private final File portFile;
+    private final String token = new BigInteger(128, new SecureRandom()).toString(16);
+    private volatile ServerSocket serverSocket = null;
+    private volatile boolean stopped = false;
+
+    public CompileDaemon(@NotNull File portFile) {
+        this.portFile = portFile;
+    }
+
+    public void run() throws IOException {
+        KotlinCoreEnvironment.Companion.setKeepApplicationEnvironment(true);
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName(null));
+        try {
+            writePortFile(serverSocket.getLocalPort());
+            while (!stopped) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                }
+                catch (SocketException e) {
+                    if (stopped) return;
+                    throw e;
+                }
+
+                try {
+                    socket.setSoTimeout(READ_TIMEOUT_MS);
+                    handle(socket);
+                }
+                catch (Exception e) {
+                    // Most likely the client has gone away, there's no one to report it to
+                }
+                finally {
+                    socket.close();
+                }
+            }
+        }
+        finally {
+            portFile.delete();
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Makes {@link #run()} return after the current compilation, if any
+     */
+    public void stop() throws IOException {
+        stopped = true;
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    private void writePortFile(int port) throws IOException {
+        File directory = portFile.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        // Write to a temporary file first, so that clients never see an incomplete port file
+        File tempFile = new File(directory, portFile.getName() + ".tmp");
+        if (tempFile.exists() && !tempFile.delete()) {
+            throw new IOException("Could not delete " + tempFile);
+        }
+        if (!tempFile.createNewFile()) {
+            throw new IOException("Could not create " + tempFile);
+        }
+
+        // The token is what keeps other users of the machine from running compilations on our behalf, so only the owner may read it
+        if (!tempFile.setReadable(false, false) || !tempFile.setWritable(false, false) ||
+            !tempFile.setReadable(true, true) || !tempFile.setWritable(true, true)) {
+            FileUtil.delete(tempFile);
+            throw new IOException("Could not restrict access to " + tempFile);
+        }
+
+        Writer writer = new FileWriter(tempFile);
+        try {
+            writer.write(port + " " + token + "\n");
+        }
+        finally {
+            writer.close();
+        }
+        if (!tempFile.renameTo(portFile) && !(portFile.delete() && tempFile.renameTo(portFile))) {
+            throw new IOException("Could not write port file " + portFile);
+        }
+        portFile.deleteOnExit();
+    }
+
+    private void handle(@NotNull Socket socket) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        // Compares in constant time, so that the token can't be guessed from how long it takes to reject a request
+        byte[] requestToken = readBytes(input, token.length());
+        if (requestToken == null || !MessageDigest.isEqual(token.getBytes(UTF_8), requestToken)) return;
+
+        int protocolVersion = input.readInt();
+        String compilerVersion = readString(input);
+        String compilerClassName = readString(input);
+        int argumentCount = input.readInt();
+        if (argumentCount < 0 || argumentCount > MAX_ARGUMENT_COUNT) {
+            throw new IOException("Invalid number of arguments: " + argumentCount);
+        }
+        String[] arguments = new String[argumentCount];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = readString(input);
+        }
+
+        CLICompiler<?> compiler = createCompiler(compilerClassName);
+        if (protocolVersion != VERSION || !KotlinVersion.VERSION.equals(compilerVersion) || compiler == null) {
+            output.writeByte(REJECTED);
+            output.flush();
+            return;
+        }
+
+        MessageCollector messageCollector = new MessageCollector() {
+            @Override
+            public void report(@NotNull CompilerMessageSeverity severity, @NotNull String message, @NotNull CompilerMessageLocation location) {
+                try {
+                    output.writeByte(MESSAGE);
+                    writeString(output, severity.name());
+                    writeString(output, message);
+                    writeString(output, location.getPath());
+                    output.writeInt(location.getLine());
+                    output.writeInt(location.getColumn());
+                    writeString(output, location.getLineContent());
+                    output.flush();
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        ExitCode exitCode = compiler.exec(messageCollector, Services.EMPTY, arguments);
+
+        output.writeByte(EXIT);
+        writeString(output, exitCode.name());
+        output.flush();
+    }
+
+    @Nullable
+    private static CLICompiler<?> createCompiler(@Nullable String className) {
+        if (K2JVMCompiler.class.getName().equals(className)) return new K2JVMCompiler();
+        if (K2JSCompiler.class.getName().equals(className)) return new K2JSCompiler();
+        return null;
+    }
+}
@@ -27,17 +27,17 @@ import com.intellij.util.containers.ContainerUtil;
 import kotlin.Unit;
 import kotlin.jvm.functions.Function0;
 import kotlin.jvm.functions.Function1;
+import kotlin.jvm.functions.Function2;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.analyzer.AnalysisResult;
-import org.jetbrains.kotlin.backend.common.output.OutputFileCollection;
 import org.jetbrains.kotlin.cli.common.CLICompiler;
 import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys;
 import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.cli.common.KotlinVersion;
 import org.jetbrains.kotlin.cli.common.arguments.K2JSCompilerArguments;
 import org.jetbrains.kotlin.cli.common.arguments.K2JsArgumentConstants;
 import org.jetbrains.kotlin.cli.common.messages.*;
-import org.jetbrains.kotlin.cli.common.output.outputUtils.OutputUtilsPackage;
 import org.jetbrains.kotlin.cli.jvm.compiler.CompilerJarLocator;
 import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
@@ -53,6 +53,8 @@ import org.jetbrains.kotlin.js.config.LibrarySourcesConfig;
 import org.jetbrains.kotlin.js.facade.K2JSTranslator;
 import org.jetbrains.kotlin.js.facade.MainCallParameters;
 import org.jetbrains.kotlin.js.facade.TranslationResult;
+import org.jetbrains.kotlin.js.translate.general.ParallelTranslation;
+import org.jetbrains.kotlin.js.translate.incremental.TranslationUnitCache;
 import org.jetbrains.kotlin.psi.JetFile;
 import org.jetbrains.kotlin.utils.PathUtil;
 
@@ -175,9 +177,12 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         TranslationResult translationResult;
 
         K2JSTranslator translator = new K2JSTranslator(config);
+        TranslationUnitCache unitCache = arguments.translationCache != null
+                                         ? new TranslationUnitCache(new File(arguments.translationCache), KotlinVersion.VERSION)
+                                         : null;
         try {
             //noinspection unchecked
-            translationResult = translator.translate(sourcesFiles, mainCallParameters, jsAnalysisResult);
+            translationResult = translator.translate(sourcesFiles, mainCallParameters, jsAnalysisResult, unitCache);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -189,7 +194,6 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         if (!(translationResult instanceof TranslationResult.Success)) return ExitCode.COMPILATION_ERROR;
 
         TranslationResult.Success successResult = (TranslationResult.Success) translationResult;
-        OutputFileCollection outputFiles = successResult.getOutputFiles(outputFile, outputPrefixFile, outputPostfixFile);
 
         if (outputFile.isDirectory()) {
             messageSeverityCollector.report(CompilerMessageSeverity.ERROR,
@@ -205,7 +209,17 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
 
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
 
-        OutputUtilsPackage.writeAll(outputFiles, outputDir, messageSeverityCollector);
+        // The files are written while the code is generated, so that the whole code is not kept in memory
+        successResult.writeOutputFiles(
+                new File(outputDir, outputFile.getName()), outputPrefixFile, outputPostfixFile, new Function2<List<? extends File>, File, Unit>() {
+                    @Override
+                    public Unit invoke(List<? extends File> sources, File output) {
+                        messageSeverityCollector.report(CompilerMessageSeverity.OUTPUT,
+                                                        OutputMessageUtil.formatOutputMessage(sources, output),
+                                                        CompilerMessageLocation.NO_LOCATION);
+                        return Unit.INSTANCE$;
+                    }
+                });
 
         return OK;
     }
@@ -261,6 +275,8 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
                 .sourceMap(arguments.sourceMap)
                 .inlineEnabled(inlineEnabled)
                 .metaInfo(arguments.metaInfo)
+                .deadCodeElimination(arguments.deadCodeElimination)
+                .translationThreads(ParallelTranslation.getThreadCount())
                 .build();
     }
 
@@ -40,6 +40,7 @@ import org.jetbrains.kotlin.config.IncrementalCompilation
 import org.jetbrains.kotlin.config.Services
 import org.jetbrains.kotlin.config.addKotlinSourceRoot
 import org.jetbrains.kotlin.load.kotlin.incremental.cache.IncrementalCacheProvider
+import org.jetbrains.kotlin.load.kotlin.incremental.cache.LookupTracker
 import org.jetbrains.kotlin.resolve.AnalyzerScriptParameter
 import org.jetbrains.kotlin.util.PerformanceCounter
 import org.jetbrains.kotlin.utils.KotlinPaths
@@ -69,6 +70,11 @@ public open class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
         if (IncrementalCompilation.ENABLED) {
             val incrementalCacheProvider = services.get(javaClass<IncrementalCacheProvider>())
             configuration.put(JVMConfigurationKeys.INCREMENTAL_CACHE_PROVIDER, incrementalCacheProvider)
+
+            val lookupTracker = services.get(javaClass<LookupTracker>())
+            if (lookupTracker != null) {
+                configuration.put(JVMConfigurationKeys.LOOKUP_TRACKER, lookupTracker)
+            }
         }
 
         val locator = services.get(javaClass<CompilerJarLocator>())
@@ -264,6 +270,10 @@ public open class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             configuration.put(JVMConfigurationKeys.DISABLE_PARAM_ASSERTIONS, arguments.noParamAssertions)
             configuration.put(JVMConfigurationKeys.DISABLE_INLINE, arguments.noInline)
             configuration.put(JVMConfigurationKeys.DISABLE_OPTIMIZATION, arguments.noOptimize)
+            if (arguments.libraryCache != null) {
+                configuration.put(JVMConfigurationKeys.LIBRARY_HEADER_CACHE_DIR, File(arguments.libraryCache))
+            }
+            configuration.put(JVMConfigurationKeys.STREAM_OUTPUT, arguments.streamOutput)
         }
 
         private fun getClasspath(paths: KotlinPaths, arguments: K2JVMCompilerArguments): List<File> {
@@ -20,6 +20,7 @@ import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.util.containers.IntArrayList
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
+import java.io.File
 import java.util.ArrayList
 import java.util.EnumSet
 import java.util.HashMap
@@ -40,7 +41,8 @@ public data class JavaRoot(public val file: VirtualFile, public val type: JavaRo
 // speeds up finding files/classes in classpath/java source roots
 // NOT THREADSAFE, needs to be adapted/removed if we want compiler to be multithreaded
 // the main idea of this class is for each package to store roots which contains it to avoid excessive file system traversal
-public class JvmDependenciesIndex(_roots: List<JavaRoot>) {
+// if JvmPackageTable is enabled, all roots are indexed at once on first search instead, and packages of jars are cached in tableCacheDir
+public class JvmDependenciesIndex(_roots: List<JavaRoot>, private val tableCacheDir: File? = null) {
 
     //these fields are computed based on _roots passed to constructor which are filled in later
     private val roots: List<JavaRoot> by Delegates.lazy { _roots.toList() }
@@ -48,6 +50,10 @@ public class JvmDependenciesIndex(_roots: List<JavaRoot>) {
     private val maxIndex: Int
         get() = roots.size()
 
+    private val packageTable: JvmPackageTable? by Delegates.lazy {
+        if (JvmPackageTable.isEnabled()) JvmPackageTable.build(roots, JvmPackageTable.getThreadCount(), tableCacheDir) else null
+    }
+
     // each "Cache" object corresponds to a package
     private class Cache {
         private val innerPackageCaches = HashMap<String, Cache>()
@@ -167,6 +173,28 @@ public class JvmDependenciesIndex(_roots: List<JavaRoot>) {
 
         // a list of package sub names, ["org", "jb", "kotlin"]
         val packagesPath = request.packageFqName.pathSegments().map { it.getIdentifier() }
+
+        val table = packageTable
+        if (table != null) {
+            val relativePath = packagesPath.joinToString("/")
+            val rootIndices = table.rootsContaining(relativePath) ?: return notFound()
+            var rootIndex = rootIndices.nextSetBit(0)
+            while (rootIndex >= 0) {
+                val root = roots[rootIndex]
+                if (root.type in request.acceptedRootTypes) {
+                    val directoryInRoot = if (relativePath.isEmpty()) root.file else root.file.findFileByRelativePath(relativePath)
+                    if (directoryInRoot != null) {
+                        val result = handle(root, directoryInRoot)
+                        if (result != null) {
+                            return found(directoryInRoot, root, result)
+                        }
+                    }
+                }
+                rootIndex = rootIndices.nextSetBit(rootIndex + 1)
+            }
+            return notFound()
+        }
+
         // a list of caches corresponding to packages, [default, "org", "org.jb", "org.jb.kotlin"]
         val caches = cachesPath(packagesPath)
 
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler
+
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.io.URLUtil
+import org.jetbrains.kotlin.utils.rethrow
+import java.io.*
+import java.util.ArrayList
+import java.util.BitSet
+import java.util.HashMap
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+// maps each package to the set of roots containing it, so that finding a class doesn't require looking into roots without its package
+// all roots are indexed at once on a thread pool, package lists of jars are kept in files named after the jar and the hash of its path
+// a file starts with the path, the size and the time stamp of the jar, and is rewritten if any of them doesn't match
+public class JvmPackageTable private constructor(private val packages: Map<String, BitSet>) {
+
+    // the bit set of indices of roots containing the package, or null if no root contains it
+    // package path is relative to the root and separated by '/', empty for the default package
+    public fun rootsContaining(packagePath: String): BitSet? = packages[packagePath]
+
+    companion object {
+        public val THREADS_PROPERTY: String = "kotlin.parallel.index.threads"
+
+        private val LOG = Logger.getInstance(javaClass<JvmPackageTable>())
+
+        private val FORMAT_VERSION = 2
+        private val CACHE_FILE_EXTENSION = ".packages"
+
+        public fun getThreadCount(): Int = Integer.getInteger(THREADS_PROPERTY, 0)
+
+        public fun isEnabled(): Boolean = getThreadCount() > 0
+
+        public fun build(roots: List<JavaRoot>, threads: Int, cacheDir: File?): JvmPackageTable {
+            val executor = Executors.newFixedThreadPool(threads)
+            try {
+                val futures = ArrayList<Future<Collection<String>>>(roots.size())
+                for (root in roots) {
+                    futures.add(executor.submit(object : Callable<Collection<String>> {
+                        override fun call() = listPackages(root.file, cacheDir)
+                    }))
+                }
+
+                // merging in root order keeps the table independent of the order in which the roots were indexed
+                val packages = HashMap<String, BitSet>()
+                for (rootIndex in futures.indices) {
+                    val rootPackages = try {
+                        futures[rootIndex].get()
+                    }
+                    catch (e: ExecutionException) {
+                        throw rethrow(e.getCause() ?: e)
+                    }
+                    for (packagePath in rootPackages) {
+                        packages.getOrPut(packagePath) { BitSet(roots.size()) }.set(rootIndex)
+                    }
+                }
+                // default package exists in every root
+                packages.getOrPut("") { BitSet(roots.size()) }.set(0, roots.size())
+
+                return JvmPackageTable(packages)
+            }
+            finally {
+                executor.shutdownNow()
+            }
+        }
+
+        private fun listPackages(root: VirtualFile, cacheDir: File?): Collection<String> {
+            val jar = if (cacheDir != null) jarFile(root) else null
+            if (jar == null) {
+                return walk(root)
+            }
+
+            val stamp = JarStamp(jar.getAbsolutePath(), jar.length(), jar.lastModified())
+            val cacheFile = File(cacheDir, "${jar.getName()}-${Integer.toHexString(stamp.path.hashCode())}$CACHE_FILE_EXTENSION")
+            try {
+                if (cacheFile.isFile()) {
+                    val cached = read(cacheFile, stamp)
+                    if (cached != null) return cached
+                }
+
+                val packages = walk(root)
+                write(packages, stamp, cacheFile)
+                return packages
+            }
+            catch (e: IOException) {
+                LOG.warn("Could not cache packages of $jar", e)
+                return walk(root)
+            }
+        }
+
+        private fun jarFile(root: VirtualFile): File? {
+            if (root.getFileSystem().getProtocol() != StandardFileSystems.JAR_PROTOCOL) return null
+            val path = root.getPath()
+            val separator = path.indexOf(URLUtil.JAR_SEPARATOR)
+            return if (separator < 0) null else File(path.substring(0, separator))
+        }
+
+        private fun walk(root: VirtualFile): Collection<String> {
+            val result = ArrayList<String>()
+            fun collect(dir: VirtualFile, path: String) {
+                for (child in dir.getChildren()) {
+                    if (!child.isDirectory()) continue
+                    val childPath = if (path.isEmpty()) child.getName() else path + "/" + child.getName()
+                    result.add(childPath)
+                    collect(child, childPath)
+                }
+            }
+            collect(root, "")
+            return result
+        }
+
+        // the jar isn't hashed by contents because reading it through would take longer than walking its directories
+        private data class JarStamp(val path: String, val length: Long, val lastModified: Long)
+
+        private fun write(packages: Collection<String>, stamp: JarStamp, cacheFile: File) {
+            FileUtil.createDirectory(cacheFile.getParentFile())
+            val tempFile = FileUtil.createTempFile(cacheFile.getParentFile(), cacheFile.getName(), ".tmp", true)
+
+            val output = DataOutputStream(BufferedOutputStream(FileOutputStream(tempFile)))
+            try {
+                output.writeInt(FORMAT_VERSION)
+                output.writeUTF(stamp.path)
+                output.writeLong(stamp.length)
+                output.writeLong(stamp.lastModified)
+                output.writeInt(packages.size())
+                for (packagePath in packages) {
+                    output.writeUTF(packagePath)
+                }
+            }
+            finally {
+                output.close()
+            }
+
+            // a stale file is replaced, another compiler might have written the same file in the meantime, that's fine
+            FileUtil.delete(cacheFile)
+            if (!tempFile.renameTo(cacheFile)) {
+                FileUtil.delete(tempFile)
+            }
+        }
+
+        // returns null if the file is stale or damaged
+        private fun read(cacheFile: File, stamp: JarStamp): Collection<String>? {
+            val input = DataInputStream(BufferedInputStream(FileInputStream(cacheFile)))
+            try {
+                if (input.readInt() != FORMAT_VERSION) return null
+                if (JarStamp(input.readUTF(), input.readLong(), input.readLong()) != stamp) return null
+
+                val size = input.readInt()
+                // the size isn't trusted for preallocation, the file may be damaged
+                val result = ArrayList<String>()
+                for (i in 0..size - 1) {
+                    result.add(input.readUTF())
+                }
+                return result
+            }
+            catch (e: IOException) {
+                LOG.warn("Cache of packages $cacheFile is damaged", e)
+                return null
+            }
+            finally {
+                input.close()
+            }
+        }
+    }
+}
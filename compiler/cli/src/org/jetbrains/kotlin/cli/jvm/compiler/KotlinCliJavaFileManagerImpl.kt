@@ -30,13 +30,18 @@ import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.resolve.jvm.KotlinCliJavaFileManager
 import org.jetbrains.kotlin.util.PerformanceCounter
+import org.jetbrains.kotlin.utils.rethrow
 import java.util.ArrayList
+import java.util.HashMap
+import java.util.LinkedHashMap
+import java.util.concurrent.*
 import kotlin.properties.Delegates
 
 public class KotlinCliJavaFileManagerImpl(private val myPsiManager: PsiManager)
 : CoreJavaFileManager(myPsiManager), KotlinCliJavaFileManager {
 
     private val perfCounter = PerformanceCounter.create("Find Java class")
+    private val batchPerfCounter = PerformanceCounter.create("Find Java classes in batch")
     private var index: JvmDependenciesIndex by Delegates.notNull()
 
     public fun initIndex(packagesCache: JvmDependenciesIndex) {
@@ -52,6 +57,87 @@ public class KotlinCliJavaFileManagerImpl(private val myPsiManager: PsiManager)
         }
     }
 
+    // looks up the package directories once for all classes in a package, the class files are looked up in them on a thread pool
+    // if JvmPackageTable.THREADS_PROPERTY is set, while PSI is always built on the calling thread
+    public override fun findClasses(classIds: Collection<ClassId>, searchScope: GlobalSearchScope): Map<ClassId, PsiClass> {
+        val filesToParse = LinkedHashMap<ClassId, PsiClassOwner>()
+        val result = batchPerfCounter.time {
+            val found = HashMap<ClassId, PsiClass>()
+            for ((classId, virtualFile) in findVirtualFiles(classIds, searchScope)) {
+                val file = myPsiManager.findFile(virtualFile) as? PsiClassOwner ?: continue
+                filesToParse[classId] = file
+                val psiClass = findClassInPsiFile(classId.getRelativeClassName().asString(), file)
+                if (psiClass != null) {
+                    found[classId] = psiClass
+                }
+            }
+            found
+        }
+
+        // a file may lack the class it is named after, in which case the class is looked for in the next roots as usual
+        for (classId in filesToParse.keySet()) {
+            if (!result.containsKey(classId)) {
+                val psiClass = findClass(classId, searchScope)
+                if (psiClass != null) {
+                    result[classId] = psiClass
+                }
+            }
+        }
+        return result
+    }
+
+    private fun findVirtualFiles(classIds: Collection<ClassId>, searchScope: GlobalSearchScope): Map<ClassId, VirtualFile> {
+        // the index is not thread safe, so the directories of all packages are collected in advance
+        val classIdsAndDirs = ArrayList<Pair<ClassId, List<Pair<VirtualFile, JavaRoot.RootType>>>>()
+        for ((packageFqName, classIdsInPackage) in classIds.groupBy { it.getPackageFqName() }) {
+            val dirs = ArrayList<Pair<VirtualFile, JavaRoot.RootType>>()
+            index.traverseDirectoriesInPackage(packageFqName) { dir, rootType ->
+                dirs.add(dir to rootType)
+                true
+            }
+            classIdsInPackage.mapTo(classIdsAndDirs) { it to dirs }
+        }
+
+        fun findInDirs(classId: ClassId, dirs: List<Pair<VirtualFile, JavaRoot.RootType>>): VirtualFile? {
+            val topLevelClassName = classId.getRelativeClassName().asString().substringBefore('.')
+            for ((dir, rootType) in dirs) {
+                val file = findVirtualFileGivenPackage(searchScope, dir, topLevelClassName, rootType)
+                if (file != null) return file
+            }
+            return null
+        }
+
+        val futures = HashMap<ClassId, Future<VirtualFile?>>()
+        val executor = getBatchExecutor()
+        if (executor != null && classIdsAndDirs.size() > 1) {
+            try {
+                for ((classId, dirs) in classIdsAndDirs) {
+                    futures[classId] = executor.submit(object : Callable<VirtualFile?> {
+                        override fun call() = findInDirs(classId, dirs)
+                    })
+                }
+            }
+            catch (e: RejectedExecutionException) {
+                // the pool was replaced meanwhile, the remaining files are looked up on this thread
+            }
+        }
+
+        val result = LinkedHashMap<ClassId, VirtualFile>()
+        for ((classId, dirs) in classIdsAndDirs) {
+            val future = futures[classId]
+            val file = if (future == null) findInDirs(classId, dirs) else try {
+                future.get()
+            }
+            catch (e: ExecutionException) {
+                throw rethrow(e.getCause() ?: e)
+            }
+            if (file != null) {
+                result[classId] = file
+            }
+        }
+        return result
+    }
+
     override fun findClass(qName: String, scope: GlobalSearchScope): PsiClass? {
         // this method is called from IDEA to resolve dependencies in Java code
         // which supposedly shouldn't have errors so the dependencies exist in general
@@ -102,8 +188,22 @@ public class KotlinCliJavaFileManagerImpl(private val myPsiManager: PsiManager)
             scope: GlobalSearchScope, packageDir: VirtualFile,
             classNameWithInnerClasses: String, rootType: JavaRoot.RootType
     ): PsiClass? {
-        val topLevelClassName = classNameWithInnerClasses.substringBefore('.')
+        val file = findFileGivenPackage(scope, packageDir, classNameWithInnerClasses.substringBefore('.'), rootType) ?: return null
+        return findClassInPsiFile(classNameWithInnerClasses, file)
+    }
+
+    private fun findFileGivenPackage(
+            scope: GlobalSearchScope, packageDir: VirtualFile,
+            topLevelClassName: String, rootType: JavaRoot.RootType
+    ): PsiClassOwner? {
+        val vFile = findVirtualFileGivenPackage(scope, packageDir, topLevelClassName, rootType) ?: return null
+        return myPsiManager.findFile(vFile) as? PsiClassOwner
+    }
 
+    private fun findVirtualFileGivenPackage(
+            scope: GlobalSearchScope, packageDir: VirtualFile,
+            topLevelClassName: String, rootType: JavaRoot.RootType
+    ): VirtualFile? {
         val vFile = when (rootType) {
             JavaRoot.RootType.BINARY -> packageDir.findChild("$topLevelClassName.class")
             JavaRoot.RootType.SOURCE -> packageDir.findChild("$topLevelClassName.java")
@@ -117,13 +217,26 @@ public class KotlinCliJavaFileManagerImpl(private val myPsiManager: PsiManager)
             return null
         }
 
-        val file = myPsiManager.findFile(vFile) as? PsiClassOwner ?: return null
-        return findClassInPsiFile(classNameWithInnerClasses, file)
+        return vFile
     }
 
     companion object {
         private val LOG = Logger.getInstance(javaClass<KotlinCliJavaFileManagerImpl>())
 
+        private var batchExecutor: ExecutorService? = null
+        private var batchExecutorThreads = 0
+
+        // the pool is replaced when JvmPackageTable.THREADS_PROPERTY changes, e.g. between compilations in the daemon
+        private fun getBatchExecutor(): ExecutorService? = synchronized(this) {
+            val threads = Math.max(JvmPackageTable.getThreadCount(), 0)
+            if (threads != batchExecutorThreads) {
+                batchExecutor?.shutdown()
+                batchExecutor = if (threads > 0) Executors.newFixedThreadPool(threads, DaemonThreadFactory()) else null
+                batchExecutorThreads = threads
+            }
+            batchExecutor
+        }
+
         private fun findClassInPsiFile(classNameWithInnerClassesDotSeparated: String, file: PsiClassOwner): PsiClass? {
             for (topLevelClass in file.getClasses()) {
                 val candidate = findClassByTopLevelClass(classNameWithInnerClassesDotSeparated, topLevelClass)
@@ -169,4 +282,12 @@ catch (e: AssertionError) {
 }
 
 private fun String.toSafeFqName(): FqName? = safely { FqName(this) }
-private fun String.toSafeTopLevelClassId(): ClassId? = safely { ClassId.topLevel(FqName(this)) }
\ No newline at end of file
+private fun String.toSafeTopLevelClassId(): ClassId? = safely { ClassId.topLevel(FqName(this)) }
+
+private class DaemonThreadFactory : ThreadFactory {
+    override fun newThread(r: Runnable): Thread {
+        val thread = Thread(r, "Java class file lookup")
+        thread.setDaemon(true)
+        return thread
+    }
+}
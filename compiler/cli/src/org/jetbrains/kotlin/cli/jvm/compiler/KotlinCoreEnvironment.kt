@@ -75,6 +75,7 @@ import org.jetbrains.kotlin.extensions.ExternalDeclarationsProvider
 import org.jetbrains.kotlin.idea.JetFileType
 import org.jetbrains.kotlin.load.kotlin.JvmVirtualFileFinderFactory
 import org.jetbrains.kotlin.load.kotlin.KotlinBinaryClassCache
+import org.jetbrains.kotlin.load.kotlin.LibraryClassHeaderCache
 import org.jetbrains.kotlin.parsing.JetParserDefinition
 import org.jetbrains.kotlin.parsing.JetScriptDefinitionProvider
 import org.jetbrains.kotlin.psi.JetFile
@@ -87,6 +88,7 @@ import org.jetbrains.kotlin.utils.PathUtil
 import java.io.File
 import java.util.ArrayList
 import java.util.Comparator
+import java.util.HashMap
 import kotlin.platform.platformStatic
 import kotlin.properties.Delegates
 
@@ -122,7 +124,7 @@ public class KotlinCoreEnvironment private constructor(
 
         fillClasspath(configuration)
         val fileManager = ServiceManager.getService(project, javaClass<CoreJavaFileManager>())
-        val index = JvmDependenciesIndex(javaRoots)
+        val index = JvmDependenciesIndex(javaRoots, configuration.get(JVMConfigurationKeys.LIBRARY_HEADER_CACHE_DIR))
         (fileManager as KotlinCliJavaFileManagerImpl).initIndex(index)
 
         for (path in configuration.getList(JVMConfigurationKeys.ANNOTATIONS_PATH_KEY)) {
@@ -142,6 +144,17 @@ public class KotlinCoreEnvironment private constructor(
 
         project.registerService(javaClass<JvmVirtualFileFinderFactory>(), JvmCliVirtualFileFinderFactory(index))
 
+        val libraryHeaderCacheDir = configuration.get(JVMConfigurationKeys.LIBRARY_HEADER_CACHE_DIR)
+        if (libraryHeaderCacheDir != null) {
+            // The cache checks each jar only once, so it must not outlive the compilation (e.g. in the compile daemon)
+            KotlinBinaryClassCache.setLibraryHeaderCache(LibraryClassHeaderCache(libraryHeaderCacheDir))
+            Disposer.register(parentDisposable, object : Disposable {
+                override fun dispose() {
+                    KotlinBinaryClassCache.setLibraryHeaderCache(null)
+                }
+            })
+        }
+
         ExternalDeclarationsProvider.registerExtensionPoint(project)
         ExpressionCodegenExtension.registerExtensionPoint(project)
         ClassBuilderInterceptorExtension.registerExtensionPoint(project)
@@ -195,7 +208,11 @@ public class KotlinCoreEnvironment private constructor(
     private fun contentRootToVirtualFile(root: JvmContentRoot): VirtualFile? {
         when (root) {
             is JvmClasspathRoot -> {
-                return if (root.file.isFile()) findJarRoot(root) else findLocalDirectory(root)
+                if (root.file.isFile()) {
+                    rememberJar(root.file)
+                    return findJarRoot(root)
+                }
+                return findLocalDirectory(root)
             }
             is JavaSourceRoot -> {
                 return if (root.file.isDirectory()) findLocalDirectory(root) else null
@@ -249,6 +266,19 @@ public class KotlinCoreEnvironment private constructor(
         private val APPLICATION_LOCK = Object()
         private var ourApplicationEnvironment: JavaCoreApplicationEnvironment? = null
         private var ourProjectCount = 0
+        private var ourKeepApplicationEnvironment = false
+        // Jar file system of the application caches contents of jars, so it can't be reused after any of them has changed
+        private val ourJarStamps = HashMap<File, Pair<Long, Long>>()
+
+        /**
+         * Makes the application environment survive disposal of all projects, so that the next compilation in this process starts faster.
+         * The environment is still recreated if a classpath jar used by one of the previous compilations has changed.
+         */
+        public fun setKeepApplicationEnvironment(keep: Boolean) {
+            synchronized (APPLICATION_LOCK) {
+                ourKeepApplicationEnvironment = keep
+            }
+        }
 
         platformStatic public fun createForProduction(
                 parentDisposable: Disposable, configuration: CompilerConfiguration, configFilePaths: List<String>
@@ -258,7 +288,7 @@ public class KotlinCoreEnvironment private constructor(
             Disposer.register(parentDisposable, object : Disposable {
                 override fun dispose() {
                     synchronized (APPLICATION_LOCK) {
-                        if (--ourProjectCount <= 0) {
+                        if (--ourProjectCount <= 0 && !ourKeepApplicationEnvironment) {
                             disposeApplicationEnvironment()
                         }
                     }
@@ -281,6 +311,9 @@ public class KotlinCoreEnvironment private constructor(
 
         private fun getOrCreateApplicationEnvironmentForProduction(configuration: CompilerConfiguration, configFilePaths: List<String>): JavaCoreApplicationEnvironment {
             synchronized (APPLICATION_LOCK) {
+                if (ourApplicationEnvironment != null && ourProjectCount <= 0 && anyJarChanged()) {
+                    disposeApplicationEnvironment()
+                }
                 if (ourApplicationEnvironment != null) return ourApplicationEnvironment!!
 
                 val parentDisposable = Disposer.newDisposable()
@@ -297,8 +330,21 @@ public class KotlinCoreEnvironment private constructor(
             }
         }
 
+        private fun anyJarChanged(): Boolean = ourJarStamps.any { entry -> entry.getValue() != stamp(entry.getKey()) }
+
+        private fun rememberJar(jar: File) {
+            synchronized (APPLICATION_LOCK) {
+                if (ourKeepApplicationEnvironment) {
+                    ourJarStamps[jar] = stamp(jar)
+                }
+            }
+        }
+
+        private fun stamp(file: File): Pair<Long, Long> = Pair(file.length(), file.lastModified())
+
         public fun disposeApplicationEnvironment() {
             synchronized (APPLICATION_LOCK) {
+                ourJarStamps.clear()
                 if (ourApplicationEnvironment == null) return
                 val environment = ourApplicationEnvironment
                 ourApplicationEnvironment = null
@@ -39,6 +39,7 @@ import org.jetbrains.kotlin.cli.common.output.outputUtils.OutputUtilsPackage;
 import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler;
 import org.jetbrains.kotlin.cli.jvm.config.JVMConfigurationKeys;
 import org.jetbrains.kotlin.codegen.*;
+import org.jetbrains.kotlin.codegen.optimization.MethodOptimizationPool;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
 import org.jetbrains.kotlin.codegen.state.Progress;
 import org.jetbrains.kotlin.config.CompilerConfiguration;
@@ -47,12 +48,15 @@ import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStat
 import org.jetbrains.kotlin.idea.MainFunctionDetector;
 import org.jetbrains.kotlin.load.kotlin.PackageClassUtils;
 import org.jetbrains.kotlin.load.kotlin.incremental.cache.IncrementalCache;
+import org.jetbrains.kotlin.load.kotlin.incremental.IncrementalPackage;
 import org.jetbrains.kotlin.load.kotlin.incremental.cache.IncrementalCacheProvider;
+import org.jetbrains.kotlin.load.kotlin.incremental.cache.LookupTracker;
 import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.parsing.JetScriptDefinition;
 import org.jetbrains.kotlin.parsing.JetScriptDefinitionProvider;
 import org.jetbrains.kotlin.psi.JetFile;
 import org.jetbrains.kotlin.resolve.AnalyzerScriptParameter;
+import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.kotlin.resolve.BindingTrace;
 import org.jetbrains.kotlin.resolve.BindingTraceContext;
 import org.jetbrains.kotlin.resolve.ScriptNameUtil;
@@ -141,19 +145,49 @@ public class KotlinToJVMBytecodeCompiler {
 
         result.throwIfError();
 
-        for (Module module : chunk) {
-            ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
-            List<JetFile> jetFiles = CompileEnvironmentUtil.getJetFiles(
-                    environment.getProject(), getAbsolutePaths(directory, module), new Function1<String, Unit>() {
-                        @Override
-                        public Unit invoke(String s) {
-                            throw new IllegalStateException("Should have been checked before: " + s);
+        // Jars are written once for the whole chunk, so only the output to module directories can be streamed
+        boolean streamOutput = jarPath == null && configuration.get(JVMConfigurationKeys.STREAM_OUTPUT, false);
+        MessageCollector messageCollector = configuration.get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.NONE);
+
+        // The output of the modules of the chunk is moved to their directories only if all of them are generated without errors
+        List<StreamingOutput> streamingOutputs = Lists.newArrayList();
+        try {
+            for (Module module : chunk) {
+                ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
+                List<JetFile> jetFiles = CompileEnvironmentUtil.getJetFiles(
+                        environment.getProject(), getAbsolutePaths(directory, module), new Function1<String, Unit>() {
+                            @Override
+                            public Unit invoke(String s) {
+                                throw new IllegalStateException("Should have been checked before: " + s);
+                            }
                         }
-                    }
-            );
-            GenerationState generationState =
-                    generate(environment, result, jetFiles, module.getModuleName(), new File(module.getOutputDirectory()));
-            outputFiles.put(module, generationState.getFactory());
+                );
+                File outputDirectory = new File(module.getOutputDirectory());
+                StreamingOutput output = null;
+                if (streamOutput) {
+                    output = StreamingOutput.toDirectory(outputDirectory, messageCollector);
+                    streamingOutputs.add(output);
+                }
+                GenerationState generationState = generate(environment, result, jetFiles, module.getModuleName(), outputDirectory, output);
+                if (output == null) {
+                    outputFiles.put(module, generationState.getFactory());
+                }
+            }
+
+            if (streamOutput) {
+                for (StreamingOutput output : streamingOutputs) {
+                    if (output.isDiscarded()) return true;
+                }
+                for (StreamingOutput output : streamingOutputs) {
+                    output.finish();
+                }
+                return true;
+            }
+        }
+        finally {
+            for (StreamingOutput output : streamingOutputs) {
+                output.close();
+            }
         }
 
         for (Module module : chunk) {
@@ -199,8 +233,8 @@ public class KotlinToJVMBytecodeCompiler {
     }
 
     @Nullable
-    private static FqName findMainClass(@NotNull GenerationState generationState, @NotNull List<JetFile> files) {
-        MainFunctionDetector mainFunctionDetector = new MainFunctionDetector(generationState.getBindingContext());
+    private static FqName findMainClass(@NotNull BindingContext bindingContext, @NotNull List<JetFile> files) {
+        MainFunctionDetector mainFunctionDetector = new MainFunctionDetector(bindingContext);
         FqName mainClass = null;
         for (JetFile file : files) {
             if (mainFunctionDetector.hasMain(file.getDeclarations())) {
@@ -221,13 +255,16 @@ public class KotlinToJVMBytecodeCompiler {
             @Nullable File outputDir,
             boolean includeRuntime
     ) {
+        if (environment.getConfiguration().get(JVMConfigurationKeys.STREAM_OUTPUT, false)) {
+            return compileBunchOfSourcesWithStreamingOutput(environment, jar, outputDir, includeRuntime);
+        }
 
         GenerationState generationState = analyzeAndGenerate(environment);
         if (generationState == null) {
             return false;
         }
 
-        FqName mainClass = findMainClass(generationState, environment.getSourceFiles());
+        FqName mainClass = findMainClass(generationState.getBindingContext(), environment.getSourceFiles());
 
         try {
             writeOutput(environment.getConfiguration(), generationState.getFactory(), outputDir, jar, includeRuntime, mainClass);
@@ -238,6 +275,45 @@ public class KotlinToJVMBytecodeCompiler {
         }
     }
 
+    private static boolean compileBunchOfSourcesWithStreamingOutput(
+            @NotNull KotlinCoreEnvironment environment,
+            @Nullable File jar,
+            @Nullable File outputDir,
+            boolean includeRuntime
+    ) {
+        AnalysisResult result = analyze(environment, null);
+        if (result == null || !result.getShouldGenerateCode()) {
+            return false;
+        }
+
+        result.throwIfError();
+
+        // The main class is known before the generation because the manifest is the first entry of the jar
+        StreamingOutput output;
+        if (jar != null) {
+            FqName mainClass = findMainClass(result.getBindingContext(), environment.getSourceFiles());
+            output = StreamingOutput.toJar(jar, mainClass, includeRuntime);
+        }
+        else {
+            MessageCollector messageCollector =
+                    environment.getConfiguration().get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.NONE);
+            output = StreamingOutput.toDirectory(outputDir == null ? new File(".") : outputDir, messageCollector);
+        }
+
+        GenerationState generationState = null;
+        try {
+            generationState = generate(environment, result, environment.getSourceFiles(), null, null, output);
+            output.finish();
+            return true;
+        }
+        finally {
+            output.close();
+            if (generationState != null) {
+                generationState.destroy();
+            }
+        }
+    }
+
     public static void compileAndExecuteScript(
             @NotNull CompilerConfiguration configuration,
             @NotNull KotlinPaths paths,
@@ -306,7 +382,7 @@ public class KotlinToJVMBytecodeCompiler {
 
         result.throwIfError();
 
-        return generate(environment, result, environment.getSourceFiles(), null, null);
+        return generate(environment, result, environment.getSourceFiles(), null, null, null);
     }
 
     @Nullable
@@ -344,6 +420,11 @@ public class KotlinToJVMBytecodeCompiler {
         AnalysisResult result = analyzerWithCompilerReport.getAnalysisResult();
         assert result != null : "AnalysisResult should be non-null, compiling: " + environment.getSourceFiles();
 
+        LookupTracker lookupTracker = environment.getConfiguration().get(JVMConfigurationKeys.LOOKUP_TRACKER);
+        if (lookupTracker != null && !analyzerWithCompilerReport.hasErrors()) {
+            IncrementalPackage.recordLookups(environment.getSourceFiles(), result.getBindingContext(), lookupTracker);
+        }
+
         CompilerPluginContext context = new CompilerPluginContext(environment.getProject(), result.getBindingContext(),
                                                                   environment.getSourceFiles());
         for (CompilerPlugin plugin : environment.getConfiguration().getList(CLIConfigurationKeys.COMPILER_PLUGINS)) {
@@ -359,7 +440,8 @@ public class KotlinToJVMBytecodeCompiler {
             @NotNull AnalysisResult result,
             @NotNull List<JetFile> sourceFiles,
             @Nullable String moduleId,
-            File outputDirectory
+            File outputDirectory,
+            @Nullable StreamingOutput streamingOutput
     ) {
         CompilerConfiguration configuration = environment.getConfiguration();
         IncrementalCacheProvider incrementalCacheProvider = configuration.get(JVMConfigurationKeys.INCREMENTAL_CACHE_PROVIDER);
@@ -393,10 +475,17 @@ public class KotlinToJVMBytecodeCompiler {
                 diagnosticHolder,
                 outputDirectory
         );
+        generationState.setParallelCodegenThreads(
+                configuration.get(JVMConfigurationKeys.PARALLEL_CODEGEN_THREADS, ParallelCodegen.getThreadCount())
+        );
+        generationState.setMethodOptimizationThreads(
+                configuration.get(JVMConfigurationKeys.METHOD_OPTIMIZATION_THREADS, MethodOptimizationPool.getThreadCount())
+        );
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
 
         long generationStart = PerformanceCounter.Companion.currentTime();
 
+        generationState.getFactory().setOutputSink(streamingOutput);
         KotlinCodegenFacade.compileCorrectFiles(generationState, CompilationErrorHandler.THROW_EXCEPTION);
 
         long generationNanos = PerformanceCounter.Companion.currentTime() - generationStart;
@@ -406,13 +495,17 @@ public class KotlinToJVMBytecodeCompiler {
         K2JVMCompiler.Companion.reportPerf(environment.getConfiguration(), message);
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
 
-        AnalyzerWithCompilerReport.reportDiagnostics(
+        boolean hasErrors = AnalyzerWithCompilerReport.reportDiagnostics(
                 new FilteredJvmDiagnostics(
                         diagnosticHolder.getBindingContext().getDiagnostics(),
                         result.getBindingContext().getDiagnostics()
                 ),
                 environment.getConfiguration().get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY)
         );
+        if (hasErrors && streamingOutput != null) {
+            // The class files written so far may be inconsistent with each other, don't let them replace the previous output
+            streamingOutput.discard();
+        }
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
         return generationState;
     }
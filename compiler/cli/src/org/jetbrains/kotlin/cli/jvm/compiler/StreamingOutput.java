@@ -0,0 +1,306 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.backend.common.output.OutputFileSink;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.common.messages.OutputMessageUtil;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.utils.UtilsPackage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Writes class files to a temporary location while the code is being generated, so that the bytes of the classes which are already
+ * written don't have to be kept in memory until the end of compilation. The files are moved to the destination by {@link #finish()};
+ * if the output is closed before that or {@link #discard()}ed, the destination is left untouched.
+ */
+public abstract class StreamingOutput implements OutputFileSink, Closeable {
+    @NotNull
+    public static StreamingOutput toDirectory(@NotNull File outputDir, @NotNull MessageCollector messageCollector) {
+        return new DirectoryOutput(outputDir, messageCollector);
+    }
+
+    @NotNull
+    public static StreamingOutput toJar(@NotNull File jarPath, @Nullable FqName mainClass, boolean includeRuntime) {
+        return new JarOutput(jarPath, mainClass, includeRuntime);
+    }
+
+    private boolean finished = false;
+    private boolean discarded = false;
+
+    /**
+     * Moves the written files to the destination. Does nothing if the output is discarded.
+     * The output should be closed afterwards anyway.
+     */
+    public void finish() {
+        if (discarded) return;
+        checkNotFinished();
+        doFinish();
+        finished = true;
+    }
+
+    /**
+     * Deletes the written files, e.g. because the compilation has failed after some of them were written.
+     */
+    public void discard() {
+        if (finished || discarded) return;
+        discarded = true;
+        doDiscard();
+    }
+
+    public boolean isDiscarded() {
+        return discarded;
+    }
+
+    protected boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void write(@NotNull OutputFile file) {
+        checkNotFinished();
+        if (discarded) return;
+        doWrite(file);
+    }
+
+    @NotNull
+    @Override
+    public byte[] read(@NotNull String relativePath) {
+        if (discarded) {
+            throw new IllegalStateException("Output is discarded, can't read " + relativePath);
+        }
+        try {
+            return doRead(relativePath);
+        }
+        catch (IOException e) {
+            throw UtilsPackage.rethrow(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!finished) {
+            discard();
+        }
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("Output is already finished");
+        }
+    }
+
+    protected abstract void doWrite(@NotNull OutputFile file);
+
+    @NotNull
+    protected abstract byte[] doRead(@NotNull String relativePath) throws IOException;
+
+    protected abstract void doFinish();
+
+    protected abstract void doDiscard();
+
+    private static void moveFile(@NotNull File source, @NotNull File target) throws IOException {
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Couldn't delete " + target);
+        }
+        if (!source.renameTo(target)) {
+            FileUtil.copy(source, target);
+            FileUtil.delete(source);
+        }
+    }
+
+    private static class DirectoryOutput extends StreamingOutput {
+        private final File outputDir;
+        private final MessageCollector messageCollector;
+        // Created on the first write inside the output directory, so that the files can be moved from it without copying
+        private File tempDir = null;
+        private final Map<String, List<File>> writtenFiles = new LinkedHashMap<String, List<File>>();
+
+        private DirectoryOutput(@NotNull File outputDir, @NotNull MessageCollector messageCollector) {
+            this.outputDir = outputDir;
+            this.messageCollector = messageCollector;
+        }
+
+        @Override
+        protected void doWrite(@NotNull OutputFile file) {
+            try {
+                if (tempDir == null) {
+                    FileUtil.createDirectory(outputDir);
+                    tempDir = FileUtil.createTempDirectory(outputDir, ".kotlin-output", null);
+                }
+                File output = new File(tempDir, file.getRelativePath());
+                FileUtil.createParentDirs(output);
+                FileChannel channel = new FileOutputStream(output).getChannel();
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(file.asByteArray());
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                finally {
+                    channel.close();
+                }
+            }
+            catch (IOException e) {
+                throw UtilsPackage.rethrow(e);
+            }
+            writtenFiles.put(file.getRelativePath(), file.getSourceFiles());
+        }
+
+        @NotNull
+        @Override
+        protected byte[] doRead(@NotNull String relativePath) throws IOException {
+            if (!writtenFiles.containsKey(relativePath)) {
+                throw new IllegalArgumentException("File is not written to the output: " + relativePath);
+            }
+            return FileUtil.loadFileBytes(new File(isFinished() ? outputDir : tempDir, relativePath));
+        }
+
+        @Override
+        protected void doFinish() {
+            try {
+                for (Map.Entry<String, List<File>> entry : writtenFiles.entrySet()) {
+                    File output = new File(outputDir, entry.getKey());
+                    FileUtil.createParentDirs(output);
+                    moveFile(new File(tempDir, entry.getKey()), output);
+                    messageCollector.report(CompilerMessageSeverity.OUTPUT,
+                                            OutputMessageUtil.formatOutputMessage(entry.getValue(), output),
+                                            CompilerMessageLocation.NO_LOCATION);
+                }
+            }
+            catch (IOException e) {
+                throw UtilsPackage.rethrow(e);
+            }
+            finally {
+                deleteTempDir();
+            }
+        }
+
+        @Override
+        protected void doDiscard() {
+            deleteTempDir();
+        }
+
+        private void deleteTempDir() {
+            if (tempDir != null) {
+                FileUtil.delete(tempDir);
+                tempDir = null;
+            }
+        }
+    }
+
+    private static class JarOutput extends StreamingOutput {
+        private final File jarPath;
+        private final boolean includeRuntime;
+        private final File tempJar;
+        private final JarOutputStream stream;
+
+        private JarOutput(@NotNull File jarPath, @Nullable FqName mainClass, boolean includeRuntime) {
+            this.jarPath = jarPath;
+            this.includeRuntime = includeRuntime;
+            OutputStream fileStream;
+            try {
+                tempJar = File.createTempFile(jarPath.getName(), ".tmp", jarPath.getAbsoluteFile().getParentFile());
+                fileStream = new BufferedOutputStream(new FileOutputStream(tempJar));
+            }
+            catch (IOException e) {
+                throw new CompileEnvironmentException("Invalid jar path " + jarPath, e);
+            }
+            try {
+                stream = CompileEnvironmentUtil.createJarOutputStream(fileStream, mainClass);
+            }
+            catch (IOException e) {
+                UtilsPackage.closeQuietly(fileStream);
+                FileUtil.delete(tempJar);
+                throw new CompileEnvironmentException("Failed to generate jar file", e);
+            }
+        }
+
+        @Override
+        protected void doWrite(@NotNull OutputFile file) {
+            try {
+                stream.putNextEntry(new JarEntry(file.getRelativePath()));
+                stream.write(file.asByteArray());
+            }
+            catch (IOException e) {
+                throw new CompileEnvironmentException("Failed to generate jar file", e);
+            }
+        }
+
+        @NotNull
+        @Override
+        protected byte[] doRead(@NotNull String relativePath) throws IOException {
+            if (!isFinished()) {
+                throw new IllegalStateException("Jar isn't complete yet, can't read " + relativePath + " from " + jarPath);
+            }
+            JarFile jarFile = new JarFile(jarPath);
+            try {
+                JarEntry entry = jarFile.getJarEntry(relativePath);
+                if (entry == null) {
+                    throw new IllegalArgumentException("File is not written to the output: " + relativePath);
+                }
+                InputStream input = jarFile.getInputStream(entry);
+                try {
+                    return FileUtil.loadBytes(input);
+                }
+                finally {
+                    input.close();
+                }
+            }
+            finally {
+                jarFile.close();
+            }
+        }
+
+        @Override
+        protected void doFinish() {
+            try {
+                if (includeRuntime) {
+                    CompileEnvironmentUtil.writeRuntimeToJar(stream);
+                }
+                stream.close();
+                moveFile(tempJar, jarPath);
+            }
+            catch (IOException e) {
+                UtilsPackage.closeQuietly(stream);
+                FileUtil.delete(tempJar);
+                throw new CompileEnvironmentException("Failed to generate jar file", e);
+            }
+        }
+
+        @Override
+        protected void doDiscard() {
+            UtilsPackage.closeQuietly(stream);
+            FileUtil.delete(tempJar);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.jetbrains.kotlin.cli.jvm.config;
 import org.jetbrains.kotlin.cli.jvm.compiler.CompilerJarLocator;
 import org.jetbrains.kotlin.config.CompilerConfigurationKey;
 import org.jetbrains.kotlin.load.kotlin.incremental.cache.IncrementalCacheProvider;
+import org.jetbrains.kotlin.load.kotlin.incremental.cache.LookupTracker;
 import org.jetbrains.kotlin.resolve.AnalyzerScriptParameter;
 
 import java.io.File;
@@ -41,13 +42,25 @@ public class JVMConfigurationKeys {
             CompilerConfigurationKey.create("disable inline");
     public static final CompilerConfigurationKey<Boolean> DISABLE_OPTIMIZATION =
             CompilerConfigurationKey.create("disable optimization");
+    public static final CompilerConfigurationKey<Integer> PARALLEL_CODEGEN_THREADS =
+            CompilerConfigurationKey.create("parallel codegen threads");
+    public static final CompilerConfigurationKey<Integer> METHOD_OPTIMIZATION_THREADS =
+            CompilerConfigurationKey.create("method optimization threads");
 
     public static final CompilerConfigurationKey<IncrementalCacheProvider> INCREMENTAL_CACHE_PROVIDER =
             CompilerConfigurationKey.create("incremental cache provider");
+    public static final CompilerConfigurationKey<LookupTracker> LOOKUP_TRACKER =
+            CompilerConfigurationKey.create("lookup tracker");
 
     public static final CompilerConfigurationKey<CompilerJarLocator> COMPILER_JAR_LOCATOR =
             CompilerConfigurationKey.create("Compiler jar locator");
 
     public static final CompilerConfigurationKey<List<String>> MODULE_IDS =
             CompilerConfigurationKey.create("module id strings");
+
+    public static final CompilerConfigurationKey<File> LIBRARY_HEADER_CACHE_DIR =
+            CompilerConfigurationKey.create("library class header cache directory");
+
+    public static final CompilerConfigurationKey<Boolean> STREAM_OUTPUT =
+            CompilerConfigurationKey.create("stream output");
 }
@@ -111,6 +111,7 @@ private fun StorageComponentContainer.javaAnalysisInit() {
 }
 
 public class ContainerForTopDownAnalyzerForJvm(container: StorageComponentContainer) {
+    val resolveSession: ResolveSession by container
     val lazyTopDownAnalyzerForTopLevel: LazyTopDownAnalyzerForTopLevel by container
     val javaDescriptorResolver: JavaDescriptorResolver by container
     val deserializationComponentsForJava: DeserializationComponentsForJava by container
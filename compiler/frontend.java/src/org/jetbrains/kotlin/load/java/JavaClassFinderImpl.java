@@ -36,6 +36,9 @@ import org.jetbrains.kotlin.resolve.jvm.KotlinJavaPsiFacade;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 public class JavaClassFinderImpl implements JavaClassFinder {
     private Project project;
@@ -87,8 +90,21 @@ public class JavaClassFinderImpl implements JavaClassFinder {
     @Override
     public JavaClass findClass(@NotNull ClassId classId) {
         PsiClass psiClass = javaFacade.findClass(classId, javaSearchScope);
-        if (psiClass == null) return null;
+        return psiClass == null ? null : createJavaClass(classId, psiClass);
+    }
+
+    @NotNull
+    @Override
+    public Map<ClassId, JavaClass> findClasses(@NotNull Collection<ClassId> classIds) {
+        Map<ClassId, JavaClass> result = new HashMap<ClassId, JavaClass>();
+        for (Map.Entry<ClassId, PsiClass> entry : javaFacade.findClasses(classIds, javaSearchScope).entrySet()) {
+            result.put(entry.getKey(), createJavaClass(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
 
+    @NotNull
+    private static JavaClass createJavaClass(@NotNull ClassId classId, @NotNull PsiClass psiClass) {
         JavaClassImpl javaClass = new JavaClassImpl(psiClass);
         FqName fqName = classId.asSingleFqName();
         if (!fqName.equals(javaClass.getFqName())) {
@@ -58,7 +58,7 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
         }
     }
 
-    protected static class InnerClassesInfo {
+    public static class InnerClassesInfo {
         private Map<String, OuterAndInnerName> map = null;
 
         public void add(@NotNull String name, @Nullable String outerName, @Nullable String innerName) {
@@ -72,6 +72,14 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
         public OuterAndInnerName get(@NotNull String name) {
             return map == null ? null : map.get(name);
         }
+
+        // Invokes the function with a name, an outer name and an inner name of each entry
+        public void forEach(@NotNull Function3<String, String, String, Void> f) {
+            if (map == null) return;
+            for (Map.Entry<String, OuterAndInnerName> entry : map.entrySet()) {
+                f.invoke(entry.getKey(), entry.getValue().outerInternalName, entry.getValue().innerSimpleName);
+            }
+        }
     }
 
     @NotNull
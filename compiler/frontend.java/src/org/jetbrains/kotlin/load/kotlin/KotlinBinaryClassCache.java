@@ -21,6 +21,7 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -48,6 +49,12 @@ public final class KotlinBinaryClassCache implements Disposable {
                 }
             };
 
+    private volatile LibraryClassHeaderCache libraryHeaderCache = null;
+
+    public static void setLibraryHeaderCache(@Nullable LibraryClassHeaderCache cache) {
+        ServiceManager.getService(KotlinBinaryClassCache.class).libraryHeaderCache = cache;
+    }
+
     @Nullable
     public static KotlinJvmBinaryClass getKotlinBinaryClass(@NotNull final VirtualFile file) {
         if (file.getFileType() != JavaClassFileType.INSTANCE) return null;
@@ -59,6 +66,12 @@ public final class KotlinBinaryClassCache implements Disposable {
             return requestCache.virtualFileKotlinClass;
         }
         else {
+            LibraryClassHeaderCache headerCache = service.libraryHeaderCache;
+            Ref<VirtualFileKotlinClass> cached = headerCache != null ? headerCache.findKotlinClass(file) : null;
+            if (cached != null) {
+                return requestCache.cache(file, cached.get());
+            }
+
             VirtualFileKotlinClass aClass = ApplicationManager.getApplication().runReadAction(new Computable<VirtualFileKotlinClass>() {
                 @Override
                 public VirtualFileKotlinClass compute() {
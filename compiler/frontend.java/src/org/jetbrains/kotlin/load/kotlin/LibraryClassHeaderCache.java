@@ -0,0 +1,390 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.load.kotlin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.StandardFileSystems;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ArrayUtil;
+import kotlin.jvm.functions.Function3;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.load.java.JvmAnnotationNames.KotlinClass;
+import org.jetbrains.kotlin.load.java.JvmAnnotationNames.KotlinSyntheticClass;
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader;
+import org.jetbrains.kotlin.name.ClassId;
+import org.jetbrains.kotlin.name.FqName;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Keeps Kotlin class headers of all classes of a library jar in a file, so that the next compilation against the same jar doesn't
+ * need to read and parse its class files only to find out whether they were compiled by Kotlin and what their headers are.
+ *
+ * A cache file is named after the jar and the hash of its path, and starts with the path, the length and the modification time of the jar.
+ * If any of them doesn't match the jar, the file is stale and is rewritten. Files which haven't been used for a while are deleted.
+ * Classes which are not in jars are always read from disk.
+ *
+ * An instance is meant to live for one compilation: jars are checked only the first time a class from them is requested.
+ */
+public class LibraryClassHeaderCache {
+    private static final Logger LOG = Logger.getInstance(LibraryClassHeaderCache.class);
+
+    private static final int FORMAT_VERSION = 2;
+    private static final String CACHE_FILE_EXTENSION = ".headers";
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+    private static final long MAX_UNUSED_TIME_MS = TimeUnit.DAYS.toMillis(30);
+    private static final String JAR_SEPARATOR = "!/";
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    // A value in JarHeaders for class files without Kotlin headers
+    private static final Object NO_HEADER = new Object();
+    // A value in the map of jars for jars which couldn't be cached
+    private static final JarHeaders NOT_CACHED = new JarHeaders(new HashMap<String, Object>());
+
+    private final File cacheDir;
+    private final ConcurrentMap<String, JarHeaders> jars = new ConcurrentHashMap<String, JarHeaders>();
+    // Number of jars whose cache files were missing, stale or damaged, for tests
+    private final AtomicInteger indexedJarCount = new AtomicInteger();
+
+    public LibraryClassHeaderCache(@NotNull File cacheDir) {
+        this.cacheDir = cacheDir;
+        deleteUnusedFiles(cacheDir, System.currentTimeMillis() - MAX_UNUSED_TIME_MS);
+    }
+
+    int getIndexedJarCount() {
+        return indexedJarCount.get();
+    }
+
+    /**
+     * @return null if the file isn't known to the cache, otherwise a reference to the Kotlin class for the file,
+     * which in turn is null if the file isn't a Kotlin class
+     */
+    @Nullable
+    public Ref<VirtualFileKotlinClass> findKotlinClass(@NotNull VirtualFile file) {
+        if (!StandardFileSystems.JAR_PROTOCOL.equals(file.getFileSystem().getProtocol())) return null;
+
+        String path = file.getPath();
+        int separator = path.indexOf(JAR_SEPARATOR);
+        if (separator < 0) return null;
+
+        JarHeaders headers = getJarHeaders(path.substring(0, separator));
+        String entryName = path.substring(separator + JAR_SEPARATOR.length());
+        if (headers == NOT_CACHED || !headers.entries.containsKey(entryName)) return null;
+
+        Object cached = headers.entries.get(entryName);
+        if (cached == NO_HEADER) return Ref.create(null);
+
+        CachedClass cachedClass = (CachedClass) cached;
+        return Ref.create(VirtualFileKotlinClass.Factory.createWithHeader(
+                file, cachedClass.classId, cachedClass.header, cachedClass.innerClasses
+        ));
+    }
+
+    @NotNull
+    private JarHeaders getJarHeaders(@NotNull String jarPath) {
+        JarHeaders headers = jars.get(jarPath);
+        if (headers != null) return headers;
+
+        headers = loadOrCreate(new File(jarPath));
+        JarHeaders existing = jars.putIfAbsent(jarPath, headers);
+        return existing != null ? existing : headers;
+    }
+
+    @NotNull
+    private JarHeaders loadOrCreate(@NotNull File jar) {
+        try {
+            JarStamp stamp = new JarStamp(jar);
+            File cacheFile = new File(cacheDir, jar.getName() + "-" + Integer.toHexString(stamp.path.hashCode()) + CACHE_FILE_EXTENSION);
+            if (cacheFile.isFile()) {
+                JarHeaders headers = read(cacheFile, stamp);
+                if (headers != null) {
+                    // Keeps the file from being deleted as unused
+                    //noinspection ResultOfMethodCallIgnored
+                    cacheFile.setLastModified(System.currentTimeMillis());
+                    return headers;
+                }
+            }
+
+            indexedJarCount.incrementAndGet();
+            JarHeaders headers = index(jar);
+            write(headers, stamp, cacheFile);
+            return headers;
+        }
+        catch (IOException e) {
+            LOG.warn("Could not cache class headers of " + jar, e);
+            return NOT_CACHED;
+        }
+    }
+
+    private static void deleteUnusedFiles(@NotNull File cacheDir, long unusedSince) {
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            String name = file.getName();
+            if ((name.endsWith(CACHE_FILE_EXTENSION) || name.endsWith(TEMP_FILE_EXTENSION)) && file.lastModified() < unusedSince) {
+                FileUtil.delete(file);
+            }
+        }
+    }
+
+    @NotNull
+    private static JarHeaders index(@NotNull File jar) throws IOException {
+        Map<String, Object> entries = new HashMap<String, Object>();
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(CLASS_FILE_EXTENSION)) continue;
+
+                InputStream input = zipFile.getInputStream(entry);
+                byte[] contents;
+                try {
+                    contents = FileUtil.loadBytes(input);
+                }
+                finally {
+                    input.close();
+                }
+
+                CachedClass cachedClass;
+                try {
+                    cachedClass = contents.length == 0 ? null : readClass(contents);
+                }
+                catch (Throwable e) {
+                    // Such classes are not cached and are read from the jar as usual, where the error is reported
+                    continue;
+                }
+                entries.put(entry.getName(), cachedClass != null ? cachedClass : NO_HEADER);
+            }
+        }
+        finally {
+            zipFile.close();
+        }
+        return new JarHeaders(entries);
+    }
+
+    @Nullable
+    private static CachedClass readClass(@NotNull byte[] contents) {
+        return FileBasedKotlinClass.create(contents, new Function3<ClassId, KotlinClassHeader, FileBasedKotlinClass.InnerClassesInfo, CachedClass>() {
+            @Override
+            public CachedClass invoke(ClassId classId, KotlinClassHeader header, FileBasedKotlinClass.InnerClassesInfo innerClasses) {
+                return new CachedClass(classId, header, innerClasses);
+            }
+        });
+    }
+
+    // Serialization
+
+    private static void write(@NotNull JarHeaders headers, @NotNull JarStamp stamp, @NotNull File cacheFile) throws IOException {
+        FileUtil.createDirectory(cacheFile.getParentFile());
+        File tempFile = FileUtil.createTempFile(cacheFile.getParentFile(), cacheFile.getName(), TEMP_FILE_EXTENSION, true);
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(stamp.path);
+            output.writeLong(stamp.length);
+            output.writeLong(stamp.lastModified);
+            output.writeInt(headers.entries.size());
+            for (Map.Entry<String, Object> entry : headers.entries.entrySet()) {
+                output.writeUTF(entry.getKey());
+                if (entry.getValue() == NO_HEADER) {
+                    output.writeBoolean(false);
+                    continue;
+                }
+
+                output.writeBoolean(true);
+                CachedClass cachedClass = (CachedClass) entry.getValue();
+
+                ClassId classId = cachedClass.classId;
+                output.writeUTF(classId.getPackageFqName().asString());
+                output.writeUTF(classId.getRelativeClassName().asString());
+                output.writeBoolean(classId.isLocal());
+
+                KotlinClassHeader header = cachedClass.header;
+                output.writeUTF(header.getKind().name());
+                output.writeInt(header.getVersion());
+                String[] annotationData = header.getAnnotationData();
+                output.writeInt(annotationData == null ? -1 : annotationData.length);
+                if (annotationData != null) {
+                    for (String string : annotationData) {
+                        output.writeUTF(string);
+                    }
+                }
+                writeNullableString(output, header.getClassKind() == null ? null : header.getClassKind().name());
+                writeNullableString(output, header.getSyntheticClassKind() == null ? null : header.getSyntheticClassKind().name());
+
+                final List<String[]> innerClasses = new ArrayList<String[]>();
+                cachedClass.innerClasses.forEach(new Function3<String, String, String, Void>() {
+                    @Override
+                    public Void invoke(String name, String outerName, String innerName) {
+                        innerClasses.add(new String[] {name, outerName, innerName});
+                        return null;
+                    }
+                });
+                output.writeInt(innerClasses.size());
+                for (String[] innerClass : innerClasses) {
+                    output.writeUTF(innerClass[0]);
+                    writeNullableString(output, innerClass[1]);
+                    writeNullableString(output, innerClass[2]);
+                }
+            }
+        }
+        finally {
+            output.close();
+        }
+
+        // A stale file is replaced. Another compiler might have written the same file in the meantime, that's fine
+        FileUtil.delete(cacheFile);
+        if (!tempFile.renameTo(cacheFile)) {
+            FileUtil.delete(tempFile);
+        }
+    }
+
+    // Returns null if the file is stale or damaged
+    @Nullable
+    private static JarHeaders read(@NotNull File cacheFile, @NotNull JarStamp stamp) {
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                return read(input, stamp);
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch (IOException e) {
+            LOG.warn("Could not read class header cache " + cacheFile, e);
+            return null;
+        }
+        catch (IllegalArgumentException e) {
+            // Unknown enum constants or malformed names
+            LOG.warn("Class header cache " + cacheFile + " is damaged", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static JarHeaders read(@NotNull DataInputStream input, @NotNull JarStamp stamp) throws IOException {
+        if (input.readInt() != FORMAT_VERSION) return null;
+        if (!stamp.path.equals(input.readUTF()) || stamp.length != input.readLong() || stamp.lastModified != input.readLong()) return null;
+
+        int size = input.readInt();
+        // Sizes are only trusted as far as the file actually contains that many entries
+        Map<String, Object> entries = new HashMap<String, Object>();
+        for (int i = 0; i < size; i++) {
+            String entryName = input.readUTF();
+            if (!input.readBoolean()) {
+                entries.put(entryName, NO_HEADER);
+                continue;
+            }
+
+            FqName packageFqName = new FqName(input.readUTF());
+            FqName relativeClassName = new FqName(input.readUTF());
+            ClassId classId = new ClassId(packageFqName, relativeClassName, input.readBoolean());
+
+            KotlinClassHeader.Kind kind = KotlinClassHeader.Kind.valueOf(input.readUTF());
+            int version = input.readInt();
+            int annotationDataSize = input.readInt();
+            String[] annotationData = null;
+            if (annotationDataSize >= 0) {
+                List<String> strings = new ArrayList<String>();
+                for (int j = 0; j < annotationDataSize; j++) {
+                    strings.add(input.readUTF());
+                }
+                annotationData = ArrayUtil.toStringArray(strings);
+            }
+            String classKind = readNullableString(input);
+            String syntheticClassKind = readNullableString(input);
+            KotlinClassHeader header = new KotlinClassHeader(
+                    kind, version, annotationData,
+                    classKind == null ? null : KotlinClass.Kind.valueOf(classKind),
+                    syntheticClassKind == null ? null : KotlinSyntheticClass.Kind.valueOf(syntheticClassKind)
+            );
+
+            FileBasedKotlinClass.InnerClassesInfo innerClasses = new FileBasedKotlinClass.InnerClassesInfo();
+            int innerClassCount = input.readInt();
+            for (int j = 0; j < innerClassCount; j++) {
+                innerClasses.add(input.readUTF(), readNullableString(input), readNullableString(input));
+            }
+
+            entries.put(entryName, new CachedClass(classId, header, innerClasses));
+        }
+        return new JarHeaders(entries);
+    }
+
+    private static void writeNullableString(@NotNull DataOutput output, @Nullable String string) throws IOException {
+        output.writeBoolean(string != null);
+        if (string != null) {
+            output.writeUTF(string);
+        }
+    }
+
+    @Nullable
+    private static String readNullableString(@NotNull DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static class JarStamp {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+
+        private JarStamp(@NotNull File jar) throws IOException {
+            if (!jar.isFile()) throw new FileNotFoundException(jar.getPath());
+            this.path = jar.getAbsolutePath();
+            this.length = jar.length();
+            this.lastModified = jar.lastModified();
+        }
+    }
+
+    private static class JarHeaders {
+        // Keys are names of class file entries, values are either CachedClass or NO_HEADER
+        private final Map<String, Object> entries;
+
+        private JarHeaders(@NotNull Map<String, Object> entries) {
+            this.entries = entries;
+        }
+    }
+
+    private static class CachedClass {
+        private final ClassId classId;
+        private final KotlinClassHeader header;
+        private final FileBasedKotlinClass.InnerClassesInfo innerClasses;
+
+        private CachedClass(
+                @NotNull ClassId classId,
+                @NotNull KotlinClassHeader header,
+                @NotNull FileBasedKotlinClass.InnerClassesInfo innerClasses
+        ) {
+            this.classId = classId;
+            this.header = header;
+            this.innerClasses = innerClasses;
+        }
+    }
+}
@@ -77,6 +77,13 @@ public class VirtualFileKotlinClass private constructor(
             }
         }
 
+        fun createWithHeader(
+                file: VirtualFile,
+                classId: ClassId,
+                header: KotlinClassHeader,
+                innerClasses: FileBasedKotlinClass.InnerClassesInfo
+        ): VirtualFileKotlinClass = VirtualFileKotlinClass(file, classId, header, innerClasses)
+
         private fun renderFileReadingErrorMessage(file: VirtualFile): String =
                 "Could not read file: ${file.getPath()}; size in bytes: ${file.getLength()}; file type: ${file.getFileType().getName()}"
     }
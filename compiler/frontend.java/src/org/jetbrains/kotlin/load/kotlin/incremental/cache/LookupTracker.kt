@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.load.kotlin.incremental.cache
+
+/**
+ * Receives the names which source files look up in package and class scopes, so that incremental compilation can recompile
+ * only the files which use a changed declaration.
+ */
+public trait LookupTracker {
+    /**
+     * Records that the file at [filePath] looked up [name] in the scope of the package or the class [scopeFqName].
+     * [ANY_MEMBER] as the name means that the file depends on all members of the scope.
+     */
+    public fun record(filePath: String, scopeFqName: String, name: String)
+
+    companion object {
+        public val ANY_MEMBER: String = "*"
+
+        public val DO_NOTHING: LookupTracker = object : LookupTracker {
+            override fun record(filePath: String, scopeFqName: String, name: String) {
+            }
+        }
+    }
+}
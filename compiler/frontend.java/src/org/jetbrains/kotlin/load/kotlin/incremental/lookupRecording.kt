@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.load.kotlin.incremental
+
+import org.jetbrains.kotlin.descriptors.*
+import org.jetbrains.kotlin.load.kotlin.incremental.cache.LookupTracker
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.psi.JetClassOrObject
+import org.jetbrains.kotlin.psi.JetFile
+import org.jetbrains.kotlin.psi.JetReferenceExpression
+import org.jetbrains.kotlin.psi.JetSimpleNameExpression
+import org.jetbrains.kotlin.psi.JetTreeVisitorVoid
+import org.jetbrains.kotlin.psi.psiUtil.isImportDirectiveExpression
+import org.jetbrains.kotlin.resolve.BindingContext
+import org.jetbrains.kotlin.resolve.DescriptorUtils
+import org.jetbrains.kotlin.resolve.calls.callUtil.getResolvedCall
+import org.jetbrains.kotlin.resolve.jvm.TopDownAnalyzerFacadeForJVM
+import org.jetbrains.kotlin.types.JetType
+import org.jetbrains.kotlin.types.TypeUtils
+import java.io.File
+import java.util.LinkedHashSet
+
+/**
+ * Reports the declarations which the given analyzed files refer to.
+ *
+ * Each resolved reference is recorded in every scope a declaration with the same name could be found in and change the resolution:
+ * the scope of the declaration it resolved to, the package of the file, the packages and classes imported with a star, including
+ * the default imports, and the classes of the receivers the declaration was searched in, with their superclasses. Classes declared
+ * in the files depend on all members of their superclasses, since fake overrides and the overriding rules change with them.
+ */
+public fun recordLookups(files: Collection<JetFile>, bindingContext: BindingContext, lookupTracker: LookupTracker) {
+    for (file in files) {
+        val virtualFile = file.getVirtualFile() ?: continue
+        val filePath = File(virtualFile.getPath()).getAbsolutePath()
+        val scopesOfFile = getScopesImportedWithStar(file)
+
+        file.accept(object : JetTreeVisitorVoid() {
+            override fun visitReferenceExpression(expression: JetReferenceExpression) {
+                super.visitReferenceExpression(expression)
+
+                // Imports name the scope explicitly, and their targets are recorded where they're used
+                if (expression is JetSimpleNameExpression && expression.isImportDirectiveExpression()) return
+
+                val target = bindingContext[BindingContext.REFERENCE_TARGET, expression] ?: return
+                // Constructors are looked up by the name of their class
+                val declaration = if (target is ConstructorDescriptor) target.getContainingDeclaration() else target
+                val scopeFqName = getScopeFqName(declaration.getContainingDeclaration()) ?: return
+                val name = declaration.getName().asString()
+
+                lookupTracker.record(filePath, scopeFqName.asString(), name)
+                for (scope in scopesOfFile) {
+                    lookupTracker.record(filePath, scope, name)
+                }
+
+                val resolvedCall = expression.getResolvedCall(bindingContext) ?: return
+                for (receiver in listOf(resolvedCall.getDispatchReceiver(), resolvedCall.getExtensionReceiver())) {
+                    if (!receiver.exists()) continue
+                    for (receiverClass in getClassesOfType(receiver.getType())) {
+                        lookupTracker.record(filePath, receiverClass.asString(), name)
+                    }
+                }
+            }
+
+            override fun visitClassOrObject(classOrObject: JetClassOrObject) {
+                super.visitClassOrObject(classOrObject)
+
+                val classDescriptor = bindingContext[BindingContext.CLASS, classOrObject] ?: return
+                for (supertype in TypeUtils.getAllSupertypes(classDescriptor.getDefaultType())) {
+                    val superclass = supertype.getConstructor().getDeclarationDescriptor() as? ClassDescriptor ?: continue
+                    lookupTracker.record(filePath, DescriptorUtils.getFqNameSafe(superclass).asString(), LookupTracker.ANY_MEMBER)
+                }
+            }
+        })
+    }
+}
+
+// The package of the file and the scopes imported with a star, where unqualified names and extensions are searched in
+private fun getScopesImportedWithStar(file: JetFile): Set<String> {
+    val result = LinkedHashSet<String>()
+    result.add(file.getPackageFqName().asString())
+    for (importPath in TopDownAnalyzerFacadeForJVM.DEFAULT_IMPORTS) {
+        if (importPath.isAllUnder()) {
+            result.add(importPath.fqnPart().asString())
+        }
+    }
+    for (directive in file.getImportDirectives()) {
+        val importPath = directive.getImportPath() ?: continue
+        if (importPath.isAllUnder()) {
+            result.add(importPath.fqnPart().asString())
+        }
+    }
+    return result
+}
+
+private fun getClassesOfType(type: JetType): List<FqName> {
+    return (listOf(type) + TypeUtils.getAllSupertypes(type)).map {
+        getScopeFqName(it.getConstructor().getDeclarationDescriptor())
+    }.filterNotNull()
+}
+
+private fun getScopeFqName(container: DeclarationDescriptor?): FqName? {
+    return when (container) {
+        is PackageFragmentDescriptor -> container.fqName
+        is ClassDescriptor -> if (DescriptorUtils.isLocal(container)) null else DescriptorUtils.getFqNameSafe(container)
+        else -> null
+    }
+}
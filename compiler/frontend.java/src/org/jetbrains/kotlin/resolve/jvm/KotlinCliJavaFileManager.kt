@@ -23,4 +23,7 @@ import org.jetbrains.kotlin.name.ClassId
 
 public trait KotlinCliJavaFileManager : JavaFileManager {
     public fun findClass(classId: ClassId, searchScope: GlobalSearchScope): PsiClass?
+
+    // classes which are not found are absent from the result
+    public fun findClasses(classIds: Collection<ClassId>, searchScope: GlobalSearchScope): Map<ClassId, PsiClass>
 }
\ No newline at end of file
@@ -42,9 +42,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus;
 import org.jetbrains.kotlin.name.ClassId;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 
 public class KotlinJavaPsiFacade {
@@ -111,6 +109,48 @@ public class KotlinJavaPsiFacade {
         return null;
     }
 
+    /**
+     * Finds several classes at once, which is faster than finding them one by one in the compiler.
+     * Classes which are not found are absent from the result.
+     */
+    @NotNull
+    public Map<ClassId, PsiClass> findClasses(@NotNull Collection<ClassId> classIds, @NotNull GlobalSearchScope scope) {
+        if (shouldUseSlowResolve()) {
+            Map<ClassId, PsiClass> result = new HashMap<ClassId, PsiClass>();
+            for (ClassId classId : classIds) {
+                PsiClass aClass = findClass(classId, scope);
+                if (aClass != null) result.put(classId, aClass);
+            }
+            return result;
+        }
+
+        ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
+
+        Map<ClassId, PsiClass> result = new HashMap<ClassId, PsiClass>();
+        Collection<ClassId> remaining = classIds;
+        for (KotlinPsiElementFinderWrapper finder : finders()) {
+            if (remaining.isEmpty()) break;
+
+            if (finder instanceof KotlinPsiElementFinderImpl) {
+                result.putAll(((KotlinPsiElementFinderImpl) finder).findClasses(remaining, scope));
+            }
+            else {
+                for (ClassId classId : remaining) {
+                    PsiClass aClass = finder.findClass(classId.asSingleFqName().asString(), scope);
+                    if (aClass != null) result.put(classId, aClass);
+                }
+            }
+
+            List<ClassId> notFound = new ArrayList<ClassId>();
+            for (ClassId classId : remaining) {
+                if (!result.containsKey(classId)) notFound.add(classId);
+            }
+            remaining = notFound;
+        }
+
+        return result;
+    }
+
     @NotNull
     private PsiClass[] findClassesInDumbMode(@NotNull String qualifiedName, @NotNull GlobalSearchScope scope) {
         String packageName = StringUtil.getPackageName(qualifiedName);
@@ -327,6 +367,20 @@ public class KotlinJavaPsiFacade {
             return findClass(classId.asSingleFqName().asString(), scope);
         }
 
+        @NotNull
+        public Map<ClassId, PsiClass> findClasses(@NotNull Collection<ClassId> classIds, @NotNull GlobalSearchScope scope) {
+            if (isCliFileManager) {
+                return ((KotlinCliJavaFileManager) javaFileManager).findClasses(classIds, scope);
+            }
+
+            Map<ClassId, PsiClass> result = new HashMap<ClassId, PsiClass>();
+            for (ClassId classId : classIds) {
+                PsiClass aClass = findClass(classId, scope);
+                if (aClass != null) result.put(classId, aClass);
+            }
+            return result;
+        }
+
         @Override
         public PsiPackage findPackage(@NotNull String qualifiedName, @NotNull GlobalSearchScope scope) {
             if (isCliFileManager) {
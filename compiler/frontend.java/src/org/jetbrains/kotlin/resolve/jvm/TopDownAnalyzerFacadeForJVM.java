@@ -22,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.analyzer.AnalysisResult;
 import org.jetbrains.kotlin.builtins.KotlinBuiltIns;
+import org.jetbrains.kotlin.context.GlobalContext;
 import org.jetbrains.kotlin.context.ModuleContext;
 import org.jetbrains.kotlin.context.MutableModuleContext;
 import org.jetbrains.kotlin.descriptors.ClassDescriptor;
@@ -46,7 +47,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import static org.jetbrains.kotlin.context.ContextPackage.ContextForNewModule;
+import static org.jetbrains.kotlin.context.ContextPackage.*;
 
 public enum TopDownAnalyzerFacadeForJVM {
 
@@ -164,8 +165,10 @@ public enum TopDownAnalyzerFacadeForJVM {
 
     @NotNull
     public static MutableModuleContext createContextWithSealedModule(@NotNull Project project) {
+        // Bodies resolved on several threads would be serialized on the single lock of the default storage manager
+        GlobalContext globalContext = ParallelBodyResolution.isEnabled() ? GlobalContextWithStripedLocks() : GlobalContext();
         MutableModuleContext context = ContextForNewModule(
-                project, Name.special("<shared-module>"), JVM_MODULE_PARAMETERS
+                withProject(globalContext, project), Name.special("<shared-module>"), JVM_MODULE_PARAMETERS
         );
         context.setDependencies(context.getModule(), KotlinBuiltIns.getInstance().getBuiltInsModule());
         return context;
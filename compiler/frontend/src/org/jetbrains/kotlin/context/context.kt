@@ -27,6 +27,7 @@ import org.jetbrains.kotlin.platform.PlatformToKotlinClassMap
 import org.jetbrains.kotlin.storage.ExceptionTracker
 import org.jetbrains.kotlin.storage.LockBasedStorageManager
 import org.jetbrains.kotlin.storage.StorageManager
+import org.jetbrains.kotlin.storage.StripedLockStorageManager
 
 public interface GlobalContext {
     public val storageManager: StorageManager
@@ -95,6 +96,15 @@ public fun GlobalContext(): GlobalContextImpl {
     return GlobalContextImpl(LockBasedStorageManager.createWithExceptionHandling(tracker), tracker)
 }
 
+/**
+ * Lazy values and memoized functions created in this context are guarded by striped locks,
+ * which allows resolving independent declarations on several threads at once
+ */
+public fun GlobalContextWithStripedLocks(): GlobalContext {
+    val tracker = ExceptionTracker()
+    return SimpleGlobalContext(StripedLockStorageManager.createWithExceptionHandling(tracker), tracker)
+}
+
 public fun ProjectContext(project: Project): ProjectContext = ProjectContextImpl(project, GlobalContext())
 public fun ModuleContext(module: ModuleDescriptor, project: Project): ModuleContext =
         ModuleContextImpl(module, ProjectContext(project))
@@ -106,8 +116,13 @@ public fun ContextForNewModule(
         project: Project,
         moduleName: Name,
         parameters: ModuleParameters
+): MutableModuleContext = ContextForNewModule(ProjectContext(project), moduleName, parameters)
+
+public fun ContextForNewModule(
+        projectContext: ProjectContext,
+        moduleName: Name,
+        parameters: ModuleParameters
 ): MutableModuleContext {
-    val projectContext = ProjectContext(project)
     val module = ModuleDescriptorImpl(moduleName, projectContext.storageManager, parameters)
     return MutableModuleContextImpl(module, projectContext)
 }
@@ -36,6 +36,9 @@ public class BindingTraceContext implements BindingTrace {
     /* package */ final static boolean TRACK_REWRITES = false;
     /* package */ final static boolean TRACK_WITH_STACK_TRACES = true;
 
+    // Set "kotlin.binding.trace.compact.storage" to store slices in CompactSlicedMap instead of SlicedMapImpl
+    private final static boolean COMPACT_STORAGE = Boolean.getBoolean("kotlin.binding.trace.compact.storage");
+
     private final MutableSlicedMap map;
     private final MutableDiagnosticsWithSuppression mutableDiagnostics;
 
@@ -78,8 +81,7 @@ public class BindingTraceContext implements BindingTrace {
     };
 
     public BindingTraceContext() {
-        //noinspection ConstantConditions
-        this(TRACK_REWRITES ? new TrackingSlicedMap(TRACK_WITH_STACK_TRACES) : SlicedMapImpl.create());
+        this(createSlicedMap(COMPACT_STORAGE));
     }
 
 
@@ -93,6 +95,23 @@ public class BindingTraceContext implements BindingTrace {
         return new BindingTraceContext(new TrackingSlicedMap(TRACK_WITH_STACK_TRACES));
     }
 
+    @NotNull
+    public static BindingTraceContext createWithCompactStorage() {
+        return new BindingTraceContext(createSlicedMap(true));
+    }
+
+    @NotNull
+    /* package */ static MutableSlicedMap createSlicedMap() {
+        return createSlicedMap(COMPACT_STORAGE);
+    }
+
+    @NotNull
+    private static MutableSlicedMap createSlicedMap(boolean compact) {
+        //noinspection ConstantConditions
+        if (TRACK_REWRITES) return new TrackingSlicedMap(TRACK_WITH_STACK_TRACES);
+        return compact ? CompactSlicedMap.create() : SlicedMapImpl.create();
+    }
+
     @Override
     public void report(@NotNull Diagnostic diagnostic) {
         mutableDiagnostics.report(diagnostic);
@@ -20,6 +20,7 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.intellij.psi.PsiElement;
 import com.intellij.util.containers.Queue;
+import kotlin.Unit;
 import kotlin.jvm.functions.Function1;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -37,6 +38,7 @@ import org.jetbrains.kotlin.resolve.constants.CompileTimeConstant;
 import org.jetbrains.kotlin.resolve.lazy.ForceResolveUtil;
 import org.jetbrains.kotlin.resolve.scopes.*;
 import org.jetbrains.kotlin.resolve.scopes.receivers.ReceiverValue;
+import org.jetbrains.kotlin.storage.StorageManager;
 import org.jetbrains.kotlin.types.*;
 import org.jetbrains.kotlin.types.expressions.ExpressionTypingContext;
 import org.jetbrains.kotlin.types.expressions.ExpressionTypingServices;
@@ -67,6 +69,7 @@ public class BodyResolver {
     private AdditionalCheckerProvider additionalCheckerProvider;
     private ValueParameterResolver valueParameterResolver;
     private BodyResolveCache bodyResolveCache;
+    private StorageManager storageManager;
 
     //<editor-fold desc="Injector Setters">
     @Inject
@@ -128,6 +131,11 @@ public class BodyResolver {
     public void setBodyResolveCache(BodyResolveCache bodyResolveCache) {
         this.bodyResolveCache = bodyResolveCache;
     }
+
+    @Inject
+    public void setStorageManager(@NotNull StorageManager storageManager) {
+        this.storageManager = storageManager;
+    }
     //</editor-fold>
 
     private void resolveBehaviorDeclarationBodies(@NotNull BodiesResolveContext c) {
@@ -749,20 +757,44 @@ public class BodyResolver {
         return scope;
     }
 
-    private void resolveFunctionBodies(@NotNull BodiesResolveContext c) {
+    private void resolveFunctionBodies(@NotNull final BodiesResolveContext c) {
+        ParallelBodyResolution parallelResolution =
+                !c.getTopDownAnalysisMode().getIsLocalDeclarations() && ParallelBodyResolution.isEnabled()
+                ? new ParallelBodyResolution(storageManager, trace)
+                : null;
+
         for (Map.Entry<JetNamedFunction, SimpleFunctionDescriptor> entry : c.getFunctions().entrySet()) {
-            JetNamedFunction declaration = entry.getKey();
+            final JetNamedFunction declaration = entry.getKey();
+            final SimpleFunctionDescriptor descriptor = entry.getValue();
 
-            JetScope scope = c.getDeclaringScope(declaration);
+            final JetScope scope = c.getDeclaringScope(declaration);
             assert scope != null : "Scope is null: " + PsiUtilPackage.getElementTextWithContext(declaration);
 
             if (!c.getTopDownAnalysisMode().getIsLocalDeclarations() && !(bodyResolveCache instanceof BodyResolveCache.ThrowException) &&
                 expressionTypingServices.getStatementFilter() != StatementFilter.NONE) {
                 bodyResolveCache.resolveFunctionBody(declaration).addOwnDataTo(trace, true);
             }
+            else if (parallelResolution != null) {
+                parallelResolution.submit(declaration, new Function1<BindingTrace, Unit>() {
+                    @Override
+                    public Unit invoke(BindingTrace bodyTrace) {
+                        resolveFunctionBody(c.getOuterDataFlowInfo(), bodyTrace, declaration, descriptor, scope);
+                        return Unit.INSTANCE$;
+                    }
+                });
+            }
             else {
-                resolveFunctionBody(c.getOuterDataFlowInfo(), trace, declaration, entry.getValue(), scope);
+                resolveFunctionBody(c.getOuterDataFlowInfo(), trace, declaration, descriptor, scope);
+            }
+        }
+
+        if (parallelResolution != null) {
+            // Return types of functions without explicit types are computed lazily from their bodies and report into the main trace.
+            // Force them here in declaration order, so that workers find them computed and the diagnostics don't depend on scheduling
+            for (SimpleFunctionDescriptor descriptor : c.getFunctions().values()) {
+                ForceResolveUtil.forceResolveAllContents(descriptor.getReturnType());
             }
+            parallelResolution.resolveAll();
         }
     }
 
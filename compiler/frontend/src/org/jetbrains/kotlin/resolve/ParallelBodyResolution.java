@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.resolve;
+
+import kotlin.jvm.functions.Function1;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.storage.LockBasedLazyResolveStorageManager;
+import org.jetbrains.kotlin.storage.StorageManager;
+import org.jetbrains.kotlin.utils.UtilsPackage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves independent declaration bodies on a thread pool.
+ *
+ * Every body is resolved into its own {@link DelegatingBindingTrace}, which reads from the main trace under the lock of the storage manager
+ * (the same lock lazy resolve uses to write there). When all bodies are resolved, their traces are committed to the main trace on the calling
+ * thread in the order the bodies were submitted, so the resulting binding context doesn't depend on scheduling.
+ *
+ * The caller is expected to force lazily computed parts of the declarations (such as implicit return types) before {@link #resolveAll()},
+ * because they report into the main trace directly and would otherwise do so in the order the workers happen to reach them.
+ *
+ * Parallel resolution is turned off unless the "kotlin.parallel.body.resolve.threads" system property is set to a positive number.
+ * In that case the JVM front-end analyzes in a context backed by {@link org.jetbrains.kotlin.storage.StripedLockStorageManager},
+ * otherwise workers would be serialized on lazy values.
+ */
+public class ParallelBodyResolution {
+    public static final String THREADS_PROPERTY = "kotlin.parallel.body.resolve.threads";
+
+    public static int getThreadCount() {
+        return Integer.getInteger(THREADS_PROPERTY, 0);
+    }
+
+    public static boolean isEnabled() {
+        return getThreadCount() > 0;
+    }
+
+    private final StorageManager storageManager;
+    private final BindingTrace trace;
+    private final List<Function1<BindingTrace, ?>> tasks = new ArrayList<Function1<BindingTrace, ?>>();
+    private final List<Object> debugSubjects = new ArrayList<Object>();
+
+    public ParallelBodyResolution(@NotNull StorageManager storageManager, @NotNull BindingTrace trace) {
+        this.storageManager = storageManager;
+        this.trace = trace;
+    }
+
+    public void submit(@NotNull Object resolutionSubject, @NotNull Function1<BindingTrace, ?> resolveBody) {
+        debugSubjects.add(resolutionSubject);
+        tasks.add(resolveBody);
+    }
+
+    public void resolveAll() {
+        if (tasks.isEmpty()) return;
+
+        final BindingContext parentContext = new LockBasedLazyResolveStorageManager(storageManager).createSafeTrace(trace).getBindingContext();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(getThreadCount(), tasks.size()), new ResolveThreadFactory());
+        try {
+            List<Future<DelegatingBindingTrace>> results = new ArrayList<Future<DelegatingBindingTrace>>(tasks.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                final Function1<BindingTrace, ?> task = tasks.get(i);
+                final Object subject = debugSubjects.get(i);
+                results.add(executor.submit(new Callable<DelegatingBindingTrace>() {
+                    @Override
+                    public DelegatingBindingTrace call() {
+                        DelegatingBindingTrace bodyTrace = new DelegatingBindingTrace(parentContext, "Parallel body resolve", subject);
+                        task.invoke(bodyTrace);
+                        return bodyTrace;
+                    }
+                }));
+            }
+
+            for (Future<DelegatingBindingTrace> result : results) {
+                getResult(result).addOwnDataTo(trace);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+            tasks.clear();
+            debugSubjects.clear();
+        }
+    }
+
+    @NotNull
+    private static <T> T getResult(@NotNull Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            throw UtilsPackage.rethrow(e.getCause());
+        }
+        catch (InterruptedException e) {
+            throw UtilsPackage.rethrow(e);
+        }
+    }
+
+    private static class ResolveThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "Kotlin body resolve " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
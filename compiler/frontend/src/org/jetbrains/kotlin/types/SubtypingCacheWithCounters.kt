@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types
+
+import org.jetbrains.kotlin.types.checker.SubtypingCache
+import org.jetbrains.kotlin.util.PerformanceCounter
+
+/**
+ * Reports hits and misses of the subtyping cache along with other performance counters (see -Xreport-perf).
+ */
+public class SubtypingCacheWithCounters : SubtypingCache() {
+    companion object {
+        private val hitCounter = PerformanceCounter.create("Subtyping cache hit")
+        private val missCounter = PerformanceCounter.create("Subtyping cache miss")
+    }
+
+    override fun onHit() {
+        hitCounter.increment()
+    }
+
+    override fun onMiss() {
+        missCounter.increment()
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.intellij.openapi.util.Key;
+import kotlin.jvm.functions.Function3;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A {@link MutableSlicedMap} which keeps a separate open-addressed table for each slice.
+ * Keys and values of a slice are stored next to each other in one array, so no objects are allocated per entry.
+ *
+ * Keys are compared with equals() as in {@link SlicedMapImpl}, since some slices are keyed by values like FqName.
+ */
+public class CompactSlicedMap implements MutableSlicedMap {
+
+    public static CompactSlicedMap create() {
+        return new CompactSlicedMap();
+    }
+
+    private static final Object NULL_KEY = new Object() {
+        @Override
+        public String toString() {
+            return "NULL_KEY";
+        }
+    };
+
+    private static final int INITIAL_SLICE_CAPACITY = 8;
+    private static final int INITIAL_ENTRY_CAPACITY = 4;
+
+    // Open-addressed by identity of slice keys, slices are never removed
+    private Key<?>[] sliceKeys = new Key<?>[0];
+    // entries[2 * i] is a key, entries[2 * i + 1] is a value
+    private Object[][] sliceEntries = new Object[0][];
+    private int[] sliceSizes = new int[0];
+    private int sliceCount = 0;
+
+    private Multimap<WritableSlice<?, ?>, Object> collectiveSliceKeys = null;
+
+    @Override
+    public <K, V> void put(WritableSlice<K, V> slice, K key, V value) {
+        if (!slice.check(key, value)) {
+            return;
+        }
+
+        Key<V> sliceKey = slice.getKey();
+        int sliceIndex = getOrCreateSliceIndex(sliceKey);
+        Object escapedKey = escapeKey(key);
+
+        RewritePolicy rewritePolicy = slice.getRewritePolicy();
+        if (rewritePolicy.rewriteProcessingNeeded(key)) {
+            V oldValue = getValue(sliceIndex, escapedKey);
+            if (oldValue != null) {
+                //noinspection unchecked
+                if (!rewritePolicy.processRewrite(slice, key, oldValue, value)) {
+                    return;
+                }
+            }
+        }
+
+        if (slice.isCollective()) {
+            if (collectiveSliceKeys == null) {
+                collectiveSliceKeys = ArrayListMultimap.create();
+            }
+
+            collectiveSliceKeys.put(slice, key);
+        }
+
+        if (value == null) {
+            removeValue(sliceIndex, escapedKey);
+        }
+        else {
+            putValue(sliceIndex, escapedKey, value);
+        }
+        slice.afterPut(this, key, value);
+    }
+
+    @Override
+    public void clear() {
+        sliceKeys = new Key<?>[0];
+        sliceEntries = new Object[0][];
+        sliceSizes = new int[0];
+        sliceCount = 0;
+        collectiveSliceKeys = null;
+    }
+
+    @Override
+    public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        int sliceIndex = findSliceIndex(slice.getKey());
+
+        V value = sliceIndex < 0 ? null : this.<V>getValue(sliceIndex, escapeKey(key));
+
+        return slice.computeValue(this, key, value, value == null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        assert slice.isCollective() : "Keys are not collected for slice " + slice;
+
+        if (collectiveSliceKeys == null) return Collections.emptyList();
+        return (Collection<K>) collectiveSliceKeys.get(slice);
+    }
+
+    @Override
+    public <K, V> V remove(RemovableSlice<K, V> slice, K key) {
+        int sliceIndex = findSliceIndex(slice.getKey());
+        if (sliceIndex < 0) return null;
+
+        return removeValue(sliceIndex, escapeKey(key));
+    }
+
+    @Override
+    public void forEach(@NotNull Function3<WritableSlice, Object, Object, Void> f) {
+        for (int sliceIndex = 0; sliceIndex < sliceKeys.length; sliceIndex++) {
+            Object[] entries = sliceEntries[sliceIndex];
+            if (entries == null) continue;
+
+            WritableSlice<?, ?> slice = ((AbstractWritableSlice) sliceKeys[sliceIndex]).getSlice();
+            for (int i = 0; i < entries.length; i += 2) {
+                Object key = entries[i];
+                if (key == null) continue;
+
+                f.invoke(slice, unescapeKey(key), entries[i + 1]);
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+
+        int sliceIndex = findSliceIndex(slice.getKey());
+        Object[] entries = sliceIndex < 0 ? null : sliceEntries[sliceIndex];
+        if (entries != null) {
+            for (int i = 0; i < entries.length; i += 2) {
+                Object key = entries[i];
+                if (key == null) continue;
+
+                //noinspection unchecked
+                builder.put((K) unescapeKey(key), (V) entries[i + 1]);
+            }
+        }
+        return builder.build();
+    }
+
+    // Slices
+
+    private int findSliceIndex(@NotNull Key<?> sliceKey) {
+        Key<?>[] keys = sliceKeys;
+        if (keys.length == 0) return -1;
+
+        int mask = keys.length - 1;
+        for (int i = mix(System.identityHashCode(sliceKey)) & mask; ; i = (i + 1) & mask) {
+            Key<?> current = keys[i];
+            if (current == sliceKey) return i;
+            if (current == null) return -1;
+        }
+    }
+
+    private int getOrCreateSliceIndex(@NotNull Key<?> sliceKey) {
+        int index = findSliceIndex(sliceKey);
+        if (index >= 0) return index;
+
+        if ((sliceCount + 1) * 2 > sliceKeys.length) {
+            rehashSlices(Math.max(INITIAL_SLICE_CAPACITY, sliceKeys.length * 2));
+        }
+
+        int mask = sliceKeys.length - 1;
+        int i = mix(System.identityHashCode(sliceKey)) & mask;
+        while (sliceKeys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        sliceKeys[i] = sliceKey;
+        sliceCount++;
+        return i;
+    }
+
+    private void rehashSlices(int newCapacity) {
+        Key<?>[] oldKeys = sliceKeys;
+        Object[][] oldEntries = sliceEntries;
+        int[] oldSizes = sliceSizes;
+
+        sliceKeys = new Key<?>[newCapacity];
+        sliceEntries = new Object[newCapacity][];
+        sliceSizes = new int[newCapacity];
+
+        int mask = newCapacity - 1;
+        for (int old = 0; old < oldKeys.length; old++) {
+            Key<?> sliceKey = oldKeys[old];
+            if (sliceKey == null) continue;
+
+            int i = mix(System.identityHashCode(sliceKey)) & mask;
+            while (sliceKeys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            sliceKeys[i] = sliceKey;
+            sliceEntries[i] = oldEntries[old];
+            sliceSizes[i] = oldSizes[old];
+        }
+    }
+
+    // Entries of a slice
+
+    @Nullable
+    private <V> V getValue(int sliceIndex, @NotNull Object key) {
+        Object[] entries = sliceEntries[sliceIndex];
+        if (entries == null) return null;
+
+        int i = findEntry(entries, key);
+        //noinspection unchecked
+        return i < 0 ? null : (V) entries[i + 1];
+    }
+
+    private void putValue(int sliceIndex, @NotNull Object key, @NotNull Object value) {
+        Object[] entries = sliceEntries[sliceIndex];
+        if (entries == null) {
+            entries = new Object[INITIAL_ENTRY_CAPACITY * 2];
+            sliceEntries[sliceIndex] = entries;
+        }
+
+        int i = findEntry(entries, key);
+        if (i >= 0) {
+            entries[i + 1] = value;
+            return;
+        }
+
+        // Keep the load factor under 2/3
+        int capacity = entries.length / 2;
+        if ((sliceSizes[sliceIndex] + 1) * 3 > capacity * 2) {
+            entries = rehashEntries(entries, capacity * 2);
+            sliceEntries[sliceIndex] = entries;
+        }
+
+        insertEntry(entries, key, value);
+        sliceSizes[sliceIndex]++;
+    }
+
+    @Nullable
+    private <V> V removeValue(int sliceIndex, @NotNull Object key) {
+        Object[] entries = sliceEntries[sliceIndex];
+        if (entries == null) return null;
+
+        int i = findEntry(entries, key);
+        if (i < 0) return null;
+
+        //noinspection unchecked
+        V value = (V) entries[i + 1];
+        deleteEntry(entries, i);
+
+        if (--sliceSizes[sliceIndex] == 0) {
+            sliceEntries[sliceIndex] = null;
+        }
+        return value;
+    }
+
+    // Returns an index of the key in the array, or -1 if there's no such key
+    private static int findEntry(@NotNull Object[] entries, @NotNull Object key) {
+        int mask = entries.length / 2 - 1;
+        for (int slot = mix(key.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            Object current = entries[slot * 2];
+            if (current == null) return -1;
+            if (current == key || current.equals(key)) return slot * 2;
+        }
+    }
+
+    private static void insertEntry(@NotNull Object[] entries, @NotNull Object key, @Nullable Object value) {
+        int mask = entries.length / 2 - 1;
+        int slot = mix(key.hashCode()) & mask;
+        while (entries[slot * 2] != null) {
+            slot = (slot + 1) & mask;
+        }
+        entries[slot * 2] = key;
+        entries[slot * 2 + 1] = value;
+    }
+
+    @NotNull
+    private static Object[] rehashEntries(@NotNull Object[] entries, int newCapacity) {
+        Object[] result = new Object[newCapacity * 2];
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i] != null) {
+                insertEntry(result, entries[i], entries[i + 1]);
+            }
+        }
+        return result;
+    }
+
+    // Backward shift deletion: no tombstones are left in the table
+    private static void deleteEntry(@NotNull Object[] entries, int index) {
+        int mask = entries.length / 2 - 1;
+        int hole = index / 2;
+        entries[hole * 2] = null;
+        entries[hole * 2 + 1] = null;
+
+        for (int slot = (hole + 1) & mask; entries[slot * 2] != null; slot = (slot + 1) & mask) {
+            int ideal = mix(entries[slot * 2].hashCode()) & mask;
+            // Move the entry into the hole unless its ideal slot lies cyclically between the hole and its current slot
+            if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+                entries[hole * 2] = entries[slot * 2];
+                entries[hole * 2 + 1] = entries[slot * 2 + 1];
+                entries[slot * 2] = null;
+                entries[slot * 2 + 1] = null;
+                hole = slot;
+            }
+        }
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @NotNull
+    private static Object escapeKey(@Nullable Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    @Nullable
+    private static Object unescapeKey(@NotNull Object key) {
+        return key == NULL_KEY ? null : key;
+    }
+}
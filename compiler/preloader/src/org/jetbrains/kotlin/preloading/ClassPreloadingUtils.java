@@ -24,10 +24,13 @@ import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 @SuppressWarnings("unchecked")
 public class ClassPreloadingUtils {
+    private static final String CLASS_SUFFIX = ".class";
+
     /**
      * Creates a class loader that loads all classes from {@code jarFiles} into memory to make loading faster (avoid skipping through zip archives).
      *
@@ -36,24 +39,54 @@ public class ClassPreloadingUtils {
      * @param parentClassLoader parent class loader
      * @param handler handler to be notified on class definitions done by this class loader, or null
      * @param classesToLoadByParent condition to load some classes via parent class loader
+     * @param archive archive to map the classes from if it's up to date, or to create otherwise, or null to always read the jars.
+     *                Classes are not instrumented when they are loaded from the archive, so it should not be used with instrumentation
+     * @param classesToPreload condition for the classes to read into memory in advance, or null to read all classes.
+     *                         The other classes are read from the jars when they are requested
      * @return a class loader that reads classes from memory
-     * @throws IOException on from reading the jar
+     * @throws IOException on from reading the jar, or from reading or writing the archive
      */
     public static ClassLoader preloadClasses(
             Collection<File> jarFiles,
             int classCountEstimation,
             ClassLoader parentClassLoader,
             ClassCondition classesToLoadByParent,
-            ClassHandler handler
+            ClassHandler handler,
+            File archive,
+            ClassCondition classesToPreload
     ) throws IOException {
-        Map<String, Object> entries = loadAllClassesFromJars(jarFiles, classCountEstimation, handler);
+        List<File> jarList = new ArrayList<File>(jarFiles);
+        Map<String, Object> entries = archive != null ? PreloadedClassArchive.load(archive, jarList, classCountEstimation) : null;
+        // An archive may have been written when only some classes were preloaded
+        boolean allClassesPreloaded = entries == null && classesToPreload == null;
+        if (entries == null) {
+            entries = classesToPreload != null
+                      ? loadClassesFromJars(jarList, classCountEstimation, handler, classesToPreload)
+                      : loadAllClassesFromJars(jarList, classCountEstimation, handler);
+            if (archive != null) {
+                PreloadedClassArchive.write(archive, jarList, entries);
+            }
+        }
 
         Collection<File> classpath = mergeClasspathFromManifests(entries);
         if (!classpath.isEmpty()) {
-            parentClassLoader = preloadClasses(classpath, classCountEstimation, parentClassLoader, null, handler);
+            File classpathArchive = archive != null ? new File(archive.getPath() + ".classpath") : null;
+            parentClassLoader = preloadClasses(classpath, classCountEstimation, parentClassLoader, null, handler, classpathArchive,
+                                               classesToPreload);
         }
 
-        return new MemoryBasedClassLoader(classesToLoadByParent, parentClassLoader, entries, handler, createFallbackClassLoader(jarFiles));
+        return new MemoryBasedClassLoader(classesToLoadByParent, parentClassLoader, entries, handler, createFallbackClassLoader(jarFiles),
+                                          allClassesPreloaded);
+    }
+
+    public static ClassLoader preloadClasses(
+            Collection<File> jarFiles,
+            int classCountEstimation,
+            ClassLoader parentClassLoader,
+            ClassCondition classesToLoadByParent,
+            ClassHandler handler
+    ) throws IOException {
+        return preloadClasses(jarFiles, classCountEstimation, parentClassLoader, classesToLoadByParent, handler, null, null);
     }
 
     private static URLClassLoader createFallbackClassLoader(Collection<File> files) throws IOException {
@@ -89,7 +122,7 @@ public class ClassPreloadingUtils {
     }
 
     private static Collection<File> extractManifestClasspath(ResourceData manifestData) throws IOException {
-        Manifest manifest = new Manifest(new ByteArrayInputStream(manifestData.bytes));
+        Manifest manifest = new Manifest(new ByteArrayInputStream(manifestData.getBytes()));
         String classpathSpaceSeparated = (String) manifest.getMainAttributes().get(Attributes.Name.CLASS_PATH);
         if (classpathSpaceSeparated == null) return Collections.emptyList();
 
@@ -147,28 +180,76 @@ public class ClassPreloadingUtils {
                     if (handler != null) {
                         data = handler.instrument(name, data);
                     }
-                    ResourceData resourceData = new ResourceData(jarFile, name, data);
+                    addResource(resources, new ResourceData(jarFile, name, data));
+                }
+            }
+            finally {
+                try {
+                    fileInputStream.close();
+                }
+                catch (IOException e) {
+                    // Ignore
+                }
+            }
 
-                    Object previous = resources.get(name);
-                    if (previous == null) {
-                        resources.put(name, resourceData);
+            if (handler != null) {
+                handler.afterLoadJar(jarFile);
+            }
+        }
+
+        trimResourceLists(resources);
+
+        return resources;
+    }
+
+    /**
+     * Reads the classes which satisfy the condition and all other resources. Unlike {@link #loadAllClassesFromJars}, doesn't inflate
+     * the classes which are skipped.
+     */
+    private static Map<String, Object> loadClassesFromJars(
+            Collection<File> jarFiles,
+            int classNumberEstimate,
+            ClassHandler handler,
+            ClassCondition classesToLoad
+    ) throws IOException {
+        // 0.75 is HashMap.DEFAULT_LOAD_FACTOR
+        Map<String, Object> resources = new HashMap<String, Object>((int) (classNumberEstimate / 0.75));
+
+        for (File jarFile : jarFiles) {
+            if (handler != null) {
+                handler.beforeLoadJar(jarFile);
+            }
+
+            ZipFile zipFile = new ZipFile(jarFile);
+            try {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.isDirectory()) continue;
+
+                    String name = entry.getName();
+                    if (name.endsWith(CLASS_SUFFIX) &&
+                        !classesToLoad.accept(name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.'))) {
+                        continue;
+                    }
+
+                    InputStream stream = zipFile.getInputStream(entry);
+                    byte[] data;
+                    try {
+                        data = readFully(stream, (int) entry.getSize());
                     }
-                    else if (previous instanceof ResourceData) {
-                        List<ResourceData> list = new ArrayList<ResourceData>();
-                        list.add((ResourceData) previous);
-                        list.add(resourceData);
-                        resources.put(name, list);
+                    finally {
+                        stream.close();
                     }
-                    else {
-                        assert previous instanceof ArrayList :
-                                "Resource map should contain ResourceData or ArrayList<ResourceData>: " + name;
-                        ((ArrayList<ResourceData>) previous).add(resourceData);
+                    if (handler != null) {
+                        data = handler.instrument(name, data);
                     }
+                    addResource(resources, new ResourceData(jarFile, name, data));
                 }
             }
             finally {
                 try {
-                    fileInputStream.close();
+                    zipFile.close();
                 }
                 catch (IOException e) {
                     // Ignore
@@ -180,12 +261,45 @@ public class ClassPreloadingUtils {
             }
         }
 
+        trimResourceLists(resources);
+
+        return resources;
+    }
+
+    static byte[] readFully(InputStream stream, int size) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size < 0 ? 32 : size);
+        byte[] buffer = new byte[10 * 1024];
+        int count;
+        while ((count = stream.read(buffer)) > 0) {
+            bytes.write(buffer, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void addResource(Map<String, Object> resources, ResourceData resourceData) {
+        String name = resourceData.resourceName;
+        Object previous = resources.get(name);
+        if (previous == null) {
+            resources.put(name, resourceData);
+        }
+        else if (previous instanceof ResourceData) {
+            List<ResourceData> list = new ArrayList<ResourceData>();
+            list.add((ResourceData) previous);
+            list.add(resourceData);
+            resources.put(name, list);
+        }
+        else {
+            assert previous instanceof ArrayList :
+                    "Resource map should contain ResourceData or ArrayList<ResourceData>: " + name;
+            ((ArrayList<ResourceData>) previous).add(resourceData);
+        }
+    }
+
+    private static void trimResourceLists(Map<String, Object> resources) {
         for (Object value : resources.values()) {
             if (value instanceof ArrayList) {
                 ((ArrayList) value).trimToSize();
             }
         }
-
-        return resources;
     }
 }
@@ -17,7 +17,9 @@
 package org.jetbrains.kotlin.preloading;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 @SuppressWarnings("unchecked")
@@ -28,6 +30,8 @@ import java.util.*;
  * This means that once any class is loaded, it _cannot be found_ as a resource anymore.
  * Therefore if you need to be able to find classes via findResource(), you should pass a fallback
  * class loader which is able to do that at any point of time.
+ *
+ * If only some classes were preloaded, the other ones are defined from the resources of the fallback class loader.
  */
 public class MemoryBasedClassLoader extends ClassLoader {
     private final ClassCondition classesToLoadByParent;
@@ -35,6 +39,7 @@ public class MemoryBasedClassLoader extends ClassLoader {
     private final Map<String, Object> preloadedResources;
     private final ClassHandler handler;
     private final ClassLoader fallbackResourceLoader;
+    private final boolean allClassesPreloaded;
 
     public MemoryBasedClassLoader(
             ClassCondition classesToLoadByParent,
@@ -42,6 +47,17 @@ public class MemoryBasedClassLoader extends ClassLoader {
             Map<String, Object> preloadedResources,
             ClassHandler handler,
             ClassLoader fallbackResourceLoader
+    ) {
+        this(classesToLoadByParent, parent, preloadedResources, handler, fallbackResourceLoader, true);
+    }
+
+    public MemoryBasedClassLoader(
+            ClassCondition classesToLoadByParent,
+            ClassLoader parent,
+            Map<String, Object> preloadedResources,
+            ClassHandler handler,
+            ClassLoader fallbackResourceLoader,
+            boolean allClassesPreloaded
     ) {
         super(null);
         this.classesToLoadByParent = classesToLoadByParent;
@@ -49,6 +65,7 @@ public class MemoryBasedClassLoader extends ClassLoader {
         this.preloadedResources = preloadedResources;
         this.handler = handler;
         this.fallbackResourceLoader = fallbackResourceLoader;
+        this.allClassesPreloaded = allClassesPreloaded;
     }
 
     @Override
@@ -86,7 +103,9 @@ public class MemoryBasedClassLoader extends ClassLoader {
     protected Class<?> findClass(String name) throws ClassNotFoundException {
         String internalName = name.replace('.', '/').concat(".class");
         Object resources = preloadedResources.get(internalName);
-        if (resources == null) return null;
+        if (resources == null) {
+            return allClassesPreloaded ? null : defineClassFromFallback(name, internalName);
+        }
 
         // Clear the resource, we won't need it anymore
         preloadedResources.remove(internalName);
@@ -95,12 +114,46 @@ public class MemoryBasedClassLoader extends ClassLoader {
                                     ? ((ResourceData) resources)
                                     : ((List<ResourceData>) resources).get(0);
 
-        int sizeInBytes = resourceData.bytes.length;
+        int sizeInBytes = resourceData.getSize();
         if (handler != null) {
             handler.beforeDefineClass(name, sizeInBytes);
         }
 
-        Class<?> definedClass = defineClass(name, resourceData.bytes, 0, sizeInBytes);
+        ByteBuffer buffer = resourceData.getBuffer();
+        Class<?> definedClass = buffer != null
+                                ? defineClass(name, buffer, null)
+                                : defineClass(name, resourceData.getBytes(), 0, sizeInBytes);
+
+        if (handler != null) {
+            handler.afterDefineClass(name);
+        }
+
+        return definedClass;
+    }
+
+    private Class<?> defineClassFromFallback(String name, String internalName) throws ClassNotFoundException {
+        InputStream stream = fallbackResourceLoader.getResourceAsStream(internalName);
+        if (stream == null) return null;
+
+        byte[] bytes;
+        try {
+            try {
+                bytes = ClassPreloadingUtils.readFully(stream, -1);
+            }
+            finally {
+                stream.close();
+            }
+        }
+        catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+
+        if (handler != null) {
+            bytes = handler.instrument(internalName, bytes);
+            handler.beforeDefineClass(name, bytes.length);
+        }
+
+        Class<?> definedClass = defineClass(name, bytes, 0, bytes.length);
 
         if (handler != null) {
             handler.afterDefineClass(name);
@@ -151,8 +204,9 @@ public class MemoryBasedClassLoader extends ClassLoader {
         return Collections.enumeration(result);
     }
 
+    // Locked like loadClass, because findClass removes the resources of loaded classes, e.g. on the thread replaying the startup profile
     @Override
-    protected Enumeration<URL> findResources(String name) {
+    protected synchronized Enumeration<URL> findResources(String name) {
         Object resources = preloadedResources.get(name);
         if (resources == null) {
             return Collections.enumeration(Collections.<URL>emptyList());
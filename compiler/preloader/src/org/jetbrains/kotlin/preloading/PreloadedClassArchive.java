@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.preloading;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A single uncompressed file with the resources of several jars and an index of them. The file is mapped into memory,
+ * so that classes are defined directly from the mapped file, without inflating the jars and copying the classes to the heap.
+ *
+ * The archive remembers the paths, sizes and modification times of the jars it was created from, and is not used if any of them differ.
+ *
+ * Layout: magic, version, header size, header (jars, then name, jar index, offset and size of each resource), resource data.
+ */
+class PreloadedClassArchive {
+    private static final int MAGIC = 0x4B505243;
+    private static final int VERSION = 1;
+
+    private PreloadedClassArchive() {
+    }
+
+    /**
+     * A damaged archive is treated as out of date, so that it is written anew from the jars.
+     *
+     * @return the resources in the format of {@link ClassPreloadingUtils}, or null if the archive doesn't exist, is out of date or damaged
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> load(File archive, List<File> jarFiles, int classNumberEstimate) throws IOException {
+        if (!archive.isFile()) return null;
+
+        ByteBuffer buffer;
+        RandomAccessFile file = new RandomAccessFile(archive, "r");
+        try {
+            // The mapping stays valid after the file is closed
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        finally {
+            file.close();
+        }
+
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+        int headerSize = buffer.getInt();
+        if (headerSize < 0 || headerSize > buffer.remaining()) return null;
+        int dataStart = buffer.position() + headerSize;
+        int dataSize = buffer.limit() - dataStart;
+
+        byte[] headerBytes = new byte[headerSize];
+        buffer.get(headerBytes);
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+
+        try {
+            int jarCount = header.readInt();
+            if (jarCount != jarFiles.size()) return null;
+            for (File jarFile : jarFiles) {
+                if (!header.readUTF().equals(jarFile.getAbsolutePath()) ||
+                    header.readLong() != jarFile.length() ||
+                    header.readLong() != jarFile.lastModified()) {
+                    return null;
+                }
+            }
+
+            // 0.75 is HashMap.DEFAULT_LOAD_FACTOR
+            Map<String, Object> resources = new HashMap<String, Object>((int) (classNumberEstimate / 0.75));
+            int resourceCount = header.readInt();
+            for (int i = 0; i < resourceCount; i++) {
+                String name = header.readUTF();
+                int jarIndex = header.readInt();
+                int offset = header.readInt();
+                int size = header.readInt();
+                if (jarIndex < 0 || jarIndex >= jarCount || offset < 0 || size < 0 || (long) offset + size > dataSize) return null;
+
+                ByteBuffer data = buffer.duplicate();
+                data.position(dataStart + offset);
+                data.limit(dataStart + offset + size);
+                ResourceData resourceData = new ResourceData(jarFiles.get(jarIndex), name, data.slice());
+
+                Object previous = resources.get(name);
+                if (previous == null) {
+                    resources.put(name, resourceData);
+                }
+                else if (previous instanceof ResourceData) {
+                    List<ResourceData> list = new ArrayList<ResourceData>();
+                    list.add((ResourceData) previous);
+                    list.add(resourceData);
+                    resources.put(name, list);
+                }
+                else {
+                    ((ArrayList<ResourceData>) previous).add(resourceData);
+                }
+            }
+
+            return resources;
+        }
+        catch (EOFException e) {
+            // The header is truncated
+            return null;
+        }
+        catch (UTFDataFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the archive to a temporary file first, so that other processes never see an incomplete archive.
+     */
+    @SuppressWarnings("unchecked")
+    static void write(File archive, List<File> jarFiles, Map<String, Object> resources) throws IOException {
+        List<ResourceData> allResources = new ArrayList<ResourceData>(resources.size());
+        for (Object value : resources.values()) {
+            if (value instanceof ResourceData) {
+                allResources.add((ResourceData) value);
+            }
+            else {
+                allResources.addAll((ArrayList<ResourceData>) value);
+            }
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(jarFiles.size());
+        for (File jarFile : jarFiles) {
+            header.writeUTF(jarFile.getAbsolutePath());
+            header.writeLong(jarFile.length());
+            header.writeLong(jarFile.lastModified());
+        }
+        header.writeInt(allResources.size());
+        int offset = 0;
+        for (ResourceData resource : allResources) {
+            header.writeUTF(resource.resourceName);
+            header.writeInt(jarFiles.indexOf(resource.jarFile));
+            header.writeInt(offset);
+            header.writeInt(resource.getSize());
+            offset += resource.getSize();
+        }
+        header.close();
+
+        File parent = archive.getAbsoluteFile().getParentFile();
+        //noinspection ResultOfMethodCallIgnored
+        parent.mkdirs();
+        File temp = File.createTempFile(archive.getName(), ".tmp", parent);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(headerBytes.size());
+                headerBytes.writeTo(output);
+                for (ResourceData resource : allResources) {
+                    output.write(resource.getBytes());
+                }
+            }
+            finally {
+                output.close();
+            }
+
+            // Renaming over an existing file fails on Windows, and the old archive may be mapped by another process there
+            if (!temp.renameTo(archive) && !(archive.delete() && temp.renameTo(archive))) {
+                throw new IOException("Failed to move " + temp + " to " + archive);
+            }
+        }
+        finally {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+}
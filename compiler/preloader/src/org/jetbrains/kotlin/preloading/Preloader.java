@@ -18,7 +18,10 @@ package org.jetbrains.kotlin.preloading;
 
 import org.jetbrains.kotlin.preloading.instrumentation.Instrumenter;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -29,6 +32,10 @@ public class Preloader {
 
     public static final int PRELOADER_ARG_COUNT = 4;
     private static final String INSTRUMENT_PREFIX = "instrument=";
+    // Path to the archive of preloaded classes, which is created on the first start and mapped into memory on the next ones
+    public static final String ARCHIVE_PROPERTY = "kotlin.preloader.archive";
+    // Path to the startup profile, which is recorded if the file doesn't exist and replayed otherwise
+    public static final String PROFILE_PROPERTY = "kotlin.preloader.profile";
 
     public static void main(String[] args) throws Exception {
         if (args.length < PRELOADER_ARG_COUNT) {
@@ -60,11 +67,29 @@ public class Preloader {
         ClassLoader withInstrumenter = instrumentersClasspath.length > 0 ? new URLClassLoader(instrumentersClasspath, parent) : parent;
 
         final Handler handler = getHandler(mode, withInstrumenter);
-        ClassLoader preloaded = ClassPreloadingUtils.preloadClasses(files, classNumber, withInstrumenter, null, handler);
+        String archivePath = System.getProperty(ARCHIVE_PROPERTY);
+        File archive = archivePath != null && mode != Mode.INSTRUMENT ? new File(archivePath) : null;
+
+        String profilePath = System.getProperty(PROFILE_PROPERTY);
+        final File profileFile = profilePath != null ? new File(profilePath) : null;
+        // A profile recorded with other jars is recorded anew
+        StartupProfile profile = profileFile != null && profileFile.exists() ? StartupProfile.read(profileFile, files) : null;
+        final StartupProfile.Recorder recorder =
+                profileFile != null && profile == null ? new StartupProfile.Recorder(handler, files, startTime) : null;
+
+        ClassLoader preloaded = ClassPreloadingUtils.preloadClasses(
+                files, classNumber, withInstrumenter, null, recorder != null ? recorder : handler, archive,
+                profile != null ? profile.getClassesToPreload() : null
+        );
+        if (profile != null) {
+            profile.startLoading(preloaded);
+        }
 
         Class<?> mainClass = preloaded.loadClass(mainClassCanonicalName);
         Method mainMethod = mainClass.getMethod("main", String[].class);
 
+        final long mainStartTime = System.nanoTime();
+
         Runtime.getRuntime().addShutdownHook(
                 new Thread(new Runnable() {
                     @Override
@@ -72,10 +97,24 @@ public class Preloader {
                         if (mode != Mode.NO_TIME) {
                             System.out.println();
                             System.out.println("=== Preloader's measurements: ");
+                            System.out.format("Time to main: %.3fs\n", (mainStartTime - startTime) / 1e9);
                             long dt = System.nanoTime() - startTime;
                             System.out.format("Total time: %.3fs\n", dt / 1e9);
+                            String peakRss = getPeakResidentSetSize();
+                            if (peakRss != null) {
+                                System.out.println("Peak RSS: " + peakRss);
+                            }
                         }
                         handler.done();
+
+                        if (recorder != null) {
+                            try {
+                                recorder.write(profileFile);
+                            }
+                            catch (IOException e) {
+                                System.err.println("PRELOADER WARNING: Failed to write the startup profile: " + e);
+                            }
+                        }
                     }
                 })
         );
@@ -83,6 +122,28 @@ public class Preloader {
         mainMethod.invoke(0, new Object[] {Arrays.copyOfRange(args, PRELOADER_ARG_COUNT, args.length)});
     }
 
+    // Only available on Linux
+    private static String getPeakResidentSetSize() {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmHWM:")) {
+                        return line.substring("VmHWM:".length()).trim();
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (IOException e) {
+            // Ignore
+        }
+        return null;
+    }
+
     private static URL[] parseInstrumentersClasspath(Mode mode, String modeStr)
             throws MalformedURLException {
         URL[] instrumentersClasspath;
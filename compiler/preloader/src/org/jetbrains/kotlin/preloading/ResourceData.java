@@ -24,16 +24,46 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
 
 public final class ResourceData {
     public final File jarFile;
     public final String resourceName;
-    public final byte[] bytes;
+    // Exactly one of these is not null: the bytes read from a jar or a part of a mapped archive
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
 
     public ResourceData(File jarFile, String resourceName, byte[] bytes) {
         this.jarFile = jarFile;
         this.resourceName = resourceName;
         this.bytes = bytes;
+        this.buffer = null;
+    }
+
+    public ResourceData(File jarFile, String resourceName, ByteBuffer buffer) {
+        this.jarFile = jarFile;
+        this.resourceName = resourceName;
+        this.bytes = null;
+        this.buffer = buffer;
+    }
+
+    public int getSize() {
+        return bytes != null ? bytes.length : buffer.remaining();
+    }
+
+    public byte[] getBytes() {
+        if (bytes != null) return bytes;
+
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    /**
+     * @return the buffer to define a class from without copying it to the heap, or null if the resource was read from a jar
+     */
+    public ByteBuffer getBuffer() {
+        return buffer != null ? buffer.duplicate() : null;
     }
 
     public URL getURL() {
@@ -48,7 +78,7 @@ public final class ResourceData {
 
                         @Override
                         public InputStream getInputStream() throws IOException {
-                            return new ByteArrayInputStream(bytes);
+                            return new ByteArrayInputStream(getBytes());
                         }
                     };
                 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.preloading;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The classes defined during a run of the compiler, in the order of their first use.
+ *
+ * A recorded profile lists a class per line: its name, the time of its first use since the start and the time spent defining it
+ * (including the classes it caused to be defined), both in microseconds. When the profile is replayed, only the classes listed in it
+ * are preloaded, and they are loaded in that order on a background thread while the main thread runs the compiler.
+ *
+ * The class lines are preceded by a line per jar of the classpath the profile was recorded with: "#", the size, the modification time
+ * and the path of the jar. A profile recorded with other jars is not used.
+ */
+public class StartupProfile {
+    private static final String JAR_PREFIX = "#";
+
+    private final List<String> classNames;
+
+    private StartupProfile(List<String> classNames) {
+        this.classNames = classNames;
+    }
+
+    private static String jarStamp(File jarFile) {
+        return JAR_PREFIX + " " + jarFile.length() + " " + jarFile.lastModified() + " " + jarFile.getAbsolutePath();
+    }
+
+    List<String> getClassNames() {
+        return classNames;
+    }
+
+    /**
+     * @return the profile, or null if it was recorded with other jars
+     */
+    public static StartupProfile read(File file, List<File> jarFiles) throws IOException {
+        List<String> classNames = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for (File jarFile : jarFiles) {
+                if (!jarStamp(jarFile).equals(reader.readLine())) return null;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(JAR_PREFIX)) return null;
+                int end = line.indexOf(' ');
+                String name = end < 0 ? line : line.substring(0, end);
+                if (!name.isEmpty()) {
+                    classNames.add(name);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return new StartupProfile(classNames);
+    }
+
+    public ClassCondition getClassesToPreload() {
+        final Set<String> names = new HashSet<String>(classNames);
+        return new ClassCondition() {
+            @Override
+            public boolean accept(String className) {
+                return names.contains(className);
+            }
+        };
+    }
+
+    public void startLoading(final ClassLoader classLoader) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (String name : classNames) {
+                    try {
+                        Class.forName(name, false, classLoader);
+                    }
+                    catch (Throwable e) {
+                        // The class may be gone after the compiler has changed, it's not needed then
+                    }
+                }
+            }
+        }, "Preloader startup profile");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Records a profile while passing all events to the given handler.
+     */
+    public static class Recorder extends ClassHandler {
+        private final ClassHandler delegate;
+        private final List<File> jarFiles;
+        private final long startTime;
+        private final List<String> names = new ArrayList<String>();
+        private final List<Long> firstUseTimes = new ArrayList<Long>();
+        private final List<Long> defineTimes = new ArrayList<Long>();
+        // Defining a class loads its superclasses, so definitions are nested
+        private final Deque<Integer> definitionsInProgress = new ArrayDeque<Integer>();
+
+        public Recorder(ClassHandler delegate, List<File> jarFiles, long startTime) {
+            this.delegate = delegate;
+            this.jarFiles = new ArrayList<File>(jarFiles);
+            this.startTime = startTime;
+        }
+
+        @Override
+        public byte[] instrument(String resourceName, byte[] data) {
+            return delegate.instrument(resourceName, data);
+        }
+
+        @Override
+        public synchronized void beforeDefineClass(String name, int sizeInBytes) {
+            definitionsInProgress.push(names.size());
+            names.add(name);
+            firstUseTimes.add(System.nanoTime());
+            defineTimes.add(0L);
+            delegate.beforeDefineClass(name, sizeInBytes);
+        }
+
+        @Override
+        public synchronized void afterDefineClass(String name) {
+            delegate.afterDefineClass(name);
+            Integer index = definitionsInProgress.poll();
+            if (index != null) {
+                defineTimes.set(index, System.nanoTime() - firstUseTimes.get(index));
+            }
+        }
+
+        @Override
+        public void beforeLoadJar(File jarFile) {
+            delegate.beforeLoadJar(jarFile);
+        }
+
+        @Override
+        public void afterLoadJar(File jarFile) {
+            delegate.afterLoadJar(jarFile);
+        }
+
+        public synchronized void write(File file) throws IOException {
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+            try {
+                for (File jarFile : jarFiles) {
+                    writer.println(jarStamp(jarFile));
+                }
+                for (int i = 0; i < names.size(); i++) {
+                    writer.println(names.get(i) + " " + (firstUseTimes.get(i) - startTime) / 1000 + " " + defineTimes.get(i) / 1000);
+                }
+            }
+            finally {
+                writer.close();
+            }
+        }
+    }
+}
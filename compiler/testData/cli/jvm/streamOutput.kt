@@ -0,0 +1,12 @@
+package test
+
+class A(val x: Int)
+
+inline fun <T> call(f: () -> T): T = f()
+
+fun main(args: Array<String>) {
+    val o = object {
+        fun foo() = 42
+    }
+    println(call { A(o.foo()).x })
+}
@@ -0,0 +1,18 @@
+package test
+
+inline fun <T> withPrefix(prefix: String, inlineOptions(InlineOption.ONLY_LOCAL_RETURN) f: (String) -> T): () -> T {
+    val separator = ":"
+    return { f(prefix + separator) }
+}
+
+inline fun counter(start: Int, inlineOptions(InlineOption.ONLY_LOCAL_RETURN) step: () -> Int): Iterator<Int> {
+    var current = start
+    return object : Iterator<Int> {
+        override fun hasNext() = current < start + 10
+        override fun next(): Int {
+            val result = current
+            current += step()
+            return result
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package a
+
+import test.*
+
+fun a1(x: String) = withPrefix("a1") { it + x }()
+fun a2(x: Int) = withPrefix("a2") { it + x * 2 }()
+fun a3(step: Int): Int {
+    var sum = 0
+    for (i in counter(step) { step }) sum += i
+    return sum
+}
@@ -0,0 +1,11 @@
+package b
+
+import test.*
+
+fun b1(y: String) = withPrefix(y) { it.length() }()
+fun b2(y: Long) = withPrefix("b2") { "$it$y" }()
+fun b3(start: Int, step: Int): List<Int> {
+    val result = arrayListOf<Int>()
+    for (i in counter(start) { step + 1 }) result.add(i)
+    return result
+}
@@ -145,6 +145,24 @@ public class KotlincExecutableTestGenerated extends AbstractKotlincExecutableTes
             doJvmTest(fileName);
         }
 
+        @TestMetadata("streamOutputSignatureClash.args")
+        public void testStreamOutputSignatureClash() throws Exception {
+            String fileName = JetTestUtils.navigationMetadata("compiler/testData/cli/jvm/streamOutputSignatureClash.args");
+            doJvmTest(fileName);
+        }
+
+        @TestMetadata("streamOutputToDirectory.args")
+        public void testStreamOutputToDirectory() throws Exception {
+            String fileName = JetTestUtils.navigationMetadata("compiler/testData/cli/jvm/streamOutputToDirectory.args");
+            doJvmTest(fileName);
+        }
+
+        @TestMetadata("streamOutputToJar.args")
+        public void testStreamOutputToJar() throws Exception {
+            String fileName = JetTestUtils.navigationMetadata("compiler/testData/cli/jvm/streamOutputToJar.args");
+            doJvmTest(fileName);
+        }
+
         @TestMetadata("suppressAllWarningsJvm.args")
         public void testSuppressAllWarningsJvm() throws Exception {
             String fileName = JetTestUtils.navigationMetadata("compiler/testData/cli/jvm/suppressAllWarningsJvm.args");
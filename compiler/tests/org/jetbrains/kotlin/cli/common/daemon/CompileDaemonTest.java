@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.common.daemon;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.test.JetTestUtils;
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompileDaemonTest extends TestCaseWithTmpdir {
+    private static final long START_TIMEOUT_MS = 30 * 1000;
+
+    private CompileDaemon daemon;
+    private Thread daemonThread;
+    private File portFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        portFile = new File(tmpdir, "daemon.port");
+        daemon = new CompileDaemon(portFile);
+        daemonThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    daemon.run();
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, "Compile daemon");
+        daemonThread.setDaemon(true);
+        daemonThread.start();
+
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+        while (!portFile.isFile()) {
+            assertTrue("Daemon hasn't started", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        daemon.stop();
+        daemonThread.join(START_TIMEOUT_MS);
+        KotlinCoreEnvironment.Companion.setKeepApplicationEnvironment(false);
+        super.tearDown();
+    }
+
+    public void testCompile() {
+        File outputDir = new File(tmpdir, "out");
+        List<String> messages = new ArrayList<String>();
+        ExitCode exitCode = CompileDaemonClient.compile(portFile, K2JVMCompiler.class.getName(), arguments(outputDir), collector(messages));
+
+        assertEquals(messages.toString(), ExitCode.OK, exitCode);
+        assertTrue(new File(outputDir, "_DefaultPackage.class").isFile());
+    }
+
+    public void testCompileTwice() {
+        for (int i = 0; i < 2; i++) {
+            File outputDir = new File(tmpdir, "out" + i);
+            List<String> messages = new ArrayList<String>();
+            ExitCode exitCode = CompileDaemonClient.compile(portFile, K2JVMCompiler.class.getName(), arguments(outputDir), collector(messages));
+            assertEquals(messages.toString(), ExitCode.OK, exitCode);
+        }
+    }
+
+    public void testWrongTokenIsRejected() throws IOException {
+        String[] parts = FileUtil.loadFile(portFile).trim().split(" ");
+        String token = parts[1];
+        char lastChar = token.charAt(token.length() - 1);
+        String wrongToken = token.substring(0, token.length() - 1) + (lastChar == '0' ? '1' : '0');
+        File wrongPortFile = new File(tmpdir, "wrong.port");
+        FileUtil.writeToFile(wrongPortFile, parts[0] + " " + wrongToken);
+
+        File outputDir = new File(tmpdir, "rejected");
+        List<String> messages = new ArrayList<String>();
+        assertNull(CompileDaemonClient.compile(wrongPortFile, K2JVMCompiler.class.getName(), arguments(outputDir), collector(messages)));
+        assertEmpty(messages);
+        assertFalse(outputDir.exists());
+
+        // The daemon must still serve valid requests
+        assertEquals(ExitCode.OK, CompileDaemonClient.compile(portFile, K2JVMCompiler.class.getName(), arguments(outputDir), collector(messages)));
+    }
+
+    public void testUnknownCompilerIsRejected() {
+        List<String> messages = new ArrayList<String>();
+        assertNull(CompileDaemonClient.compile(portFile, "UnknownCompiler", arguments(new File(tmpdir, "out")), collector(messages)));
+    }
+
+    @NotNull
+    private static List<String> arguments(@NotNull File outputDir) {
+        File source = new File(JetTestUtils.getTestDataPathBase() + "/cli/jvm/simple.kt");
+        return Arrays.asList(source.getAbsolutePath(), "-d", outputDir.getAbsolutePath());
+    }
+
+    @NotNull
+    private static MessageCollector collector(@NotNull final List<String> messages) {
+        return new MessageCollector() {
+            @Override
+            public void report(@NotNull CompilerMessageSeverity severity, @NotNull String message, @NotNull CompilerMessageLocation location) {
+                if (CompilerMessageSeverity.ERRORS.contains(severity)) {
+                    messages.add(severity + ": " + message);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm
+
+import com.intellij.core.CoreJarFileSystem
+import com.intellij.core.CoreLocalFileSystem
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.vfs.VirtualFile
+import junit.framework.TestCase
+import org.jetbrains.kotlin.cli.jvm.compiler.JavaRoot
+import org.jetbrains.kotlin.cli.jvm.compiler.JvmDependenciesIndex
+import org.jetbrains.kotlin.cli.jvm.compiler.JvmPackageTable
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.name.FqName
+import java.io.File
+import java.io.FileOutputStream
+import java.util.ArrayList
+import java.util.Arrays
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+public class JvmPackageTableTest : TestCase() {
+    private var tmpDir: File? = null
+
+    override fun setUp() {
+        super.setUp()
+        tmpDir = FileUtil.createTempDirectory("jvmPackageTable", null)
+    }
+
+    override fun tearDown() {
+        FileUtil.delete(tmpDir!!)
+        super.tearDown()
+    }
+
+    public fun testPackagesOfRoots() {
+        val table = JvmPackageTable.build(createRoots(), 2, null)
+        assertRoots(table, "", 0, 1)
+        assertRoots(table, "a", 0, 1)
+        assertRoots(table, "a/b", 0)
+        assertRoots(table, "d", 1)
+        assertNull(table.rootsContaining("a/b/c"))
+        assertNull(table.rootsContaining("b"))
+    }
+
+    public fun testCachedPackagesOfJar() {
+        val cacheDir = File(tmpDir, "cache")
+        val roots = createRoots()
+        JvmPackageTable.build(roots, 2, cacheDir)
+        val cacheFiles = cacheDir.listFiles()!!
+        assertEquals(1, cacheFiles.size())
+        assertTrue(cacheFiles[0].getName().startsWith("lib.jar-"))
+
+        val table = JvmPackageTable.build(roots, 1, cacheDir)
+        assertRoots(table, "a", 0, 1)
+        assertRoots(table, "d", 1)
+        assertEquals(1, cacheDir.listFiles()!!.size())
+    }
+
+    public fun testJarChanged() {
+        val cacheDir = File(tmpDir, "cache")
+        val jar = File(tmpDir, "lib.jar")
+        JvmPackageTable.build(createRoots(), 2, cacheDir)
+        val lastModified = jar.lastModified()
+
+        // the same number of entries with names of the same length keep the size of the jar, only its time stamp differs
+        var roots = createRoots(listOf("x/", "x/y/", "x/y/C.class", "z/", "z/E.class"))
+        assertTrue(jar.setLastModified(lastModified + 2000))
+        var table = JvmPackageTable.build(roots, 2, cacheDir)
+        assertRoots(table, "x/y", 1)
+        assertRoots(table, "z", 1)
+        assertNull(table.rootsContaining("d"))
+
+        // only the size differs
+        roots = createRoots(listOf("d/", "d/E.class"))
+        assertTrue(jar.setLastModified(lastModified + 2000))
+        table = JvmPackageTable.build(roots, 2, cacheDir)
+        assertRoots(table, "d", 1)
+        assertNull(table.rootsContaining("x"))
+
+        assertEquals(1, cacheDir.listFiles()!!.size())
+    }
+
+    public fun testJarsWithSameNameInDifferentDirectories() {
+        val cacheDir = File(tmpDir, "cache")
+        val otherJar = File(tmpDir, "other/lib.jar")
+        writeJar(otherJar, listOf("f/", "f/G.class"))
+        val roots = createRoots() + listOf(JavaRoot(CoreJarFileSystem().findFileByPath(otherJar.getPath() + "!/")!!, JavaRoot.RootType.BINARY))
+
+        JvmPackageTable.build(roots, 2, cacheDir)
+        assertEquals(2, cacheDir.listFiles()!!.size())
+
+        val table = JvmPackageTable.build(roots, 2, cacheDir)
+        assertRoots(table, "d", 1)
+        assertRoots(table, "f", 2)
+        assertNull(table.rootsContaining("f/G"))
+    }
+
+    public fun testDamagedCacheFile() {
+        val cacheDir = File(tmpDir, "cache")
+        val roots = createRoots()
+        JvmPackageTable.build(roots, 2, cacheDir)
+
+        val cacheFile = cacheDir.listFiles()!!.single()
+        val bytes = cacheFile.readBytes()
+        cacheFile.writeBytes(bytes.copyOf(bytes.size() - 3))
+
+        val table = JvmPackageTable.build(roots, 1, cacheDir)
+        assertRoots(table, "a/b", 0)
+        assertRoots(table, "d", 1)
+        // the damaged file is rewritten
+        assertTrue(Arrays.equals(bytes, cacheFile.readBytes()))
+    }
+
+    public fun testIndexSearch() {
+        val cacheDir = File(tmpDir, "cache")
+        val roots = createRoots()
+
+        val withoutTable = search(JvmDependenciesIndex(roots, cacheDir))
+        System.setProperty(JvmPackageTable.THREADS_PROPERTY, "2")
+        try {
+            // the second time the packages of the jar are read from the cache
+            for (i in 1..2) {
+                assertEquals(withoutTable, search(JvmDependenciesIndex(roots, cacheDir)))
+            }
+            assertEquals(1, cacheDir.listFiles()!!.size())
+        }
+        finally {
+            System.clearProperty(JvmPackageTable.THREADS_PROPERTY)
+        }
+
+        assertEquals(
+                listOf("a/b/C.class in lib.jar", "a/A.java in src", "d/E.class in lib.jar", "a: [src, lib.jar]", "a/b: [lib.jar]", "b: []"),
+                withoutTable
+        )
+    }
+
+    private fun search(index: JvmDependenciesIndex): List<String> {
+        val result = ArrayList<String>()
+        for ((fqName, file) in listOf("a.b.C" to "C.class", "a.A" to "A.java", "d.E" to "E.class", "d.F" to "F.class")) {
+            val classId = ClassId.topLevel(FqName(fqName))
+            val found = index.findClass(classId) { dir, rootType -> dir.findChild(file) }
+            if (found != null) {
+                result.add("${fqName.replace('.', '/')}${file.substring(file.indexOf('.'))} in ${rootName(found)}")
+            }
+        }
+        for (packageName in listOf("a", "a.b", "b")) {
+            val dirs = ArrayList<String>()
+            index.traverseDirectoriesInPackage(FqName(packageName)) { dir, rootType ->
+                dirs.add(rootName(dir))
+                true
+            }
+            result.add("${packageName.replace('.', '/')}: $dirs")
+        }
+        return result
+    }
+
+    private fun rootName(file: VirtualFile): String {
+        val path = file.getPath()
+        val jarSeparator = path.indexOf("!/")
+        // the only root which is not a jar is the source root
+        return if (jarSeparator >= 0) File(path.substring(0, jarSeparator)).getName() else "src"
+    }
+
+    private fun createRoots(jarEntries: List<String> = listOf("a/", "a/b/", "a/b/C.class", "d/", "d/E.class")): List<JavaRoot> {
+        val sources = File(tmpDir, "src")
+        FileUtil.writeToFile(File(sources, "a/A.java"), "package a; class A {}")
+
+        val jar = File(tmpDir, "lib.jar")
+        writeJar(jar, jarEntries)
+
+        return listOf(
+                JavaRoot(CoreLocalFileSystem().findFileByPath(sources.getPath())!!, JavaRoot.RootType.SOURCE),
+                JavaRoot(CoreJarFileSystem().findFileByPath(jar.getPath() + "!/")!!, JavaRoot.RootType.BINARY)
+        )
+    }
+
+    private fun writeJar(jar: File, entries: List<String>) {
+        FileUtil.createParentDirs(jar)
+        val output = JarOutputStream(FileOutputStream(jar))
+        try {
+            for (name in entries) {
+                output.putNextEntry(JarEntry(name))
+            }
+        }
+        finally {
+            output.close()
+        }
+    }
+
+    private fun assertRoots(table: JvmPackageTable, packagePath: String, vararg expected: Int) {
+        val roots = table.rootsContaining(packagePath)
+        assertNotNull("No roots for '$packagePath'", roots)
+        assertEquals(expected.toList(), (0..roots!!.length() - 1).filter { roots[it] })
+    }
+}
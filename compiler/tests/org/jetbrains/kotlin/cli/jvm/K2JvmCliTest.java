@@ -16,6 +16,10 @@
 
 package org.jetbrains.kotlin.cli.jvm;
 
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.common.ExitCode;
 import org.jetbrains.kotlin.load.kotlin.PackageClassUtils;
 import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.cli.CliBaseTest;
@@ -23,8 +27,14 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
 
 public class K2JvmCliTest extends CliBaseTest {
+    private static final FqName TEST_PACKAGE = new FqName("test");
+
     @Test
     public void wrongKotlinSignature() throws Exception {
         executeCompilerCompareOutputJVM();
@@ -71,4 +81,73 @@ public class K2JvmCliTest extends CliBaseTest {
     public void warningsInDummy() throws Exception {
         executeCompilerCompareOutputJVM();
     }
+
+    @Test
+    public void streamOutputToDirectory() throws Exception {
+        executeCompilerCompareOutputJVM();
+
+        File outputDir = tmpdir.getTmpDir();
+        Assert.assertTrue(new File(outputDir, "test/A.class").isFile());
+        Assert.assertTrue(new File(outputDir, "test/" + PackageClassUtils.getPackageClassName(TEST_PACKAGE) + ".class").isFile());
+        assertNoTemporaryFiles(outputDir);
+    }
+
+    @Test
+    public void streamOutputToJar() throws Exception {
+        executeCompilerCompareOutputJVM();
+
+        File jarPath = new File(tmpdir.getTmpDir(), "streamOutput.jar");
+        JarFile jar = new JarFile(jarPath);
+        try {
+            Assert.assertEquals(PackageClassUtils.getPackageClassFqName(TEST_PACKAGE).asString(),
+                                jar.getManifest().getMainAttributes().getValue("Main-Class"));
+            Assert.assertNotNull(jar.getEntry("test/A.class"));
+        }
+        finally {
+            jar.close();
+        }
+        Assert.assertEquals(Collections.singletonList(jarPath), Arrays.asList(tmpdir.getTmpDir().listFiles()));
+    }
+
+    @Test
+    public void streamOutputSignatureClash() throws Exception {
+        executeCompilerCompareOutputJVM();
+
+        // The class files written before the errors were reported don't get to the destination
+        Assert.assertEquals(Collections.<File>emptyList(), FileUtil.findFilesByMask(Pattern.compile(".*"), tmpdir.getTmpDir()));
+    }
+
+    @Test
+    public void streamOutputModules() throws Exception {
+        File first = new File(tmpdir.getTmpDir(), "first");
+        File second = new File(tmpdir.getTmpDir(), "second");
+        File testData = new File(JVM_TEST_DATA).getAbsoluteFile();
+        File moduleXml = new File(tmpdir.getTmpDir(), "modules.xml");
+        FileUtil.writeToFile(moduleXml,
+                             "<modules>\n" +
+                             "    <module name=\"first\" outputDir=\"" + first + "\">\n" +
+                             "        <sources path=\"" + new File(testData, "streamOutput.kt") + "\"/>\n" +
+                             "    </module>\n" +
+                             "    <module name=\"second\" outputDir=\"" + second + "\">\n" +
+                             "        <sources path=\"" + new File(testData, "simple.kt") + "\"/>\n" +
+                             "    </module>\n" +
+                             "</modules>\n");
+
+        Pair<String, ExitCode> outputAndExitCode = executeCompilerGrabOutput(
+                new K2JVMCompiler(), Arrays.asList("-module", moduleXml.getPath(), "-Xstream-output")
+        );
+        Assert.assertEquals(outputAndExitCode.first, ExitCode.OK, outputAndExitCode.second);
+
+        Assert.assertTrue(new File(first, "test/A.class").isFile());
+        Assert.assertTrue(new File(second, PackageClassUtils.getPackageClassName(FqName.ROOT) + ".class").isFile());
+        Assert.assertFalse(new File(first, PackageClassUtils.getPackageClassName(FqName.ROOT) + ".class").exists());
+        assertNoTemporaryFiles(first);
+        assertNoTemporaryFiles(second);
+    }
+
+    private static void assertNoTemporaryFiles(@NotNull File outputDir) {
+        for (File file : outputDir.listFiles()) {
+            Assert.assertFalse(file.getPath(), file.getName().startsWith(".kotlin-output"));
+        }
+    }
 }
@@ -25,6 +25,7 @@ import junit.framework.TestCase
 import org.intellij.lang.annotations.Language
 import org.jetbrains.kotlin.cli.jvm.compiler.JavaRoot
 import org.jetbrains.kotlin.cli.jvm.compiler.JvmDependenciesIndex
+import org.jetbrains.kotlin.cli.jvm.compiler.JvmPackageTable
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCliJavaFileManagerImpl
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
@@ -138,6 +139,38 @@ public class KotlinCliJavaFileManagerTest : PsiTestCase() {
         TestCase.assertNull("Should not find class in empty scope", manager.findClass("foo.Test", GlobalSearchScope.EMPTY_SCOPE))
     }
 
+    public fun testFindClassesInBatch() {
+        doTestFindClassesInBatch()
+    }
+
+    // the files are looked up on a pool of the size set at the time of the lookup, PSI is built on the calling thread anyway
+    public fun testFindClassesInBatchOnThreadPool() {
+        try {
+            for (threads in listOf("2", "3", "0", "1")) {
+                System.setProperty(JvmPackageTable.THREADS_PROPERTY, threads)
+                doTestFindClassesInBatch()
+            }
+        }
+        finally {
+            System.clearProperty(JvmPackageTable.THREADS_PROPERTY)
+        }
+    }
+
+    private fun doTestFindClassesInBatch() {
+        val manager = configureManager("package foo;\n\n" + "public class TopLevel {\n" + "public class Inner {}\n" + "}", "TopLevel")
+
+        val topLevel = ClassId(FqName("foo"), FqName("TopLevel"), false)
+        val inner = ClassId(FqName("foo"), FqName("TopLevel.Inner"), false)
+        val missingInner = ClassId(FqName("foo"), FqName("TopLevel.Missing"), false)
+        val missing = ClassId(FqName("foo"), FqName("Missing"), false)
+        val inOtherPackage = ClassId(FqName("bar"), FqName("TopLevel"), false)
+
+        val found = manager.findClasses(listOf(topLevel, inner, missingInner, missing, inOtherPackage), GlobalSearchScope.allScope(getProject()))
+        TestCase.assertEquals(setOf(topLevel, inner), found.keySet())
+        TestCase.assertEquals("foo.TopLevel", found[topLevel]!!.getQualifiedName())
+        TestCase.assertEquals("foo.TopLevel.Inner", found[inner]!!.getQualifiedName())
+    }
+
     private fun configureManager(Language("JAVA") text: String, className: String): KotlinCliJavaFileManagerImpl {
         val root = PsiTestUtil.createTestProjectStructure(myProject, myModule, PlatformTestCase.myFilesToDelete)
         val pkg = root.createChildDirectory(this, "foo")
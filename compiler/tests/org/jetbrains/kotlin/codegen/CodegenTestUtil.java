@@ -22,6 +22,7 @@ import kotlin.KotlinPackage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.backend.common.output.OutputFileSink;
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
 import org.jetbrains.kotlin.cli.jvm.config.JVMConfigurationKeys;
 import org.jetbrains.kotlin.codegen.forTestCompile.ForTestCompileRuntime;
@@ -50,6 +51,15 @@ public class CodegenTestUtil {
 
     @NotNull
     public static ClassFileFactory generateFiles(@NotNull KotlinCoreEnvironment environment, @NotNull CodegenTestFiles files) {
+        return generateFiles(environment, files, null);
+    }
+
+    @NotNull
+    public static ClassFileFactory generateFiles(
+            @NotNull KotlinCoreEnvironment environment,
+            @NotNull CodegenTestFiles files,
+            @Nullable OutputFileSink outputSink
+    ) {
         AnalysisResult analysisResult = JvmResolveUtil.analyzeFilesWithJavaIntegrationAndCheckForErrors(
                 environment.getProject(),
                 files.getPsiFiles()
@@ -71,6 +81,9 @@ public class CodegenTestUtil {
                 forExtraDiagnostics,
                 null
         );
+        state.setParallelCodegenThreads(configuration.get(JVMConfigurationKeys.PARALLEL_CODEGEN_THREADS, 0));
+        state.setMethodOptimizationThreads(configuration.get(JVMConfigurationKeys.METHOD_OPTIMIZATION_THREADS, 0));
+        state.getFactory().setOutputSink(outputSink);
         KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
 
         // For JVM-specific errors
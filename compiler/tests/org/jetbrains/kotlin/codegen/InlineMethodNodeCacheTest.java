@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.inline.InlineCodegenUtil;
+import org.jetbrains.kotlin.codegen.inline.InlineMethodNodeCache;
+import org.jetbrains.kotlin.codegen.inline.SMAPAndMethodNode;
+import org.jetbrains.kotlin.name.ClassId;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.org.objectweb.asm.ClassWriter;
+import org.jetbrains.org.objectweb.asm.Label;
+import org.jetbrains.org.objectweb.asm.MethodVisitor;
+import org.jetbrains.org.objectweb.asm.tree.InsnNode;
+
+import static org.jetbrains.org.objectweb.asm.Opcodes.*;
+
+public class InlineMethodNodeCacheTest extends TestCase {
+    public void testCallSitesGetIndependentCopies() {
+        VirtualFile file = createClassFile();
+        ClassId classId = ClassId.topLevel(new FqName("test.Foo"));
+
+        InlineMethodNodeCache cache = new InlineMethodNodeCache();
+        SMAPAndMethodNode first = cache.getMethodNode(file, "foo", "()I", classId);
+        SMAPAndMethodNode second = cache.getMethodNode(file, "foo", "()I", classId);
+        assertNotNull(first);
+        assertNotNull(second);
+
+        assertNotSame(first.getNode(), second.getNode());
+        assertEquals(InlineCodegenUtil.getNodeText(first.getNode()), InlineCodegenUtil.getNodeText(second.getNode()));
+        assertSame(first.getClassSMAP(), second.getClassSMAP());
+        assertEquals(1, second.getLineNumbers().size());
+
+        String text = InlineCodegenUtil.getNodeText(second.getNode());
+        first.getNode().instructions.insert(new InsnNode(NOP));
+        SMAPAndMethodNode third = cache.getMethodNode(file, "foo", "()I", classId);
+        assertNotNull(third);
+        assertEquals(text, InlineCodegenUtil.getNodeText(third.getNode()));
+    }
+
+    public void testMissingMethod() {
+        assertNull(new InlineMethodNodeCache().getMethodNode(createClassFile(), "bar", "()I", ClassId.topLevel(new FqName("test.Foo"))));
+    }
+
+    private static VirtualFile createClassFile() {
+        final byte[] bytes = generateClass();
+        return new LightVirtualFile("Foo.class") {
+            @NotNull
+            @Override
+            public byte[] contentsToByteArray() {
+                return bytes;
+            }
+        };
+    }
+
+    private static byte[] generateClass() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_6, ACC_PUBLIC, "test/Foo", null, "java/lang/Object", null);
+        cw.visitSource("Foo.kt", null);
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "foo", "()I", null, null);
+        mv.visitCode();
+        Label label = new Label();
+        mv.visitLabel(label);
+        mv.visitLineNumber(1, label);
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
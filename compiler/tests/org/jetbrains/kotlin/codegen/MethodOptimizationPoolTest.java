@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen;
+
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.MethodOptimizationPool;
+import org.jetbrains.kotlin.codegen.optimization.OptimizationClassBuilder;
+import org.jetbrains.kotlin.codegen.optimization.OptimizationMethodVisitor;
+import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
+import org.jetbrains.org.objectweb.asm.ClassReader;
+import org.jetbrains.org.objectweb.asm.MethodVisitor;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+import org.jetbrains.org.objectweb.asm.tree.ClassNode;
+import org.jetbrains.org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MethodOptimizationPoolTest extends TestCase {
+    private static final int METHOD_COUNT = 20;
+
+    private MethodOptimizationPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        pool = new MethodOptimizationPool(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.shutdown();
+        super.tearDown();
+    }
+
+    public void testMethodsAreWrittenInGenerationOrder() {
+        ClassBuilder delegate = ClassBuilderFactories.TEST.newClassBuilder(JvmDeclarationOrigin.NO_ORIGIN);
+        OptimizationClassBuilder builder = new OptimizationClassBuilder(delegate, false, pool);
+        defineClass(builder);
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < METHOD_COUNT; i++) {
+            // Earlier methods are longer, so their transformations are likely to finish after the following ones
+            String name = "m" + i;
+            generateSum(builder, name, (METHOD_COUNT - i) * 100);
+            expected.add(name);
+        }
+        builder.done();
+
+        List<String> actual = new ArrayList<String>();
+        for (MethodNode method : readMethods(delegate)) {
+            actual.add(method.name);
+        }
+        assertEquals(expected, actual);
+        assertEquals(ClassBuilderFactories.TEST.asText(delegate), generateSerially());
+    }
+
+    public void testWorkerExceptionIsRethrownWhenClassIsDone() {
+        ClassBuilder delegate = ClassBuilderFactories.TEST.newClassBuilder(JvmDeclarationOrigin.NO_ORIGIN);
+        OptimizationClassBuilder builder = new OptimizationClassBuilder(delegate, false, pool);
+        defineClass(builder);
+
+        generateSum(builder, "before", 10);
+
+        // Stack underflow, the analyzer fails on it in the transformation
+        MethodVisitor broken = builder.newMethod(JvmDeclarationOrigin.NO_ORIGIN, Opcodes.ACC_STATIC, "broken", "()I", null, null);
+        broken.visitCode();
+        broken.visitInsn(Opcodes.POP);
+        broken.visitInsn(Opcodes.ICONST_0);
+        broken.visitInsn(Opcodes.IRETURN);
+        broken.visitMaxs(-1, -1);
+        broken.visitEnd();
+
+        // Rendering waits for the transformation instead of reading the method concurrently with it
+        assertNotNull(((OptimizationMethodVisitor) broken).getTraceMethodVisitorIfPossible());
+
+        try {
+            builder.done();
+            fail("The exception of the transformation should be rethrown");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("broken()I"));
+            assertNotNull(e.getCause());
+        }
+    }
+
+    @NotNull
+    private static String generateSerially() {
+        ClassBuilder delegate = ClassBuilderFactories.TEST.newClassBuilder(JvmDeclarationOrigin.NO_ORIGIN);
+        OptimizationClassBuilder builder = new OptimizationClassBuilder(delegate, false);
+        defineClass(builder);
+        for (int i = 0; i < METHOD_COUNT; i++) {
+            generateSum(builder, "m" + i, (METHOD_COUNT - i) * 100);
+        }
+        builder.done();
+        return ClassBuilderFactories.TEST.asText(delegate);
+    }
+
+    private static void defineClass(@NotNull ClassBuilder builder) {
+        builder.defineClass(null, Opcodes.V1_6, Opcodes.ACC_PUBLIC, "test/A", null, "java/lang/Object", new String[0]);
+    }
+
+    private static void generateSum(@NotNull ClassBuilder builder, @NotNull String name, int terms) {
+        MethodVisitor mv = builder.newMethod(JvmDeclarationOrigin.NO_ORIGIN, Opcodes.ACC_STATIC, name, "()I", null, null);
+        mv.visitCode();
+        mv.visitInsn(Opcodes.ICONST_0);
+        for (int i = 0; i < terms; i++) {
+            mv.visitInsn(Opcodes.ICONST_1);
+            mv.visitInsn(Opcodes.IADD);
+        }
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static List<MethodNode> readMethods(@NotNull ClassBuilder builder) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(ClassBuilderFactories.TEST.asBytes(builder)).accept(classNode, 0);
+        return classNode.methods;
+    }
+}
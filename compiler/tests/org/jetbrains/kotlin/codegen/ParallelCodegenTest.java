@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.cli.jvm.config.JVMConfigurationKeys;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.JetTestUtils;
+import org.jetbrains.kotlin.test.TestJdkKind;
+
+import static org.jetbrains.kotlin.codegen.CodegenTestUtil.generateFiles;
+
+public class ParallelCodegenTest extends CodegenTestCase {
+    private static final int THREADS = 4;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL);
+    }
+
+    public void testAnonymousObjectFromAnotherPackage() {
+        doTest("boxInline/anonymousObject/anonymousObjectOnDeclarationSite.1.kt",
+               "boxInline/anonymousObject/anonymousObjectOnDeclarationSite.2.kt");
+    }
+
+    public void testCapturedLambdaFromAnotherPackage() {
+        doTest("boxInline/anonymousObject/capturedLambdaInInline.1.kt",
+               "boxInline/anonymousObject/capturedLambdaInInline.2.kt");
+    }
+
+    public void testCapturedVariablesInInlineLambdas() {
+        // Closures of the lambda and the object in inline functions are filled by the file declaring them and by both call sites
+        doTest("parallelCodegen/capturedVariablesInInlineLambdas/1.kt",
+               "parallelCodegen/capturedVariablesInInlineLambdas/2.kt",
+               "parallelCodegen/capturedVariablesInInlineLambdas/3.kt");
+    }
+
+    public void testSeveralPackages() {
+        doTest("boxMultiFile/accessorForProtected/1.kt",
+               "boxMultiFile/accessorForProtected/2.kt",
+               "boxMultiFile/accessorForProtected/3.kt");
+    }
+
+    private void doTest(@NotNull String... names) {
+        loadFiles(names);
+        String serial = generateFiles(myEnvironment, myFiles).createText();
+
+        CompilerConfiguration configuration =
+                JetTestUtils.compilerConfigurationForTests(ConfigurationKind.ALL, TestJdkKind.MOCK_JDK, JetTestUtils.getAnnotationsJar());
+        configuration.put(JVMConfigurationKeys.PARALLEL_CODEGEN_THREADS, THREADS);
+        KotlinCoreEnvironment parallelEnvironment =
+                KotlinCoreEnvironment.createForTests(getTestRootDisposable(), configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+        String parallel = generateFiles(parallelEnvironment, CodegenTestFiles.create(parallelEnvironment.getProject(), names)).createText();
+
+        assertEquals(serial, parallel);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.backend.common.output.OutputFileSink;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.jetbrains.kotlin.codegen.CodegenTestUtil.generateFiles;
+
+public class StreamingOutputTest extends CodegenTestCase {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL);
+    }
+
+    public void testSeveralPackages() {
+        doTest("boxMultiFile/accessorForProtected/1.kt",
+               "boxMultiFile/accessorForProtected/2.kt",
+               "boxMultiFile/accessorForProtected/3.kt");
+    }
+
+    public void testAnonymousObjectInInlineFunction() {
+        doTest("boxInline/anonymousObject/anonymousObjectOnDeclarationSite.1.kt",
+               "boxInline/anonymousObject/anonymousObjectOnDeclarationSite.2.kt");
+    }
+
+    private void doTest(@NotNull String... names) {
+        loadFiles(names);
+
+        Map<String, String> expected = new TreeMap<String, String>();
+        for (OutputFile file : generateFiles(myEnvironment, myFiles).asList()) {
+            expected.put(file.getRelativePath(), Arrays.toString(file.asByteArray()));
+        }
+
+        final Map<String, byte[]> written = new HashMap<String, byte[]>();
+        ClassFileFactory factory = generateFiles(myEnvironment, myFiles, new OutputFileSink() {
+            @Override
+            public void write(@NotNull OutputFile file) {
+                byte[] previous = written.put(file.getRelativePath(), file.asByteArray());
+                assertNull("File is written twice: " + file.getRelativePath(), previous);
+            }
+
+            @NotNull
+            @Override
+            public byte[] read(@NotNull String relativePath) {
+                byte[] bytes = written.get(relativePath);
+                assertNotNull("File is not written: " + relativePath, bytes);
+                return bytes;
+            }
+        });
+
+        // The files released after writing are still available to the consumers of the factory
+        Map<String, String> actual = new TreeMap<String, String>();
+        for (OutputFile file : factory.asList()) {
+            actual.put(file.getRelativePath(), Arrays.toString(file.asByteArray()));
+        }
+        assertEquals(expected.keySet(), written.keySet());
+        assertEquals(expected, actual);
+    }
+}
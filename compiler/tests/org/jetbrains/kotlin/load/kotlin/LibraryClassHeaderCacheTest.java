@@ -0,0 +1,157 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.load.kotlin;
+
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.StandardFileSystems;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.codegen.forTestCompile.ForTestCompileRuntime;
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader;
+import org.jetbrains.kotlin.resolve.lazy.KotlinTestWithEnvironment;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.JetTestUtils;
+
+import java.io.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class LibraryClassHeaderCacheTest extends KotlinTestWithEnvironment {
+    private static final String KOTLIN_CLASS = "kotlin/Pair.class";
+    private static final String JAVA_CLASS = "kotlin/jvm/internal/Intrinsics.class";
+
+    private File cacheDir;
+    private File jar;
+
+    @Override
+    protected KotlinCoreEnvironment createEnvironment() {
+        return createEnvironmentWithMockJdk(ConfigurationKind.JDK_ONLY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File tmpDir = JetTestUtils.tmpDir(getTestName(true));
+        cacheDir = new File(tmpDir, "cache");
+        jar = new File(tmpDir, "library.jar");
+        copyEntries(ForTestCompileRuntime.runtimeJarForTests(), jar, KOTLIN_CLASS, JAVA_CLASS);
+    }
+
+    public void testHit() throws Exception {
+        LibraryClassHeaderCache first = new LibraryClassHeaderCache(cacheDir);
+        assertClasses(first);
+        assertEquals(1, first.getIndexedJarCount());
+
+        LibraryClassHeaderCache second = new LibraryClassHeaderCache(cacheDir);
+        assertClasses(second);
+        assertEquals(0, second.getIndexedJarCount());
+    }
+
+    public void testMiss() throws Exception {
+        LibraryClassHeaderCache cache = new LibraryClassHeaderCache(cacheDir);
+
+        VirtualFile localFile = StandardFileSystems.local().findFileByPath(jar.getPath());
+        assertNotNull(localFile);
+        assertNull(cache.findKotlinClass(localFile));
+        assertEquals(0, cache.getIndexedJarCount());
+    }
+
+    public void testStaleJar() throws Exception {
+        VirtualFile kotlinClass = findInJar(KOTLIN_CLASS);
+        VirtualFile javaClass = findInJar(JAVA_CLASS);
+        assertClasses(new LibraryClassHeaderCache(cacheDir));
+
+        File newJar = new File(jar.getParentFile(), "new.jar");
+        copyEntries(ForTestCompileRuntime.runtimeJarForTests(), newJar, JAVA_CLASS);
+        FileUtil.copy(newJar, jar);
+        assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+
+        LibraryClassHeaderCache cache = new LibraryClassHeaderCache(cacheDir);
+        assertNull("Class removed from the jar is still cached", cache.findKotlinClass(kotlinClass));
+        Ref<VirtualFileKotlinClass> cached = cache.findKotlinClass(javaClass);
+        assertNotNull(cached);
+        assertNull(cached.get());
+        assertEquals(1, cache.getIndexedJarCount());
+    }
+
+    public void testDamagedCacheFile() throws Exception {
+        assertClasses(new LibraryClassHeaderCache(cacheDir));
+
+        File[] cacheFiles = cacheDir.listFiles();
+        assertNotNull(cacheFiles);
+        assertEquals(1, cacheFiles.length);
+        byte[] contents = FileUtil.loadFileBytes(cacheFiles[0]);
+        // Keeps the header intact and cuts the entries in the middle
+        FileUtil.writeToFile(cacheFiles[0], contents, 0, contents.length / 2);
+
+        LibraryClassHeaderCache cache = new LibraryClassHeaderCache(cacheDir);
+        assertClasses(cache);
+        assertEquals(1, cache.getIndexedJarCount());
+    }
+
+    private void assertClasses(@NotNull LibraryClassHeaderCache cache) {
+        Ref<VirtualFileKotlinClass> kotlinClass = cache.findKotlinClass(findInJar(KOTLIN_CLASS));
+        assertNotNull(kotlinClass);
+        assertNotNull(kotlinClass.get());
+        assertEquals("kotlin/Pair", kotlinClass.get().getClassId().asString());
+        assertEquals(KotlinClassHeader.Kind.CLASS, kotlinClass.get().getClassHeader().getKind());
+
+        Ref<VirtualFileKotlinClass> javaClass = cache.findKotlinClass(findInJar(JAVA_CLASS));
+        assertNotNull(javaClass);
+        assertNull(javaClass.get());
+    }
+
+    @NotNull
+    private VirtualFile findInJar(@NotNull String entryName) {
+        VirtualFile file = VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.JAR_PROTOCOL)
+                .findFileByPath(jar.getPath() + "!/" + entryName);
+        assertNotNull(entryName + " is not found in " + jar, file);
+        return file;
+    }
+
+    private static void copyEntries(@NotNull File from, @NotNull File to, @NotNull String... entryNames) throws IOException {
+        ZipFile source = new ZipFile(from);
+        try {
+            ZipOutputStream output = new ZipOutputStream(new FileOutputStream(to));
+            try {
+                for (String entryName : entryNames) {
+                    ZipEntry entry = source.getEntry(entryName);
+                    assertNotNull(entryName + " is not found in " + from, entry);
+                    output.putNextEntry(new ZipEntry(entryName));
+                    InputStream input = source.getInputStream(entry);
+                    try {
+                        FileUtil.copy(input, output);
+                    }
+                    finally {
+                        input.close();
+                    }
+                    output.closeEntry();
+                }
+            }
+            finally {
+                output.close();
+            }
+        }
+        finally {
+            source.close();
+        }
+    }
+}
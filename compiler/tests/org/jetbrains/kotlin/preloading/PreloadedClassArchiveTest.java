@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.preloading;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class PreloadedClassArchiveTest extends TestCase {
+    private File tmpDir;
+    private File archive;
+    private File jar1;
+    private File jar2;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tmpDir = FileUtil.createTempDirectory("preloadedClassArchive", null);
+        archive = new File(tmpDir, "classes.archive");
+        jar1 = createJar("first.jar", "a/A.class", "first A", "a/B.class", "first B");
+        jar2 = createJar("second.jar", "a/A.class", "second A", "c/C.txt", "");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.delete(tmpDir);
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws IOException {
+        Map<String, Object> resources = new HashMap<String, Object>();
+        // Resources with the same name in several jars are kept in an ArrayList
+        resources.put("a/A.class", new ArrayList<ResourceData>(Arrays.asList(
+                resource(jar1, "a/A.class", "first A"), resource(jar2, "a/A.class", "second A"))));
+        resources.put("a/B.class", resource(jar1, "a/B.class", "first B"));
+        resources.put("c/C.txt", resource(jar2, "c/C.txt", ""));
+
+        PreloadedClassArchive.write(archive, jars(), resources);
+        Map<String, Object> loaded = PreloadedClassArchive.load(archive, jars(), 10);
+
+        assertNotNull(loaded);
+        assertEquals(render(resources), render(loaded));
+    }
+
+    public void testJarChanged() throws IOException {
+        writeArchive();
+        assertNotNull(PreloadedClassArchive.load(archive, jars(), 10));
+
+        assertTrue(jar2.setLastModified(jar2.lastModified() - 10000));
+        assertNull(PreloadedClassArchive.load(archive, jars(), 10));
+    }
+
+    public void testJarReplacedWithOtherSize() throws IOException {
+        writeArchive();
+        long lastModified = jar1.lastModified();
+        createJar("first.jar", "a/A.class", "first A", "a/B.class", "first B, changed");
+        assertTrue(jar1.setLastModified(lastModified));
+
+        assertNull(PreloadedClassArchive.load(archive, jars(), 10));
+    }
+
+    public void testOtherJars() throws IOException {
+        writeArchive();
+
+        assertNull(PreloadedClassArchive.load(archive, Collections.singletonList(jar1), 10));
+        assertNull(PreloadedClassArchive.load(archive, Arrays.asList(jar2, jar1), 10));
+    }
+
+    public void testNoArchive() throws IOException {
+        assertNull(PreloadedClassArchive.load(archive, jars(), 10));
+    }
+
+    public void testTruncatedArchive() throws IOException {
+        writeArchive();
+        long length = archive.length();
+
+        for (long newLength : new long[] {0, 6, 13, 40, length / 2, length - 1}) {
+            truncate(newLength);
+            assertNull("Archive truncated to " + newLength + " bytes", PreloadedClassArchive.load(archive, jars(), 10));
+        }
+    }
+
+    public void testDamagedHeader() throws IOException {
+        writeArchive();
+
+        // The header size
+        overwrite(8, Integer.MAX_VALUE);
+        assertNull(PreloadedClassArchive.load(archive, jars(), 10));
+
+        overwrite(8, -1);
+        assertNull(PreloadedClassArchive.load(archive, jars(), 10));
+
+        // Bytes which are not valid UTF-8 in the first jar path
+        writeArchive();
+        overwrite(18, 0xFFFFFFFF);
+        assertNull(PreloadedClassArchive.load(archive, jars(), 10));
+    }
+
+    public void testDamagedArchiveIsRewritten() throws IOException {
+        writeArchive();
+        truncate(archive.length() / 2);
+
+        ClassLoader loader = ClassPreloadingUtils.preloadClasses(jars(), 10, getClass().getClassLoader(), null, null, archive, null);
+        assertNotNull(loader.getResource("c/C.txt"));
+
+        Map<String, Object> loaded = PreloadedClassArchive.load(archive, jars(), 10);
+        assertNotNull(loaded);
+        assertEquals(new TreeSet<String>(Arrays.asList("a/A.class", "a/B.class", "c/C.txt")),
+                     new TreeSet<String>(loaded.keySet()));
+    }
+
+    private void writeArchive() throws IOException {
+        Map<String, Object> resources = new HashMap<String, Object>();
+        resources.put("a/B.class", resource(jar1, "a/B.class", "first B"));
+        PreloadedClassArchive.write(archive, jars(), resources);
+    }
+
+    @NotNull
+    private List<File> jars() {
+        return Arrays.asList(jar1, jar2);
+    }
+
+    private void truncate(long length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(archive, "rw");
+        try {
+            file.setLength(length);
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    private void overwrite(long position, int value) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(archive, "rw");
+        try {
+            file.seek(position);
+            file.writeInt(value);
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    @NotNull
+    private File createJar(@NotNull String name, @NotNull String... namesAndContents) throws IOException {
+        File jar = new File(tmpDir, name);
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                output.putNextEntry(new JarEntry(namesAndContents[i]));
+                output.write(namesAndContents[i + 1].getBytes("UTF-8"));
+                output.closeEntry();
+            }
+        }
+        finally {
+            output.close();
+        }
+        return jar;
+    }
+
+    @NotNull
+    private static ResourceData resource(@NotNull File jar, @NotNull String name, @NotNull String content) throws IOException {
+        return new ResourceData(jar, name, content.getBytes("UTF-8"));
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static String render(@NotNull Map<String, Object> resources) throws IOException {
+        StringBuilder result = new StringBuilder();
+        for (String name : new TreeSet<String>(resources.keySet())) {
+            Object value = resources.get(name);
+            List<ResourceData> list = value instanceof ResourceData
+                                      ? Collections.singletonList((ResourceData) value)
+                                      : (List<ResourceData>) value;
+            for (ResourceData data : list) {
+                result.append(name).append(" ").append(data.resourceName).append(" ").append(data.jarFile.getName()).append(": ")
+                        .append(new String(data.getBytes(), "UTF-8")).append("\n");
+            }
+        }
+        return result.toString();
+    }
+}
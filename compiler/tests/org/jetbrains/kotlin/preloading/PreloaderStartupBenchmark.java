@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.preloading;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the startup of the compiler with classes preloaded from the jars, mapped from an archive of preloaded classes,
+ * and preloaded according to a recorded startup profile.
+ * Each start is a new process which runs "kotlinc -version" with the preloader in the "time" mode and reports its measurements:
+ * the time until the main method of the compiler is invoked and the peak resident set size (only on Linux).
+ *
+ * Usage: PreloaderStartupBenchmark <path to kotlinc home> [runs]
+ */
+public class PreloaderStartupBenchmark {
+    private static final Pattern TIME_TO_MAIN = Pattern.compile("Time to main: ([\\d.,]+)s");
+    private static final Pattern PEAK_RSS = Pattern.compile("Peak RSS: (\\d+) kB");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: PreloaderStartupBenchmark <path to kotlinc home> [runs]");
+            System.exit(1);
+        }
+
+        File kotlinHome = new File(args[0]);
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        File archive = File.createTempFile("kotlin-preloaded", ".archive");
+        File profile = File.createTempFile("kotlin-startup", ".profile");
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            archive.delete();
+            //noinspection ResultOfMethodCallIgnored
+            profile.delete();
+            // The first starts create the archive and record the profile
+            start(kotlinHome, archive, null);
+            start(kotlinHome, null, profile);
+
+            Result jars = new Result();
+            Result mapped = new Result();
+            Result profiled = new Result();
+            for (int i = 0; i < runs; i++) {
+                jars.add(start(kotlinHome, null, null));
+                mapped.add(start(kotlinHome, archive, null));
+                profiled.add(start(kotlinHome, null, profile));
+            }
+
+            System.out.println("Runs: " + runs);
+            System.out.println("Preloaded from jars:   " + jars);
+            System.out.println("Mapped from archive:   " + mapped);
+            System.out.println("Startup profile:       " + profiled);
+        }
+        finally {
+            //noinspection ResultOfMethodCallIgnored
+            archive.delete();
+            //noinspection ResultOfMethodCallIgnored
+            profile.delete();
+        }
+    }
+
+    @NotNull
+    private static String start(@NotNull File kotlinHome, @Nullable File archive, @Nullable File profile)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        if (archive != null) {
+            command.add("-D" + Preloader.ARCHIVE_PROPERTY + "=" + archive.getPath());
+        }
+        if (profile != null) {
+            command.add("-D" + Preloader.PROFILE_PROPERTY + "=" + profile.getPath());
+        }
+        command.add("-cp");
+        command.add(new File(kotlinHome, "lib/kotlin-preloader.jar").getPath());
+        command.add(Preloader.class.getName());
+        command.add(new File(kotlinHome, "lib/kotlin-compiler.jar").getPath());
+        command.add("org.jetbrains.kotlin.cli.jvm.K2JVMCompiler");
+        command.add("4096");
+        command.add("time");
+        command.add("-version");
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+        }
+        finally {
+            reader.close();
+        }
+        process.waitFor();
+        return output.toString();
+    }
+
+    private static class Result {
+        private double timeToMain;
+        private long peakRss;
+        private int count;
+
+        void add(@NotNull String output) {
+            Matcher time = TIME_TO_MAIN.matcher(output);
+            if (!time.find()) throw new IllegalStateException("No measurements in the output:\n" + output);
+            timeToMain += Double.parseDouble(time.group(1).replace(',', '.'));
+
+            Matcher rss = PEAK_RSS.matcher(output);
+            if (rss.find()) {
+                peakRss += Long.parseLong(rss.group(1));
+            }
+            count++;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("time to main %.3fs, peak RSS %s", timeToMain / count, peakRss > 0 ? peakRss / count + " kB" : "unknown");
+        }
+    }
+}
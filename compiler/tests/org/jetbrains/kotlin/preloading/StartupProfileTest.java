@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.preloading;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class StartupProfileTest extends TestCase {
+    private File tmpDir;
+    private File profileFile;
+    private File jar1;
+    private File jar2;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tmpDir = FileUtil.createTempDirectory("startupProfile", null);
+        profileFile = new File(tmpDir, "startup.profile");
+        jar1 = new File(tmpDir, "first.jar");
+        FileUtil.writeToFile(jar1, "first");
+        jar2 = new File(tmpDir, "second.jar");
+        FileUtil.writeToFile(jar2, "second");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.delete(tmpDir);
+        super.tearDown();
+    }
+
+    public void testRecordAndReplay() throws IOException {
+        final List<String> delegated = new ArrayList<String>();
+        StartupProfile.Recorder recorder = new StartupProfile.Recorder(new ClassHandler() {
+            @Override
+            public void beforeDefineClass(String name, int sizeInBytes) {
+                delegated.add("before " + name);
+            }
+
+            @Override
+            public void afterDefineClass(String name) {
+                delegated.add("after " + name);
+            }
+        }, jars(), System.nanoTime());
+
+        // Defining B causes its superclass A to be defined
+        recorder.beforeDefineClass("test.B", 10);
+        recorder.beforeDefineClass("test.A", 10);
+        recorder.afterDefineClass("test.A");
+        recorder.afterDefineClass("test.B");
+        recorder.beforeDefineClass("test.C", 10);
+        recorder.afterDefineClass("test.C");
+        recorder.write(profileFile);
+
+        assertEquals(Arrays.asList("before test.B", "before test.A", "after test.A", "after test.B", "before test.C", "after test.C"),
+                     delegated);
+
+        StartupProfile profile = StartupProfile.read(profileFile, jars());
+        assertNotNull(profile);
+        assertEquals(Arrays.asList("test.B", "test.A", "test.C"), profile.getClassNames());
+
+        ClassCondition condition = profile.getClassesToPreload();
+        assertTrue(condition.accept("test.A"));
+        assertTrue(condition.accept("test.C"));
+        assertFalse(condition.accept("test.D"));
+    }
+
+    public void testEmptyProfile() throws IOException {
+        new StartupProfile.Recorder(new ClassHandler() {}, jars(), System.nanoTime()).write(profileFile);
+
+        StartupProfile profile = StartupProfile.read(profileFile, jars());
+        assertNotNull(profile);
+        assertEquals(Collections.<String>emptyList(), profile.getClassNames());
+    }
+
+    public void testJarChanged() throws IOException {
+        record();
+        assertNotNull(StartupProfile.read(profileFile, jars()));
+
+        assertTrue(jar1.setLastModified(jar1.lastModified() - 10000));
+        assertNull(StartupProfile.read(profileFile, jars()));
+    }
+
+    public void testJarReplacedWithOtherSize() throws IOException {
+        record();
+        long lastModified = jar2.lastModified();
+        FileUtil.writeToFile(jar2, "second, changed");
+        assertTrue(jar2.setLastModified(lastModified));
+
+        assertNull(StartupProfile.read(profileFile, jars()));
+    }
+
+    public void testOtherJars() throws IOException {
+        record();
+
+        assertNull(StartupProfile.read(profileFile, Collections.singletonList(jar1)));
+        assertNull(StartupProfile.read(profileFile, Arrays.asList(jar2, jar1)));
+        assertNull(StartupProfile.read(profileFile, Arrays.asList(jar1, jar2, new File(tmpDir, "third.jar"))));
+    }
+
+    public void testProfileWithoutClasspath() throws IOException {
+        FileUtil.writeToFile(profileFile, "test.A 100 10\n");
+
+        assertNull(StartupProfile.read(profileFile, jars()));
+    }
+
+    private void record() throws IOException {
+        StartupProfile.Recorder recorder = new StartupProfile.Recorder(new ClassHandler() {}, jars(), System.nanoTime());
+        recorder.beforeDefineClass("test.A", 10);
+        recorder.afterDefineClass("test.A");
+        recorder.write(profileFile);
+    }
+
+    @NotNull
+    private List<File> jars() {
+        return Arrays.asList(jar1, jar2);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.resolve;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.diagnostics.Diagnostic;
+import org.jetbrains.kotlin.diagnostics.rendering.DefaultErrorMessages;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.resolve.lazy.KotlinTestWithEnvironment;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.JetTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ParallelBodyResolutionTest extends KotlinTestWithEnvironment {
+    private static final int RUNS = 5;
+
+    @Override
+    protected KotlinCoreEnvironment createEnvironment() {
+        return createEnvironmentWithMockJdk(ConfigurationKind.JDK_ONLY);
+    }
+
+    public void testDiagnosticsInBodies() {
+        doTest("package a\n" +
+               "fun f1(): Int = \"\"\n" +
+               "fun f2() = f3() + undefined\n" +
+               "fun f3() = b.g1()\n" +
+               "class A {\n" +
+               "    fun m1(): String { return 1 }\n" +
+               "    fun m2() = b.g2().length()\n" +
+               "}\n",
+
+               "package b\n" +
+               "fun g1() = a.f1() * 2\n" +
+               "fun g2() = a.A().m1()\n" +
+               "fun g3(): Int { val x: String = g1(); return x }\n" +
+               "fun g4() = g5()\n" +
+               "fun g5() = g4()\n");
+    }
+
+    private void doTest(@NotNull String... texts) {
+        List<JetFile> files = new ArrayList<JetFile>(texts.length);
+        for (int i = 0; i < texts.length; i++) {
+            files.add(JetTestUtils.createFile("file" + i + ".kt", texts[i], getProject()));
+        }
+
+        List<String> serial = analyze(files);
+        assertFalse("Test data is expected to contain errors", serial.isEmpty());
+
+        System.setProperty(ParallelBodyResolution.THREADS_PROPERTY, "4");
+        try {
+            List<String> parallel = analyze(files);
+            assertEquals(sorted(serial), sorted(parallel));
+
+            // Diagnostics are not sorted by the trace, so the order in which they are reported must not depend on scheduling
+            for (int i = 0; i < RUNS; i++) {
+                assertEquals(parallel, analyze(files));
+            }
+        }
+        finally {
+            System.clearProperty(ParallelBodyResolution.THREADS_PROPERTY);
+        }
+    }
+
+    @NotNull
+    private List<String> analyze(@NotNull List<JetFile> files) {
+        BindingContext bindingContext = JvmResolveUtil.analyzeFilesWithJavaIntegration(getProject(), files).getBindingContext();
+        List<String> result = new ArrayList<String>();
+        for (Diagnostic diagnostic : bindingContext.getDiagnostics()) {
+            result.add(diagnostic.getPsiFile().getName() + ":" + Arrays.toString(diagnostic.getTextRanges().toArray()) + " " +
+                       DefaultErrorMessages.render(diagnostic));
+        }
+        return result;
+    }
+
+    @NotNull
+    private static List<String> sorted(@NotNull List<String> list) {
+        List<String> result = new ArrayList<String>(list);
+        Collections.sort(result);
+        return result;
+    }
+}
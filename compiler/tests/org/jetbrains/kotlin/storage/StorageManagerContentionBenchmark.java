@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.jvm.functions.Function0;
+import kotlin.jvm.functions.Function1;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares {@link LockBasedStorageManager} and {@link StripedLockStorageManager} on a workload resembling lazy resolve:
+ * many threads request overlapping sets of memoized values, each of which depends on a couple of lazy values.
+ *
+ * Usage: StorageManagerContentionBenchmark [threads [keys [rounds]]]
+ */
+public class StorageManagerContentionBenchmark {
+    private static final int WORK_PER_VALUE = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        System.out.println("Threads: " + threads + ", keys: " + keys + ", rounds: " + rounds);
+
+        // Warm up both implementations before measuring
+        run(new LockBasedStorageManager(), threads, keys);
+        run(new StripedLockStorageManager(), threads, keys);
+
+        long singleLock = 0;
+        long striped = 0;
+        for (int i = 0; i < rounds; i++) {
+            singleLock += run(new LockBasedStorageManager(), threads, keys);
+            striped += run(new StripedLockStorageManager(), threads, keys);
+        }
+
+        System.out.println("LockBasedStorageManager:   " + singleLock / rounds / 1000000 + " ms per round");
+        System.out.println("StripedLockStorageManager: " + striped / rounds / 1000000 + " ms per round");
+    }
+
+    private static long run(@NotNull final StorageManager storageManager, int threads, final int keys) throws Exception {
+        final List<NotNullLazyValue<Long>> lazyValues = new ArrayList<NotNullLazyValue<Long>>(keys);
+        for (int i = 0; i < keys; i++) {
+            final int seed = i;
+            lazyValues.add(storageManager.createLazyValue(new Function0<Long>() {
+                @Override
+                public Long invoke() {
+                    return work(seed);
+                }
+            }));
+        }
+
+        final MemoizedFunctionToNotNull<Integer, Long> function = storageManager.createMemoizedFunction(new Function1<Integer, Long>() {
+            @Override
+            public Long invoke(Integer key) {
+                return work(key) + lazyValues.get(key).invoke() + lazyValues.get((key * 31) % keys).invoke();
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>(threads);
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t * (keys / threads);
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        long sum = 0;
+                        for (int i = 0; i < keys; i++) {
+                            sum += function.invoke((offset + i) % keys);
+                        }
+                        return sum;
+                    }
+                }));
+            }
+
+            Long expected = null;
+            for (Future<Long> future : futures) {
+                Long sum = future.get();
+                if (expected != null && !expected.equals(sum)) {
+                    throw new AssertionError("Threads observed different values: " + expected + " and " + sum);
+                }
+                expected = sum;
+            }
+            return System.nanoTime() - start;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long work(int seed) {
+        long x = seed;
+        for (int i = 0; i < WORK_PER_VALUE; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        return x >>> 48;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.jvm.functions.Function0;
+import kotlin.jvm.functions.Function1;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StripedLockStorageManagerTest extends StorageManagerTest {
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        m = new StripedLockStorageManager();
+    }
+
+    public void testFunctionComputesOnceUnderContention() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        final MemoizedFunctionToNotNull<Integer, String> f = m.createMemoizedFunction(new Function1<Integer, String>() {
+            @Override
+            public String invoke(Integer integer) {
+                counter.incrementAndGet();
+                return "v" + integer;
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        for (int key = 0; key < 1000; key++) {
+                            assertEquals("v" + key, f.invoke(key));
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1000, counter.get());
+    }
+
+    public void testValueAndComputeDoNotDeadlock() throws Exception {
+        // One thread computes the value under compute(), the other one calls compute() while computing the value
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final NotNullLazyValue<Object> value = m.createLazyValue(new Function0<Object>() {
+            @Override
+            public Object invoke() {
+                awaitQuietly(bothStarted);
+                return m.compute(new Function0<Object>() {
+                    @Override
+                    public Object invoke() {
+                        return new Object();
+                    }
+                });
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> underCompute = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return m.compute(new Function0<Object>() {
+                        @Override
+                        public Object invoke() {
+                            awaitQuietly(bothStarted);
+                            return value.invoke();
+                        }
+                    });
+                }
+            });
+            Future<Object> direct = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return value.invoke();
+                }
+            });
+
+            assertSame(value.invoke(), underCompute.get(30, TimeUnit.SECONDS));
+            assertSame(value.invoke(), direct.get(30, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.countDown();
+            latch.await(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types;
+
+import org.jetbrains.kotlin.builtins.KotlinBuiltIns;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.descriptors.ClassDescriptor;
+import org.jetbrains.kotlin.descriptors.FunctionDescriptor;
+import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
+import org.jetbrains.kotlin.descriptors.annotations.Annotations;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.name.Name;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.resolve.lazy.KotlinTestWithEnvironment;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.JetTestUtils;
+
+import java.util.Collections;
+
+public class TypeInternerTest extends KotlinTestWithEnvironment {
+    private final KotlinBuiltIns builtIns = KotlinBuiltIns.getInstance();
+
+    @Override
+    protected KotlinCoreEnvironment createEnvironment() {
+        return createEnvironmentWithMockJdk(ConfigurationKind.JDK_ONLY);
+    }
+
+    public void testStructurallyEqualTypesAreInterned() {
+        TypeInterner interner = new TypeInterner();
+
+        JetType first = interner.intern(listOf(new TypeProjectionImpl(builtIns.getStringType())));
+        JetType second = interner.intern(listOf(new TypeProjectionImpl(builtIns.getStringType())));
+
+        assertSame(first, second);
+        assertSame(first.getArguments().get(0), second.getArguments().get(0));
+    }
+
+    public void testDifferentProjectionsAreNotMixed() {
+        TypeInterner interner = new TypeInterner();
+
+        JetType invariant = interner.intern(listOf(new TypeProjectionImpl(Variance.INVARIANT, builtIns.getStringType())));
+        JetType out = interner.intern(listOf(new TypeProjectionImpl(Variance.OUT_VARIANCE, builtIns.getStringType())));
+        JetType nullable = interner.intern(listOf(new TypeProjectionImpl(TypeUtils.makeNullable(builtIns.getStringType()))));
+
+        assertNotSame(invariant, out);
+        assertNotSame(invariant, nullable);
+    }
+
+    public void testErrorTypesAreNotInterned() {
+        TypeInterner interner = new TypeInterner();
+
+        JetType errorType = ErrorUtils.createErrorType("error");
+        assertSame(errorType, interner.intern(errorType));
+
+        JetType withErrorArgument = listOf(new TypeProjectionImpl(errorType));
+        assertSame(withErrorArgument, interner.intern(withErrorArgument));
+        assertNotSame(interner.intern(listOf(new TypeProjectionImpl(errorType))), interner.intern(withErrorArgument));
+    }
+
+    public void testInnerClassOfGenericClassIsNotInterned() {
+        JetFile file = JetTestUtils.createFile("inner.kt",
+                                               "class Outer<T> { inner class Inner { fun get(): T = null!! } }\n" +
+                                               "val a = Outer<String>().Inner()\n" +
+                                               "val b = Outer<Int>().Inner()\n",
+                                               getProject());
+        ModuleDescriptor module = JvmResolveUtil.analyzeOneFileWithJavaIntegrationAndCheckForErrors(file).getModuleDescriptor();
+
+        TypeInterner interner = new TypeInterner();
+        JetType a = interner.intern(propertyType(module, "a"));
+        JetType b = interner.intern(propertyType(module, "b"));
+
+        assertNotSame(a, b);
+        assertEquals(builtIns.getStringType(), getReturnType(a));
+        assertEquals(builtIns.getIntType(), getReturnType(b));
+    }
+
+    private static JetType propertyType(ModuleDescriptor module, String name) {
+        return module.getPackage(FqName.ROOT).getMemberScope().getProperties(Name.identifier(name)).iterator().next().getType();
+    }
+
+    private static JetType getReturnType(JetType innerType) {
+        FunctionDescriptor get = innerType.getMemberScope().getFunctions(Name.identifier("get")).iterator().next();
+        return get.getReturnType();
+    }
+
+    private JetType listOf(TypeProjection argument) {
+        ClassDescriptor list = builtIns.getList();
+        return new JetTypeImpl(Annotations.EMPTY, list.getTypeConstructor(), false, Collections.singletonList(argument),
+                               list.getMemberScope(Collections.singletonList(argument)));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types.checker;
+
+import junit.framework.TestCase;
+import org.jetbrains.kotlin.builtins.KotlinBuiltIns;
+import org.jetbrains.kotlin.types.ErrorUtils;
+import org.jetbrains.kotlin.types.JetType;
+
+public class SubtypingCacheTest extends TestCase {
+    private CountingCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new CountingCache();
+        SubtypingCache.setCurrent(cache);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SubtypingCache.setCurrent(null);
+        cache = null;
+        super.tearDown();
+    }
+
+    public void testVerdictsAreReused() {
+        KotlinBuiltIns builtIns = KotlinBuiltIns.getInstance();
+        JetType intType = builtIns.getIntType();
+        JetType anyType = builtIns.getAnyType();
+
+        assertTrue(JetTypeChecker.DEFAULT.isSubtypeOf(intType, anyType));
+        assertFalse(JetTypeChecker.DEFAULT.isSubtypeOf(anyType, intType));
+        assertEquals(0, cache.hits);
+
+        assertTrue(JetTypeChecker.DEFAULT.isSubtypeOf(intType, anyType));
+        assertFalse(JetTypeChecker.DEFAULT.isSubtypeOf(anyType, intType));
+        assertEquals(2, cache.hits);
+
+        assertFalse(JetTypeChecker.DEFAULT.equalTypes(intType, anyType));
+        assertFalse(JetTypeChecker.DEFAULT.equalTypes(intType, anyType));
+        assertEquals(3, cache.hits);
+    }
+
+    public void testErrorTypesAreNotCached() {
+        JetType errorType = ErrorUtils.createErrorType("error");
+        JetType anyType = KotlinBuiltIns.getInstance().getAnyType();
+
+        JetTypeChecker.DEFAULT.isSubtypeOf(errorType, anyType);
+        JetTypeChecker.DEFAULT.isSubtypeOf(errorType, anyType);
+
+        assertEquals(0, cache.hits);
+        assertEquals(0, cache.misses);
+    }
+
+    public void testOtherCheckersDoNotUseCache() {
+        JetType errorType = ErrorUtils.createErrorType("error");
+        JetType intType = KotlinBuiltIns.getInstance().getIntType();
+
+        assertTrue(JetTypeChecker.ERROR_TYPES_ARE_EQUAL_TO_ANYTHING.equalTypes(intType, intType));
+        assertTrue(JetTypeChecker.ERROR_TYPES_ARE_EQUAL_TO_ANYTHING.isSubtypeOf(intType, errorType));
+
+        assertEquals(0, cache.misses);
+    }
+
+    private static class CountingCache extends SubtypingCache {
+        private int hits;
+        private int misses;
+
+        @Override
+        protected void onHit() {
+            hits++;
+        }
+
+        @Override
+        protected void onMiss() {
+            misses++;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import junit.framework.TestCase;
+import kotlin.jvm.functions.Function3;
+import org.jetbrains.kotlin.resolve.BindingTraceContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class CompactSlicedMapTest extends TestCase {
+    public void testManyKeysInSeveralSlices() {
+        WritableSlice<String, Integer> LENGTH = Slices.<String, Integer>sliceBuilder().setDebugName("LENGTH").build();
+        WritableSlice<String, String> UPPER = Slices.<String, String>sliceBuilder().setDebugName("UPPER").build();
+
+        CompactSlicedMap map = CompactSlicedMap.create();
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + i;
+            map.put(LENGTH, key, key.length());
+            map.put(UPPER, key, key.toUpperCase());
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + i;
+            assertEquals(key.length(), (int) map.get(LENGTH, key));
+            assertEquals(key.toUpperCase(), map.get(UPPER, key));
+        }
+        assertNull(map.get(LENGTH, "missing"));
+        assertEquals(1000, map.getSliceContents(UPPER).size());
+    }
+
+    public void testKeysAreComparedByEquality() {
+        WritableSlice<String, Integer> SLICE = Slices.<String, Integer>sliceBuilder().setDebugName("SLICE").build();
+
+        CompactSlicedMap map = CompactSlicedMap.create();
+        map.put(SLICE, new String("key"), 1);
+
+        assertEquals(1, (int) map.get(SLICE, new String("key")));
+    }
+
+    public void testNullKey() {
+        WritableSlice<String, Integer> SLICE = Slices.<String, Integer>sliceBuilder().setDebugName("SLICE").build();
+
+        CompactSlicedMap map = CompactSlicedMap.create();
+        map.put(SLICE, null, 1);
+
+        assertEquals(1, (int) map.get(SLICE, null));
+    }
+
+    public void testRemoveKeepsOtherEntriesReachable() {
+        RemovableSlice<Integer, Boolean> SLICE = Slices.createRemovableSetSlice();
+
+        CompactSlicedMap map = CompactSlicedMap.create();
+        for (int i = 0; i < 500; i++) {
+            map.put(SLICE, i, true);
+        }
+        for (int i = 0; i < 500; i += 3) {
+            assertEquals(Boolean.TRUE, map.remove(SLICE, i));
+        }
+
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i % 3 != 0, (boolean) map.get(SLICE, i));
+        }
+        assertNull(map.remove(SLICE, 0));
+    }
+
+    public void testForEachVisitsAllEntries() {
+        WritableSlice<String, Integer> SLICE = Slices.createCollectiveSlice();
+
+        CompactSlicedMap map = CompactSlicedMap.create();
+        for (int i = 0; i < 100; i++) {
+            map.put(SLICE, "key" + i, i);
+        }
+        assertEquals(100, map.getKeys(SLICE).size());
+
+        final Map<Object, Object> visited = new HashMap<Object, Object>();
+        map.forEach(new Function3<WritableSlice, Object, Object, Void>() {
+            @Override
+            public Void invoke(WritableSlice slice, Object key, Object value) {
+                visited.put(key, value);
+                return null;
+            }
+        });
+
+        assertEquals(100, visited.size());
+        assertEquals(42, visited.get("key42"));
+    }
+
+    public void testOppositeSliceInTrace() {
+        WritableSlice<Integer, String> COLOR_NAME = Slices.<Integer, String>sliceBuilder().setDebugName("COLOR_NAME").build();
+        WritableSlice<String, Integer> NAME_COLOR = Slices.<String, Integer>sliceBuilder().setOpposite(COLOR_NAME).setDebugName("NAME_COLOR").build();
+
+        BindingTraceContext traceContext = BindingTraceContext.createWithCompactStorage();
+
+        traceContext.record(NAME_COLOR, "RED", 0xff0000);
+
+        assertEquals("RED", traceContext.get(COLOR_NAME, 0xff0000));
+    }
+}
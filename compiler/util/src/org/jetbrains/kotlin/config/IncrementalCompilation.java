@@ -18,4 +18,14 @@ package org.jetbrains.kotlin.config;
 
 public class IncrementalCompilation {
     public static final boolean ENABLED = !"false".equals(System.getProperty("kotlin.incremental.compilation"));
+
+    public static final String LOOKUP_TRACKING_PROPERTY = "kotlin.incremental.lookup.tracking";
+
+    /**
+     * If enabled, only the files which looked up the changed declarations are recompiled, instead of all Kotlin files in the chunk.
+     * The property is read on each call, so that tests can switch the mode.
+     */
+    public static boolean isLookupTrackingEnabled() {
+        return ENABLED && "true".equals(System.getProperty(LOOKUP_TRACKING_PROPERTY));
+    }
 }
@@ -23,10 +23,19 @@ import org.jetbrains.kotlin.load.java.structure.JavaPackage;
 import org.jetbrains.kotlin.name.ClassId;
 import org.jetbrains.kotlin.name.FqName;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface JavaClassFinder {
     @Nullable
     JavaClass findClass(@NotNull ClassId classId);
 
+    /**
+     * Finds several classes at once, classes which are not found are absent from the result
+     */
+    @NotNull
+    Map<ClassId, JavaClass> findClasses(@NotNull Collection<ClassId> classIds);
+
     @Nullable
     JavaPackage findPackage(@NotNull FqName fqName);
 }
@@ -213,7 +213,7 @@ class LazyJavaTypeResolver(
                         // C<*> = C<out C<out C<...>>>
                         // this way we lose some type information, even when the case is not so bad, but it doesn't seem to matter
                         val projectionKind = if (parameter.getVariance() == OUT_VARIANCE) INVARIANT else OUT_VARIANCE
-                        TypeProjectionImpl(projectionKind, c.module.builtIns.getNullableAnyType())
+                        TypeInterner.internIfEnabled(TypeProjectionImpl(projectionKind, c.module.builtIns.getNullableAnyType()))
                     }
                     else
                         makeStarProjection(parameter, attr)
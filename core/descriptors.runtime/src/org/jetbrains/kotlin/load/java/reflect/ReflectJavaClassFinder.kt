@@ -23,6 +23,7 @@ import org.jetbrains.kotlin.load.java.structure.JavaPackage
 import org.jetbrains.kotlin.load.java.structure.reflect.ReflectJavaClass
 import org.jetbrains.kotlin.load.java.structure.reflect.ReflectJavaPackage
 import org.jetbrains.kotlin.name.ClassId
+import java.util.HashMap
 
 public class ReflectJavaClassFinder(private val classLoader: ClassLoader) : JavaClassFinder {
     override fun findClass(classId: ClassId): JavaClass? {
@@ -36,6 +37,17 @@ public class ReflectJavaClassFinder(private val classLoader: ClassLoader) : Java
         return if (klass != null) ReflectJavaClass(klass) else null
     }
 
+    override fun findClasses(classIds: Collection<ClassId>): Map<ClassId, JavaClass> {
+        val result = HashMap<ClassId, JavaClass>()
+        for (classId in classIds) {
+            val javaClass = findClass(classId)
+            if (javaClass != null) {
+                result[classId] = javaClass
+            }
+        }
+        return result
+    }
+
     override fun findPackage(fqName: FqName): JavaPackage? {
         // We don't know which packages our class loader has and has not, so we behave as if it contains any package in the world
         return ReflectJavaPackage(fqName)
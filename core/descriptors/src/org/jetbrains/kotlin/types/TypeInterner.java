@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.descriptors.ClassDescriptor;
+import org.jetbrains.kotlin.descriptors.ClassifierDescriptor;
+import org.jetbrains.kotlin.descriptors.TypeParameterDescriptor;
+import org.jetbrains.kotlin.resolve.scopes.JetScope;
+import org.jetbrains.kotlin.resolve.scopes.SubstitutingScope;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces structurally identical types and type projections with one canonical instance, so that they don't take heap
+ * several times and can be compared by identity.
+ *
+ * Only instances of {@link JetTypeImpl} without annotations are interned, and only if all of their arguments can be interned too.
+ * Error and flexible types never are {@link JetTypeImpl}, and lazy types are skipped to preserve their laziness.
+ * Types are keyed on the identity of their type constructors, so types from different modules never get mixed.
+ * The member scope is not a part of the key, so types of inner classes (whose scopes depend on the arguments of the outer type)
+ * and types with a member scope other than the one their constructor and arguments imply are not interned.
+ *
+ * Canonical instances are weakly referenced: an interner doesn't keep alive the types no one else uses.
+ *
+ * Interning is turned off unless the "kotlin.types.interning" system property is set to true.
+ * When it's on, an interner is installed with {@link #setCurrent(TypeInterner)} for the duration of a compilation.
+ */
+public class TypeInterner {
+    public static final String ENABLED_PROPERTY = "kotlin.types.interning";
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    private static volatile TypeInterner current = null;
+
+    @Nullable
+    public static TypeInterner getCurrent() {
+        return current;
+    }
+
+    public static void setCurrent(@Nullable TypeInterner interner) {
+        current = interner;
+    }
+
+    @NotNull
+    public static JetType internIfEnabled(@NotNull JetType type) {
+        TypeInterner interner = current;
+        return interner == null ? type : interner.intern(type);
+    }
+
+    @NotNull
+    public static TypeProjection internIfEnabled(@NotNull TypeProjection projection) {
+        TypeInterner interner = current;
+        return interner == null ? projection : interner.intern(projection);
+    }
+
+    private final WeakInternMap<TypeKey, JetType> types = new WeakInternMap<TypeKey, JetType>();
+    private final WeakInternMap<ProjectionKey, TypeProjection> projections = new WeakInternMap<ProjectionKey, TypeProjection>();
+
+    @NotNull
+    public JetType intern(@NotNull JetType type) {
+        JetType canonical = internOrNull(type);
+        return canonical != null ? canonical : type;
+    }
+
+    @NotNull
+    public TypeProjection intern(@NotNull TypeProjection projection) {
+        TypeProjection canonical = internOrNull(projection);
+        return canonical != null ? canonical : projection;
+    }
+
+    // Returns null if the type can't be interned
+    @Nullable
+    private JetType internOrNull(@NotNull JetType type) {
+        if (!(type instanceof JetTypeImpl) || !type.getAnnotations().isEmpty() || !hasDefaultMemberScope(type)) return null;
+
+        List<TypeProjection> arguments = type.getArguments();
+        Object[] argumentKeys = new Object[arguments.size() * 2];
+        List<TypeProjection> canonicalArguments = null;
+        for (int i = 0; i < arguments.size(); i++) {
+            TypeProjection argument = arguments.get(i);
+            TypeProjection canonicalArgument;
+            if (argument.isStarProjection()) {
+                // A star projection is fully determined by the corresponding type parameter, i.e. by the constructor and the index
+                canonicalArgument = argument;
+                argumentKeys[2 * i] = null;
+                argumentKeys[2 * i + 1] = null;
+            }
+            else {
+                canonicalArgument = internOrNull(argument);
+                if (canonicalArgument == null) return null;
+                argumentKeys[2 * i] = canonicalArgument.getProjectionKind();
+                argumentKeys[2 * i + 1] = canonicalArgument.getType();
+            }
+
+            if (canonicalArgument != argument && canonicalArguments == null) {
+                canonicalArguments = new ArrayList<TypeProjection>(arguments.subList(0, i));
+            }
+            if (canonicalArguments != null) {
+                canonicalArguments.add(canonicalArgument);
+            }
+        }
+
+        JetType candidate = canonicalArguments == null
+                            ? type
+                            : new JetTypeImpl(type.getAnnotations(), type.getConstructor(), type.isMarkedNullable(), canonicalArguments,
+                                              type.getMemberScope());
+        return types.intern(new TypeKey(type.getConstructor(), type.isMarkedNullable(), argumentKeys), candidate);
+    }
+
+    // The member scope isn't a part of the key, so it must be the one the constructor and the arguments imply
+    private static boolean hasDefaultMemberScope(@NotNull JetType type) {
+        ClassifierDescriptor declaration = type.getConstructor().getDeclarationDescriptor();
+        JetScope memberScope = type.getMemberScope();
+
+        if (declaration instanceof ClassDescriptor) {
+            ClassDescriptor classDescriptor = (ClassDescriptor) declaration;
+            // Scopes of inner classes are substituted with the arguments of the outer type, which the key doesn't see
+            if (classDescriptor.isInner()) return false;
+
+            if (memberScope == classDescriptor.getDefaultType().getMemberScope()) {
+                List<TypeParameterDescriptor> parameters = type.getConstructor().getParameters();
+                List<TypeProjection> arguments = type.getArguments();
+                for (int i = 0; i < arguments.size(); i++) {
+                    if (arguments.get(i).getType().getConstructor() != parameters.get(i).getTypeConstructor()) return false;
+                }
+                return true;
+            }
+
+            // Otherwise it should be substituted with the arguments of this very type, see ClassDescriptor#getMemberScope(List)
+            return !type.getArguments().isEmpty() && memberScope instanceof SubstitutingScope;
+        }
+
+        return declaration != null && memberScope == declaration.getDefaultType().getMemberScope();
+    }
+
+    // Returns null if the projection can't be interned
+    @Nullable
+    private TypeProjection internOrNull(@NotNull TypeProjection projection) {
+        if (!(projection instanceof TypeProjectionImpl)) return null;
+
+        JetType canonicalType = internOrNull(projection.getType());
+        if (canonicalType == null) return null;
+
+        TypeProjection candidate =
+                canonicalType == projection.getType() ? projection : new TypeProjectionImpl(projection.getProjectionKind(), canonicalType);
+        return projections.intern(new ProjectionKey(projection.getProjectionKind(), canonicalType), candidate);
+    }
+
+    private static final class TypeKey {
+        private final TypeConstructor constructor;
+        private final boolean nullable;
+        // Projection kinds and canonical types of arguments, nulls for star projections
+        private final Object[] arguments;
+        private final int hashCode;
+
+        private TypeKey(@NotNull TypeConstructor constructor, boolean nullable, @NotNull Object[] arguments) {
+            this.constructor = constructor;
+            this.nullable = nullable;
+            this.arguments = arguments;
+
+            int hash = System.identityHashCode(constructor) * 2 + (nullable ? 1 : 0);
+            for (Object argument : arguments) {
+                hash = hash * 31 + System.identityHashCode(argument);
+            }
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TypeKey)) return false;
+
+            TypeKey other = (TypeKey) o;
+            if (constructor != other.constructor || nullable != other.nullable || arguments.length != other.arguments.length) return false;
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] != other.arguments[i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return constructor + (nullable ? "?" : "") + Arrays.toString(arguments);
+        }
+    }
+
+    private static final class ProjectionKey {
+        private final Variance projectionKind;
+        private final JetType type;
+
+        private ProjectionKey(@NotNull Variance projectionKind, @NotNull JetType type) {
+            this.projectionKind = projectionKind;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ProjectionKey)) return false;
+
+            ProjectionKey other = (ProjectionKey) o;
+            return projectionKind == other.projectionKind && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return projectionKind.hashCode() * 31 + System.identityHashCode(type);
+        }
+    }
+
+    // A map from keys to weakly referenced values: an entry is removed once its value is garbage collected
+    private static final class WeakInternMap<K, V> {
+        private final Map<K, ValueReference<K, V>> map = new HashMap<K, ValueReference<K, V>>();
+        private final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+
+        @NotNull
+        public synchronized V intern(@NotNull K key, @NotNull V candidate) {
+            expungeStaleEntries();
+
+            ValueReference<K, V> reference = map.get(key);
+            V value = reference == null ? null : reference.get();
+            if (value != null) return value;
+
+            map.put(key, new ValueReference<K, V>(key, candidate, queue));
+            return candidate;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void expungeStaleEntries() {
+            ValueReference<K, V> reference;
+            while ((reference = (ValueReference<K, V>) queue.poll()) != null) {
+                // The entry may have been replaced already
+                if (map.get(reference.key) == reference) {
+                    map.remove(reference.key);
+                }
+            }
+        }
+    }
+
+    private static final class ValueReference<K, V> extends WeakReference<V> {
+        private final K key;
+
+        private ValueReference(@NotNull K key, @NotNull V value, @NotNull ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
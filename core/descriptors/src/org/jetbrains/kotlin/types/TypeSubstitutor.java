@@ -267,7 +267,7 @@ public class TypeSubstitutor {
                                            type.isMarkedNullable(),       // Same nullability
                                            substitutedArguments,
                                            new SubstitutingScope(type.getMemberScope(), create(substitutionFilteringTypeParameters)));
-        return new TypeProjectionImpl(projectionKind, substitutedType);
+        return TypeInterner.internIfEnabled(new TypeProjectionImpl(projectionKind, substitutedType));
     }
 
     private List<TypeProjection> substituteTypeArguments(
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types.checker;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.types.JetType;
+import org.jetbrains.kotlin.types.LazyType;
+import org.jetbrains.kotlin.types.TypesPackage;
+
+/**
+ * A bounded cache of verdicts of {@link JetTypeChecker#DEFAULT}: whether one type is a subtype of another and whether two types are equal.
+ *
+ * Types are compared by identity, so the cache only helps when the same type objects are checked over and over again,
+ * which is what happens during overload resolution. Error, flexible and lazy types are never cached: the result for them
+ * depends on the callbacks of the procedure or on the state of resolve.
+ *
+ * The cache is direct-mapped: an entry is simply overwritten by another one with the same hash, so its size never exceeds
+ * the capacity. Entries are immutable, so the cache may be used from several threads without synchronization.
+ *
+ * Nothing is cached unless a cache is installed with {@link #setCurrent(SubtypingCache)} for the duration of a compilation.
+ */
+public class SubtypingCache {
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private static volatile SubtypingCache current = null;
+
+    @Nullable
+    public static SubtypingCache getCurrent() {
+        return current;
+    }
+
+    public static void setCurrent(@Nullable SubtypingCache cache) {
+        current = cache;
+    }
+
+    public static boolean isCacheable(@NotNull JetType type) {
+        return !type.isError() && !TypesPackage.isFlexible(type) && !(type instanceof LazyType);
+    }
+
+    enum Kind {
+        SUBTYPE, EQUAL
+    }
+
+    private static final class Entry {
+        private final JetType first;
+        private final JetType second;
+        private final Kind kind;
+        private final boolean result;
+
+        private Entry(@NotNull JetType first, @NotNull JetType second, @NotNull Kind kind, boolean result) {
+            this.first = first;
+            this.second = second;
+            this.kind = kind;
+            this.result = result;
+        }
+    }
+
+    private final Entry[] entries;
+
+    public SubtypingCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SubtypingCache(int capacity) {
+        assert Integer.bitCount(capacity) == 1 : "Capacity should be a power of two: " + capacity;
+        this.entries = new Entry[capacity];
+    }
+
+    // Returns null if there's no verdict for these types in the cache
+    @Nullable
+    Boolean get(@NotNull JetType first, @NotNull JetType second, @NotNull Kind kind) {
+        Entry entry = entries[index(first, second, kind)];
+        if (entry != null && entry.first == first && entry.second == second && entry.kind == kind) {
+            onHit();
+            return entry.result;
+        }
+        onMiss();
+        return null;
+    }
+
+    void put(@NotNull JetType first, @NotNull JetType second, @NotNull Kind kind, boolean result) {
+        entries[index(first, second, kind)] = new Entry(first, second, kind, result);
+    }
+
+    protected void onHit() {
+    }
+
+    protected void onMiss() {
+    }
+
+    private int index(@NotNull JetType first, @NotNull JetType second, @NotNull Kind kind) {
+        int h = (System.identityHashCode(first) * 31 + System.identityHashCode(second)) * 2 + kind.ordinal();
+        h *= 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (entries.length - 1);
+    }
+}
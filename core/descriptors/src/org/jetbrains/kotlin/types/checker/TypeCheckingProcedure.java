@@ -64,13 +64,41 @@ public class TypeCheckingProcedure {
     }
 
     private final TypeCheckingProcedureCallbacks constraints;
+    // Verdicts may be shared through SubtypingCache only if they don't depend on the callbacks
+    private final boolean useSubtypingCache;
 
     public TypeCheckingProcedure(TypeCheckingProcedureCallbacks constraints) {
+        this(constraints, false);
+    }
+
+    TypeCheckingProcedure(TypeCheckingProcedureCallbacks constraints, boolean useSubtypingCache) {
         this.constraints = constraints;
+        this.useSubtypingCache = useSubtypingCache;
     }
 
     public boolean equalTypes(@NotNull JetType type1, @NotNull JetType type2) {
         if (type1 == type2) return true;
+
+        SubtypingCache cache = getSubtypingCache(type1, type2);
+        if (cache == null) return doEqualTypes(type1, type2);
+
+        Boolean cached = cache.get(type1, type2, SubtypingCache.Kind.EQUAL);
+        if (cached != null) return cached;
+
+        boolean result = doEqualTypes(type1, type2);
+        cache.put(type1, type2, SubtypingCache.Kind.EQUAL, result);
+        return result;
+    }
+
+    @Nullable
+    private SubtypingCache getSubtypingCache(@NotNull JetType type1, @NotNull JetType type2) {
+        if (!useSubtypingCache) return null;
+        SubtypingCache cache = SubtypingCache.getCurrent();
+        if (cache == null || !SubtypingCache.isCacheable(type1) || !SubtypingCache.isCacheable(type2)) return null;
+        return cache;
+    }
+
+    private boolean doEqualTypes(@NotNull JetType type1, @NotNull JetType type2) {
         if (TypesPackage.isFlexible(type1)) {
             if (TypesPackage.isFlexible(type2)) {
                 return !type1.isError() && !type2.isError() && isSubtypeOf(type1, type2) && isSubtypeOf(type2, type1);
@@ -189,6 +217,21 @@ public class TypeCheckingProcedure {
     }
 
     public boolean isSubtypeOf(@NotNull JetType subtype, @NotNull JetType supertype) {
+        // Subtyping is reflexive unless the callbacks say otherwise, and interned types are often compared with themselves
+        if (useSubtypingCache && subtype == supertype) return true;
+
+        SubtypingCache cache = getSubtypingCache(subtype, supertype);
+        if (cache == null) return doIsSubtypeOf(subtype, supertype);
+
+        Boolean cached = cache.get(subtype, supertype, SubtypingCache.Kind.SUBTYPE);
+        if (cached != null) return cached;
+
+        boolean result = doIsSubtypeOf(subtype, supertype);
+        cache.put(subtype, supertype, SubtypingCache.Kind.SUBTYPE, result);
+        return result;
+    }
+
+    private boolean doIsSubtypeOf(@NotNull JetType subtype, @NotNull JetType supertype) {
         if (TypesPackage.sameTypeConstructors(subtype, supertype)) {
             return !subtype.isMarkedNullable() || supertype.isMarkedNullable();
         }
@@ -0,0 +1,569 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.Unit;
+import kotlin.jvm.functions.Function0;
+import kotlin.jvm.functions.Function1;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.storage.LockBasedStorageManager.ExceptionHandlingStrategy;
+import org.jetbrains.kotlin.utils.WrappedValues;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A storage manager that guards every lazy value and every key of a memoized function with one of a fixed number of
+ * lock stripes instead of a single lock, so that independent computations may proceed on different threads.
+ *
+ * Since computations call each other in arbitrary order, two threads may end up waiting for each other's stripes.
+ * Such cycles are detected by walking the wait-for graph, and the waiting thread then computes the value without the lock
+ * and publishes it atomically; the thread that owns the stripe discards its own result in favor of the published one.
+ * Thus, every caller observes the same value, but a computation may occasionally be performed twice.
+ *
+ * {@link #compute(Function0)} is always serialized by a separate lock, as it is used to protect non-thread-safe structures.
+ */
+public class StripedLockStorageManager implements StorageManager {
+    private static final int DEFAULT_STRIPE_COUNT = 256;
+    private static final long DEADLOCK_CHECK_INTERVAL_MS = 10;
+
+    @SuppressWarnings("unchecked")
+    private static final AtomicReferenceFieldUpdater<StripedLazyValue, Object> LAZY_VALUE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(StripedLazyValue.class, Object.class, "value");
+
+    @NotNull
+    public static StripedLockStorageManager createWithExceptionHandling(@NotNull ExceptionHandlingStrategy exceptionHandlingStrategy) {
+        return new StripedLockStorageManager(getPointOfConstruction(), exceptionHandlingStrategy, DEFAULT_STRIPE_COUNT);
+    }
+
+    private final StripeLock[] stripes;
+    private final StripeLock computeLock = new StripeLock();
+    private final ExceptionHandlingStrategy exceptionHandlingStrategy;
+    private final String debugText;
+
+    private final ConcurrentMap<Thread, StripeLock> waitingFor = new ConcurrentHashMap<Thread, StripeLock>();
+
+    private final ThreadLocal<int[]> heldLockCount = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private final ThreadLocal<Set<Object>> computedWithoutLock = new ThreadLocal<Set<Object>>() {
+        @Override
+        protected Set<Object> initialValue() {
+            return new HashSet<Object>();
+        }
+    };
+
+    private StripedLockStorageManager(
+            @NotNull String debugText,
+            @NotNull ExceptionHandlingStrategy exceptionHandlingStrategy,
+            int stripeCount
+    ) {
+        assert stripeCount > 0 && (stripeCount & (stripeCount - 1)) == 0 : "Stripe count should be a power of two: " + stripeCount;
+        this.stripes = new StripeLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new StripeLock();
+        }
+        this.exceptionHandlingStrategy = exceptionHandlingStrategy;
+        this.debugText = debugText;
+    }
+
+    public StripedLockStorageManager() {
+        this(getPointOfConstruction(), ExceptionHandlingStrategy.THROW, DEFAULT_STRIPE_COUNT);
+    }
+
+    public StripedLockStorageManager(int stripeCount) {
+        this(getPointOfConstruction(), ExceptionHandlingStrategy.THROW, stripeCount);
+    }
+
+    private static String getPointOfConstruction() {
+        StackTraceElement[] trace = Thread.currentThread().getStackTrace();
+        // we need to skip frames for getStackTrace(), this method and the constructor that's calling it
+        if (trace.length <= 3) return "<unknown creating class>";
+        return trace[3].toString();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) +
+               " (" + debugText + ", " + stripes.length + " stripes)";
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(@NotNull Function1<? super K, ? extends V> compute) {
+        return createMemoizedFunction(compute, StripedLockStorageManager.<K>createConcurrentHashMap());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(
+            @NotNull Function1<? super K, ? extends V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new StripedMemoizedFunctionToNotNull<K, V>(map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(@NotNull Function1<? super K, ? extends V> compute) {
+        return createMemoizedFunctionWithNullableValues(compute, StripedLockStorageManager.<K>createConcurrentHashMap());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(
+            @NotNull Function1<? super K, ? extends V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new StripedMemoizedFunction<K, V>(map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValue(@NotNull Function0<? extends T> computable) {
+        return new StripedNotNullLazyValue<T>(computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createRecursionTolerantLazyValue(
+            @NotNull Function0<? extends T> computable, @NotNull final T onRecursiveCall
+    ) {
+        return new StripedNotNullLazyValue<T>(computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                return onRecursiveCall;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValueWithPostCompute(
+            @NotNull Function0<? extends T> computable,
+            final Function1<? super Boolean, ? extends T> onRecursiveCall,
+            @NotNull final Function1<? super T, ? extends Unit> postCompute
+    ) {
+        return new StripedNotNullLazyValue<T>(computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                if (onRecursiveCall == null) {
+                    return super.recursionDetected(firstTime);
+                }
+                return onRecursiveCall.invoke(firstTime);
+            }
+
+            @Override
+            protected void postCompute(@NotNull T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValue(@NotNull Function0<? extends T> computable) {
+        return new StripedLazyValue<T>(computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createRecursionTolerantNullableLazyValue(@NotNull Function0<? extends T> computable, final T onRecursiveCall) {
+        return new StripedLazyValue<T>(computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                return onRecursiveCall;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValueWithPostCompute(
+            @NotNull Function0<? extends T> computable, @NotNull final Function1<? super T, ? extends Unit> postCompute
+    ) {
+        return new StripedLazyValue<T>(computable) {
+            @Override
+            protected void postCompute(@Nullable T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    @Override
+    public <T> T compute(@NotNull Function0<? extends T> computable) {
+        acquire(computeLock, /* mayFallBack = */ false);
+        try {
+            return computable.invoke();
+        }
+        catch (Throwable throwable) {
+            throw exceptionHandlingStrategy.handleException(throwable);
+        }
+        finally {
+            release(computeLock);
+        }
+    }
+
+    @NotNull
+    private static <K> ConcurrentMap<K, Object> createConcurrentHashMap() {
+        // memory optimization: fewer segments and entries stored
+        return new ConcurrentHashMap<K, Object>(3, 1, 2);
+    }
+
+    @NotNull
+    private StripeLock stripeFor(int hash) {
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * @return {@code false} if waiting for the lock would lead to a deadlock (only when {@code mayFallBack} is {@code true}),
+     * in this case the lock is not acquired
+     */
+    private boolean acquire(@NotNull StripeLock lock, boolean mayFallBack) {
+        int[] held = heldLockCount.get();
+
+        // A thread holding no locks can't take part in a deadlock, so it doesn't need to announce what it's waiting for
+        if (held[0] == 0 || lock.isHeldByCurrentThread()) {
+            lock.lock();
+            held[0]++;
+            return true;
+        }
+        if (lock.tryLock()) {
+            held[0]++;
+            return true;
+        }
+
+        Thread current = Thread.currentThread();
+        boolean interrupted = false;
+        waitingFor.put(current, lock);
+        try {
+            while (true) {
+                try {
+                    if (lock.tryLock(DEADLOCK_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                        held[0]++;
+                        return true;
+                    }
+                }
+                catch (InterruptedException e) {
+                    // Locks in storage managers are not interruptible, see LockBasedStorageManager
+                    interrupted = true;
+                }
+
+                // A cycle can't consist of waiters on the compute lock only, so some other thread in it will back off
+                if (mayFallBack && isDeadlocked(current, lock)) return false;
+            }
+        }
+        finally {
+            waitingFor.remove(current);
+            if (interrupted) current.interrupt();
+        }
+    }
+
+    private void release(@NotNull StripeLock lock) {
+        heldLockCount.get()[0]--;
+        lock.unlock();
+    }
+
+    private boolean isDeadlocked(@NotNull Thread current, @NotNull StripeLock lock) {
+        // The graph may change while we're walking it, so the answer may be wrong both ways,
+        // but a cycle that persists will be eventually reported to at least one of its participants
+        StripeLock next = lock;
+        for (int steps = waitingFor.size(); steps >= 0; steps--) {
+            Thread owner = next.getOwnerThread();
+            if (owner == null) return false;
+            if (owner == current) return true;
+
+            next = waitingFor.get(owner);
+            if (next == null) return false;
+        }
+        return false;
+    }
+
+    private enum NotValue {
+        NOT_COMPUTED,
+        COMPUTING,
+        RECURSION_WAS_DETECTED
+    }
+
+    private static class StripeLock extends ReentrantLock {
+        @Nullable
+        public Thread getOwnerThread() {
+            return getOwner();
+        }
+    }
+
+    private static class KeyInFunction {
+        private final Object function;
+        private final Object key;
+
+        private KeyInFunction(@NotNull Object function, @Nullable Object key) {
+            this.function = function;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof KeyInFunction)) return false;
+
+            KeyInFunction other = (KeyInFunction) o;
+            return function == other.function && (key == null ? other.key == null : key.equals(other.key));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(function) + (key != null ? key.hashCode() : 0);
+        }
+    }
+
+    private class StripedLazyValue<T> implements NullableLazyValue<T> {
+
+        private final Function0<? extends T> computable;
+
+        // Not private: accessed through LAZY_VALUE_UPDATER
+        @Nullable
+        /*package*/ volatile Object value = NotValue.NOT_COMPUTED;
+
+        public StripedLazyValue(@NotNull Function0<? extends T> computable) {
+            this.computable = computable;
+        }
+
+        @Override
+        public boolean isComputed() {
+            return value != NotValue.NOT_COMPUTED && value != NotValue.COMPUTING;
+        }
+
+        @Override
+        public T invoke() {
+            Object _value = value;
+            if (!(_value instanceof NotValue)) return WrappedValues.unescapeThrowable(_value);
+
+            StripeLock lock = stripeFor(System.identityHashCode(this));
+            if (!acquire(lock, /* mayFallBack = */ true)) {
+                return computeWithoutLock();
+            }
+
+            try {
+                _value = value;
+                if (!(_value instanceof NotValue)) return WrappedValues.unescapeThrowable(_value);
+
+                // Only the owner of the stripe sets COMPUTING, so here it's always a recursive call on this thread
+                if (_value == NotValue.COMPUTING) {
+                    value = NotValue.RECURSION_WAS_DETECTED;
+                    return recursionDetected(/*firstTime = */ true);
+                }
+
+                if (_value == NotValue.RECURSION_WAS_DETECTED) {
+                    return recursionDetected(/*firstTime = */ false);
+                }
+
+                value = NotValue.COMPUTING;
+                try {
+                    T typedValue = computable.invoke();
+                    if (!publish(typedValue)) {
+                        // Another thread has computed this value without the lock to break a deadlock
+                        return WrappedValues.unescapeThrowable(value);
+                    }
+                    postCompute(typedValue);
+                    return typedValue;
+                }
+                catch (Throwable throwable) {
+                    // Store only if it's a genuine result, not something thrown through recursionDetected()
+                    //noinspection unchecked
+                    LAZY_VALUE_UPDATER.compareAndSet(this, NotValue.COMPUTING, WrappedValues.escapeThrowable(throwable));
+                    throw exceptionHandlingStrategy.handleException(throwable);
+                }
+            }
+            finally {
+                release(lock);
+            }
+        }
+
+        private T computeWithoutLock() {
+            Set<Object> computing = computedWithoutLock.get();
+            if (!computing.add(this)) {
+                return recursionDetected(/*firstTime = */ true);
+            }
+
+            try {
+                T typedValue = computable.invoke();
+                if (!publish(typedValue)) {
+                    return WrappedValues.unescapeThrowable(value);
+                }
+                postCompute(typedValue);
+                return typedValue;
+            }
+            catch (Throwable throwable) {
+                throw exceptionHandlingStrategy.handleException(throwable);
+            }
+            finally {
+                computing.remove(this);
+            }
+        }
+
+        private boolean publish(@Nullable T typedValue) {
+            while (true) {
+                Object current = value;
+                if (!(current instanceof NotValue)) return false;
+                //noinspection unchecked
+                if (LAZY_VALUE_UPDATER.compareAndSet(this, current, typedValue)) return true;
+            }
+        }
+
+        /**
+         * @param firstTime {@code true} when recursion has been just detected, {@code false} otherwise
+         * @return a value to be returned on a recursive call or subsequent calls
+         */
+        protected T recursionDetected(boolean firstTime) {
+            throw new IllegalStateException("Recursive call in a lazy value under " + StripedLockStorageManager.this);
+        }
+
+        protected void postCompute(T value) {
+            // Doing something in post-compute helps prevent infinite recursion
+        }
+    }
+
+    private class StripedNotNullLazyValue<T> extends StripedLazyValue<T> implements NotNullLazyValue<T> {
+
+        public StripedNotNullLazyValue(@NotNull Function0<? extends T> computable) {
+            super(computable);
+        }
+
+        @Override
+        @NotNull
+        public T invoke() {
+            T result = super.invoke();
+            assert result != null : "compute() returned null";
+            return result;
+        }
+    }
+
+    private class StripedMemoizedFunction<K, V> implements MemoizedFunctionToNullable<K, V> {
+        private final ConcurrentMap<K, Object> cache;
+        private final Function1<? super K, ? extends V> compute;
+
+        public StripedMemoizedFunction(@NotNull ConcurrentMap<K, Object> map, @NotNull Function1<? super K, ? extends V> compute) {
+            this.cache = map;
+            this.compute = compute;
+        }
+
+        @Override
+        @Nullable
+        public V invoke(K input) {
+            Object value = cache.get(input);
+            if (value != null && value != NotValue.COMPUTING) return WrappedValues.unescapeExceptionOrNull(value);
+
+            StripeLock lock = stripeFor(31 * System.identityHashCode(this) + (input != null ? input.hashCode() : 0));
+            if (!acquire(lock, /* mayFallBack = */ true)) {
+                return computeWithoutLock(input);
+            }
+
+            try {
+                value = cache.get(input);
+                if (value == NotValue.COMPUTING) {
+                    throw new AssertionError("Recursion detected on input: " + input + " under " + StripedLockStorageManager.this);
+                }
+                if (value != null) return WrappedValues.unescapeExceptionOrNull(value);
+
+                cache.put(input, NotValue.COMPUTING);
+                try {
+                    V typedValue = compute.invoke(input);
+                    if (cache.replace(input, NotValue.COMPUTING, WrappedValues.escapeNull(typedValue))) {
+                        return typedValue;
+                    }
+                    // Another thread has computed this value without the lock to break a deadlock
+                    return valueComputedElsewhere(input, typedValue);
+                }
+                catch (Throwable throwable) {
+                    cache.replace(input, NotValue.COMPUTING, WrappedValues.escapeThrowable(throwable));
+                    throw exceptionHandlingStrategy.handleException(throwable);
+                }
+            }
+            finally {
+                release(lock);
+            }
+        }
+
+        @Nullable
+        private V computeWithoutLock(K input) {
+            Set<Object> computing = computedWithoutLock.get();
+            KeyInFunction key = new KeyInFunction(this, input);
+            if (!computing.add(key)) {
+                throw new AssertionError("Recursion detected on input: " + input + " under " + StripedLockStorageManager.this);
+            }
+
+            try {
+                V typedValue = compute.invoke(input);
+                Object escaped = WrappedValues.escapeNull(typedValue);
+                while (true) {
+                    Object oldValue = cache.putIfAbsent(input, escaped);
+                    if (oldValue == null) return typedValue;
+                    if (oldValue != NotValue.COMPUTING) return WrappedValues.unescapeExceptionOrNull(oldValue);
+                    if (cache.replace(input, NotValue.COMPUTING, escaped)) return typedValue;
+                }
+            }
+            catch (Throwable throwable) {
+                throw exceptionHandlingStrategy.handleException(throwable);
+            }
+            finally {
+                computing.remove(key);
+            }
+        }
+
+        @Nullable
+        private V valueComputedElsewhere(K input, @Nullable V ownValue) {
+            Object value = cache.get(input);
+            // The value may be missing if the map doesn't retain its values strongly
+            if (value == null || value == NotValue.COMPUTING) return ownValue;
+            return WrappedValues.unescapeExceptionOrNull(value);
+        }
+
+        @Override
+        public boolean isComputed(K key) {
+            Object value = cache.get(key);
+            return value != null && value != NotValue.COMPUTING;
+        }
+    }
+
+    private class StripedMemoizedFunctionToNotNull<K, V> extends StripedMemoizedFunction<K, V> implements MemoizedFunctionToNotNull<K, V> {
+
+        public StripedMemoizedFunctionToNotNull(
+                @NotNull ConcurrentMap<K, Object> map,
+                @NotNull Function1<? super K, ? extends V> compute
+        ) {
+            super(map, compute);
+        }
+
+        @NotNull
+        @Override
+        public V invoke(K input) {
+            V result = super.invoke(input);
+            assert result != null : "compute() returned null under " + StripedLockStorageManager.this;
+            return result;
+        }
+    }
+}
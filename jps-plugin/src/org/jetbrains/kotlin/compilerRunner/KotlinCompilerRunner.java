@@ -24,12 +24,14 @@ import com.intellij.util.xmlb.XmlSerializerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.cli.common.arguments.ArgumentUtils;
 import org.jetbrains.kotlin.cli.common.arguments.CommonCompilerArguments;
 import org.jetbrains.kotlin.cli.common.arguments.K2JSCompilerArguments;
 import org.jetbrains.kotlin.cli.common.arguments.K2JVMCompilerArguments;
-import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
-import org.jetbrains.kotlin.cli.common.messages.MessageCollectorUtil;
+import org.jetbrains.kotlin.cli.common.daemon.CompileDaemonClient;
+import org.jetbrains.kotlin.cli.common.messages.*;
 import org.jetbrains.kotlin.config.CompilerSettings;
+import org.jetbrains.kotlin.config.IncrementalCompilation;
 import org.jetbrains.kotlin.utils.UtilsPackage;
 
 import java.io.*;
@@ -88,6 +90,12 @@ public class KotlinCompilerRunner {
             OutputItemsCollector collector,
             CompilerEnvironment environment
     ) {
+        // Services like the incremental cache can't be passed to another process, so the daemon is only used for non-incremental builds
+        if (CompileDaemonClient.isEnabled() && !IncrementalCompilation.ENABLED &&
+            runCompilerInDaemon(compilerClassName, arguments, additionalArguments, messageCollector, collector)) {
+            return;
+        }
+
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
         PrintStream out = new PrintStream(stream);
 
@@ -101,6 +109,45 @@ public class KotlinCompilerRunner {
         }
     }
 
+    // Returns false if the daemon is not available
+    private static boolean runCompilerInDaemon(
+            String compilerClassName,
+            CommonCompilerArguments arguments,
+            String additionalArguments,
+            final MessageCollector messageCollector,
+            final OutputItemsCollector collector
+    ) {
+        List<String> argumentsList;
+        try {
+            argumentsList = ArgumentUtils.convertArgumentsToStringList(arguments);
+        }
+        catch (Exception e) {
+            return false;
+        }
+        argumentsList.addAll(StringUtil.split(additionalArguments, " "));
+
+        ExitCode exitCode = CompileDaemonClient.compile(compilerClassName, argumentsList, new MessageCollector() {
+            @Override
+            public void report(@NotNull CompilerMessageSeverity severity, @NotNull String message, @NotNull CompilerMessageLocation location) {
+                if (severity == CompilerMessageSeverity.OUTPUT) {
+                    OutputMessageUtil.Output output = OutputMessageUtil.parseOutputMessage(message);
+                    if (output != null) {
+                        collector.add(output.sourceFiles, output.outputFile);
+                    }
+                }
+                else {
+                    messageCollector.report(severity, message, location);
+                }
+            }
+        });
+        if (exitCode == null) return false;
+
+        if (exitCode == ExitCode.INTERNAL_ERROR) {
+            messageCollector.report(ERROR, "Compiler terminated with internal error", NO_LOCATION);
+        }
+        return true;
+    }
+
     @NotNull
     private static String execCompiler(
             String compilerClassName,
@@ -53,6 +53,7 @@ import org.jetbrains.kotlin.progress.CompilationCanceledException
 import org.jetbrains.kotlin.jps.JpsKotlinCompilerSettings
 import org.jetbrains.kotlin.jps.incremental.*
 import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.DO_NOTHING
+import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.RECOMPILE_AFFECTED_KOTLIN_IN_CHUNK
 import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.RECOMPILE_ALL_IN_CHUNK_AND_DEPENDANTS
 import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.RECOMPILE_OTHER_IN_CHUNK_AND_DEPENDANTS
 import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.RECOMPILE_OTHER_KOTLIN_IN_CHUNK
@@ -60,6 +61,7 @@ import org.jetbrains.kotlin.load.kotlin.PackageClassUtils
 import org.jetbrains.kotlin.load.kotlin.header.isCompatiblePackageFacadeKind
 import org.jetbrains.kotlin.load.kotlin.incremental.cache.IncrementalCache
 import org.jetbrains.kotlin.load.kotlin.incremental.cache.IncrementalCacheProvider
+import org.jetbrains.kotlin.load.kotlin.incremental.cache.LookupTracker
 import org.jetbrains.kotlin.resolve.jvm.JvmClassName
 import org.jetbrains.kotlin.utils.LibraryUtils
 import org.jetbrains.kotlin.utils.PathUtil
@@ -141,8 +143,9 @@ public class KotlinBuilder : ModuleLevelBuilder(BuilderCategory.SOURCE_PROCESSOR
         messageCollector.report(INFO, "Kotlin JPS plugin version " + KotlinVersion.VERSION, CompilerMessageLocation.NO_LOCATION)
 
         val incrementalCaches = chunk.getTargets().keysToMap { dataManager.getKotlinCache(it) }
+        val filesToCompile = KotlinSourceFileCollector.getDirtySourceFiles(dirtyFilesHolder)
 
-        val environment = createCompileEnvironment(incrementalCaches, context)
+        val environment = createCompileEnvironment(incrementalCaches, filesToCompile, context)
         if (!environment.success()) {
             environment.reportErrorsTo(messageCollector)
             return ABORT
@@ -153,7 +156,6 @@ public class KotlinBuilder : ModuleLevelBuilder(BuilderCategory.SOURCE_PROCESSOR
         commonArguments.verbose = true // Make compiler report source to output files mapping
 
         val allCompiledFiles = getAllCompiledFilesContainer(context)
-        val filesToCompile = KotlinSourceFileCollector.getDirtySourceFiles(dirtyFilesHolder)
 
         val start = System.nanoTime()
         val outputItemCollector = doCompileModuleChunk(allCompiledFiles, chunk, commonArguments, context, dirtyFilesHolder,
@@ -199,6 +201,8 @@ public class KotlinBuilder : ModuleLevelBuilder(BuilderCategory.SOURCE_PROCESSOR
         }
 
         if (IncrementalCompilation.ENABLED) {
+            val changedLookupKeys = incrementalCaches.values().flatMap { it.getAndClearChangedLookupKeys() }
+
             when (recompilationDecision) {
                 RECOMPILE_ALL_IN_CHUNK_AND_DEPENDANTS -> {
                     allCompiledFiles.clear()
@@ -220,6 +224,13 @@ public class KotlinBuilder : ModuleLevelBuilder(BuilderCategory.SOURCE_PROCESSOR
                         KotlinSourceFileCollector.isKotlinSourceFile(file) && file !in allCompiledFiles
                     })
                 }
+                RECOMPILE_AFFECTED_KOTLIN_IN_CHUNK -> {
+                    val affectedFiles = incrementalCaches.values().flatMapTo(HashSet<File>()) {
+                        it.getFilesAffectedByChanges(changedLookupKeys)
+                    }
+                    LOG.debug("Files affected by changes: $affectedFiles")
+                    FSOperations.markDirty(context, chunk, { file -> file in affectedFiles && file !in allCompiledFiles })
+                }
             }
             return ADDITIONAL_PASS_REQUIRED
         }
@@ -268,13 +279,20 @@ public class KotlinBuilder : ModuleLevelBuilder(BuilderCategory.SOURCE_PROCESSOR
         return compileToJvm(allCompiledFiles, chunk, commonArguments, context, dirtyFilesHolder, environment, filesToCompile, messageCollector)
     }
 
-    private fun createCompileEnvironment(incrementalCaches: Map<ModuleBuildTarget, IncrementalCache>, context: CompileContext): CompilerEnvironment {
-        val compilerServices = Services.Builder()
+    private fun createCompileEnvironment(
+            incrementalCaches: Map<ModuleBuildTarget, IncrementalCacheImpl>,
+            filesToCompile: MultiMap<ModuleBuildTarget, File>,
+            context: CompileContext
+    ): CompilerEnvironment {
+        val compilerServicesBuilder = Services.Builder()
                 .register(javaClass<IncrementalCacheProvider>(), IncrementalCacheProviderImpl(incrementalCaches))
                 .register(javaClass<CompilationCanceledStatus>(), object: CompilationCanceledStatus {
                     override fun checkCanceled(): Unit = if (context.getCancelStatus().isCanceled()) throw CompilationCanceledException()
                     })
-                .build()
+        if (IncrementalCompilation.isLookupTrackingEnabled()) {
+            compilerServicesBuilder.register(javaClass<LookupTracker>(), LookupTrackerImpl(filesToCompile, incrementalCaches))
+        }
+        val compilerServices = compilerServicesBuilder.build()
 
         return CompilerEnvironment.getEnvironmentFor(
                 PathUtil.getKotlinPathsForJpsPluginOrJpsTests(),
@@ -27,6 +27,7 @@ import org.jetbrains.jps.incremental.storage.StorageOwner
 import org.jetbrains.kotlin.config.IncrementalCompilation
 import org.jetbrains.kotlin.jps.build.KotlinBuilder
 import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.DO_NOTHING
+import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.RECOMPILE_AFFECTED_KOTLIN_IN_CHUNK
 import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.RECOMPILE_ALL_IN_CHUNK_AND_DEPENDANTS
 import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.RECOMPILE_OTHER_IN_CHUNK_AND_DEPENDANTS
 import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDecision.RECOMPILE_OTHER_KOTLIN_IN_CHUNK
@@ -46,6 +47,7 @@ import java.security.MessageDigest
 import java.util.ArrayList
 import java.util.Arrays
 import java.util.HashMap
+import java.util.HashSet
 
 val INLINE_ANNOTATION_DESC = "Lkotlin/inline;"
 
@@ -55,8 +57,12 @@ private val CACHE_DIRECTORY_NAME = "kotlin"
 class CacheFormatVersion(targetDataRoot: File) {
     companion object {
         // Change this when incremental cache format changes
-        private val INCREMENTAL_CACHE_OWN_VERSION = 3
+        private val INCREMENTAL_CACHE_OWN_VERSION = 4
         private val CACHE_FORMAT_VERSION: Int = INCREMENTAL_CACHE_OWN_VERSION * 1000000 + JvmAbi.VERSION
+        // Change this when the set of recorded lookups changes
+        private val LOOKUPS_OWN_VERSION = 2
+        // Lookups are only recorded with lookup tracking, so a cache built without it can't be used with it and vice versa
+        private val CACHE_FORMAT_VERSION_WITH_LOOKUPS: Int = CACHE_FORMAT_VERSION + 500000 + LOOKUPS_OWN_VERSION * 1000
 
         private val NON_INCREMENTAL_MODE_PSEUDO_VERSION = Int.MAX_VALUE
 
@@ -65,7 +71,12 @@ class CacheFormatVersion(targetDataRoot: File) {
 
     private val file = File(targetDataRoot, FORMAT_VERSION_FILE_PATH)
 
-    private fun actualCacheFormatVersion() = if (IncrementalCompilation.ENABLED) CACHE_FORMAT_VERSION else NON_INCREMENTAL_MODE_PSEUDO_VERSION
+    private fun actualCacheFormatVersion() =
+            when {
+                !IncrementalCompilation.ENABLED -> NON_INCREMENTAL_MODE_PSEUDO_VERSION
+                IncrementalCompilation.isLookupTrackingEnabled() -> CACHE_FORMAT_VERSION_WITH_LOOKUPS
+                else -> CACHE_FORMAT_VERSION
+            }
 
     public fun isIncompatible(): Boolean {
         if (!file.exists()) return false
@@ -93,26 +104,51 @@ class CacheFormatVersion(targetDataRoot: File) {
 
 public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, IncrementalCache {
     companion object {
-        val PROTO_MAP = "proto.tab"
-        val CONSTANTS_MAP = "constants.tab"
-        val INLINE_FUNCTIONS = "inline-functions.tab"
-        val PACKAGE_PARTS = "package-parts.tab"
-        val SOURCE_TO_CLASSES = "source-to-classes.tab"
-        val DIRTY_OUTPUT_CLASSES = "dirty-output-classes.tab"
+        val STORE_FILE = "caches.log"
+
+        val PROTO_MAP = "proto"
+        val CONSTANTS_MAP = "constants"
+        val INLINE_FUNCTIONS = "inline-functions"
+        val PACKAGE_PARTS = "package-parts"
+        val SOURCE_TO_CLASSES = "source-to-classes"
+        val DIRTY_OUTPUT_CLASSES = "dirty-output-classes"
+        val LOOKUPS = "lookups"
+        val SOURCE_TO_LOOKUPS = "source-to-lookups"
+
+        // Each map was kept in its own set of files before they were moved to one store
+        private val OBSOLETE_MAP_FILES = listOf(PROTO_MAP, CONSTANTS_MAP, INLINE_FUNCTIONS, PACKAGE_PARTS, SOURCE_TO_CLASSES,
+                                                DIRTY_OUTPUT_CLASSES, LOOKUPS, SOURCE_TO_LOOKUPS).map { "$it.tab" }
     }
 
     private val baseDir = File(targetDataRoot, CACHE_DIRECTORY_NAME)
+    private val store = openStore()
     private val protoMap = ProtoMap()
     private val constantsMap = ConstantsMap()
     private val inlineFunctionsMap = InlineFunctionsMap()
     private val packagePartMap = PackagePartMap()
     private val sourceToClassesMap = SourceToClassesMap()
     private val dirtyOutputClassesMap = DirtyOutputClassesMap()
+    private val lookupMap = LookupMap()
+    private val sourceToLookupsMap = SourceToLookupsMap()
+
+    private val maps = listOf(protoMap, constantsMap, inlineFunctionsMap, packagePartMap, sourceToClassesMap, dirtyOutputClassesMap,
+                              lookupMap, sourceToLookupsMap)
 
-    private val maps = listOf(protoMap, constantsMap, inlineFunctionsMap, packagePartMap, sourceToClassesMap, dirtyOutputClassesMap)
+    // Lookups recorded since the last compilation started, to avoid writing the same lookup to the storage several times
+    private val recordedLookups = HashSet<String>()
+    // Keys of the lookups affected by the changes in the generated classes
+    private val changedLookupKeys = HashSet<String>()
 
     private val cacheFormatVersion = CacheFormatVersion(targetDataRoot)
 
+    private fun openStore(): LogStructuredStore {
+        val storeFile = File(baseDir, STORE_FILE)
+        if (!storeFile.exists()) {
+            OBSOLETE_MAP_FILES.forEach { PersistentHashMap.deleteFilesStartingWith(File(baseDir, it)) }
+        }
+        return LogStructuredStore(storeFile)
+    }
+
     TestOnly
     public fun dump(): String {
         return maps.map { it.dump() }.join("\n\n")
@@ -124,14 +160,42 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
             classes.forEach { dirtyOutputClassesMap.markDirty(it.getInternalName()) }
 
             sourceToClassesMap.clearOutputsForSource(sourceFile)
+
+            for (key in sourceToLookupsMap[sourceFile]) {
+                lookupMap.removeSource(key, sourceFile)
+            }
+            sourceToLookupsMap.clearLookupsForSource(sourceFile)
         }
+        recordedLookups.clear()
+    }
+
+    public fun recordLookup(sourceFile: File, scopeFqName: String, name: String) {
+        for (key in listOf(lookupKey(scopeFqName, name), scopeLookupKey(scopeFqName))) {
+            if (recordedLookups.add(sourceFile.getAbsolutePath() + "\n" + key)) {
+                lookupMap.addSource(key, sourceFile)
+                sourceToLookupsMap.addLookup(sourceFile, key)
+            }
+        }
+    }
+
+    /**
+     * Returns the source files which looked up anything under the given lookup keys.
+     */
+    public fun getFilesAffectedByChanges(changedLookupKeys: Collection<String>): Set<File> {
+        return changedLookupKeys.flatMapTo(HashSet<File>()) { lookupMap[it] }
+    }
+
+    public fun getAndClearChangedLookupKeys(): Set<String> {
+        val result = HashSet(changedLookupKeys)
+        changedLookupKeys.clear()
+        return result
     }
 
     private fun getRecompilationDecision(protoChanged: Boolean, constantsChanged: Boolean, inlinesChanged: Boolean) =
             when {
                 inlinesChanged -> RECOMPILE_ALL_IN_CHUNK_AND_DEPENDANTS
                 constantsChanged -> RECOMPILE_OTHER_IN_CHUNK_AND_DEPENDANTS
-                protoChanged -> RECOMPILE_OTHER_KOTLIN_IN_CHUNK
+                protoChanged -> if (IncrementalCompilation.isLookupTrackingEnabled()) RECOMPILE_AFFECTED_KOTLIN_IN_CHUNK else RECOMPILE_OTHER_KOTLIN_IN_CHUNK
                 else -> DO_NOTHING
             }
 
@@ -150,14 +214,14 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
         val decision = when {
             header.isCompatiblePackageFacadeKind() ->
                 getRecompilationDecision(
-                        protoChanged = protoMap.put(className, BitEncoding.decodeBytes(header.annotationData)),
+                        protoChanged = putProto(className, BitEncoding.decodeBytes(header.annotationData), isPackageFacade = true),
                         constantsChanged = false,
                         inlinesChanged = false
                 )
             header.isCompatibleClassKind() ->
                 when (header.classKind!!) {
                     JvmAnnotationNames.KotlinClass.Kind.CLASS -> getRecompilationDecision(
-                            protoChanged = protoMap.put(className, BitEncoding.decodeBytes(header.annotationData)),
+                            protoChanged = putProto(className, BitEncoding.decodeBytes(header.annotationData), isPackageFacade = false),
                             constantsChanged = constantsMap.process(className, fileBytes),
                             inlinesChanged = inlineFunctionsMap.process(className, fileBytes)
                     )
@@ -185,6 +249,22 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
         return decision
     }
 
+    private fun putProto(className: JvmClassName, data: ByteArray, isPackageFacade: Boolean): Boolean {
+        val oldData = protoMap[className]
+        if (!protoMap.put(className, data)) return false
+
+        if (IncrementalCompilation.isLookupTrackingEnabled()) {
+            changedLookupKeys.addAll(computeChangedLookupKeys(className, oldData, data, isPackageFacade))
+        }
+        return true
+    }
+
+    private fun computeChangedLookupKeys(className: JvmClassName, oldData: ByteArray?, newData: ByteArray?, isPackageFacade: Boolean) =
+            if (isPackageFacade)
+                changedPackageMemberLookupKeys(className.getPackageFqName(), oldData, newData)
+            else
+                changedClassLookupKeys(oldData, newData)
+
     public fun clearCacheForRemovedClasses(): RecompilationDecision {
         var recompilationDecision = DO_NOTHING
         for (internalClassName in dirtyOutputClassesMap.getDirtyOutputClasses()) {
@@ -201,6 +281,13 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
 
             recompilationDecision = recompilationDecision.merge(newDecision)
 
+            val oldData = protoMap[className]
+            if (IncrementalCompilation.isLookupTrackingEnabled() && oldData != null) {
+                val isPackageFacade = className.getFqNameForClassNameWithoutDollars() ==
+                        PackageClassUtils.getPackageClassFqName(className.getPackageFqName())
+                changedLookupKeys.addAll(computeChangedLookupKeys(className, oldData, null, isPackageFacade))
+            }
+
             protoMap.remove(className)
             packagePartMap.remove(className)
             constantsMap.remove(className)
@@ -222,55 +309,25 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
     }
 
     override fun flush(memoryCachesOnly: Boolean) {
-        maps.forEach { it.flush(memoryCachesOnly) }
+        store.flush(memoryCachesOnly)
     }
 
     public override fun clean() {
-        maps.forEach { it.clean() }
+        store.clean()
         cacheFormatVersion.clean()
     }
 
     public override fun close() {
-        maps.forEach { it.close () }
+        store.close()
     }
 
     private abstract class BasicMap<V> {
-        protected var storage: PersistentHashMap<String, V> = createMap()
+        protected val storage: LogStructuredStore.StoredMap<V> = createMap()
 
-        protected abstract fun createMap(): PersistentHashMap<String, V>
+        protected abstract fun createMap(): LogStructuredStore.StoredMap<V>
 
         public fun contains(key: String): Boolean = storage.containsMapping(key)
 
-        public fun clean() {
-            try {
-                storage.close()
-            }
-            catch (ignored: IOException) {
-            }
-
-            PersistentHashMap.deleteFilesStartingWith(storage.getBaseFile()!!)
-            try {
-                storage = createMap()
-            }
-            catch (ignored: IOException) {
-            }
-        }
-
-        public fun flush(memoryCachesOnly: Boolean) {
-            if (memoryCachesOnly) {
-                if (storage.isDirty()) {
-                    storage.dropMemoryCaches()
-                }
-            }
-            else {
-                storage.force()
-            }
-        }
-
-        public fun close() {
-            storage.close()
-        }
-
         TestOnly
         public fun dump(): String {
             return with(StringBuilder()) {
@@ -279,7 +336,7 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
                     pushIndent()
 
                     for (key in storage.getAllKeysWithExistingMapping().sort()) {
-                        println("$key -> ${dumpValue(storage[key])}")
+                        println("$key -> ${dumpValue(storage[key]!!)}")
                     }
 
                     popIndent()
@@ -293,8 +350,8 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
     }
 
     private inner class ProtoMap : BasicMap<ByteArray>() {
-        override fun createMap(): PersistentHashMap<String, ByteArray> = PersistentHashMap(
-                File(baseDir, PROTO_MAP),
+        override fun createMap(): LogStructuredStore.StoredMap<ByteArray> = store.createMap(
+                PROTO_MAP,
                 EnumeratorStringDescriptor(),
                 ByteArrayExternalizer
         )
@@ -323,8 +380,8 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
     }
 
     private inner class ConstantsMap : BasicMap<Map<String, Any>>() {
-        override fun createMap(): PersistentHashMap<String, Map<String, Any>> = PersistentHashMap(
-                File(baseDir, CONSTANTS_MAP),
+        override fun createMap(): LogStructuredStore.StoredMap<Map<String, Any>> = store.createMap(
+                CONSTANTS_MAP,
                 EnumeratorStringDescriptor(),
                 ConstantsMapExternalizer
         )
@@ -442,8 +499,8 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
     }
 
     private inner class InlineFunctionsMap : BasicMap<Map<String, Long>>() {
-        override fun createMap(): PersistentHashMap<String, Map<String, Long>> = PersistentHashMap(
-                File(baseDir, INLINE_FUNCTIONS),
+        override fun createMap(): LogStructuredStore.StoredMap<Map<String, Long>> = store.createMap(
+                INLINE_FUNCTIONS,
                 EnumeratorStringDescriptor(),
                 InlineFunctionsMapExternalizer
         )
@@ -544,8 +601,8 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
     }
 
     private inner class PackagePartMap : BasicMap<Boolean>() {
-        override fun createMap(): PersistentHashMap<String, Boolean> = PersistentHashMap(
-                File(baseDir, PACKAGE_PARTS),
+        override fun createMap(): LogStructuredStore.StoredMap<Boolean> = store.createMap(
+                PACKAGE_PARTS,
                 EnumeratorStringDescriptor(),
                 BooleanDataDescriptor.INSTANCE
         )
@@ -566,8 +623,8 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
     }
 
     private inner class SourceToClassesMap : BasicMap<List<String>>() {
-        override fun createMap(): PersistentHashMap<String, List<String>> = PersistentHashMap(
-                File(baseDir, SOURCE_TO_CLASSES),
+        override fun createMap(): LogStructuredStore.StoredMap<List<String>> = store.createMap(
+                SOURCE_TO_CLASSES,
                 PathStringDescriptor.INSTANCE,
                 StringListExternalizer
         )
@@ -588,8 +645,8 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
     }
 
     private inner class DirtyOutputClassesMap : BasicMap<Boolean>() {
-        override fun createMap(): PersistentHashMap<String, Boolean> = PersistentHashMap(
-                File(baseDir, DIRTY_OUTPUT_CLASSES),
+        override fun createMap(): LogStructuredStore.StoredMap<Boolean> = store.createMap(
+                DIRTY_OUTPUT_CLASSES,
                 EnumeratorStringDescriptor(),
                 BooleanDataDescriptor.INSTANCE
         )
@@ -613,8 +670,60 @@ public class IncrementalCacheImpl(targetDataRoot: File) : StorageOwner, Incremen
         override fun dumpValue(value: Boolean) = ""
     }
 
+    private inner class LookupMap : BasicMap<List<String>>() {
+        override fun createMap(): LogStructuredStore.StoredMap<List<String>> = store.createMap(
+                LOOKUPS,
+                EnumeratorStringDescriptor(),
+                StringListExternalizer
+        )
+
+        public fun addSource(lookupKey: String, sourceFile: File) {
+            storage.appendData(lookupKey, { out -> IOUtil.writeUTF(out, sourceFile.getAbsolutePath()) })
+        }
+
+        public fun removeSource(lookupKey: String, sourceFile: File) {
+            val path = sourceFile.getAbsolutePath()
+            val sources = storage[lookupKey].orEmpty().filter { it != path }
+            if (sources.isEmpty()) {
+                storage.remove(lookupKey)
+            }
+            else {
+                storage.put(lookupKey, sources)
+            }
+        }
+
+        public fun get(lookupKey: String): Collection<File> {
+            return storage[lookupKey].orEmpty().map { File(it) }
+        }
+
+        override fun dumpValue(value: List<String>) = value.sort().toString()
+    }
+
+    private inner class SourceToLookupsMap : BasicMap<List<String>>() {
+        override fun createMap(): LogStructuredStore.StoredMap<List<String>> = store.createMap(
+                SOURCE_TO_LOOKUPS,
+                PathStringDescriptor.INSTANCE,
+                StringListExternalizer
+        )
+
+        public fun addLookup(sourceFile: File, lookupKey: String) {
+            storage.appendData(sourceFile.getAbsolutePath(), { out -> IOUtil.writeUTF(out, lookupKey) })
+        }
+
+        public fun clearLookupsForSource(sourceFile: File) {
+            storage.remove(sourceFile.getAbsolutePath())
+        }
+
+        public fun get(sourceFile: File): Collection<String> {
+            return storage[sourceFile.getAbsolutePath()].orEmpty()
+        }
+
+        override fun dumpValue(value: List<String>) = value.sort().toString()
+    }
+
     enum class RecompilationDecision {
         DO_NOTHING,
+        RECOMPILE_AFFECTED_KOTLIN_IN_CHUNK,
         RECOMPILE_OTHER_KOTLIN_IN_CHUNK,
         RECOMPILE_OTHER_IN_CHUNK_AND_DEPENDANTS,
         RECOMPILE_ALL_IN_CHUNK_AND_DEPENDANTS;
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.jps.incremental
+
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.KeyDescriptor
+import gnu.trove.THashMap
+import gnu.trove.TObjectHashingStrategy
+import org.jetbrains.annotations.TestOnly
+import org.jetbrains.kotlin.jps.build.KotlinBuilder
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.ArrayList
+import java.util.HashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+
+/**
+ * Keeps the data of several maps in one append-only file.
+ *
+ * Each change of a map is a record appended to the end of the file, and the location of the current value of each key is kept in memory.
+ * Records are collected in a memory buffer before they are written, so flushing writes the buffer and, when asked to, syncs one file.
+ * When most of the file is occupied by obsolete records, it is compacted on a background thread.
+ *
+ * Record layout: header length (int), value length (int), header (operation, map name, key), value.
+ */
+public class LogStructuredStore(private val file: File) : Closeable {
+    companion object {
+        private val PUT: Byte = 0
+        private val APPEND: Byte = 1
+        private val REMOVE: Byte = 2
+
+        private val WRITE_BUFFER_SIZE = 64 * 1024
+        private val MIN_SIZE_TO_COMPACT = 1024 * 1024L
+
+        private val compactionExecutor: ExecutorService = Executors.newSingleThreadExecutor(object : ThreadFactory {
+            override fun newThread(r: Runnable): Thread {
+                val thread = Thread(r, "Kotlin incremental cache compaction")
+                thread.setDaemon(true)
+                return thread
+            }
+        })
+    }
+
+    // Chunks of a value in the reverse order of appending
+    class Location(val offset: Long, val length: Int, val recordSize: Int, val previous: Location?) {
+        fun totalRecordSize(): Long {
+            var result = 0L
+            var current: Location? = this
+            while (current != null) {
+                result += current.recordSize
+                current = current.previous
+            }
+            return result
+        }
+    }
+
+    class Record(val operation: Byte, val key: String, val location: Location)
+
+    private val compactedFile = File(file.getPath() + ".compacted")
+    private val tempFile = File(file.getPath() + ".tmp")
+
+    private val maps = HashMap<String, StoredMap<*>>()
+    // Records of the maps which are not created yet
+    private val pendingRecords: MutableMap<String, MutableList<Record>>
+
+    private var channel: FileChannel
+    // Size of the data written to the channel, the records in the write buffer follow it
+    private var fileSize = 0L
+    private val writeBuffer = BufferExposingByteArrayOutputStream(WRITE_BUFFER_SIZE)
+    private var garbageSize = 0L
+    private var forced = true
+    // Changes when the file is cleaned or replaced, so that a compaction started before that is discarded
+    private var generation = 0
+    private var compaction: Future<*>? = null
+    private var closed = false
+
+    init {
+        recoverAfterCompaction()
+        FileUtil.createParentDirs(file)
+        channel = RandomAccessFile(file, "rw").getChannel()
+        pendingRecords = readRecords()
+    }
+
+    public fun <V> createMap(name: String, keyDescriptor: KeyDescriptor<String>, valueExternalizer: DataExternalizer<V>): StoredMap<V> {
+        synchronized(this) {
+            assert(!maps.containsKey(name)) { "Map $name is already created" }
+            val map = StoredMap(name, keyDescriptor, valueExternalizer)
+            maps[name] = map
+            pendingRecords.remove(name)?.forEach { map.replay(it) }
+            return map
+        }
+    }
+
+    public fun flush(memoryCachesOnly: Boolean) {
+        synchronized(this) {
+            writeBufferToChannel()
+            if (!memoryCachesOnly && !forced) {
+                channel.force(false)
+                forced = true
+            }
+            scheduleCompactionIfNeeded()
+        }
+    }
+
+    public fun clean() {
+        synchronized(this) {
+            generation++
+            writeBuffer.reset()
+            channel.truncate(0)
+            fileSize = 0
+            garbageSize = 0
+            forced = false
+            pendingRecords.clear()
+            maps.values().forEach { it.clear() }
+        }
+    }
+
+    override fun close() {
+        waitForCompaction()
+        synchronized(this) {
+            if (closed) return
+            closed = true
+            writeBufferToChannel()
+            channel.close()
+        }
+    }
+
+    TestOnly
+    public fun compact() {
+        waitForCompaction()
+        doCompact()
+    }
+
+    private fun waitForCompaction() {
+        val currentCompaction = synchronized(this) { compaction }
+        currentCompaction?.get()
+    }
+
+    private fun scheduleCompactionIfNeeded() {
+        if (compaction != null || fileSize < MIN_SIZE_TO_COMPACT || garbageSize * 2 < fileSize) return
+
+        compaction = compactionExecutor.submit(object : Runnable {
+            override fun run() {
+                try {
+                    doCompact()
+                }
+                catch (e: Throwable) {
+                    KotlinBuilder.LOG.warn("Failed to compact $file", e)
+                }
+                finally {
+                    synchronized(this@LogStructuredStore) { compaction = null }
+                }
+            }
+        })
+    }
+
+    /**
+     * Copies the current values to a new file, taking the lock only to read each value, so that the store can be used meanwhile.
+     * The records appended meanwhile are copied after that under the lock, and the new file replaces the old one.
+     */
+    private fun doCompact() {
+        val snapshot = HashMap<String, List<Pair<String, Location>>>()
+        val (snapshotSize, snapshotGeneration) = synchronized(this) {
+            if (closed) return
+            writeBufferToChannel()
+            for ((name, map) in maps) {
+                snapshot[name] = map.locations()
+            }
+            fileSize to generation
+        }
+
+        var copied = false
+        val output = DataOutputStream(BufferedOutputStream(FileOutputStream(tempFile)))
+        try {
+            copied = copyValues(snapshot, snapshotGeneration, output)
+        }
+        finally {
+            output.close()
+            if (!copied) {
+                tempFile.delete()
+            }
+        }
+        if (!copied) return
+
+        synchronized(this) {
+            if (closed || generation != snapshotGeneration) {
+                tempFile.delete()
+                return
+            }
+
+            writeBufferToChannel()
+            val newChannel = FileOutputStream(tempFile, true).getChannel()
+            try {
+                var position = snapshotSize
+                while (position < fileSize) {
+                    position += channel.transferTo(position, fileSize - position, newChannel)
+                }
+                newChannel.force(false)
+            }
+            finally {
+                newChannel.close()
+            }
+
+            channel.close()
+            try {
+                FileUtil.rename(tempFile, compactedFile)
+            }
+            catch (e: IOException) {
+                // The old file is left as it was, so the store goes on with it
+                tempFile.delete()
+                channel = RandomAccessFile(file, "rw").getChannel()
+                throw e
+            }
+
+            // If moving the compacted file in place fails, the store is reloaded from whatever is left, and the next opening finishes the move
+            try {
+                recoverAfterCompaction()
+            }
+            finally {
+                channel = RandomAccessFile(file, "rw").getChannel()
+                generation++
+                garbageSize = 0
+                forced = true
+                maps.values().forEach { it.clear() }
+                pendingRecords.clear()
+                for ((name, records) in readRecords()) {
+                    val map = maps[name]
+                    if (map != null) {
+                        records.forEach { map.replay(it) }
+                    }
+                }
+            }
+        }
+    }
+
+    // Returns false if the store is cleaned or closed before all values are copied, then the copy is useless
+    private fun copyValues(snapshot: Map<String, List<Pair<String, Location>>>, snapshotGeneration: Int, output: DataOutputStream): Boolean {
+        for ((name, locations) in snapshot) {
+            for ((key, location) in locations) {
+                // clean() truncates the file and resets the write buffer, so the value may only be read while the generation is the same
+                val value = synchronized(this) {
+                    if (closed || generation != snapshotGeneration) return false
+                    readValue(location)
+                }
+                writeRecord(output, PUT, name, key, value)
+            }
+        }
+        return true
+    }
+
+    // A complete compacted file which was not moved in place yet
+    private fun recoverAfterCompaction() {
+        tempFile.delete()
+        if (compactedFile.exists()) {
+            FileUtil.delete(file)
+            FileUtil.rename(compactedFile, file)
+        }
+    }
+
+    private fun readRecords(): MutableMap<String, MutableList<Record>> {
+        val result = HashMap<String, MutableList<Record>>()
+        val size = channel.size()
+        val input = DataInputStream(BufferedInputStream(FileInputStream(file)))
+        var position = 0L
+        try {
+            while (position + 8 <= size) {
+                val headerLength = input.readInt()
+                val valueLength = input.readInt()
+                val recordSize = 8 + headerLength + valueLength
+                if (headerLength < 0 || valueLength < 0 || position + recordSize > size) break
+
+                val operation = input.readByte()
+                val name = input.readUTF()
+                val key = input.readUTF()
+                input.skipBytes(valueLength)
+
+                val location = Location(position + 8 + headerLength, valueLength, recordSize, null)
+                result.getOrPut(name) { ArrayList() }.add(Record(operation, key, location))
+                position += recordSize
+            }
+        }
+        finally {
+            input.close()
+        }
+
+        if (position < size) {
+            KotlinBuilder.LOG.info("Incomplete record at $position in $file, the rest of the file is dropped")
+            channel.truncate(position)
+        }
+        fileSize = position
+        return result
+    }
+
+    private fun write(operation: Byte, name: String, key: String, value: ByteArray?): Location {
+        val start = fileSize + writeBuffer.size()
+        val recordSize = writeRecord(DataOutputStream(writeBuffer), operation, name, key, value)
+        forced = false
+
+        val valueLength = value?.size() ?: 0
+        val location = Location(start + recordSize - valueLength, valueLength, recordSize, null)
+        if (writeBuffer.size() >= WRITE_BUFFER_SIZE) {
+            writeBufferToChannel()
+        }
+        return location
+    }
+
+    private fun writeRecord(output: DataOutputStream, operation: Byte, name: String, key: String, value: ByteArray?): Int {
+        val header = BufferExposingByteArrayOutputStream()
+        with(DataOutputStream(header)) {
+            writeByte(operation.toInt())
+            writeUTF(name)
+            writeUTF(key)
+        }
+
+        val valueLength = value?.size() ?: 0
+        output.writeInt(header.size())
+        output.writeInt(valueLength)
+        output.write(header.getInternalBuffer(), 0, header.size())
+        if (value != null) {
+            output.write(value)
+        }
+        return 8 + header.size() + valueLength
+    }
+
+    private fun writeBufferToChannel() {
+        if (writeBuffer.size() == 0) return
+
+        val buffer = ByteBuffer.wrap(writeBuffer.getInternalBuffer(), 0, writeBuffer.size())
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, fileSize + buffer.position())
+        }
+        fileSize += writeBuffer.size()
+        writeBuffer.reset()
+    }
+
+    private fun readValue(location: Location): ByteArray {
+        val chunks = ArrayList<Location>()
+        var current: Location? = location
+        while (current != null) {
+            chunks.add(current)
+            current = current.previous
+        }
+
+        val result = ByteArray(chunks.sumBy { it.length })
+        var resultOffset = 0
+        for (chunk in chunks.reverse()) {
+            readChunk(chunk, result, resultOffset)
+            resultOffset += chunk.length
+        }
+        return result
+    }
+
+    private fun readChunk(chunk: Location, result: ByteArray, resultOffset: Int) {
+        // The records which are not written yet are in the write buffer
+        if (chunk.offset >= fileSize) {
+            System.arraycopy(writeBuffer.getInternalBuffer(), (chunk.offset - fileSize).toInt(), result, resultOffset, chunk.length)
+            return
+        }
+
+        val buffer = ByteBuffer.wrap(result, resultOffset, chunk.length)
+        while (buffer.hasRemaining()) {
+            val read = channel.read(buffer, chunk.offset + buffer.position() - resultOffset)
+            if (read < 0) throw EOFException("Unexpected end of $file")
+        }
+    }
+
+    /**
+     * A map stored in [LogStructuredStore]. The operations are those of [com.intellij.util.io.PersistentHashMap] which incremental caches use.
+     */
+    public inner class StoredMap<V>(
+            private val name: String,
+            private val keyDescriptor: KeyDescriptor<String>,
+            private val valueExternalizer: DataExternalizer<V>
+    ) {
+        private val index = THashMap<String, Location>(object : TObjectHashingStrategy<String> {
+            override fun computeHashCode(key: String): Int = keyDescriptor.getHashCode(key)
+            override fun equals(key1: String, key2: String): Boolean = keyDescriptor.isEqual(key1, key2)
+        })
+
+        public fun get(key: String): V? {
+            synchronized(this@LogStructuredStore) {
+                val location = index.get(key) ?: return null
+                return valueExternalizer.read(DataInputStream(ByteArrayInputStream(readValue(location))))
+            }
+        }
+
+        public fun containsMapping(key: String): Boolean {
+            synchronized(this@LogStructuredStore) {
+                return index.containsKey(key)
+            }
+        }
+
+        public fun put(key: String, value: V) {
+            val bytes = BufferExposingByteArrayOutputStream()
+            valueExternalizer.save(DataOutputStream(bytes), value)
+            synchronized(this@LogStructuredStore) {
+                replay(Record(PUT, key, write(PUT, name, key, bytes.toByteArray())))
+            }
+        }
+
+        public fun appendData(key: String, appender: (DataOutput) -> Unit) {
+            val bytes = BufferExposingByteArrayOutputStream()
+            appender(DataOutputStream(bytes))
+            synchronized(this@LogStructuredStore) {
+                replay(Record(APPEND, key, write(APPEND, name, key, bytes.toByteArray())))
+            }
+        }
+
+        public fun remove(key: String) {
+            synchronized(this@LogStructuredStore) {
+                if (!index.containsKey(key)) return
+                replay(Record(REMOVE, key, write(REMOVE, name, key, null)))
+            }
+        }
+
+        public fun getAllKeysWithExistingMapping(): Collection<String> {
+            synchronized(this@LogStructuredStore) {
+                return ArrayList(index.keySet())
+            }
+        }
+
+        fun replay(record: Record) {
+            val key = record.key
+            val location = record.location
+            when (record.operation) {
+                PUT -> {
+                    garbageSize += index[key]?.totalRecordSize() ?: 0L
+                    index[key] = location
+                }
+                APPEND -> {
+                    index[key] = Location(location.offset, location.length, location.recordSize, index[key])
+                }
+                REMOVE -> {
+                    garbageSize += (index.remove(key)?.totalRecordSize() ?: 0L) + location.recordSize
+                }
+                else -> throw IllegalStateException("Unknown operation ${record.operation} in $file")
+            }
+        }
+
+        fun locations(): List<Pair<String, Location>> = index.entrySet().map { it.key to it.value }
+
+        fun clear() {
+            index.clear()
+        }
+    }
+}
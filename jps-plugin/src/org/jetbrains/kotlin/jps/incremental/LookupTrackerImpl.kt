@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.jps.incremental
+
+import com.intellij.util.containers.MultiMap
+import org.jetbrains.jps.incremental.ModuleBuildTarget
+import org.jetbrains.kotlin.load.kotlin.incremental.cache.LookupTracker
+import java.io.File
+import java.util.HashMap
+
+/**
+ * Stores the lookups reported by the compiler in the incremental cache of the target which the looking up file belongs to.
+ */
+class LookupTrackerImpl(
+        filesToCompile: MultiMap<ModuleBuildTarget, File>,
+        incrementalCaches: Map<ModuleBuildTarget, IncrementalCacheImpl>
+) : LookupTracker {
+    private val fileToCache = HashMap<String, IncrementalCacheImpl>()
+
+    init {
+        for ((target, files) in filesToCompile.entrySet()) {
+            val cache = incrementalCaches[target] ?: continue
+            files.forEach { fileToCache[it.getAbsolutePath()] = cache }
+        }
+    }
+
+    override fun record(filePath: String, scopeFqName: String, name: String) {
+        val cache = fileToCache[filePath] ?: return
+        cache.recordLookup(File(filePath), scopeFqName, name)
+    }
+}
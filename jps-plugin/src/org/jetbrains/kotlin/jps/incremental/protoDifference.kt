@@ -0,0 +1,259 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.jps.incremental
+
+import org.jetbrains.kotlin.load.kotlin.incremental.cache.LookupTracker
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.serialization.ClassData
+import org.jetbrains.kotlin.serialization.PackageData
+import org.jetbrains.kotlin.serialization.ProtoBuf
+import org.jetbrains.kotlin.serialization.deserialization.NameResolver
+import org.jetbrains.kotlin.serialization.jvm.JvmProtoBuf
+import org.jetbrains.kotlin.serialization.jvm.JvmProtoBufUtil
+import java.util.HashMap
+import java.util.HashSet
+
+// Lookups of all names in a scope are stored under the key of the scope itself
+fun scopeLookupKey(scopeFqName: String): String = "$scopeFqName#"
+
+fun lookupKey(scopeFqName: String, name: String): String = "$scopeFqName#$name"
+
+/**
+ * Returns the lookup keys of the declarations which differ in the two versions of a package facade proto.
+ * The data is null if there was no such package facade or there is no more.
+ */
+fun changedPackageMemberLookupKeys(packageFqName: FqName, oldData: ByteArray?, newData: ByteArray?): Set<String> {
+    val oldMembers = oldData?.let { PackageData.read(it, JvmProtoBufUtil.EXTENSION_REGISTRY) }
+    val newMembers = newData?.let { PackageData.read(it, JvmProtoBufUtil.EXTENSION_REGISTRY) }
+
+    val scope = packageFqName.asString()
+    val changedNames = changedMemberNames(
+            oldMembers?.let { membersByName(it.getNameResolver(), it.getPackageProto().getMemberList()) },
+            newMembers?.let { membersByName(it.getNameResolver(), it.getPackageProto().getMemberList()) }
+    )
+    return changedNames.mapTo(HashSet<String>()) { lookupKey(scope, it) }
+}
+
+/**
+ * Returns the lookup keys of the declarations which differ in the two versions of a class proto.
+ * If anything but the members of the class has changed, all lookups in the class and of the class itself are affected.
+ */
+fun changedClassLookupKeys(oldData: ByteArray?, newData: ByteArray?): Set<String> {
+    val oldClass = oldData?.let { ClassData.read(it, JvmProtoBufUtil.EXTENSION_REGISTRY) }
+    val newClass = newData?.let { ClassData.read(it, JvmProtoBufUtil.EXTENSION_REGISTRY) }
+    val classData = newClass ?: oldClass ?: return setOf()
+
+    val classFqName = classData.getNameResolver().getClassId(classData.getClassProto().getFqName()).asSingleFqName()
+    val scope = classFqName.asString()
+
+    if (oldClass == null || newClass == null || oldClass.renderWithoutMembers() != newClass.renderWithoutMembers()) {
+        return setOf(
+                scopeLookupKey(scope),
+                lookupKey(classFqName.parent().asString(), classFqName.shortName().asString())
+        )
+    }
+
+    val changedNames = changedMemberNames(
+            membersByName(oldClass.getNameResolver(), oldClass.getClassProto().getMemberList()),
+            membersByName(newClass.getNameResolver(), newClass.getClassProto().getMemberList())
+    )
+    if (changedNames.isEmpty()) return setOf()
+
+    val result = changedNames.mapTo(HashSet<String>()) { lookupKey(scope, it) }
+    result.add(lookupKey(scope, LookupTracker.ANY_MEMBER))
+    return result
+}
+
+private fun ClassData.renderWithoutMembers(): String =
+        ProtoRenderer(getNameResolver()).renderClassWithoutMembers(getClassProto())
+
+// Members are compared by their renderings with the names resolved, because the same index in the string tables of the two versions
+// may stand for different names
+private fun membersByName(nameResolver: NameResolver, members: List<ProtoBuf.Callable>): Map<String, Set<String>> {
+    val renderer = ProtoRenderer(nameResolver)
+    val result = HashMap<String, MutableSet<String>>()
+    for (member in members) {
+        val name = nameResolver.getName(member.getName()).asString()
+        result.getOrPut(name) { HashSet() }.add(renderer.renderCallable(member))
+    }
+    return result
+}
+
+private fun changedMemberNames(oldMembers: Map<String, Set<String>>?, newMembers: Map<String, Set<String>>?): Set<String> {
+    val old = oldMembers.orEmpty()
+    val new = newMembers.orEmpty()
+    return (old.keySet() + new.keySet()).filterTo(HashSet<String>()) { old[it] != new[it] }
+}
+
+/**
+ * Renders all fields of the protos which are read by the JVM deserializer, with the indices in the name tables replaced by the names.
+ */
+private class ProtoRenderer(private val nameResolver: NameResolver) {
+    private val sb = StringBuilder()
+
+    fun renderClassWithoutMembers(proto: ProtoBuf.Class): String {
+        sb.setLength(0)
+        sb.append("class ").append(proto.getFlags()).append(" ").append(classId(proto.getFqName()))
+        if (proto.hasCompanionObjectName()) {
+            sb.append(" companion ").append(string(proto.getCompanionObjectName()))
+        }
+        proto.getTypeParameterList().forEach { typeParameter(it) }
+        for (supertype in proto.getSupertypeList()) {
+            sb.append(" : ")
+            type(supertype)
+        }
+        proto.getNestedClassNameList().forEach { sb.append(" nested ").append(string(it)) }
+        proto.getEnumEntryList().forEach { sb.append(" entry ").append(string(it)) }
+        if (proto.hasPrimaryConstructor()) {
+            sb.append(" primary")
+            val primaryConstructor = proto.getPrimaryConstructor()
+            if (primaryConstructor.hasData()) {
+                callable(primaryConstructor.getData())
+            }
+        }
+        for (constructor in proto.getSecondaryConstructorList()) {
+            sb.append(" secondary")
+            callable(constructor)
+        }
+        return sb.toString()
+    }
+
+    fun renderCallable(proto: ProtoBuf.Callable): String {
+        sb.setLength(0)
+        callable(proto)
+        return sb.toString()
+    }
+
+    private fun callable(proto: ProtoBuf.Callable) {
+        sb.append(" (callable ").append(proto.getFlags())
+        if (proto.hasGetterFlags()) sb.append(" getter ").append(proto.getGetterFlags())
+        if (proto.hasSetterFlags()) sb.append(" setter ").append(proto.getSetterFlags())
+        proto.getTypeParameterList().forEach { typeParameter(it) }
+        if (proto.hasReceiverType()) {
+            sb.append(" receiver")
+            type(proto.getReceiverType())
+        }
+        sb.append(" ").append(string(proto.getName()))
+        for (parameter in proto.getValueParameterList()) {
+            sb.append(" (parameter ").append(parameter.getFlags()).append(" ").append(string(parameter.getName()))
+            type(parameter.getType())
+            if (parameter.hasVarargElementType()) {
+                sb.append(" vararg")
+                type(parameter.getVarargElementType())
+            }
+            if (parameter.hasExtension(JvmProtoBuf.index)) {
+                sb.append(" index ").append(parameter.getExtension(JvmProtoBuf.index))
+            }
+            sb.append(")")
+        }
+        sb.append(" returns")
+        type(proto.getReturnType())
+        if (proto.hasExtension(JvmProtoBuf.methodSignature)) {
+            methodSignature(proto.getExtension(JvmProtoBuf.methodSignature))
+        }
+        if (proto.hasExtension(JvmProtoBuf.propertySignature)) {
+            val signature = proto.getExtension(JvmProtoBuf.propertySignature)
+            if (signature.hasField()) {
+                val field = signature.getField()
+                sb.append(" (field ").append(string(field.getName())).append(" ").append(field.getIsStaticInOuter())
+                jvmType(field.getType())
+                sb.append(")")
+            }
+            if (signature.hasSyntheticMethod()) methodSignature(signature.getSyntheticMethod())
+            if (signature.hasGetter()) methodSignature(signature.getGetter())
+            if (signature.hasSetter()) methodSignature(signature.getSetter())
+        }
+        if (proto.hasExtension(JvmProtoBuf.implClassName)) {
+            sb.append(" impl ").append(string(proto.getExtension(JvmProtoBuf.implClassName)))
+        }
+        sb.append(")")
+    }
+
+    private fun typeParameter(proto: ProtoBuf.TypeParameter) {
+        sb.append(" (typeParameter ").append(proto.getId()).append(" ").append(string(proto.getName()))
+        sb.append(" ").append(proto.getReified()).append(" ").append(proto.getVariance().getNumber())
+        proto.getUpperBoundList().forEach { type(it) }
+        sb.append(")")
+    }
+
+    private fun type(proto: ProtoBuf.Type) {
+        sb.append(" (type ")
+        val constructor = proto.getConstructor()
+        if (constructor.getKind() == ProtoBuf.Type.Constructor.Kind.TYPE_PARAMETER) {
+            sb.append("T").append(constructor.getId())
+        }
+        else {
+            sb.append(classId(constructor.getId()))
+        }
+        for (argument in proto.getArgumentList()) {
+            sb.append(" (argument ").append(argument.getProjection().getNumber())
+            if (argument.hasType()) type(argument.getType())
+            sb.append(")")
+        }
+        if (proto.getNullable()) sb.append("?")
+        if (proto.hasFlexibleTypeCapabilitiesId()) {
+            sb.append(" capabilities ").append(string(proto.getFlexibleTypeCapabilitiesId()))
+        }
+        if (proto.hasFlexibleUpperBound()) {
+            sb.append(" upper")
+            type(proto.getFlexibleUpperBound())
+        }
+        proto.getExtension(JvmProtoBuf.typeAnnotation).forEach { annotation(it) }
+        sb.append(")")
+    }
+
+    private fun annotation(proto: ProtoBuf.Annotation) {
+        sb.append(" (annotation ").append(classId(proto.getId()))
+        for (argument in proto.getArgumentList()) {
+            sb.append(" ").append(string(argument.getNameId())).append("=")
+            annotationValue(argument.getValue())
+        }
+        sb.append(")")
+    }
+
+    private fun annotationValue(proto: ProtoBuf.Annotation.Argument.Value) {
+        sb.append("(")
+        if (proto.hasType()) sb.append(proto.getType().getNumber())
+        if (proto.hasIntValue()) sb.append(" ").append(proto.getIntValue())
+        if (proto.hasFloatValue()) sb.append(" ").append(proto.getFloatValue())
+        if (proto.hasDoubleValue()) sb.append(" ").append(proto.getDoubleValue())
+        if (proto.hasStringValue()) sb.append(" \"").append(string(proto.getStringValue())).append("\"")
+        if (proto.hasClassId()) sb.append(" ").append(classId(proto.getClassId()))
+        if (proto.hasEnumValueId()) sb.append(" ").append(string(proto.getEnumValueId()))
+        if (proto.hasAnnotation()) annotation(proto.getAnnotation())
+        proto.getArrayElementList().forEach { annotationValue(it) }
+        sb.append(")")
+    }
+
+    private fun methodSignature(proto: JvmProtoBuf.JvmMethodSignature) {
+        sb.append(" (method ").append(string(proto.getName()))
+        jvmType(proto.getReturnType())
+        proto.getParameterTypeList().forEach { jvmType(it) }
+        sb.append(")")
+    }
+
+    private fun jvmType(proto: JvmProtoBuf.JvmType) {
+        sb.append(" (jvmType")
+        if (proto.hasPrimitiveType()) sb.append(" ").append(proto.getPrimitiveType().getNumber())
+        if (proto.hasClassFqName()) sb.append(" ").append(nameResolver.getFqName(proto.getClassFqName()).asString())
+        sb.append(" ").append(proto.getArrayDimension()).append(")")
+    }
+
+    private fun string(index: Int): String = nameResolver.getString(index)
+
+    private fun classId(index: Int): String = nameResolver.getClassId(index).toString()
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.jps.incremental
+
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.testFramework.UsefulTestCase
+import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.EnumeratorStringDescriptor
+import com.intellij.util.io.IOUtil
+import java.io.DataInput
+import java.io.DataInputStream
+import java.io.DataOutput
+import java.io.File
+import java.io.IOException
+import java.util.ArrayList
+import kotlin.concurrent.thread
+import kotlin.properties.Delegates
+
+public class LogStructuredStoreTest : UsefulTestCase() {
+    private var file: File by Delegates.notNull()
+
+    override fun setUp() {
+        super.setUp()
+        file = File(FileUtil.createTempDirectory("logStructuredStore", null), "caches.log")
+    }
+
+    fun testValuesSurviveReopening() {
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            val lists = createMap("lists", EnumeratorStringDescriptor(), StringList)
+            strings.put("a", "1")
+            strings.put("b", "2")
+            strings.put("a", "3")
+            strings.remove("b")
+            lists.appendData("a") { IOUtil.writeUTF(it, "x") }
+            lists.appendData("a") { IOUtil.writeUTF(it, "y") }
+            flush(false)
+            lists.appendData("a") { IOUtil.writeUTF(it, "z") }
+            assertEquals(listOf("x", "y", "z"), lists["a"])
+            close()
+        }
+
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            val lists = createMap("lists", EnumeratorStringDescriptor(), StringList)
+            assertEquals("3", strings["a"])
+            assertNull(strings["b"])
+            assertEquals(listOf("a"), strings.getAllKeysWithExistingMapping())
+            assertEquals(listOf("x", "y", "z"), lists["a"])
+            close()
+        }
+    }
+
+    fun testCompaction() {
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            val lists = createMap("lists", EnumeratorStringDescriptor(), StringList)
+            for (i in 1..1000) {
+                strings.put("key", "value$i")
+            }
+            lists.appendData("a") { IOUtil.writeUTF(it, "x") }
+            lists.appendData("a") { IOUtil.writeUTF(it, "y") }
+            flush(false)
+            val sizeBefore = file.length()
+
+            compact()
+
+            assertTrue(file.length() < sizeBefore)
+            assertEquals("value1000", strings["key"])
+            assertEquals(listOf("x", "y"), lists["a"])
+            strings.put("other", "value")
+            close()
+        }
+
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            assertEquals("value1000", strings["key"])
+            assertEquals("value", strings["other"])
+            close()
+        }
+    }
+
+    fun testClean() {
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            strings.put("a", "1")
+            flush(false)
+            clean()
+            assertNull(strings["a"])
+            strings.put("b", "2")
+            close()
+        }
+
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            assertEquals(listOf("b"), strings.getAllKeysWithExistingMapping())
+            close()
+        }
+    }
+
+    fun testCompactionConcurrentWithClean() {
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            for (i in 1..50) {
+                for (j in 1..100) {
+                    strings.put("k$j", "$i")
+                }
+                var error: Throwable? = null
+                val compaction = thread {
+                    try {
+                        compact()
+                    }
+                    catch (e: Throwable) {
+                        error = e
+                    }
+                }
+                clean()
+                strings.put("a", "$i")
+                compaction.join()
+
+                error?.let { throw it }
+                assertEquals("$i", strings["a"])
+                assertNull(strings["k1"])
+            }
+            close()
+        }
+    }
+
+    fun testFailedRenameAfterCompactionKeepsStoreUsable() {
+        val compactedFile = File(file.getPath() + ".compacted")
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            strings.put("a", "1")
+            strings.put("a", "2")
+
+            // A non-empty directory can't be replaced by the compacted file
+            assertTrue(File(compactedFile, "blocker").mkdirs())
+            try {
+                compact()
+                fail("Compaction is expected to fail")
+            }
+            catch (e: IOException) {
+                // expected
+            }
+
+            assertEquals("2", strings["a"])
+            strings.put("b", "3")
+            close()
+        }
+        FileUtil.delete(compactedFile)
+
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            assertEquals("2", strings["a"])
+            assertEquals("3", strings["b"])
+            close()
+        }
+    }
+
+    fun testIncompleteRecordIsDropped() {
+        with(LogStructuredStore(file)) {
+            createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor()).put("a", "1")
+            close()
+        }
+        file.appendBytes(byteArrayOf(0, 0, 0, 10, 0))
+
+        with(LogStructuredStore(file)) {
+            val strings = createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())
+            assertEquals("1", strings["a"])
+            strings.put("b", "2")
+            close()
+        }
+
+        with(LogStructuredStore(file)) {
+            assertEquals("2", createMap("strings", EnumeratorStringDescriptor(), EnumeratorStringDescriptor())["b"])
+            close()
+        }
+    }
+
+    private object StringList : DataExternalizer<List<String>> {
+        override fun save(out: DataOutput, value: List<String>) {
+            value.forEach { IOUtil.writeUTF(out, it) }
+        }
+
+        override fun read(`in`: DataInput): List<String> {
+            val result = ArrayList<String>()
+            while ((`in` as DataInputStream).available() > 0) {
+                result.add(IOUtil.readUTF(`in`))
+            }
+            return result
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.jps.incremental
+
+import com.google.protobuf.MessageLite
+import com.intellij.testFramework.UsefulTestCase
+import org.jetbrains.kotlin.load.kotlin.incremental.cache.LookupTracker
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.serialization.ProtoBuf
+import org.jetbrains.kotlin.serialization.ProtoBuf.QualifiedNameTable.QualifiedName
+import java.io.ByteArrayOutputStream
+import java.util.ArrayList
+import java.util.HashMap
+
+public class ProtoDifferenceTest : UsefulTestCase() {
+    // Both versions of 'f' are written with the same bytes, but the string table entry of its return type differs
+    fun testReturnTypeChangedWithSameIndices() {
+        val old = classData("test", "A", "f", "String", "kotlin") { member("f", "String") }
+        val new = classData("test", "A", "f", "Int", "kotlin") { member("f", "Int") }
+
+        assertEquals(setOf("test.A#f", "test.A#" + LookupTracker.ANY_MEMBER), changedClassLookupKeys(old, new))
+    }
+
+    // Adding a member shifts the indices of the other names, which should not make them look changed
+    fun testMemberAddedWithShiftedIndices() {
+        val old = classData("test", "A", "f", "String", "kotlin") { member("f", "String") }
+        val new = classData("test", "A", "g", "f", "String", "kotlin") { member("g", "String"); member("f", "String") }
+
+        assertEquals(setOf("test.A#g", "test.A#" + LookupTracker.ANY_MEMBER), changedClassLookupKeys(old, new))
+    }
+
+    fun testUnchangedClassWithReorderedStrings() {
+        val old = classData("test", "A", "f", "String", "kotlin") { member("f", "String") }
+        val new = classData("kotlin", "String", "f", "A", "test") { member("f", "String") }
+
+        assertEquals(setOf<String>(), changedClassLookupKeys(old, new))
+    }
+
+    fun testSupertypeChanged() {
+        val old = classData("test", "A", "f", "String", "kotlin") { member("f", "String") }
+        val new = classData("test", "A", "f", "String", "kotlin") { member("f", "String"); supertype("String") }
+
+        assertEquals(setOf("test.A#", "test#A"), changedClassLookupKeys(old, new))
+    }
+
+    fun testClassRemoved() {
+        val old = classData("test", "A", "f", "String", "kotlin") { member("f", "String") }
+
+        assertEquals(setOf("test.A#", "test#A"), changedClassLookupKeys(old, null))
+    }
+
+    fun testPackageMemberReturnTypeChanged() {
+        val old = packageData("test", "A", "kotlin", "f", "g", "String") { member("f", "String"); member("g", "String") }
+        val new = packageData("test", "A", "kotlin", "f", "g", "Int", "String") { member("f", "String"); member("g", "Int") }
+
+        assertEquals(setOf("test#g"), changedPackageMemberLookupKeys(FqName("test"), old, new))
+    }
+
+    fun testPackageFacadeAdded() {
+        val new = packageData("test", "A", "kotlin", "f", "String") { member("f", "String") }
+
+        assertEquals(setOf("test#f"), changedPackageMemberLookupKeys(FqName("test"), null, new))
+    }
+
+    private fun classData(vararg strings: String, init: ClassBuilder.() -> Unit): ByteArray {
+        val builder = ClassBuilder(listOf(*strings))
+        builder.init()
+        return builder.tables.write(builder.proto.build())
+    }
+
+    private fun packageData(vararg strings: String, init: PackageBuilder.() -> Unit): ByteArray {
+        val builder = PackageBuilder(listOf(*strings))
+        builder.init()
+        return builder.tables.write(builder.proto.build())
+    }
+
+    private class ClassBuilder(strings: List<String>) {
+        val tables = NameTables(strings)
+        val proto = ProtoBuf.Class.newBuilder().setFqName(NameTables.CLASS_A)
+
+        fun member(name: String, returnType: String) {
+            proto.addMember(tables.callable(name, returnType))
+        }
+
+        fun supertype(name: String) {
+            proto.addSupertype(tables.type(name))
+        }
+    }
+
+    private class PackageBuilder(strings: List<String>) {
+        val tables = NameTables(strings)
+        val proto = ProtoBuf.Package.newBuilder()
+
+        fun member(name: String, returnType: String) {
+            proto.addMember(tables.callable(name, returnType))
+        }
+    }
+
+    // Qualified names of package 'test', class 'test.A' and package 'kotlin' go first, then the classes from 'kotlin' in order of use
+    private class NameTables(private val strings: List<String>) {
+        private val qualifiedNames = ArrayList<QualifiedName>()
+        private val kotlinClassIds = HashMap<String, Int>()
+
+        init {
+            qualifiedNames.add(QualifiedName.newBuilder().setShortName(string("test")).build())
+            qualifiedNames.add(QualifiedName.newBuilder().setShortName(string("A")).setParentQualifiedName(TEST_PACKAGE)
+                                       .setKind(QualifiedName.Kind.CLASS).build())
+            qualifiedNames.add(QualifiedName.newBuilder().setShortName(string("kotlin")).build())
+        }
+
+        fun string(s: String): Int {
+            val index = strings.indexOf(s)
+            assert(index >= 0) { "No '$s' in the string table" }
+            return index
+        }
+
+        fun type(kotlinClassName: String): ProtoBuf.Type {
+            val id = kotlinClassIds.getOrPut(kotlinClassName) {
+                qualifiedNames.add(QualifiedName.newBuilder().setShortName(string(kotlinClassName)).setParentQualifiedName(KOTLIN_PACKAGE)
+                                           .setKind(QualifiedName.Kind.CLASS).build())
+                qualifiedNames.size() - 1
+            }
+            return ProtoBuf.Type.newBuilder().setConstructor(ProtoBuf.Type.Constructor.newBuilder().setId(id)).build()
+        }
+
+        fun callable(name: String, returnType: String): ProtoBuf.Callable =
+                ProtoBuf.Callable.newBuilder().setName(string(name)).setReturnType(type(returnType)).build()
+
+        fun write(proto: MessageLite): ByteArray {
+            val out = ByteArrayOutputStream()
+            ProtoBuf.StringTable.newBuilder().addAllString(strings).build().writeDelimitedTo(out)
+            ProtoBuf.QualifiedNameTable.newBuilder().addAllQualifiedName(qualifiedNames).build().writeDelimitedTo(out)
+            proto.writeTo(out)
+            return out.toByteArray()
+        }
+
+        companion object {
+            val TEST_PACKAGE = 0
+            val CLASS_A = 1
+            val KOTLIN_PACKAGE = 2
+        }
+    }
+}
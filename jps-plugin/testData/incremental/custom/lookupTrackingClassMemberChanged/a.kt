@@ -0,0 +1,8 @@
+package test
+
+class A {
+    fun f(): String = ""
+
+    fun g() {
+    }
+}
@@ -0,0 +1,5 @@
+package test
+
+fun usage2() {
+    A().g()
+}
@@ -0,0 +1,3 @@
+package b
+
+fun unrelated() = 1
@@ -0,0 +1,8 @@
+package b
+
+import a.*
+
+fun usage() {
+    other()
+    println("")
+}
@@ -29,6 +29,14 @@ public final class JsFunction extends JsLiteral implements HasName {
         this.body = body;
     }
 
+    /**
+     * Creates a function with the given scope, which can be a subclass of {@link JsFunctionScope}.
+     */
+    public JsFunction(@NotNull JsFunctionScope scope, @NotNull JsBlock body) {
+        this.scope = scope;
+        this.body = body;
+    }
+
     private JsFunction(@NotNull JsScope parentScope, @NotNull String description, @Nullable JsName name) {
         this.name = name;
         scope = new JsFunctionScope(parentScope, name == null ? description : name.getIdent());
@@ -41,6 +41,9 @@ import static com.google.dart.compiler.backend.js.ast.AstPackage.JsObjectScope;
  * but parentless scopes are useful for managing names that are always accessed
  * with a qualifier and could therefore never be confused with the global scope
  * hierarchy.
+ * <p/>
+ * The names of a scope can be declared by several threads at once, because the scopes of packages and classes are shared
+ * by the files which are translated in parallel.
  */
 public abstract class JsScope {
     @NotNull
@@ -79,7 +82,7 @@ public abstract class JsScope {
      * @param identifier An identifier that is unique within this scope.
      */
     @NotNull
-    public JsName declareName(@NotNull String identifier) {
+    public synchronized JsName declareName(@NotNull String identifier) {
         JsName name = findOwnName(identifier);
         return name != null ? name : doCreateName(identifier);
     }
@@ -91,7 +94,7 @@ public abstract class JsScope {
      * (unless they use this function).
      */
     @NotNull
-    public JsName declareFreshName(@NotNull String suggestedName) {
+    public synchronized JsName declareFreshName(@NotNull String suggestedName) {
         assert !suggestedName.isEmpty();
         String ident = getFreshIdent(suggestedName);
         assert !hasOwnName(ident);
@@ -110,7 +113,7 @@ public abstract class JsScope {
      * Future declarations of variables might however clash with the temporary.
      */
     @NotNull
-    public JsName declareTemporary() {
+    public synchronized JsName declareTemporary() {
         return declareFreshName(getNextTempName());
     }
 
@@ -129,7 +132,7 @@ public abstract class JsScope {
         return name;
     }
 
-    public boolean hasOwnName(@NotNull String name) {
+    public synchronized boolean hasOwnName(@NotNull String name) {
         return names.containsKey(name);
     }
 
@@ -156,7 +159,7 @@ public abstract class JsScope {
         }
     }
 
-    public void copyOwnNames(JsScope other) {
+    public synchronized void copyOwnNames(JsScope other) {
         names = new HashMap<String, JsName>(names);
         names.putAll(other.names);
     }
@@ -167,7 +170,7 @@ public abstract class JsScope {
     }
 
     @NotNull
-    protected JsName doCreateName(@NotNull String ident) {
+    protected synchronized JsName doCreateName(@NotNull String ident) {
         JsName name = new JsName(this, ident);
         names = Maps.put(names, ident, name);
         return name;
@@ -179,7 +182,7 @@ public abstract class JsScope {
      *
      * @return <code>null</code> if the identifier has no associated name
      */
-    protected JsName findOwnName(@NotNull String ident) {
+    protected synchronized JsName findOwnName(@NotNull String ident) {
         return names.get(ident);
     }
 
@@ -32,6 +32,9 @@ public var JsInvocation.psiElement: PsiElement? by MetadataProperty(default = nu
 
 public var JsFunction.isLocal: Boolean by MetadataProperty(default = false)
 
+// A declaration, e.g. a top-level function or class, which is used only through its name, so it can be removed when the name is not referenced
+public var JsPropertyInitializer.isRemovableDeclaration: Boolean by MetadataProperty(default = false)
+
 public var JsParameter.hasDefaultValue: Boolean by MetadataProperty(default = false)
 
 public var JsInvocation.typeCheck: TypeCheck? by MetadataProperty(default = null)
@@ -4,15 +4,25 @@
 
 package com.google.dart.compiler.util;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.utils.UtilsPackage;
+
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
 
 public class TextOutputImpl implements TextOutput {
+    // The text is passed to the writer at the end of a line after it has grown beyond this size
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
     private final boolean compact;
     private int identLevel = 0;
     private final static int indentGranularity = 2;
     private char[][] indents = new char[][] {new char[0]};
     private boolean justNewlined;
     private final StringBuilder out;
+    private final Writer writer;
+    private char[] flushBuffer;
     private int position = 0;
     private int line = 0;
     private int column = 0;
@@ -30,8 +40,42 @@ public class TextOutputImpl implements TextOutput {
     public TextOutputImpl(boolean compact) {
         this.compact = compact;
         out = new StringBuilder();
+        writer = null;
     }
 
+    /**
+     * Creates an output which passes the text to the writer as it's printed, so that the text doesn't have to be kept in memory.
+     * {@link #flush()} should be called after everything is printed.
+     */
+    public TextOutputImpl(@NotNull Writer writer, boolean compact) {
+        this.compact = compact;
+        out = new StringBuilder();
+        this.writer = writer;
+    }
+
+    /**
+     * Passes the text printed so far to the writer, if this output was created with one.
+     */
+    public void flush() {
+        if (writer == null || out.length() == 0) return;
+
+        int length = out.length();
+        if (flushBuffer == null || flushBuffer.length < length) {
+            flushBuffer = new char[length];
+        }
+        out.getChars(0, length, flushBuffer, 0);
+        try {
+            writer.write(flushBuffer, 0, length);
+        }
+        catch (IOException e) {
+            throw UtilsPackage.rethrow(e);
+        }
+        out.setLength(0);
+    }
+
+    /**
+     * @return the printed text, or only the part which is not yet flushed if this output was created with a writer
+     */
     @Override
     public String toString() {
         return out.toString();
@@ -81,6 +125,9 @@ public class TextOutputImpl implements TextOutput {
         if (outListener != null) {
             outListener.newLined();
         }
+        if (writer != null && out.length() >= FLUSH_THRESHOLD) {
+            flush();
+        }
     }
 
     @Override
@@ -57,6 +57,8 @@ public abstract class Config {
 
     private final boolean sourcemap;
     private final boolean metaInfo;
+    private final boolean deadCodeEliminationEnabled;
+    private final int translationThreads;
 
     @NotNull
     protected final List<KotlinJavascriptMetadata> metadata = new SmartList<KotlinJavascriptMetadata>();
@@ -72,7 +74,9 @@ public abstract class Config {
             @NotNull EcmaVersion ecmaVersion,
             boolean sourcemap,
             boolean inlineEnabled,
-            boolean metaInfo
+            boolean metaInfo,
+            boolean deadCodeEliminationEnabled,
+            int translationThreads
     ) {
         this.project = project;
         this.target = ecmaVersion;
@@ -80,6 +84,8 @@ public abstract class Config {
         this.sourcemap = sourcemap;
         this.inlineEnabled = inlineEnabled;
         this.metaInfo = metaInfo;
+        this.deadCodeEliminationEnabled = deadCodeEliminationEnabled;
+        this.translationThreads = translationThreads;
     }
 
     public boolean isSourcemap() {
@@ -94,6 +100,21 @@ public abstract class Config {
         return inlineEnabled;
     }
 
+    /**
+     * @return true if the top-level functions and classes which are not reachable from the main function and from the code run
+     * when the module is loaded should be removed. Such a module can't be used by other modules.
+     */
+    public boolean isDeadCodeEliminationEnabled() {
+        return deadCodeEliminationEnabled;
+    }
+
+    /**
+     * @return the number of threads the files of the module are translated on, or 0 if they should be translated on the calling thread.
+     */
+    public int getTranslationThreads() {
+        return translationThreads;
+    }
+
     @NotNull
     public Project getProject() {
         return project;
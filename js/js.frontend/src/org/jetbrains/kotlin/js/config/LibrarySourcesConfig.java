@@ -70,9 +70,11 @@ public class LibrarySourcesConfig extends Config {
             boolean sourceMap,
             boolean inlineEnabled,
             boolean isUnitTestConfig,
-            boolean metaInfo
+            boolean metaInfo,
+            boolean deadCodeElimination,
+            int translationThreads
     ) {
-        super(project, moduleId, ecmaVersion, sourceMap, inlineEnabled, metaInfo);
+        super(project, moduleId, ecmaVersion, sourceMap, inlineEnabled, metaInfo, deadCodeElimination, translationThreads);
         this.files = files;
         this.isUnitTestConfig = isUnitTestConfig;
     }
@@ -195,6 +197,8 @@ public class LibrarySourcesConfig extends Config {
         boolean inlineEnabled = true;
         boolean isUnitTestConfig = false;
         boolean metaInfo = false;
+        boolean deadCodeElimination = false;
+        int translationThreads = 0;
 
         public Builder(@NotNull Project project, @NotNull String moduleId, @NotNull List<String> files) {
             this.project = project;
@@ -227,8 +231,19 @@ public class LibrarySourcesConfig extends Config {
             return this;
         }
 
+        public Builder deadCodeElimination(boolean deadCodeElimination) {
+            this.deadCodeElimination = deadCodeElimination;
+            return this;
+        }
+
+        public Builder translationThreads(int translationThreads) {
+            this.translationThreads = translationThreads;
+            return this;
+        }
+
         public Config build() {
-            return new LibrarySourcesConfig(project, moduleId, files, ecmaVersion, sourceMap, inlineEnabled, isUnitTestConfig, metaInfo);
+            return new LibrarySourcesConfig(project, moduleId, files, ecmaVersion, sourceMap, inlineEnabled, isUnitTestConfig, metaInfo,
+                                            deadCodeElimination, translationThreads);
         }
     }
 
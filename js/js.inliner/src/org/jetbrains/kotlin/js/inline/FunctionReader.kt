@@ -46,12 +46,17 @@ import kotlin.platform.platformStatic
  */
 private val DEFINE_MODULE_PATTERN = "(\\w+)\\.defineModule\\(\\s*(['\"])(\\w+)\\2\\s*,\\s*(\\w+)\\s*\\)".toRegex()
 
+/**
+ * The number of functions read from the libraries that are kept in each of the two segments of the cache
+ */
+private val FUNCTION_CACHE_SEGMENT_SIZE = 64
+
 public class FunctionReader(private val context: TranslationContext) {
     /**
-     * Maps module name to .js file content, that contains this module definition.
+     * Maps module name to .js file, that contains this module definition.
      * One file can contain more than one module definition.
      */
-    private val moduleJsDefinition = hashMapOf<String, String>()
+    private val moduleJsDefinition = hashMapOf<String, JsLibraryFile>()
 
     /**
      * Maps module name to variable, that is used to call functions inside module.
@@ -70,6 +75,7 @@ public class FunctionReader(private val context: TranslationContext) {
         val libs = config.getLibraries().map { File(it) }
 
         LibraryUtils.traverseJsLibraries(libs) { fileContent, path ->
+            val file = JsLibraryFile(fileContent)
             val matcher = DEFINE_MODULE_PATTERN.toPattern().matcher(fileContent)
 
             while (matcher.find()) {
@@ -77,16 +83,20 @@ public class FunctionReader(private val context: TranslationContext) {
                 val moduleVariable = matcher.group(4)
                 val kotlinVariable = matcher.group(1)
                 assert(moduleName !in moduleJsDefinition) { "Module is defined in more, than one file" }
-                moduleJsDefinition[moduleName] = fileContent
+                moduleJsDefinition[moduleName] = file
                 moduleRootVariable[moduleName] = moduleVariable
                 moduleKotlinVariable[moduleName] = kotlinVariable
             }
         }
     }
 
-    private val functionCache = object : SLRUCache<CallableDescriptor, JsFunction>(50, 50) {
-        override fun createValue(descriptor: CallableDescriptor): JsFunction =
-                readFunction(descriptor).sure { "Could not read function: $descriptor" }
+    /**
+     * The inliner copies the body of the function it is given, so a function inlined several times is read once.
+     * Only the recently used functions are kept, not every function inlined into the module.
+     */
+    private val functionCache = object : SLRUCache<CallableDescriptor, JsFunction>(FUNCTION_CACHE_SEGMENT_SIZE, FUNCTION_CACHE_SEGMENT_SIZE) {
+        override fun createValue(descriptor: CallableDescriptor?): JsFunction =
+                readFunction(descriptor!!).sure { "Could not read function: $descriptor" }
     }
 
     public fun contains(descriptor: CallableDescriptor): Boolean {
@@ -96,7 +106,7 @@ public class FunctionReader(private val context: TranslationContext) {
     }
 
     public fun get(descriptor: CallableDescriptor): JsFunction = functionCache.get(descriptor)
-    
+
     private fun readFunction(descriptor: CallableDescriptor): JsFunction? {
         if (descriptor !in this) return null
 
@@ -107,16 +117,10 @@ public class FunctionReader(private val context: TranslationContext) {
         return function
     }
 
-    private fun readFunctionFromSource(descriptor: CallableDescriptor, source: String): JsFunction? {
-        val tag = Namer.getFunctionTag(descriptor)
-        val index = source.indexOf(tag)
-        if (index < 0) return null
-
-        // + 1 for closing quote
-        var offset = index + tag.length() + 1
-        while (offset < source.length() && source.charAt(offset).isWhitespaceOrComma) {
-            offset++
-        }
+    private fun readFunctionFromSource(descriptor: CallableDescriptor, file: JsLibraryFile): JsFunction? {
+        val source = file.content
+        val offset = file.getFunctionOffset(Namer.getFunctionTag(descriptor))
+        if (offset < 0) return null
 
         val function = parseFunction(source, offset, ThrowExceptionOnErrorReporter, JsRootScope(JsProgram("<inline>")))
         val moduleName = getExternalModuleName(descriptor)!!
@@ -130,9 +134,6 @@ public class FunctionReader(private val context: TranslationContext) {
     }
 }
 
-private val Char.isWhitespaceOrComma: Boolean
-    get() = this == ',' || this.isWhitespace()
-
 private fun JsFunction.markInlineArguments(descriptor: CallableDescriptor) {
     val params = descriptor.getValueParameters()
     val paramsJs = getParameters()
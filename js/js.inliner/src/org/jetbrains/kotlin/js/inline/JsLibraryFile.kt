@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.js.inline
+
+import kotlin.properties.Delegates
+
+/**
+ * The characters after which a slash starts a regular expression literal and not a division
+ */
+private val REGEXP_PRECEDING_CHARS = "(,=:[!&|?{};"
+
+private val FUNCTION_KEYWORD = "function"
+
+/**
+ * The content of a library .js file with the positions of the inline functions defined in it,
+ * so that the file is searched for the tags once and not for each inline function read from it.
+ *
+ * The tag of an inline function is a string literal followed by the function, like 'stdlib.kotlin.foo_za3lpa$', function (
+ * (see InlineMetadata). The tags of all the modules defined in the file are indexed, string literals inside comments,
+ * other string literals and regular expressions are skipped. The index doesn't parse JavaScript, e.g. it can take a regular
+ * expression for a division, so a tag it misses is searched for in the text.
+ */
+public class JsLibraryFile(public val content: String) {
+    private val functionOffsets: Map<String, Int> by Delegates.lazy { indexFunctions() }
+
+    /**
+     * @return the offset of the function with the given tag or -1 if the file doesn't define such function
+     */
+    public fun getFunctionOffset(tag: String): Int = functionOffsets[tag] ?: findFunctionOffsetInText(tag)
+
+    // the first occurrence of the tag which is followed by a function
+    private fun findFunctionOffsetInText(tag: String): Int {
+        var index = content.indexOf(tag)
+        while (index >= 0) {
+            // + 1 for closing quote
+            val offset = skipWhitespaceAndCommas(index + tag.length() + 1)
+            if (isFunctionKeyword(offset)) return offset
+
+            index = content.indexOf(tag, index + 1)
+        }
+        return -1
+    }
+
+    private fun indexFunctions(): Map<String, Int> {
+        val offsets = hashMapOf<String, Int>()
+        var previous = ';'
+        var i = 0
+
+        while (i < content.length()) {
+            val c = content.charAt(i)
+            val next = if (i + 1 < content.length()) content.charAt(i + 1) else ' '
+
+            when {
+                c == '/' && next == '/' -> {
+                    val end = content.indexOf('\n', i)
+                    i = if (end < 0) content.length() else end
+                }
+                c == '/' && next == '*' -> {
+                    val end = content.indexOf("*/", i + 2)
+                    i = if (end < 0) content.length() else end + 2
+                }
+                c == '\'' || c == '"' || c == '/' && REGEXP_PRECEDING_CHARS.indexOf(previous) >= 0 -> {
+                    val end = findLiteralEnd(i)
+                    if (end == content.length() || content.charAt(end) != c) {
+                        // Not closed on this line, e.g. a division taken for a regular expression, so it isn't a literal
+                        previous = c
+                        i++
+                        continue
+                    }
+
+                    if (c != '/') {
+                        val functionOffset = skipWhitespaceAndCommas(end + 1)
+                        val tag = content.substring(i + 1, end)
+                        if (isFunctionKeyword(functionOffset) && tag !in offsets) {
+                            offsets[tag] = functionOffset
+                        }
+                    }
+                    previous = c
+                    i = end + 1
+                }
+                else -> {
+                    if (!c.isWhitespace()) {
+                        previous = c
+                    }
+                    i++
+                }
+            }
+        }
+
+        return offsets
+    }
+
+    /**
+     * @return the offset of the quote or slash closing the literal which starts at the given offset, or the offset of the end
+     * of the line if the literal isn't closed on it
+     */
+    private fun findLiteralEnd(start: Int): Int {
+        val quote = content.charAt(start)
+        var inCharacterClass = false
+        var i = start + 1
+
+        while (i < content.length()) {
+            val c = content.charAt(i)
+            when {
+                c == '\n' -> return i
+                c == '\\' -> i++
+                quote == '/' && c == '[' -> inCharacterClass = true
+                quote == '/' && c == ']' -> inCharacterClass = false
+                c == quote && !inCharacterClass -> return i
+            }
+            i++
+        }
+
+        return content.length()
+    }
+
+    private fun skipWhitespaceAndCommas(start: Int): Int {
+        var i = start
+        while (i < content.length() && content.charAt(i).isWhitespaceOrComma) {
+            i++
+        }
+        return i
+    }
+
+    private fun isFunctionKeyword(offset: Int): Boolean {
+        if (!content.startsWith(FUNCTION_KEYWORD, offset)) return false
+
+        val end = offset + FUNCTION_KEYWORD.length()
+        return end == content.length() || !Character.isJavaIdentifierPart(content.charAt(end))
+    }
+}
+
+private val Char.isWhitespaceOrComma: Boolean
+    get() = this == ',' || this.isWhitespace()
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.inline.clean
+
+import com.google.dart.compiler.backend.js.ast.*
+import com.google.dart.compiler.backend.js.ast.metadata.isRemovableDeclaration
+
+import org.jetbrains.kotlin.js.inline.util.toIdentitySet
+import java.util.HashMap
+import java.util.IdentityHashMap
+
+/**
+ * Removes the declarations which are not reachable from the rest of the program:
+ *  foo: function() { return 10 }
+ *
+ * Only declarations marked as removable are candidates, i.e. top-level functions and classes
+ * and the functions of lambdas. The rest of the program, e.g. package initializers and the call of
+ * the main function, is reachable. A reference which is not resolved to a name, e.g. from js() code,
+ * keeps every declaration with the same identifier.
+ */
+public fun removeUnreachableDeclarations(root: JsNode) {
+    val declarations = with(RemovableDeclarationCollector()) {
+        accept(root)
+        declarations
+    }
+
+    val removable = with(UnreachableDeclarationsCollector(declarations)) {
+        accept(root)
+        removableDeclarations
+    }.toIdentitySet()
+
+    NodeRemover(javaClass<JsPropertyInitializer>()) {
+        it in removable
+    }.accept(root)
+}
+
+private class RemovableDeclarationCollector : JsVisitorWithContextImpl() {
+    public val declarations: IdentityHashMap<JsName, JsPropertyInitializer> = IdentityHashMap()
+
+    override fun visit(x: JsPropertyInitializer, ctx: JsContext<*>): Boolean {
+        val name = (x.getLabelExpr() as? JsNameRef)?.getName()
+        if (x.isRemovableDeclaration && name != null) {
+            // Declarations nested in a removable declaration are removed and kept together with it
+            declarations[name] = x
+            return false
+        }
+
+        return super.visit(x, ctx)
+    }
+}
+
+private class UnreachableDeclarationsCollector(
+        private val declarations: Map<JsName, JsPropertyInitializer>
+) : JsVisitorWithContextImpl() {
+    private val tracker = ReferenceTracker<JsName, JsPropertyInitializer>()
+    private val namesByIdent = HashMap<String, MutableList<JsName>>()
+    private var currentDeclaration: JsName? = null
+
+    public val removableDeclarations: List<JsPropertyInitializer>
+        get() = tracker.removable
+
+    init {
+        for ((name, declaration) in declarations) {
+            tracker.addCandidateForRemoval(name, declaration)
+            namesByIdent.getOrPut(name.getIdent()) { arrayListOf() }.add(name)
+        }
+    }
+
+    override fun visit(x: JsPropertyInitializer, ctx: JsContext<*>): Boolean {
+        val name = (x.getLabelExpr() as? JsNameRef)?.getName()
+        if (currentDeclaration == null && name != null && declarations[name] === x) {
+            currentDeclaration = name
+            accept(x.getValueExpr())
+            currentDeclaration = null
+            return false
+        }
+
+        return super.visit(x, ctx)
+    }
+
+    override fun endVisit(x: JsNameRef, ctx: JsContext<*>) {
+        val name = x.getName()
+        if (name != null) {
+            reference(name)
+        }
+        else {
+            namesByIdent[x.getIdent()]?.forEach { reference(it) }
+        }
+    }
+
+    private fun reference(name: JsName) {
+        val referrer = currentDeclaration
+        if (referrer == null) {
+            tracker.markReachable(name)
+        }
+        else {
+            tracker.addRemovableReference(referrer, name)
+        }
+    }
+}
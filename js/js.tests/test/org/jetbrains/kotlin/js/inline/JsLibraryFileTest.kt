@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.js.inline
+
+import junit.framework.TestCase
+
+public class JsLibraryFileTest : TestCase() {
+    public fun testFunctionsFound() {
+        val content = """
+            var _ = Kotlin.defineModule('lib', {
+                foo_za3lpa$: Kotlin.defineInlineFunction('lib.foo_za3lpa$', function (x) { return x; }),
+                bar: Kotlin.defineInlineFunction("lib.bar",function(){}),
+                baz: Kotlin.defineInlineFunction('lib.baz',
+                        function () {}),
+                notInline: 'lib.notInline',
+                functionName: Kotlin.defineInlineFunction('lib.functionName', functionName)
+            });
+        """
+        val file = JsLibraryFile(content)
+
+        assertFunctionAt(file, "lib.foo_za3lpa$", "function (x)")
+        assertFunctionAt(file, "lib.bar", "function(){}")
+        assertFunctionAt(file, "lib.baz", "function () {}")
+        assertEquals(-1, file.getFunctionOffset("lib.notInline"))
+        assertEquals(-1, file.getFunctionOffset("lib.functionName"))
+        assertEquals(-1, file.getFunctionOffset("lib.missing"))
+    }
+
+    public fun testTagsInCommentsAndStrings() {
+        val content = """
+            // 'lib.foo', function () { return "line comment"; }
+            /* 'lib.foo', function () { return "block comment"; } */
+            var s = "'lib.foo', function () { return 'string'; }";
+            var t = '\'lib.foo\', function () { return "escaped"; }';
+            var r = /'lib.foo', function/g, half = 1 / 2, quote = "/*";
+            var _ = Kotlin.defineModule('lib', {
+                foo: Kotlin.defineInlineFunction('lib.foo', function () { return "definition"; })
+            });
+        """
+        val file = JsLibraryFile(content)
+
+        assertFunctionAt(file, "lib.foo", "function () { return \"definition\"; }")
+    }
+
+    public fun testSeveralModules() {
+        val content = """
+            (function (Kotlin) {
+                var _ = Kotlin.defineModule('first', {
+                    foo: Kotlin.defineInlineFunction('first.foo', function () { return "first"; })
+                });
+            }(Kotlin));
+            (function (K) {
+                var $ = K.defineModule("second", {
+                    foo: K.defineInlineFunction("second.foo", function () { return "second"; }),
+                    bar: K.defineInlineFunction("second.bar", function () { return "bar"; })
+                });
+            }(Kotlin));
+        """
+        val file = JsLibraryFile(content)
+
+        assertFunctionAt(file, "first.foo", "function () { return \"first\"; }")
+        assertFunctionAt(file, "second.foo", "function () { return \"second\"; }")
+        assertFunctionAt(file, "second.bar", "function () { return \"bar\"; }")
+    }
+
+    public fun testDivisionAndRegExpAfterParenthesis() {
+        val content = """
+            var half = size / 2, quarter = (size / 2) / 2;
+            if (x) /"/.test(s);
+            var _ = Kotlin.defineModule('lib', {
+                foo: Kotlin.defineInlineFunction('lib.foo', function () { return "foo"; }),
+                bar: Kotlin.defineInlineFunction("lib.bar", function () { return 'bar'; })
+            });
+        """
+        val file = JsLibraryFile(content)
+
+        assertFunctionAt(file, "lib.foo", "function () { return \"foo\"; }")
+        assertFunctionAt(file, "lib.bar", "function () { return 'bar'; }")
+    }
+
+    public fun testSingleLineFile() {
+        val content = "(function(K){var h=n/2;if(s)/'/.test(s);var _=K.defineModule(\"lib\",{" +
+                      "foo:K.defineInlineFunction(\"lib.foo\",function(){return\"foo\"})," +
+                      "bar:K.defineInlineFunction('lib.bar',function(){return'bar'})," +
+                      "baz:K.defineInlineFunction(\"lib.baz\",function(){return/\"/})})}(Kotlin));"
+        val file = JsLibraryFile(content)
+
+        assertFunctionAt(file, "lib.foo", "function(){return\"foo\"}")
+        assertFunctionAt(file, "lib.bar", "function(){return'bar'}")
+        assertFunctionAt(file, "lib.baz", "function(){return/\"/}")
+        assertEquals(-1, file.getFunctionOffset("lib.missing"))
+    }
+
+    private fun assertFunctionAt(file: JsLibraryFile, tag: String, expectedFunction: String) {
+        val offset = file.getFunctionOffset(tag)
+        assertTrue("Function $tag not found", offset >= 0)
+        assertEquals(expectedFunction, file.content.substring(offset, offset + expectedFunction.length()))
+    }
+}
@@ -225,6 +225,10 @@ public abstract class BasicTest extends KotlinTestWithEnvironment {
         return false;
     }
 
+    protected boolean shouldEliminateDeadCode() {
+        return false;
+    }
+
     protected void processJsProgram(@NotNull JsProgram program, @NotNull List<JetFile> jetFiles) throws Exception {
         for (JetFile file : jetFiles) {
             String text = file.getText();
@@ -315,6 +319,7 @@ public abstract class BasicTest extends KotlinTestWithEnvironment {
                 .inlineEnabled(IS_INLINE_ENABLED)
                 .isUnitTestConfig(shouldBeTranslateAsUnitTestClass())
                 .metaInfo(shouldGenerateMetaInfo())
+                .deadCodeElimination(shouldEliminateDeadCode())
                 .build();
     }
 
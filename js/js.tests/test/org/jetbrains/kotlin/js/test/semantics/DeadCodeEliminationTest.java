@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test.semantics;
+
+import com.google.dart.compiler.backend.js.ast.JsName;
+import com.google.dart.compiler.backend.js.ast.JsProgram;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.js.config.Config;
+import org.jetbrains.kotlin.js.facade.MainCallParameters;
+import org.jetbrains.kotlin.js.test.SingleFileTranslationTest;
+import org.jetbrains.kotlin.psi.JetFile;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.jetbrains.kotlin.js.inline.util.UtilPackage.collectJsProperties;
+
+public final class DeadCodeEliminationTest extends SingleFileTranslationTest {
+    public DeadCodeEliminationTest() {
+        super("deadCodeElimination/");
+    }
+
+    public void testUnreachableDeclarations() throws Exception {
+        fooBoxTest();
+    }
+
+    @Override
+    protected boolean shouldEliminateDeadCode() {
+        return true;
+    }
+
+    @Override
+    protected void translateFiles(
+            @NotNull List<JetFile> jetFiles,
+            @NotNull File outputFile,
+            @NotNull MainCallParameters mainCallParameters,
+            @NotNull Config config
+    ) throws Exception {
+        // box is reachable only through the call of main
+        super.translateFiles(jetFiles, outputFile, MainCallParameters.mainWithoutArguments(), config);
+    }
+
+    @Override
+    protected void processJsProgram(@NotNull JsProgram program, @NotNull List<JetFile> jetFiles) throws Exception {
+        super.processJsProgram(program, jetFiles);
+
+        Set<String> declared = new HashSet<String>();
+        for (JsName name : collectJsProperties(program).keySet()) {
+            declared.add(name.getIdent());
+        }
+
+        for (String reachable : new String[] {"main", "box", "apply", "A", "B"}) {
+            assertTrue("Reachable declaration " + reachable + " was removed", declared.contains(reachable));
+        }
+        for (String ident : declared) {
+            // The lambda of unusedFunction is removed together with it
+            assertFalse("Unreachable declaration " + ident + " was kept", ident.startsWith("unusedFunction") || ident.equals("UnusedClass"));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test.semantics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.common.output.outputUtils.OutputUtilsPackage;
+import org.jetbrains.kotlin.js.analyze.TopDownAnalyzerFacadeForJS;
+import org.jetbrains.kotlin.js.analyzer.JsAnalysisResult;
+import org.jetbrains.kotlin.js.config.Config;
+import org.jetbrains.kotlin.js.config.LibrarySourcesConfig;
+import org.jetbrains.kotlin.js.facade.K2JSTranslator;
+import org.jetbrains.kotlin.js.facade.MainCallParameters;
+import org.jetbrains.kotlin.js.facade.TranslationResult;
+import org.jetbrains.kotlin.js.facade.exceptions.TranslationException;
+import org.jetbrains.kotlin.js.test.MultipleFilesTranslationTest;
+import org.jetbrains.kotlin.psi.JetFile;
+
+import java.io.File;
+import java.util.List;
+
+public final class ParallelTranslationTest extends MultipleFilesTranslationTest {
+    private static final int[] THREAD_COUNTS = {2, 4};
+
+    public ParallelTranslationTest() {
+        super("parallelTranslation/");
+    }
+
+    public void testSeveralFiles() throws Exception {
+        checkFooBoxIsTrue("severalFiles");
+    }
+
+    public void testSameNamesInPackage() throws Exception {
+        checkFooBoxIsTrue("sameNamesInPackage");
+    }
+
+    @Override
+    protected void translateFiles(
+            @NotNull List<JetFile> jetFiles,
+            @NotNull File outputFile,
+            @NotNull MainCallParameters mainCallParameters,
+            @NotNull Config config
+    ) throws Exception {
+        TranslationResult.Success serial = translate(jetFiles, mainCallParameters, config);
+
+        TranslationResult.Success parallel = null;
+        for (int threads : THREAD_COUNTS) {
+            parallel = translate(jetFiles, mainCallParameters, withTranslationThreads(config, threads));
+            assertEquals("Translated on " + threads + " threads", serial.getCode(), parallel.getCode());
+        }
+
+        OutputUtilsPackage.writeAllTo(parallel.getOutputFiles(outputFile, null, null), outputFile.getParentFile());
+    }
+
+    @NotNull
+    private static TranslationResult.Success translate(
+            @NotNull List<JetFile> jetFiles,
+            @NotNull MainCallParameters mainCallParameters,
+            @NotNull Config config
+    ) throws TranslationException {
+        JsAnalysisResult analysisResult = TopDownAnalyzerFacadeForJS.analyzeFiles(jetFiles, config);
+        return (TranslationResult.Success) new K2JSTranslator(config).translate(jetFiles, mainCallParameters, analysisResult);
+    }
+
+    @NotNull
+    private static Config withTranslationThreads(@NotNull Config config, int threads) {
+        return new LibrarySourcesConfig.Builder(config.getProject(), config.getModuleId(), ((LibrarySourcesConfig) config).getLibraries())
+                .ecmaVersion(config.getTarget())
+                .sourceMap(config.isSourcemap())
+                .inlineEnabled(config.isInlineEnabled())
+                .isUnitTestConfig(config.isTestConfig())
+                .metaInfo(config.isMetaInfo())
+                .deadCodeElimination(config.isDeadCodeEliminationEnabled())
+                .translationThreads(threads)
+                .build();
+    }
+}
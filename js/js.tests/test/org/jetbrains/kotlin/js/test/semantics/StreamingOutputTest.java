@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test.semantics;
+
+import com.intellij.openapi.util.io.FileUtil;
+import kotlin.Unit;
+import kotlin.jvm.functions.Function2;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.js.config.Config;
+import org.jetbrains.kotlin.js.facade.K2JSTranslator;
+import org.jetbrains.kotlin.js.facade.MainCallParameters;
+import org.jetbrains.kotlin.js.facade.TranslationResult;
+import org.jetbrains.kotlin.js.test.SingleFileTranslationTest;
+import org.jetbrains.kotlin.psi.JetFile;
+
+import java.io.File;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class StreamingOutputTest extends SingleFileTranslationTest {
+    private static final Pattern SOURCE_MAP_PROPERTY = Pattern.compile("\"(\\w+)\":(\"[^\"]*\"|\\[[^\\]]*\\]|\\d+)");
+
+    public StreamingOutputTest() {
+        super("sourcemap/");
+    }
+
+    public void testBinaryOperation() throws Exception {
+        checkFooBoxIsOk("binaryOperation.kt");
+    }
+
+    public void testMethodCallInMethod() throws Exception {
+        checkFooBoxIsOk("methodCallInMethod.kt");
+    }
+
+    @Override
+    protected boolean shouldGenerateSourceMap() {
+        return true;
+    }
+
+    @Override
+    protected void translateFiles(
+            @NotNull List<JetFile> jetFiles,
+            @NotNull File outputFile,
+            @NotNull MainCallParameters mainCallParameters,
+            @NotNull Config config
+    ) throws Exception {
+        TranslationResult.Success result = (TranslationResult.Success) new K2JSTranslator(config).translate(jetFiles, mainCallParameters);
+
+        final List<String> reported = new ArrayList<String>();
+        result.writeOutputFiles(outputFile, null, null, new Function2<List<? extends File>, File, Unit>() {
+            @Override
+            public Unit invoke(List<? extends File> sources, File output) {
+                reported.add(output.getName());
+                return Unit.INSTANCE$;
+            }
+        });
+
+        List<String> expected = new ArrayList<String>();
+        for (OutputFile file : result.getOutputFiles(outputFile, null, null).asList()) {
+            expected.add(file.getRelativePath());
+
+            String actual = FileUtil.loadFile(new File(outputFile.getParentFile(), file.getRelativePath()), "UTF-8");
+            if (file.getRelativePath().endsWith(".map")) {
+                // The properties of a streamed source map go in another order
+                assertEquals(parseSourceMap(file.asText()), parseSourceMap(actual));
+            }
+            else {
+                assertEquals(file.asText(), actual);
+            }
+        }
+        assertEquals(expected, reported);
+    }
+
+    @NotNull
+    private static Map<String, String> parseSourceMap(@NotNull String text) {
+        Map<String, String> properties = new TreeMap<String, String>();
+        Matcher matcher = SOURCE_MAP_PROPERTY.matcher(text);
+        while (matcher.find()) {
+            properties.put(matcher.group(1), matcher.group(2));
+        }
+        assertEquals(new TreeSet<String>(Arrays.asList("file", "mappings", "names", "sources", "version")), properties.keySet());
+        return properties;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test.semantics;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.common.output.outputUtils.OutputUtilsPackage;
+import org.jetbrains.kotlin.js.analyze.TopDownAnalyzerFacadeForJS;
+import org.jetbrains.kotlin.js.analyzer.JsAnalysisResult;
+import org.jetbrains.kotlin.js.config.Config;
+import org.jetbrains.kotlin.js.facade.K2JSTranslator;
+import org.jetbrains.kotlin.js.facade.MainCallParameters;
+import org.jetbrains.kotlin.js.facade.TranslationResult;
+import org.jetbrains.kotlin.js.test.MultipleFilesTranslationTest;
+import org.jetbrains.kotlin.js.translate.incremental.TranslationUnitCache;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.psi.JetPsiFactory;
+
+import java.io.File;
+import java.util.*;
+
+public final class TranslationUnitCacheTest extends MultipleFilesTranslationTest {
+    private static final String DOC_COMMENT = "(?s)/\\*\\*.*?\\*/";
+    private static final String COMPILER_VERSION = "test";
+
+    // The new text of a file and the compiler version for the second translation, and the files expected to be taken from the cache then
+    private String changedFileName;
+    private String changedFileText;
+    private String secondCompilerVersion = COMPILER_VERSION;
+    private List<String> expectedUnchangedFiles;
+
+    public TranslationUnitCacheTest() {
+        super("translationUnitCache/");
+    }
+
+    public void testUnchangedFiles() throws Exception {
+        // c.kt initializes a property and d.kt declares an inline function, so both are translated again
+        expectedUnchangedFiles = Arrays.asList("a.kt", "b.kt");
+        checkFooBoxIsTrue("unchangedFiles");
+    }
+
+    public void testBodyChanged() throws Exception {
+        changedFileName = "b.kt";
+        changedFileText = "package foo\n\n" +
+                          "class B(val x: Int) {\n" +
+                          "    fun twice(): Int = apply(x) { it + it }\n" +
+                          "}\n\n" +
+                          "fun apply(a: Int, f: (Int) -> Int): Int = f(a)\n";
+        expectedUnchangedFiles = Arrays.asList("a.kt");
+        checkFooBoxIsTrue("unchangedFiles");
+    }
+
+    // The new overload changes the name of the function called from a.kt, so a.kt is translated again although its text is the same
+    public void testSignatureChanged() throws Exception {
+        changedFileName = "b.kt";
+        changedFileText = "package foo\n\n" +
+                          "class B(val x: Int) {\n" +
+                          "    fun twice(): Int = apply(x) { it * 2 }\n" +
+                          "}\n\n" +
+                          "fun apply(s: String, f: (String) -> String): String = f(s)\n\n" +
+                          "fun apply(a: Int, f: (Int) -> Int): Int = f(a)\n";
+        expectedUnchangedFiles = Collections.emptyList();
+        checkFooBoxIsTrue("unchangedFiles");
+    }
+
+    public void testCompilerVersionChanged() throws Exception {
+        secondCompilerVersion = COMPILER_VERSION + ".1";
+        expectedUnchangedFiles = Collections.emptyList();
+        checkFooBoxIsTrue("unchangedFiles");
+    }
+
+    @Override
+    protected void translateFiles(
+            @NotNull List<JetFile> jetFiles,
+            @NotNull File outputFile,
+            @NotNull MainCallParameters mainCallParameters,
+            @NotNull Config config
+    ) throws Exception {
+        File cacheDir = FileUtil.createTempDirectory("translationUnitCache", null);
+        try {
+            JsAnalysisResult analysisResult = TopDownAnalyzerFacadeForJS.analyzeFiles(jetFiles, config);
+            K2JSTranslator translator = new K2JSTranslator(config);
+            TranslationUnitCache cache = new TranslationUnitCache(cacheDir, COMPILER_VERSION);
+
+            TranslationResult.Success first = (TranslationResult.Success) translator.translate(
+                    jetFiles, mainCallParameters, analysisResult, cache);
+
+            List<JetFile> newFiles = jetFiles;
+            JsAnalysisResult newAnalysisResult = analysisResult;
+            if (changedFileName != null) {
+                newFiles = new ArrayList<JetFile>();
+                for (JetFile file : jetFiles) {
+                    newFiles.add(file.getName().equals(changedFileName)
+                                 ? new JetPsiFactory(file.getProject()).createFile(changedFileName, changedFileText)
+                                 : file);
+                }
+                newAnalysisResult = TopDownAnalyzerFacadeForJS.analyzeFiles(newFiles, config);
+            }
+            cache = new TranslationUnitCache(cacheDir, secondCompilerVersion);
+
+            Set<String> unchangedFiles = new TreeSet<String>();
+            for (JetFile file : cache.load(newFiles, newAnalysisResult.getBindingTrace().getBindingContext(), config).getUnchangedFiles()) {
+                unchangedFiles.add(file.getName());
+            }
+            assertEquals(new TreeSet<String>(expectedUnchangedFiles), unchangedFiles);
+
+            TranslationResult.Success second = (TranslationResult.Success) translator.translate(
+                    newFiles, mainCallParameters, newAnalysisResult, cache);
+
+            if (changedFileName == null) {
+                // Doc comments are not kept in the cache
+                assertEquals(first.getCode().replaceAll(DOC_COMMENT, ""), second.getCode().replaceAll(DOC_COMMENT, ""));
+            }
+
+            OutputUtilsPackage.writeAllTo(second.getOutputFiles(outputFile, null, null), outputFile.getParentFile());
+        }
+        finally {
+            FileUtil.delete(cacheDir);
+        }
+    }
+}
@@ -28,6 +28,8 @@ import org.jetbrains.kotlin.js.facade.exceptions.TranslationException;
 import org.jetbrains.kotlin.js.inline.JsInliner;
 import org.jetbrains.kotlin.js.translate.context.TranslationContext;
 import org.jetbrains.kotlin.js.translate.general.Translation;
+import org.jetbrains.kotlin.js.translate.incremental.TranslationUnitCache;
+import org.jetbrains.kotlin.js.translate.incremental.TranslationUnits;
 import org.jetbrains.kotlin.psi.JetFile;
 import org.jetbrains.kotlin.resolve.BindingTrace;
 import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics;
@@ -35,6 +37,7 @@ import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics;
 import java.util.List;
 
 import static org.jetbrains.kotlin.diagnostics.DiagnosticUtils.hasError;
+import static org.jetbrains.kotlin.js.inline.clean.CleanPackage.removeUnreachableDeclarations;
 import static org.jetbrains.kotlin.js.translate.utils.UtilsPackage.expandIsCalls;
 
 /**
@@ -65,6 +68,20 @@ public final class K2JSTranslator {
             @NotNull List<JetFile> files,
             @NotNull MainCallParameters mainCallParameters,
             @Nullable JsAnalysisResult analysisResult
+    ) throws TranslationException {
+        return translate(files, mainCallParameters, analysisResult, null);
+    }
+
+    /**
+     * @param unitCache if not null, the files which haven't changed since the previous compilation with the same cache
+     *                  are not translated again, see {@link TranslationUnitCache}
+     */
+    @NotNull
+    public TranslationResult translate(
+            @NotNull List<JetFile> files,
+            @NotNull MainCallParameters mainCallParameters,
+            @Nullable JsAnalysisResult analysisResult,
+            @Nullable TranslationUnitCache unitCache
     ) throws TranslationException {
         if (analysisResult == null) {
             analysisResult = TopDownAnalyzerFacadeForJS.analyzeFiles(files, config);
@@ -76,7 +93,8 @@ public final class K2JSTranslator {
         ModuleDescriptor moduleDescriptor = analysisResult.getModuleDescriptor();
         Diagnostics diagnostics = bindingTrace.getBindingContext().getDiagnostics();
 
-        TranslationContext context = Translation.generateAst(bindingTrace, files, mainCallParameters, moduleDescriptor, config);
+        TranslationUnits units = unitCache != null ? unitCache.load(files, bindingTrace.getBindingContext(), config) : null;
+        TranslationContext context = Translation.generateAst(bindingTrace, files, mainCallParameters, moduleDescriptor, config, units);
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
         if (hasError(diagnostics)) return new TranslationResult.Fail(diagnostics);
 
@@ -86,6 +104,13 @@ public final class K2JSTranslator {
 
         expandIsCalls(program, context);
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
+        if (units != null) {
+            units.save(program);
+        }
+        // The translation cache keeps all declarations, because other declarations can be reachable after the next change
+        if (config.isDeadCodeEliminationEnabled()) {
+            removeUnreachableDeclarations(program);
+        }
         return new TranslationResult.Success(config, files, program, diagnostics, moduleDescriptor);
     }
 }
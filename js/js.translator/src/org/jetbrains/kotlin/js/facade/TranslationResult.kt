@@ -19,6 +19,7 @@ package org.jetbrains.kotlin.js.facade
 import com.google.dart.compiler.backend.js.ast.JsProgram
 import com.google.dart.compiler.util.TextOutput
 import com.google.dart.compiler.util.TextOutputImpl
+import com.intellij.openapi.util.io.FileUtil
 import com.intellij.openapi.util.text.StringUtil
 import com.intellij.openapi.vfs.VfsUtilCore
 import org.jetbrains.kotlin.backend.common.output.OutputFileCollection
@@ -34,7 +35,11 @@ import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics
 import org.jetbrains.kotlin.serialization.js.KotlinJavascriptSerializationUtil
 import org.jetbrains.kotlin.utils.KotlinJavascriptMetadataUtils
 import org.jetbrains.kotlin.utils.fileUtils.readTextOrEmpty
+import java.io.BufferedWriter
 import java.io.File
+import java.io.FileOutputStream
+import java.io.OutputStreamWriter
+import java.io.Writer
 import java.util.ArrayList
 
 public abstract class TranslationResult protected constructor(public val diagnostics: Diagnostics) {
@@ -60,14 +65,7 @@ public abstract class TranslationResult protected constructor(public val diagnos
             val code = getCode(output, sourceMapBuilder)
             val prefix = outputPrefixFile?.readTextOrEmpty() ?: ""
             val postfix = outputPostfixFile?.readTextOrEmpty() ?: ""
-            val sourceFiles = files.map {
-                val virtualFile = it.getOriginalFile().getVirtualFile()
-
-                when {
-                    virtualFile == null -> File(it.getName())
-                    else -> VfsUtilCore.virtualToIoFile(virtualFile)
-                }
-            }
+            val sourceFiles = getSourceFiles()
 
             val jsFile = SimpleOutputFile(sourceFiles, outputFile.getName(), prefix + code + postfix)
             val outputFiles = arrayListOf(jsFile)
@@ -89,6 +87,64 @@ public abstract class TranslationResult protected constructor(public val diagnos
             return SimpleOutputFileCollection(outputFiles)
         }
 
+        /**
+         * Writes the same files as [getOutputFiles] does, but the code and the source map are written while they are generated,
+         * so that neither of them has to be kept in memory as a whole.
+         */
+        public fun writeOutputFiles(
+                outputFile: File,
+                outputPrefixFile: File?,
+                outputPostfixFile: File?,
+                report: (sources: List<File>, output: File) -> Unit
+        ) {
+            val prefix = outputPrefixFile?.readTextOrEmpty() ?: ""
+            val postfix = outputPostfixFile?.readTextOrEmpty() ?: ""
+            val sourceFiles = getSourceFiles()
+
+            val sourceMapFile = SourceMap3Builder.getOutFile(outputFile)
+
+            report(sourceFiles, outputFile)
+            FileUtil.createParentDirs(outputFile)
+            createWriter(outputFile).use { writer ->
+                writer.write(prefix)
+                val output = TextOutputImpl(writer, false)
+                if (config.isSourcemap()) {
+                    createWriter(sourceMapFile).use { sourceMapWriter ->
+                        val sourceMapBuilder = SourceMap3Builder(outputFile, output, SourceMapBuilderConsumer(), sourceMapWriter)
+                        sourceMapBuilder.skipLinesAtBeginning(StringUtil.getLineBreakCount(prefix))
+                        program.accept(JsSourceGenerationVisitor(output, sourceMapBuilder))
+                        sourceMapBuilder.finish()
+                    }
+                }
+                else {
+                    program.accept(JsSourceGenerationVisitor(output, null))
+                }
+                output.flush()
+                writer.write(postfix)
+            }
+
+            if (config.isMetaInfo()) {
+                val metaFile = File(outputFile.getParentFile(), KotlinJavascriptMetadataUtils.replaceSuffix(outputFile.getName()))
+                report(sourceFiles, metaFile)
+                FileUtil.writeToFile(metaFile, KotlinJavascriptSerializationUtil.metadataAsString(config.getModuleId(), moduleDescriptor))
+            }
+
+            if (config.isSourcemap()) {
+                report(sourceFiles, sourceMapFile)
+            }
+        }
+
+        private fun createWriter(file: File): Writer = BufferedWriter(OutputStreamWriter(FileOutputStream(file), Charsets.UTF_8))
+
+        private fun getSourceFiles(): List<File> = files.map {
+            val virtualFile = it.getOriginalFile().getVirtualFile()
+
+            when {
+                virtualFile == null -> File(it.getName())
+                else -> VfsUtilCore.virtualToIoFile(virtualFile)
+            }
+        }
+
         private fun getCode(output: TextOutput, sourceMapBuilder: SourceMapBuilder?): String {
             program.accept(JsSourceGenerationVisitor(output, sourceMapBuilder))
             return output.toString()
@@ -21,16 +21,27 @@ import com.google.dart.compiler.util.TextOutput;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.PairConsumer;
 import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.utils.UtilsPackage;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class SourceMap3Builder implements SourceMapBuilder {
+    // The mappings are passed to the writer at the end of a line after they have grown beyond this size
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
     private final StringBuilder out = new StringBuilder(8192);
     private final File generatedFile;
     private final TextOutput textOutput;
     private final PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer;
+    @Nullable
+    private final Writer writer;
+    private boolean headerWritten;
 
     private String lastSource;
     private int lastSourceIndex;
@@ -51,18 +62,38 @@ public class SourceMap3Builder implements SourceMapBuilder {
     private int previousSourceColumn;
 
     public SourceMap3Builder(File generatedFile, TextOutput textOutput, PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer) {
+        this(generatedFile, textOutput, sourceInfoConsumer, null);
+    }
+
+    /**
+     * @param writer if not null, the source map is written to it while the mappings are added, instead of being built as a string
+     *               in the end. {@link #finish()} should be called then after the code is generated.
+     */
+    public SourceMap3Builder(
+            File generatedFile,
+            TextOutput textOutput,
+            PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer,
+            @Nullable Writer writer
+    ) {
         this.generatedFile = generatedFile;
         this.textOutput = textOutput;
         this.sourceInfoConsumer = sourceInfoConsumer;
+        this.writer = writer;
+    }
+
+    @NotNull
+    public static File getOutFile(@NotNull File generatedFile) {
+        return new File(generatedFile.getParentFile(), generatedFile.getName() + ".map");
     }
 
     @Override
     public File getOutFile() {
-        return new File(generatedFile.getParentFile(), generatedFile.getName() + ".map");
+        return getOutFile(generatedFile);
     }
 
     @Override
     public String build() {
+        assert writer == null : "The source map is written to the writer";
         StringBuilder sb = new StringBuilder(out.length() + (128 * orderedSources.size()));
         sb.append("{\"version\":3,\"file\":\"").append(generatedFile.getName()).append('"').append(',');
         appendSources(sb);
@@ -73,6 +104,39 @@ public class SourceMap3Builder implements SourceMapBuilder {
         return sb.toString();
     }
 
+    /**
+     * Writes the rest of the source map to the writer given to the constructor. The sources go after the mappings here,
+     * because they are only known when all mappings are added.
+     */
+    public void finish() {
+        assert writer != null : "The source map is built as a string";
+        flush();
+        StringBuilder sb = new StringBuilder(128 * orderedSources.size());
+        sb.append("\",");
+        appendSources(sb);
+        sb.append(",\"names\":[]}");
+        write(sb);
+    }
+
+    private void flush() {
+        if (!headerWritten) {
+            write("{\"version\":3,\"file\":\"" + generatedFile.getName() + "\",\"mappings\":\"");
+            headerWritten = true;
+        }
+        write(out);
+        out.setLength(0);
+    }
+
+    private void write(@NotNull CharSequence text) {
+        assert writer != null;
+        try {
+            writer.append(text);
+        }
+        catch (IOException e) {
+            throw UtilsPackage.rethrow(e);
+        }
+    }
+
     private void appendSources(StringBuilder sb) {
         boolean isNotFirst = false;
         sb.append('"').append("sources").append("\":[");
@@ -92,10 +156,14 @@ public class SourceMap3Builder implements SourceMapBuilder {
     public void newLine() {
         out.append(';');
         previousGeneratedColumn = -1;
+        if (writer != null && out.length() >= FLUSH_THRESHOLD) {
+            flush();
+        }
     }
 
     @Override
     public void skipLinesAtBeginning(int count) {
+        assert !headerWritten : "Lines should be skipped before the mappings are written";
         out.insert(0, StringUtil.repeatSymbol(';', count));
     }
 
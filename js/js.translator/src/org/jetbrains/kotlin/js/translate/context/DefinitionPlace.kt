@@ -19,12 +19,13 @@ package org.jetbrains.kotlin.js.translate.context
 import com.google.dart.compiler.backend.js.ast.JsExpression
 import com.google.dart.compiler.backend.js.ast.JsPropertyInitializer
 import com.google.dart.compiler.backend.js.ast.JsNameRef
-import com.google.dart.compiler.backend.js.ast.JsObjectScope
+import com.google.dart.compiler.backend.js.ast.JsScope
 import com.google.dart.compiler.backend.js.ast.JsFunction
+import com.google.dart.compiler.backend.js.ast.metadata.isRemovableDeclaration
 import com.google.dart.compiler.backend.js.ast.metadata.staticRef
 
 class DefinitionPlace(
-        private val scope: JsObjectScope,
+        private val scope: JsScope,
         private val fqName: JsExpression,
         val properties: MutableList<JsPropertyInitializer>
 ) {
@@ -37,7 +38,9 @@ class DefinitionPlace(
             name.staticRef = expression
         }
 
-        properties.add(JsPropertyInitializer(name.makeRef(), expression))
+        val property = JsPropertyInitializer(name.makeRef(), expression)
+        property.isRemovableDeclaration = true
+        properties.add(property)
         return JsNameRef(name, fqName)
     }
 }
@@ -20,6 +20,8 @@ import com.google.dart.compiler.backend.js.ast.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
+
 import static com.google.dart.compiler.backend.js.ast.JsVars.JsVar;
 
 //TODO: consider renaming to scoping context
@@ -78,6 +80,25 @@ public final class DynamicContext {
         }
     }
 
+    /**
+     * Moves all statements of the given context to the end of the block of this context.
+     * The temporary variables of both contexts are declared by one statement, as if they were declared in this context.
+     */
+    void appendStatementsFrom(@NotNull DynamicContext dynamicContext) {
+        List<JsStatement> statements = dynamicContext.currentBlock.getStatements();
+        if (dynamicContext.vars != null) {
+            if (vars == null) {
+                vars = dynamicContext.vars;
+            } else {
+                vars.addAll(dynamicContext.vars);
+                statements.remove(dynamicContext.vars);
+            }
+            dynamicContext.vars = null;
+        }
+        currentBlock.getStatements().addAll(statements);
+        statements.clear();
+    }
+
     @NotNull
     public JsScope getScope() {
         return currentScope;
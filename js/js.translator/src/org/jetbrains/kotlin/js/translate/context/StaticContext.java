@@ -16,9 +16,8 @@
 
 package org.jetbrains.kotlin.js.translate.context;
 
-import com.google.common.collect.Maps;
 import com.google.dart.compiler.backend.js.ast.*;
-import com.intellij.openapi.util.Factory;
+import com.intellij.psi.PsiElement;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -38,11 +37,13 @@ import org.jetbrains.kotlin.resolve.DescriptorUtils;
 import org.jetbrains.kotlin.resolve.calls.tasks.TasksPackage;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.jetbrains.kotlin.js.translate.utils.AnnotationsUtils.*;
 import static org.jetbrains.kotlin.js.translate.utils.JsDescriptorUtils.*;
 import static org.jetbrains.kotlin.js.translate.utils.ManglingUtils.getMangledName;
 import static org.jetbrains.kotlin.js.translate.utils.ManglingUtils.getSuggestedName;
+import static org.jetbrains.kotlin.resolve.DescriptorToSourceUtils.descriptorToDeclaration;
 import static org.jetbrains.kotlin.resolve.DescriptorUtils.isExtension;
 
 /**
@@ -81,7 +82,7 @@ public final class StaticContext {
     @NotNull
     private final Generator<JsName> names = new NameGenerator();
     @NotNull
-    private final Map<FqName, JsName> packageNames = Maps.newHashMap();
+    private final Map<FqName, JsName> packageNames = new ConcurrentHashMap<FqName, JsName>();
     @NotNull
     private final Generator<JsScope> scopes = new ScopeGenerator();
     @NotNull
@@ -90,7 +91,7 @@ public final class StaticContext {
     private final Generator<Boolean> qualifierIsNull = new QualifierIsNullGenerator();
 
     @NotNull
-    private final Map<JsScope, JsFunction> scopeToFunction = Maps.newHashMap();
+    private final Map<JsScope, JsFunction> scopeToFunction = new ConcurrentHashMap<JsScope, JsFunction>();
 
     @NotNull
     private final Config config;
@@ -98,6 +99,9 @@ public final class StaticContext {
     @NotNull
     private final EcmaVersion ecmaVersion;
 
+    @NotNull
+    private final ModuleDescriptor moduleDescriptor;
+
     //TODO: too many parameters in constructor
     private StaticContext(@NotNull JsProgram program, @NotNull BindingTrace bindingTrace,
             @NotNull Namer namer, @NotNull Intrinsics intrinsics,
@@ -111,6 +115,7 @@ public final class StaticContext {
         this.config = config;
         this.ecmaVersion = config.getTarget();
         this.reflectionTypes = new ReflectionTypes(moduleDescriptor);
+        this.moduleDescriptor = moduleDescriptor;
     }
 
     public boolean isEcma5() {
@@ -193,14 +198,18 @@ public final class StaticContext {
     }
 
     @NotNull
-    public JsName getNameForPackage(@NotNull final FqName packageFqName) {
-        return ContainerUtil.getOrCreate(packageNames, packageFqName, new Factory<JsName>() {
-            @Override
-            public JsName create() {
-                String name = Namer.generatePackageName(packageFqName);
-                return getRootScope().declareName(name);
+    public JsName getNameForPackage(@NotNull FqName packageFqName) {
+        JsName result = packageNames.get(packageFqName);
+        if (result != null) return result;
+
+        synchronized (this) {
+            result = packageNames.get(packageFqName);
+            if (result == null) {
+                result = getRootScope().declareName(Namer.generatePackageName(packageFqName));
+                packageNames.put(packageFqName, result);
             }
-        });
+            return result;
+        }
     }
 
     @NotNull
@@ -233,6 +242,8 @@ public final class StaticContext {
     private final class NameGenerator extends Generator<JsName> {
 
         public NameGenerator() {
+            super(StaticContext.this);
+
             Rule<JsName> namesForDynamic = new Rule<JsName>() {
                 @Override
                 @Nullable
@@ -261,7 +272,10 @@ public final class StaticContext {
                 @Nullable
                 public JsName apply(@NotNull DeclarationDescriptor descriptor) {
                     JsScope scope = getEnclosingScope(descriptor);
-                    return scope.declareFreshName(getSuggestedName(descriptor));
+                    String name = getSuggestedName(descriptor);
+                    // A library declaration has the name it was given when the library was compiled, so it doesn't depend on
+                    // which of the library declarations are referenced first
+                    return isLibraryDeclaration(descriptor) ? scope.declareName(name) : scope.declareFreshName(name);
                 }
             };
             Rule<JsName> constructorOrCompanionObjectHasTheSameNameAsTheClass = new Rule<JsName>() {
@@ -374,6 +388,14 @@ public final class StaticContext {
         return fresh ? scope.declareFreshName(name) : scope.declareName(name);
     }
 
+    private boolean isLibraryDeclaration(@NotNull DeclarationDescriptor descriptor) {
+        if (!DescriptorUtils.getContainingModule(descriptor).equals(moduleDescriptor)) return true;
+
+        // The sources of old libraries are analyzed together with the module
+        PsiElement element = descriptorToDeclaration(descriptor);
+        return element != null && element.getContainingFile().getUserData(LibrarySourcesConfig.EXTERNAL_MODULE_NAME) != null;
+    }
+
     @NotNull
     private JsScope getEnclosingScope(@NotNull DeclarationDescriptor descriptor) {
         DeclarationDescriptor containingDeclaration = getContainingDeclaration(descriptor);
@@ -383,6 +405,8 @@ public final class StaticContext {
     private final class ScopeGenerator extends Generator<JsScope> {
 
         public ScopeGenerator() {
+            super(StaticContext.this);
+
             Rule<JsScope> generateNewScopesForClassesWithNoAncestors = new Rule<JsScope>() {
                 @Override
                 public JsScope apply(@NotNull DeclarationDescriptor descriptor) {
@@ -457,6 +481,8 @@ public final class StaticContext {
 
     private final class QualifierGenerator extends Generator<JsExpression> {
         public QualifierGenerator() {
+            super(StaticContext.this);
+
             Rule<JsExpression> standardObjectsHaveKotlinQualifier = new Rule<JsExpression>() {
                 @Override
                 public JsExpression apply(@NotNull DeclarationDescriptor descriptor) {
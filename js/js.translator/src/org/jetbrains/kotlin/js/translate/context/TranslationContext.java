@@ -129,6 +129,16 @@ public class TranslationContext {
         return new TranslationContext(this, staticContext, dynamicContext, aliasingContext, usageTracker, place);
     }
 
+    /**
+     * Creates a context for the declarations of one file of a package, which is translated independently of the other files.
+     * The file declares its names in the given scope and defines functions in the given place.
+     */
+    @NotNull
+    public TranslationContext newFileDeclaration(@NotNull JsScope scope, @NotNull DefinitionPlace place) {
+        DynamicContext dynamicContext = DynamicContext.newContext(scope, new JsBlock());
+        return new TranslationContext(this, staticContext, dynamicContext, aliasingContext.inner(), usageTracker, place);
+    }
+
     @NotNull
     private TranslationContext innerWithAliasingContext(AliasingContext aliasingContext) {
         return new TranslationContext(this, this.staticContext, this.dynamicContext, aliasingContext, this.usageTracker, null);
@@ -296,6 +306,10 @@ public class TranslationContext {
         dynamicContext.moveVarsFrom(context.dynamicContext());
     }
 
+    public void appendStatementsFrom(@NotNull TranslationContext context) {
+        dynamicContext.appendStatementsFrom(context.dynamicContext());
+    }
+
     @NotNull
     public JsBlock getCurrentBlock() {
         return dynamicContext.jsBlock();
@@ -17,19 +17,38 @@
 package org.jetbrains.kotlin.js.translate.context.generator;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
 
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Generates a value for a descriptor once and then returns the same value for it. Values can be requested by several threads.
+ */
 public class Generator<V> {
+    private static final Object NULL_VALUE = new Object();
+
     @NotNull
-    private final Map<DeclarationDescriptor, V> values = Maps.newHashMap();
+    private final ConcurrentMap<DeclarationDescriptor, Object> values = new ConcurrentHashMap<DeclarationDescriptor, Object>();
     @NotNull
     private final List<Rule<V>> rules = Lists.newArrayList();
+    @NotNull
+    private final Object lock;
+
+    public Generator() {
+        this.lock = this;
+    }
+
+    /**
+     * @param lock the lock held while a value is generated. Generators whose rules request values of each other should share it,
+     *             so that two threads can't wait for each other.
+     */
+    public Generator(@NotNull Object lock) {
+        this.lock = lock;
+    }
 
     public void addRule(@NotNull Rule<V> rule) {
         rules.add(rule);
@@ -37,13 +56,20 @@ public class Generator<V> {
 
     @Nullable
     public V get(@NotNull DeclarationDescriptor descriptor) {
-        V result = values.get(descriptor);
-        if (result != null) {
-            return result;
+        Object result = values.get(descriptor);
+        if (result == null) {
+            synchronized (lock) {
+                result = values.get(descriptor);
+                if (result == null) {
+                    V generated = generate(descriptor);
+                    result = generated != null ? generated : NULL_VALUE;
+                    values.put(descriptor, result);
+                }
+            }
         }
-        result = generate(descriptor);
-        values.put(descriptor, result);
-        return result;
+
+        //noinspection unchecked
+        return result != NULL_VALUE ? (V) result : null;
     }
 
     @Nullable
@@ -16,7 +16,10 @@
 package org.jetbrains.kotlin.js.translate.declaration
 
 import com.google.dart.compiler.backend.js.ast.JsFunction
+import com.google.dart.compiler.backend.js.ast.JsFunctionScope
 import com.google.dart.compiler.backend.js.ast.JsPropertyInitializer
+import com.google.dart.compiler.backend.js.ast.JsStatement
+import com.google.dart.compiler.backend.js.ast.metadata.isRemovableDeclaration
 import com.intellij.util.SmartList
 import org.jetbrains.kotlin.descriptors.PropertyDescriptor
 import org.jetbrains.kotlin.js.translate.context.TranslationContext
@@ -26,18 +29,18 @@ import org.jetbrains.kotlin.js.translate.initializer.InitializerUtils.generateIn
 import org.jetbrains.kotlin.js.translate.initializer.InitializerUtils.generateInitializerForProperty
 import org.jetbrains.kotlin.js.translate.initializer.InitializerVisitor
 import org.jetbrains.kotlin.js.translate.utils.BindingUtils.getPropertyDescriptor
-import org.jetbrains.kotlin.js.translate.utils.JsAstUtils
 import org.jetbrains.kotlin.psi.JetClass
 import org.jetbrains.kotlin.psi.JetClassInitializer
+import org.jetbrains.kotlin.psi.JetNamedFunction
 import org.jetbrains.kotlin.psi.JetObjectDeclaration
 import org.jetbrains.kotlin.psi.JetProperty
 
 class FileDeclarationVisitor(
         val context: TranslationContext,
-        initializers: List<JsPropertyInitializer> = SmartList()
+        initializers: List<JsPropertyInitializer>,
+        private val initializer: JsFunction
 ) : DeclarationBodyVisitor(initializers, SmartList()) {
 
-    private val initializer = JsAstUtils.createFunctionWithEmptyBody(context.scope())
     private val initializerContext = context.contextWithScope(initializer)
     private val initializerStatements = initializer.getBody()!!.getStatements()!!
     private val initializerVisitor = InitializerVisitor(initializerStatements)
@@ -50,8 +53,30 @@ class FileDeclarationVisitor(
         }
     }
 
+    fun getInitializerStatements(): MutableList<JsStatement> = initializerStatements
+
+    fun getInitializerScope(): JsFunctionScope = initializer.getScope()
+
+    /**
+     * Adds the members and the initializer statements which the given visitor has translated to the ones of this visitor.
+     */
+    fun addFrom(visitor: FileDeclarationVisitor) {
+        result.addAll(visitor.getResult())
+        initializerContext.appendStatementsFrom(visitor.initializerContext)
+    }
+
     public override fun visitClass(expression: JetClass, context: TranslationContext?): Void? {
-        result.addAll(ClassTranslator.translate(expression, context!!))
+        for (member in ClassTranslator.translate(expression, context!!)) {
+            member.isRemovableDeclaration = true
+            result.add(member)
+        }
+        return null
+    }
+
+    public override fun visitNamedFunction(expression: JetNamedFunction, context: TranslationContext?): Void? {
+        val size = result.size()
+        super.visitNamedFunction(expression, context)
+        result.subList(size, result.size()).forEach { it.isRemovableDeclaration = true }
         return null
     }
 
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.translate.declaration;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.js.translate.context.TranslationContext;
+import org.jetbrains.kotlin.js.translate.general.AbstractTranslator;
+import org.jetbrains.kotlin.js.translate.general.ParallelTranslation;
+import org.jetbrains.kotlin.js.translate.incremental.TranslationUnits;
+import org.jetbrains.kotlin.js.translate.utils.AnnotationsUtils;
+import org.jetbrains.kotlin.js.translate.utils.BindingUtils;
+import org.jetbrains.kotlin.psi.JetDeclaration;
+import org.jetbrains.kotlin.psi.JetFile;
+
+/**
+ * Translates the declarations of one file into members and initializer statements of its own, independently of the other files
+ * of the package, and then adds them to the package.
+ */
+final class FileTranslator extends AbstractTranslator implements ParallelTranslation.Task {
+    @NotNull
+    private final JetFile file;
+    @NotNull
+    private final PackageTranslator packageTranslator;
+    @NotNull
+    private final FileDeclarationVisitor visitor;
+    @NotNull
+    private final ProvisionalNames names;
+    @Nullable
+    private final TranslationUnits units;
+
+    FileTranslator(
+            @NotNull JetFile file,
+            @NotNull TranslationContext context,
+            @NotNull PackageTranslator packageTranslator,
+            @NotNull FileDeclarationVisitor visitor,
+            @NotNull ProvisionalNames names,
+            @Nullable TranslationUnits units
+    ) {
+        super(context);
+        this.file = file;
+        this.packageTranslator = packageTranslator;
+        this.visitor = visitor;
+        this.names = names;
+        this.units = units;
+    }
+
+    @Override
+    public void translate() {
+        for (JetDeclaration declaration : file.getDeclarations()) {
+            if (!AnnotationsUtils.isPredefinedObject(BindingUtils.getDescriptorForElement(bindingContext(), declaration))) {
+                declaration.accept(visitor, context());
+            }
+        }
+    }
+
+    @Override
+    public void add() {
+        names.declareAndReplace(visitor.getResult(), visitor.getInitializerStatements());
+        if (units != null) {
+            units.translated(file, visitor.getResult(), !visitor.getInitializerStatements().isEmpty());
+        }
+        packageTranslator.add(visitor);
+    }
+}
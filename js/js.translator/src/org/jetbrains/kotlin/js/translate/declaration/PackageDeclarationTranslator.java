@@ -19,11 +19,18 @@ package org.jetbrains.kotlin.js.translate.declaration;
 import com.google.dart.compiler.backend.js.ast.*;
 import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.descriptors.ClassDescriptor;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
 import org.jetbrains.kotlin.descriptors.PackageFragmentDescriptor;
 import org.jetbrains.kotlin.js.translate.context.Namer;
 import org.jetbrains.kotlin.js.translate.context.TranslationContext;
 import org.jetbrains.kotlin.js.translate.general.AbstractTranslator;
+import org.jetbrains.kotlin.js.translate.general.ParallelTranslation;
+import org.jetbrains.kotlin.js.translate.incremental.TranslationUnits;
+import org.jetbrains.kotlin.js.translate.utils.AnnotationsUtils;
 import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.psi.JetDeclaration;
 import org.jetbrains.kotlin.psi.JetFile;
 import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.kotlin.resolve.BindingContextUtils;
@@ -31,20 +38,37 @@ import org.jetbrains.kotlin.resolve.BindingContextUtils;
 import java.util.*;
 
 import static com.google.dart.compiler.backend.js.ast.JsVars.JsVar;
+import static org.jetbrains.kotlin.js.translate.reference.ReferenceTranslator.translateAsFQReference;
+import static org.jetbrains.kotlin.js.translate.utils.JsDescriptorUtils.getReceiverParameterForDeclaration;
 
 public final class PackageDeclarationTranslator extends AbstractTranslator {
-    private final Iterable<JetFile> files;
+    private final Collection<JetFile> files;
+    @Nullable
+    private final TranslationUnits units;
     private final Map<PackageFragmentDescriptor, PackageTranslator> packageFragmentToTranslator =
             new LinkedHashMap<PackageFragmentDescriptor, PackageTranslator>();
 
     public static List<JsStatement> translateFiles(@NotNull Collection<JetFile> files, @NotNull TranslationContext context) {
-        return new PackageDeclarationTranslator(files, context).translate();
+        return translateFiles(files, context, null);
     }
 
-    private PackageDeclarationTranslator(@NotNull Iterable<JetFile> files, @NotNull TranslationContext context) {
+    public static List<JsStatement> translateFiles(
+            @NotNull Collection<JetFile> files,
+            @NotNull TranslationContext context,
+            @Nullable TranslationUnits units
+    ) {
+        return new PackageDeclarationTranslator(files, context, units).translate();
+    }
+
+    private PackageDeclarationTranslator(
+            @NotNull Collection<JetFile> files,
+            @NotNull TranslationContext context,
+            @Nullable TranslationUnits units
+    ) {
         super(context);
 
         this.files = files;
+        this.units = units;
     }
 
     @NotNull
@@ -52,6 +76,12 @@ public final class PackageDeclarationTranslator extends AbstractTranslator {
         // predictable order
         Map<FqName, DefineInvocation> packageFqNameToDefineInvocation = new THashMap<FqName, DefineInvocation>();
 
+        prepareDeclarations();
+        if (units != null) {
+            units.prepare(context());
+        }
+
+        List<ParallelTranslation.Task> tasks = new ArrayList<ParallelTranslation.Task>(files.size());
         for (JetFile file : files) {
             PackageFragmentDescriptor packageFragment =
                     BindingContextUtils.getNotNull(context().bindingContext(), BindingContext.FILE_TO_PACKAGE_FRAGMENT, file);
@@ -63,9 +93,12 @@ public final class PackageDeclarationTranslator extends AbstractTranslator {
                 packageFragmentToTranslator.put(packageFragment, translator);
             }
 
-            translator.translate(file);
+            List<JsPropertyInitializer> reusedMembers = units != null ? units.getReusedMembers(file) : null;
+            tasks.add(reusedMembers != null ? new ReusedFile(translator, reusedMembers) : translator.newFile(file, units));
         }
 
+        ParallelTranslation.run(tasks, context().getConfig().getTranslationThreads(), context().bindingTrace());
+
         for (PackageTranslator translator : packageFragmentToTranslator.values()) {
             translator.add(packageFqNameToDefineInvocation);
         }
@@ -76,6 +109,31 @@ public final class PackageDeclarationTranslator extends AbstractTranslator {
         return Collections.<JsStatement>singletonList(vars);
     }
 
+    /**
+     * Names the declarations of all files in a fixed order, so that the names don't depend on the order in which the files are
+     * translated, and makes the companion objects of the classes accessible from all files.
+     */
+    private void prepareDeclarations() {
+        BindingContext bindingContext = context().bindingContext();
+        for (JetFile file : files) {
+            for (JetDeclaration declaration : TranslationUnits.collectDeclarations(file)) {
+                DeclarationDescriptor descriptor = TranslationUnits.getDescriptor(bindingContext, declaration);
+                if (descriptor == null || AnnotationsUtils.isPredefinedObject(descriptor)) continue;
+
+                context().getNameForDescriptor(descriptor);
+
+                if (descriptor instanceof ClassDescriptor) {
+                    // Members of the companion object can be accessed without a qualifier in the subclasses, which can be in other files
+                    ClassDescriptor companionObject = ((ClassDescriptor) descriptor).getCompanionObjectDescriptor();
+                    if (companionObject != null) {
+                        JsExpression accessor = Namer.getCompanionObjectAccessor(translateAsFQReference(descriptor, context()));
+                        context().aliasingContext().registerAlias(getReceiverParameterForDeclaration(companionObject), accessor);
+                    }
+                }
+            }
+        }
+    }
+
     private void createRootPackageDefineInvocationIfNeeded(@NotNull Map<FqName, DefineInvocation> packageFqNameToDefineInvocation) {
         if (!packageFqNameToDefineInvocation.containsKey(FqName.ROOT)) {
             packageFqNameToDefineInvocation.put(
@@ -87,4 +145,23 @@ public final class PackageDeclarationTranslator extends AbstractTranslator {
         JsExpression rootPackageVar = new JsInvocation(context().namer().rootPackageDefinitionMethodReference(), defineInvocation.asList());
         return new JsVar(context().scope().declareName(Namer.getRootPackageName()), rootPackageVar);
     }
+
+    private static class ReusedFile implements ParallelTranslation.Task {
+        private final PackageTranslator translator;
+        private final List<JsPropertyInitializer> members;
+
+        private ReusedFile(@NotNull PackageTranslator translator, @NotNull List<JsPropertyInitializer> members) {
+            this.translator = translator;
+            this.members = members;
+        }
+
+        @Override
+        public void translate() {
+        }
+
+        @Override
+        public void add() {
+            translator.addReusedMembers(members);
+        }
+    }
 }
@@ -24,10 +24,9 @@ import org.jetbrains.kotlin.descriptors.PackageFragmentDescriptor;
 import org.jetbrains.kotlin.js.translate.context.DefinitionPlace;
 import org.jetbrains.kotlin.js.translate.context.TranslationContext;
 import org.jetbrains.kotlin.js.translate.general.AbstractTranslator;
-import org.jetbrains.kotlin.js.translate.utils.AnnotationsUtils;
-import org.jetbrains.kotlin.js.translate.utils.BindingUtils;
+import org.jetbrains.kotlin.js.translate.incremental.TranslationUnits;
+import org.jetbrains.kotlin.js.translate.utils.JsAstUtils;
 import org.jetbrains.kotlin.name.FqName;
-import org.jetbrains.kotlin.psi.JetDeclaration;
 import org.jetbrains.kotlin.psi.JetFile;
 
 import java.util.List;
@@ -45,7 +44,8 @@ final class PackageTranslator extends AbstractTranslator {
         DefinitionPlace definitionPlace = new DefinitionPlace((JsObjectScope) scope, reference, properties);
 
         TranslationContext newContext = context.newDeclaration(descriptor, definitionPlace);
-        FileDeclarationVisitor visitor = new FileDeclarationVisitor(newContext, definitionPlace.getProperties());
+        JsFunction initializer = JsAstUtils.createFunctionWithEmptyBody(newContext.scope());
+        FileDeclarationVisitor visitor = new FileDeclarationVisitor(newContext, definitionPlace.getProperties(), initializer);
         return new PackageTranslator(descriptor, newContext, visitor);
     }
 
@@ -64,12 +64,28 @@ final class PackageTranslator extends AbstractTranslator {
         this.visitor = visitor;
     }
     
-    public void translate(JetFile file) {
-        for (JetDeclaration declaration : file.getDeclarations()) {
-            if (!AnnotationsUtils.isPredefinedObject(BindingUtils.getDescriptorForElement(bindingContext(), declaration))) {
-                declaration.accept(visitor, context());
-            }
-        }
+    /**
+     * @return a translator of the given file, which adds the declarations of the file to this package
+     */
+    @NotNull
+    public FileTranslator newFile(@NotNull JetFile file, @Nullable TranslationUnits units) {
+        ProvisionalNames names = new ProvisionalNames();
+        JsScope scope = names.packageScope(context().scope());
+        SmartList<JsPropertyInitializer> properties = new SmartList<JsPropertyInitializer>();
+        DefinitionPlace definitionPlace = new DefinitionPlace(scope, context().getQualifiedReference(descriptor), properties);
+
+        TranslationContext fileContext = context().newFileDeclaration(scope, definitionPlace);
+        JsFunction initializer = new JsFunction(names.initializerScope(visitor.getInitializerScope()), new JsBlock());
+        FileDeclarationVisitor fileVisitor = new FileDeclarationVisitor(fileContext, properties, initializer);
+        return new FileTranslator(file, fileContext, this, fileVisitor, names, units);
+    }
+
+    void add(@NotNull FileDeclarationVisitor fileVisitor) {
+        visitor.addFrom(fileVisitor);
+    }
+
+    public void addReusedMembers(@NotNull List<JsPropertyInitializer> members) {
+        visitor.getResult().addAll(members);
     }
 
     private void createDefinitionPlace(
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.translate.declaration
+
+import com.google.dart.compiler.backend.js.ast.*
+import java.util.ArrayList
+import java.util.IdentityHashMap
+
+/**
+ * Records the names which a file declares in the scope of its package and in the initializer of its package while it is translated
+ * separately from the other files of the package.
+ *
+ * The identifiers of such names depend on the names declared by the files before it, e.g. two files can both define a lambda
+ * named "foo$f". So the file declares provisional names in scopes of its own, and after all previous files are added to the package
+ * the same declarations are repeated in the real scopes in the same order and the provisional names are replaced by the real ones.
+ */
+class ProvisionalNames {
+    private enum class Kind {
+        NAME,
+        FRESH_NAME,
+        TEMPORARY,
+        UNSAFE_NAME
+    }
+
+    private class Declaration(val scope: JsScope, val kind: Kind, val identifier: String, val name: JsName)
+
+    private val declarations = ArrayList<Declaration>()
+
+    /**
+     * @return a scope which records the names declared in it and is to be used by the file instead of the scope of its package
+     */
+    fun packageScope(packageScope: JsScope): JsScope = ProvisionalObjectScope(packageScope)
+
+    /**
+     * @return a scope which records the names declared in it and is to be used by the file instead of the package initializer scope
+     */
+    fun initializerScope(initializerScope: JsFunctionScope): JsFunctionScope = ProvisionalFunctionScope(initializerScope)
+
+    fun isEmpty(): Boolean = declarations.isEmpty()
+
+    /**
+     * Declares the recorded names in the real scopes and replaces the provisional names in the given nodes by them.
+     */
+    fun declareAndReplace(members: List<JsPropertyInitializer>, statements: MutableList<JsStatement>) {
+        if (declarations.isEmpty()) return
+
+        val realNames = IdentityHashMap<JsName, JsName>()
+        for (declaration in declarations) {
+            val scope = declaration.scope
+            val name = when (declaration.kind) {
+                Kind.NAME -> scope.declareName(declaration.identifier)
+                Kind.FRESH_NAME -> scope.declareFreshName(declaration.identifier)
+                Kind.TEMPORARY -> scope.declareTemporary()
+                Kind.UNSAFE_NAME -> (scope as JsFunctionScope).declareNameUnsafe(declaration.identifier)
+            }
+            name.copyMetadataFrom(declaration.name)
+            realNames.put(declaration.name, name)
+        }
+
+        val visitor = ProvisionalNameReplacingVisitor(realNames)
+        visitor.acceptList(members)
+        visitor.acceptStatementList(statements)
+    }
+
+    private fun record(scope: JsScope, kind: Kind, identifier: String, name: JsName): JsName {
+        declarations.add(Declaration(scope, kind, identifier, name))
+        return name
+    }
+
+    private inner class ProvisionalObjectScope(
+            private val realScope: JsScope
+    ) : JsScope(realScope, "<provisional scope for ${realScope.getDescription()}>", null) {
+
+        override fun declareName(identifier: String): JsName =
+                record(realScope, Kind.NAME, identifier, super.declareName(identifier))
+
+        override fun declareFreshName(suggestedName: String): JsName =
+                record(realScope, Kind.FRESH_NAME, suggestedName, super.declareFreshName(suggestedName))
+
+        override fun declareTemporary(): JsName =
+                record(realScope, Kind.TEMPORARY, "", super.declareFreshName("tmp$" + tempIndex++))
+    }
+
+    private inner class ProvisionalFunctionScope(
+            private val realScope: JsFunctionScope
+    ) : JsFunctionScope(realScope, "<provisional scope for ${realScope.getDescription()}>") {
+
+        override fun declareName(identifier: String): JsName =
+                record(realScope, Kind.NAME, identifier, super.declareName(identifier))
+
+        override fun declareFreshName(suggestedName: String): JsName =
+                record(realScope, Kind.FRESH_NAME, suggestedName, super.declareFreshName(suggestedName))
+
+        override fun declareTemporary(): JsName =
+                record(realScope, Kind.TEMPORARY, "", super.declareFreshName("tmp$" + tempIndex++))
+
+        override fun declareNameUnsafe(identifier: String): JsName =
+                record(realScope, Kind.UNSAFE_NAME, identifier, super.declareNameUnsafe(identifier))
+    }
+
+    private class ProvisionalNameReplacingVisitor(private val realNames: Map<JsName, JsName>) : JsVisitorWithContextImpl() {
+        override fun endVisit(x: JsNameRef, ctx: JsContext<*>) {
+            val realName = realNames[x.getName()]
+            if (realName != null) {
+                x.resolve(realName)
+            }
+        }
+
+        override fun endVisit(x: JsVars.JsVar, ctx: JsContext<*>) {
+            val realName = realNames[x.getName()]
+            if (realName != null) {
+                val realVar = JsVars.JsVar(realName, x.getInitExpression())
+                realVar.copyMetadataFrom(x)
+                realVar.setSource(x.getSource())
+                ctx.replaceMe(realVar)
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.translate.general;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.diagnostics.Diagnostic;
+import org.jetbrains.kotlin.diagnostics.DiagnosticSink;
+import org.jetbrains.kotlin.psi.JetExpression;
+import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.resolve.BindingTrace;
+import org.jetbrains.kotlin.types.JetType;
+import org.jetbrains.kotlin.util.slicedMap.ReadOnlySlice;
+import org.jetbrains.kotlin.util.slicedMap.WritableSlice;
+import org.jetbrains.kotlin.utils.UtilsPackage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Translates independent files on a thread pool.
+ *
+ * A task translates its file into names, members and initializer statements of its own, which are added to the program on the calling
+ * thread in the order the tasks were given. Diagnostics reported by a task are reported on the calling thread right before the task
+ * is added. So the output and the diagnostics are the same as if the files were translated one after another.
+ *
+ * The number of threads is taken from {@link org.jetbrains.kotlin.js.config.Config#getTranslationThreads()}. Parallel translation is turned
+ * off by default, the command line compiler turns it on if the "kotlin.parallel.js.translation.threads" system property is set to
+ * a positive number.
+ */
+public class ParallelTranslation {
+    public static final String THREADS_PROPERTY = "kotlin.parallel.js.translation.threads";
+
+    public static int getThreadCount() {
+        return Integer.getInteger(THREADS_PROPERTY, 0);
+    }
+
+    public interface Task {
+        /**
+         * Translates the file. Can be called on any thread.
+         */
+        void translate();
+
+        /**
+         * Adds the translated file to the program. Called on the calling thread after the tasks given before this one are added.
+         */
+        void add();
+    }
+
+    // Diagnostics reported by the task being run on the current thread, or null if this is not a translation worker
+    private static final ThreadLocal<List<Diagnostic>> DEFERRED_DIAGNOSTICS = new ThreadLocal<List<Diagnostic>>();
+
+    public static void run(@NotNull List<? extends Task> tasks, int threadCount, @NotNull DiagnosticSink diagnostics) {
+        if (threadCount <= 0 || tasks.size() < 2) {
+            for (Task task : tasks) {
+                task.translate();
+                task.add();
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, tasks.size()), new TranslationThreadFactory());
+        try {
+            List<Future<List<Diagnostic>>> results = new ArrayList<Future<List<Diagnostic>>>(tasks.size());
+            for (final Task task : tasks) {
+                results.add(executor.submit(new Callable<List<Diagnostic>>() {
+                    @Override
+                    public List<Diagnostic> call() {
+                        List<Diagnostic> reported = new ArrayList<Diagnostic>();
+                        DEFERRED_DIAGNOSTICS.set(reported);
+                        try {
+                            task.translate();
+                        }
+                        finally {
+                            DEFERRED_DIAGNOSTICS.remove();
+                        }
+                        return reported;
+                    }
+                }));
+            }
+
+            for (int i = 0; i < tasks.size(); i++) {
+                for (Diagnostic diagnostic : getResult(results.get(i))) {
+                    diagnostics.report(diagnostic);
+                }
+                tasks.get(i).add();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return a trace which reports the diagnostics of a translation worker when its task is added and passes everything else
+     * to the given trace. Translation only reads from the trace otherwise.
+     */
+    @NotNull
+    public static BindingTrace deferringBindingTrace(@NotNull BindingTrace trace) {
+        return new DeferringBindingTrace(trace);
+    }
+
+    @NotNull
+    private static <T> T getResult(@NotNull Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            throw UtilsPackage.rethrow(e.getCause());
+        }
+        catch (InterruptedException e) {
+            throw UtilsPackage.rethrow(e);
+        }
+    }
+
+    private static class DeferringBindingTrace implements BindingTrace {
+        private final BindingTrace trace;
+
+        private DeferringBindingTrace(@NotNull BindingTrace trace) {
+            this.trace = trace;
+        }
+
+        @Override
+        public void report(@NotNull Diagnostic diagnostic) {
+            List<Diagnostic> deferred = DEFERRED_DIAGNOSTICS.get();
+            if (deferred != null) {
+                deferred.add(diagnostic);
+            }
+            else {
+                trace.report(diagnostic);
+            }
+        }
+
+        @NotNull
+        @Override
+        public BindingContext getBindingContext() {
+            return trace.getBindingContext();
+        }
+
+        @Override
+        public <K, V> void record(WritableSlice<K, V> slice, K key, V value) {
+            trace.record(slice, key, value);
+        }
+
+        @Override
+        public <K> void record(WritableSlice<K, Boolean> slice, K key) {
+            trace.record(slice, key);
+        }
+
+        @Nullable
+        @Override
+        public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+            return trace.get(slice, key);
+        }
+
+        @NotNull
+        @Override
+        public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+            return trace.getKeys(slice);
+        }
+
+        @Nullable
+        @Override
+        public JetType getType(@NotNull JetExpression expression) {
+            return trace.getType(expression);
+        }
+
+        @Override
+        public void recordType(@NotNull JetExpression expression, @Nullable JetType type) {
+            trace.recordType(expression, type);
+        }
+    }
+
+    private static class TranslationThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "Kotlin JS translation " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -37,6 +37,7 @@ import org.jetbrains.kotlin.js.translate.declaration.PackageDeclarationTranslato
 import org.jetbrains.kotlin.js.translate.expression.ExpressionVisitor;
 import org.jetbrains.kotlin.js.translate.expression.FunctionTranslator;
 import org.jetbrains.kotlin.js.translate.expression.PatternTranslator;
+import org.jetbrains.kotlin.js.translate.incremental.TranslationUnits;
 import org.jetbrains.kotlin.js.translate.test.JSRhinoUnitTester;
 import org.jetbrains.kotlin.js.translate.test.JSTestGenerator;
 import org.jetbrains.kotlin.js.translate.test.JSTester;
@@ -167,8 +168,18 @@ public final class Translation {
             @NotNull ModuleDescriptor moduleDescriptor,
             @NotNull Config config)
             throws TranslationException {
+        return generateAst(bindingTrace, files, mainCallParameters, moduleDescriptor, config, null);
+    }
+
+    @NotNull
+    public static TranslationContext generateAst(@NotNull BindingTrace bindingTrace,
+            @NotNull Collection<JetFile> files, @NotNull MainCallParameters mainCallParameters,
+            @NotNull ModuleDescriptor moduleDescriptor,
+            @NotNull Config config,
+            @Nullable TranslationUnits units)
+            throws TranslationException {
         try {
-            return doGenerateAst(bindingTrace, files, mainCallParameters, moduleDescriptor, config);
+            return doGenerateAst(bindingTrace, files, mainCallParameters, moduleDescriptor, config, units);
         }
         catch (UnsupportedOperationException e) {
             throw new UnsupportedFeatureException("Unsupported feature used.", e);
@@ -182,8 +193,11 @@ public final class Translation {
     private static TranslationContext doGenerateAst(@NotNull BindingTrace bindingTrace, @NotNull Collection<JetFile> files,
             @NotNull MainCallParameters mainCallParameters,
             @NotNull ModuleDescriptor moduleDescriptor,
-            @NotNull Config config) throws MainFunctionNotFoundException {
-        StaticContext staticContext = StaticContext.generateStaticContext(bindingTrace, config, moduleDescriptor);
+            @NotNull Config config,
+            @Nullable TranslationUnits units) throws MainFunctionNotFoundException {
+        // Diagnostics of the files translated in parallel are reported in the order of the files
+        BindingTrace trace = ParallelTranslation.deferringBindingTrace(bindingTrace);
+        StaticContext staticContext = StaticContext.generateStaticContext(trace, config, moduleDescriptor);
         JsProgram program = staticContext.getProgram();
         JsBlock block = program.getGlobalBlock();
 
@@ -193,7 +207,7 @@ public final class Translation {
         statements.add(program.getStringLiteral("use strict").makeStmt());
 
         TranslationContext context = TranslationContext.rootContext(staticContext, rootFunction);
-        statements.addAll(PackageDeclarationTranslator.translateFiles(files, context));
+        statements.addAll(PackageDeclarationTranslator.translateFiles(files, context, units));
         defineModule(context, statements, config.getModuleId());
 
         if (mainCallParameters.shouldBeGenerated()) {
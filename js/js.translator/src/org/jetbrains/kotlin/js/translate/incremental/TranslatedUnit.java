@@ -0,0 +1,43 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.translate.incremental;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The JavaScript of a file as it was translated by a previous compilation: the members which the file adds to its package,
+ * printed as an object literal.
+ */
+final class TranslatedUnit {
+    private final String textHash;
+    private final String members;
+
+    TranslatedUnit(@NotNull String textHash, @NotNull String members) {
+        this.textHash = textHash;
+        this.members = members;
+    }
+
+    @NotNull
+    public String getTextHash() {
+        return textHash;
+    }
+
+    @NotNull
+    public String getMembers() {
+        return members;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.translate.incremental;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
+import org.jetbrains.kotlin.js.config.Config;
+import org.jetbrains.kotlin.js.config.LibrarySourcesConfig;
+import org.jetbrains.kotlin.psi.JetDeclaration;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.renderer.DescriptorRenderer;
+import org.jetbrains.kotlin.renderer.DescriptorRendererOptions;
+import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.resolve.inline.InlineUtil;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the translated JavaScript of the files of a module between compilations, so that a file which hasn't changed since the last
+ * compilation is not translated again.
+ *
+ * The JavaScript of a file depends on the declarations of the whole module and of its libraries, e.g. on the names chosen for
+ * overloads and on the bodies of inline functions. So the cache of a module is only used when the module signature, which consists
+ * of all declarations of the module, the bodies of its inline functions, the libraries and the version of the compiler, hasn't changed
+ * either.
+ */
+public class TranslationUnitCache {
+    private static final Logger LOG = Logger.getInstance(TranslationUnitCache.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String CACHE_FILE_EXTENSION = ".units";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final DescriptorRenderer SIGNATURE_RENDERER = DescriptorRenderer.FQ_NAMES_IN_TYPES.withOptions(
+            new Function1<DescriptorRendererOptions, Unit>() {
+                @Override
+                public Unit invoke(DescriptorRendererOptions options) {
+                    options.setIncludePropertyConstant(true);
+                    return Unit.INSTANCE$;
+                }
+            }
+    );
+
+    private final File cacheDir;
+    private final String compilerVersion;
+
+    public TranslationUnitCache(@NotNull File cacheDir, @NotNull String compilerVersion) {
+        this.cacheDir = cacheDir;
+        this.compilerVersion = compilerVersion;
+    }
+
+    @NotNull
+    public TranslationUnits load(@NotNull List<JetFile> files, @NotNull BindingContext bindingContext, @NotNull Config config) {
+        File cacheFile = new File(cacheDir, FileUtil.sanitizeFileName(config.getModuleId()) + CACHE_FILE_EXTENSION);
+        String signature = moduleSignature(files, bindingContext, config);
+
+        Map<String, TranslatedUnit> units = new HashMap<String, TranslatedUnit>();
+        // Positions in the source maps would be wrong for a file which is not translated again
+        if (!config.isSourcemap() && cacheFile.isFile()) {
+            try {
+                read(cacheFile, signature, units);
+            }
+            catch (IOException e) {
+                LOG.warn("Could not read translated files from " + cacheFile, e);
+                units.clear();
+            }
+        }
+
+        Map<JetFile, TranslatedUnit> unchangedUnits = new LinkedHashMap<JetFile, TranslatedUnit>();
+        for (JetFile file : files) {
+            TranslatedUnit unit = units.get(path(file));
+            if (unit != null && unit.getTextHash().equals(textHash(file))) {
+                unchangedUnits.put(file, unit);
+            }
+        }
+
+        return new TranslationUnits(cacheFile, signature, unchangedUnits, bindingContext);
+    }
+
+    @NotNull
+    private String moduleSignature(@NotNull List<JetFile> files, @NotNull BindingContext bindingContext, @NotNull Config config) {
+        MessageDigest digest = createDigest();
+        update(digest, String.valueOf(FORMAT_VERSION));
+        // The translator of another compiler may produce different code for the same declarations
+        update(digest, compilerVersion);
+        update(digest, config.getModuleId());
+        update(digest, config.getTarget().name());
+        update(digest, String.valueOf(config.isInlineEnabled()));
+        update(digest, String.valueOf(config.isTestConfig()));
+        update(digest, String.valueOf(config.isMetaInfo()));
+
+        if (config instanceof LibrarySourcesConfig) {
+            for (String library : ((LibrarySourcesConfig) config).getLibraries()) {
+                File file = new File(library);
+                update(digest, library + ":" + file.length() + ":" + file.lastModified());
+            }
+        }
+
+        for (JetFile file : files) {
+            update(digest, file.getPackageFqName().asString());
+            for (JetDeclaration declaration : TranslationUnits.collectDeclarations(file)) {
+                DeclarationDescriptor descriptor = TranslationUnits.getDescriptor(bindingContext, declaration);
+                if (descriptor == null) continue;
+
+                update(digest, SIGNATURE_RENDERER.render(descriptor));
+                if (InlineUtil.isInline(descriptor)) {
+                    update(digest, declaration.getText());
+                }
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    @NotNull
+    static String textHash(@NotNull JetFile file) {
+        MessageDigest digest = createDigest();
+        update(digest, file.getText());
+        return toHex(digest.digest());
+    }
+
+    @NotNull
+    static String path(@NotNull JetFile file) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        return virtualFile != null ? virtualFile.getPath() : file.getName();
+    }
+
+    @NotNull
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(@NotNull MessageDigest digest, @NotNull String string) {
+        digest.update(string.getBytes(UTF_8));
+        digest.update((byte) 0);
+    }
+
+    @NotNull
+    private static String toHex(@NotNull byte[] bytes) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+
+    // Serialization
+
+    static void save(@NotNull File cacheFile, @NotNull String signature, @NotNull Map<String, TranslatedUnit> units) {
+        try {
+            write(cacheFile, signature, units);
+        }
+        catch (IOException e) {
+            LOG.warn("Could not save translated files to " + cacheFile, e);
+        }
+    }
+
+    private static void write(@NotNull File cacheFile, @NotNull String signature, @NotNull Map<String, TranslatedUnit> units)
+            throws IOException {
+        FileUtil.createDirectory(cacheFile.getParentFile());
+        File tempFile = FileUtil.createTempFile(cacheFile.getParentFile(), cacheFile.getName(), ".tmp", true);
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(signature);
+            output.writeInt(units.size());
+            for (Map.Entry<String, TranslatedUnit> entry : units.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue().getTextHash());
+                // The translated code of a file can be longer than writeUTF allows
+                byte[] members = entry.getValue().getMembers().getBytes(UTF_8);
+                output.writeInt(members.length);
+                output.write(members);
+            }
+        }
+        finally {
+            output.close();
+        }
+
+        if (!tempFile.renameTo(cacheFile)) {
+            // renameTo doesn't replace an existing file on some platforms
+            FileUtil.delete(cacheFile);
+            if (!tempFile.renameTo(cacheFile)) {
+                FileUtil.delete(tempFile);
+            }
+        }
+    }
+
+    private static void read(@NotNull File cacheFile, @NotNull String signature, @NotNull Map<String, TranslatedUnit> units)
+            throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+        try {
+            if (input.readInt() != FORMAT_VERSION) return;
+            if (!signature.equals(input.readUTF())) return;
+
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                String path = input.readUTF();
+                String textHash = input.readUTF();
+                byte[] members = new byte[input.readInt()];
+                input.readFully(members);
+                units.put(path, new TranslatedUnit(textHash, new String(members, UTF_8)));
+            }
+        }
+        finally {
+            input.close();
+        }
+    }
+
+}
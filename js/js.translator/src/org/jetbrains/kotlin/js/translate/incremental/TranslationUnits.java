@@ -0,0 +1,212 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.translate.incremental;
+
+import com.google.dart.compiler.backend.js.JsToStringGenerationVisitor;
+import com.google.dart.compiler.backend.js.ast.*;
+import com.google.dart.compiler.util.TextOutputImpl;
+import com.google.gwt.dev.js.ThrowExceptionOnErrorReporter;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
+import org.jetbrains.kotlin.descriptors.PackageFragmentDescriptor;
+import org.jetbrains.kotlin.js.parser.ParserPackage;
+import org.jetbrains.kotlin.js.translate.context.TranslationContext;
+import org.jetbrains.kotlin.psi.*;
+import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.resolve.BindingContextUtils;
+import org.jetbrains.kotlin.resolve.inline.InlineUtil;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * The files of a module which are taken from {@link TranslationUnitCache} in this compilation and the ones which are translated
+ * and will be saved to the cache afterwards.
+ *
+ * A file is only reused if it doesn't add statements to the initializer of its package and doesn't declare inline functions,
+ * because both are translated into other parts of the program than the members of the package. The members of a reused file refer
+ * to other declarations by their names, so all declarations of the module are named in a fixed order before translation and the
+ * names of the reused members are reserved in their packages before the other files are translated.
+ */
+public class TranslationUnits {
+    private static final Logger LOG = Logger.getInstance(TranslationUnits.class);
+
+    private final File cacheFile;
+    private final String signature;
+    private final Map<JetFile, TranslatedUnit> unchangedUnits;
+    private final BindingContext bindingContext;
+
+    private final Map<JetFile, List<JsPropertyInitializer>> reusedMembers = new LinkedHashMap<JetFile, List<JsPropertyInitializer>>();
+    private final Map<JetFile, List<JsPropertyInitializer>> translatedMembers = new LinkedHashMap<JetFile, List<JsPropertyInitializer>>();
+
+    TranslationUnits(
+            @NotNull File cacheFile,
+            @NotNull String signature,
+            @NotNull Map<JetFile, TranslatedUnit> unchangedUnits,
+            @NotNull BindingContext bindingContext
+    ) {
+        this.cacheFile = cacheFile;
+        this.signature = signature;
+        this.unchangedUnits = unchangedUnits;
+        this.bindingContext = bindingContext;
+    }
+
+    /**
+     * Reserves the names of the members of the unchanged files, see the class comment.
+     * Should be called after the declarations of all files are named and before any file is translated.
+     */
+    public void prepare(@NotNull TranslationContext context) {
+        for (Map.Entry<JetFile, TranslatedUnit> entry : unchangedUnits.entrySet()) {
+            PackageFragmentDescriptor packageFragment =
+                    BindingContextUtils.getNotNull(bindingContext, BindingContext.FILE_TO_PACKAGE_FRAGMENT, entry.getKey());
+            List<JsPropertyInitializer> members =
+                    parseMembers(entry.getValue().getMembers(), context.getScopeForDescriptor(packageFragment));
+            if (members != null) {
+                reusedMembers.put(entry.getKey(), members);
+            }
+        }
+    }
+
+    /**
+     * @return the files which haven't changed since they were translated by a previous compilation
+     */
+    @NotNull
+    public Collection<JetFile> getUnchangedFiles() {
+        return unchangedUnits.keySet();
+    }
+
+    /**
+     * @return the members which the file adds to its package, if the file is not translated in this compilation
+     */
+    @Nullable
+    public List<JsPropertyInitializer> getReusedMembers(@NotNull JetFile file) {
+        return reusedMembers.get(file);
+    }
+
+    public void translated(@NotNull JetFile file, @NotNull List<JsPropertyInitializer> members, boolean hasInitializerStatements) {
+        if (hasInitializerStatements) return;
+
+        for (JetDeclaration declaration : collectDeclarations(file)) {
+            if (InlineUtil.isInline(getDescriptor(bindingContext, declaration))) return;
+        }
+
+        translatedMembers.put(file, new ArrayList<JsPropertyInitializer>(members));
+    }
+
+    /**
+     * Saves the members of the translated files as they are in the program after inlining. Members which were removed by the inliner
+     * are not saved.
+     */
+    public void save(@NotNull JsProgram program) {
+        final Set<JsPropertyInitializer> present = Collections.newSetFromMap(new IdentityHashMap<JsPropertyInitializer, Boolean>());
+        program.accept(new RecursiveJsVisitor() {
+            @Override
+            public void visitPropertyInitializer(@NotNull JsPropertyInitializer x) {
+                present.add(x);
+                super.visitPropertyInitializer(x);
+            }
+        });
+
+        Map<String, TranslatedUnit> units = new LinkedHashMap<String, TranslatedUnit>();
+        for (JetFile file : reusedMembers.keySet()) {
+            units.put(TranslationUnitCache.path(file), unchangedUnits.get(file));
+        }
+        for (Map.Entry<JetFile, List<JsPropertyInitializer>> entry : translatedMembers.entrySet()) {
+            List<JsPropertyInitializer> members = new ArrayList<JsPropertyInitializer>();
+            for (JsPropertyInitializer member : entry.getValue()) {
+                if (present.contains(member)) {
+                    members.add(member);
+                }
+            }
+
+            JetFile file = entry.getKey();
+            units.put(TranslationUnitCache.path(file), new TranslatedUnit(TranslationUnitCache.textHash(file), print(members)));
+        }
+
+        TranslationUnitCache.save(cacheFile, signature, units);
+    }
+
+    @NotNull
+    private static String print(@NotNull List<JsPropertyInitializer> members) {
+        TextOutputImpl output = new TextOutputImpl();
+        new JsObjectLiteral(members, true).accept(new JsToStringGenerationVisitor(output));
+        return output.toString();
+    }
+
+    @Nullable
+    private static List<JsPropertyInitializer> parseMembers(@NotNull String members, @NotNull JsScope packageScope) {
+        JsObjectLiteral literal;
+        try {
+            // Names in the parsed code are declared in a scope of its own, so that they don't clash with the names of the program
+            List<JsStatement> statements = ParserPackage.parse(
+                    "(" + members + ");", ThrowExceptionOnErrorReporter.INSTANCE$, new JsRootScope(new JsProgram("<cached>"))
+            );
+            literal = (JsObjectLiteral) ((JsExpressionStatement) statements.get(0)).getExpression();
+        }
+        catch (RuntimeException e) {
+            LOG.warn("Could not parse cached translation", e);
+            return null;
+        }
+
+        List<JsPropertyInitializer> result = new ArrayList<JsPropertyInitializer>(literal.getPropertyInitializers().size());
+        for (JsPropertyInitializer member : literal.getPropertyInitializers()) {
+            String label = ((JsStringLiteral) member.getLabelExpr()).getValue();
+            result.add(new JsPropertyInitializer(packageScope.declareName(label).makeRef(), member.getValueExpr()));
+        }
+        return result;
+    }
+
+    /**
+     * @return the declarations of the file which have names of their own, including the declarations inside classes
+     */
+    @NotNull
+    public static List<JetDeclaration> collectDeclarations(@NotNull JetFile file) {
+        List<JetDeclaration> result = new ArrayList<JetDeclaration>();
+        collectDeclarations(file.getDeclarations(), result);
+        return result;
+    }
+
+    private static void collectDeclarations(@NotNull List<JetDeclaration> declarations, @NotNull List<JetDeclaration> result) {
+        for (JetDeclaration declaration : declarations) {
+            if (declaration instanceof JetClassOrObject) {
+                JetClassOrObject classOrObject = (JetClassOrObject) declaration;
+                result.add(classOrObject);
+                for (JetParameter parameter : classOrObject.getPrimaryConstructorParameters()) {
+                    if (parameter.hasValOrVar()) {
+                        result.add(parameter);
+                    }
+                }
+                collectDeclarations(classOrObject.getDeclarations(), result);
+            }
+            else if (declaration instanceof JetNamedFunction ||
+                     declaration instanceof JetProperty ||
+                     declaration instanceof JetSecondaryConstructor) {
+                result.add(declaration);
+            }
+        }
+    }
+
+    @Nullable
+    public static DeclarationDescriptor getDescriptor(@NotNull BindingContext bindingContext, @NotNull JetDeclaration declaration) {
+        if (declaration instanceof JetParameter) {
+            return bindingContext.get(BindingContext.PRIMARY_CONSTRUCTOR_PARAMETER, (JetParameter) declaration);
+        }
+        return bindingContext.get(BindingContext.DECLARATION_TO_DESCRIPTOR, declaration);
+    }
+}
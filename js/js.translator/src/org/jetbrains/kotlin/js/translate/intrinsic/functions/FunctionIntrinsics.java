@@ -17,7 +17,6 @@
 package org.jetbrains.kotlin.js.translate.intrinsic.functions;
 
 import com.google.common.collect.Lists;
-import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.descriptors.FunctionDescriptor;
@@ -26,11 +25,12 @@ import org.jetbrains.kotlin.js.translate.intrinsic.functions.factories.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class FunctionIntrinsics {
 
     @NotNull
-    private final Map<FunctionDescriptor, FunctionIntrinsic> intrinsicCache = new THashMap<FunctionDescriptor, FunctionIntrinsic>();
+    private final Map<FunctionDescriptor, FunctionIntrinsic> intrinsicCache = new ConcurrentHashMap<FunctionDescriptor, FunctionIntrinsic>();
 
     @NotNull
     private final List<FunctionIntrinsicFactory> factories = Lists.newArrayList();
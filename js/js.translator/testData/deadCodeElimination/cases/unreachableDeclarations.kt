@@ -0,0 +1,22 @@
+package foo
+
+fun main(args: Array<String>) {
+    box()
+}
+
+fun box(): Boolean {
+    val b = B(2)
+    return apply(b.x) { it * 2 } == 4
+}
+
+fun apply(a: Int, f: (Int) -> Int): Int = f(a)
+
+open class A
+
+class B(val x: Int) : A()
+
+fun unusedFunction(): Int = apply(1) { it + 1 }
+
+class UnusedClass : A() {
+    fun foo(): Int = unusedFunction()
+}
@@ -0,0 +1,9 @@
+package foo
+
+fun box(): Boolean {
+    if (test(1) != 3) return false
+    if (test("a") != "a!") return false
+    if (test(1.5) != 3.0) return false
+    if (first != "b" || second != "none" || third != "dd") return false
+    return firstLambda + secondLambda + thirdLambda == 60
+}
@@ -0,0 +1,11 @@
+package foo
+
+fun test(a: Int): Int = apply(a) { it + 2 }
+
+fun <T> apply(a: T, f: (T) -> T): T = f(a)
+
+fun nullable(s: String): String? = if (s.isEmpty()) null else s
+
+val first = nullable("b") ?: "none"
+
+val firstLambda = apply(1) { it * 10 }
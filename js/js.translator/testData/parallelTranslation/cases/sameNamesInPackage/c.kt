@@ -0,0 +1,7 @@
+package foo
+
+fun test(s: String): String = apply(s) { it + "!" }
+
+val second = nullable("") ?: "none"
+
+val secondLambda = apply(2) { it * 10 }
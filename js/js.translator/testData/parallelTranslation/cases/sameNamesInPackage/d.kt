@@ -0,0 +1,7 @@
+package foo
+
+fun test(d: Double): Double = apply(d) { it * 2 }
+
+val third = nullable("dd") ?: "none"
+
+val thirdLambda = apply(3) { it * 10 }
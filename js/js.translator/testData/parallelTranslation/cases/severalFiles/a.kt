@@ -0,0 +1,9 @@
+package foo
+
+fun box(): Boolean {
+    if (foo(1) != 2) return false
+    if (foo("a") != "aa") return false
+    if (B().bar() != "A.Companion") return false
+    if (x + y != 3) return false
+    return bar.baz() == "bar"
+}
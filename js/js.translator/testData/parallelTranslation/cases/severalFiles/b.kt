@@ -0,0 +1,13 @@
+package foo
+
+fun foo(a: Int): Int = apply(a) { it * 2 }
+
+fun <T> apply(a: T, f: (T) -> T): T = f(a)
+
+open class A {
+    companion object {
+        val name = "A.Companion"
+    }
+}
+
+val x = apply(1) { it }
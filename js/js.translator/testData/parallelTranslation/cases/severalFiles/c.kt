@@ -0,0 +1,9 @@
+package foo
+
+fun foo(a: String): String = apply(a) { it + it }
+
+class B : A() {
+    fun bar(): String = name
+}
+
+val y = apply(2) { it }
@@ -0,0 +1,3 @@
+package bar
+
+fun baz(): String = listOf("b", "a", "r").fold("") { result, s -> result + s }
@@ -0,0 +1,9 @@
+package foo
+
+fun box(): Boolean {
+    val b = B(2)
+    if (b.twice() != 4) return false
+    if (apply(3) { it + b.x } != 5) return false
+    if (sum { 1 } != 2) return false
+    return c == "c"
+}
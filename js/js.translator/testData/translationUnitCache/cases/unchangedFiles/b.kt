@@ -0,0 +1,7 @@
+package foo
+
+class B(val x: Int) {
+    fun twice(): Int = apply(x) { it * 2 }
+}
+
+fun apply(a: Int, f: (Int) -> Int): Int = f(a)
@@ -0,0 +1,3 @@
+package foo
+
+val c = "c"
@@ -0,0 +1,3 @@
+package foo
+
+inline fun sum(f: () -> Int): Int = f() + f()
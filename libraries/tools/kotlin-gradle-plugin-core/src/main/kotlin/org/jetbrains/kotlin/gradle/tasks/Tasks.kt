@@ -26,6 +26,8 @@ import org.jetbrains.kotlin.cli.common.arguments.K2JSCompilerArguments
 import org.codehaus.groovy.runtime.MethodClosure
 import org.jetbrains.kotlin.cli.common.arguments.CommonCompilerArguments
 import org.jetbrains.kotlin.cli.common.CLICompiler
+import org.jetbrains.kotlin.cli.common.arguments.ArgumentUtils
+import org.jetbrains.kotlin.cli.common.daemon.CompileDaemonClient
 import com.intellij.ide.highlighter.JavaFileType
 import org.jetbrains.kotlin.idea.JetFileType
 import org.jetbrains.kotlin.utils.LibraryUtils
@@ -90,8 +92,10 @@ abstract class AbstractKotlinCompile<T : CommonCompilerArguments>() : AbstractCo
 
     private fun callCompiler(args: T) {
         val messageCollector = GradleMessageCollector(getLogger())
-        getLogger().debug("Calling compiler")
-        val exitCode = compiler.exec(messageCollector, Services.EMPTY, args)
+        val exitCode = callCompileDaemon(args, messageCollector) ?: run {
+            getLogger().debug("Calling compiler")
+            compiler.exec(messageCollector, Services.EMPTY, args)
+        }
 
         when (exitCode) {
             ExitCode.COMPILATION_ERROR -> throw GradleException("Compilation error. See log for more details")
@@ -99,6 +103,17 @@ abstract class AbstractKotlinCompile<T : CommonCompilerArguments>() : AbstractCo
         }
     }
 
+    private fun callCompileDaemon(args: T, messageCollector: MessageCollector): ExitCode? {
+        if (!CompileDaemonClient.isEnabled()) return null
+
+        getLogger().debug("Calling compile daemon")
+        val exitCode = CompileDaemonClient.compile(compiler.javaClass.getName(), ArgumentUtils.convertArgumentsToStringList(args), messageCollector)
+        if (exitCode == null) {
+            getLogger().debug("Compile daemon is not available")
+        }
+        return exitCode
+    }
+
 }
 
 
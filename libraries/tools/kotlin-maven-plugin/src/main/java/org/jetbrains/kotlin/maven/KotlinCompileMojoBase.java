@@ -27,10 +27,13 @@ import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.cli.common.CLICompiler;
 import org.jetbrains.kotlin.cli.common.ExitCode;
 import org.jetbrains.kotlin.cli.common.KotlinVersion;
+import org.jetbrains.kotlin.cli.common.arguments.ArgumentUtils;
 import org.jetbrains.kotlin.cli.common.arguments.CommonCompilerArguments;
+import org.jetbrains.kotlin.cli.common.daemon.CompileDaemonClient;
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation;
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
 import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
@@ -218,9 +221,32 @@ public abstract class KotlinCompileMojoBase<A extends CommonCompilerArguments> e
             @NotNull A arguments,
             @NotNull MessageCollector messageCollector
     ) {
+        if (CompileDaemonClient.isEnabled()) {
+            ExitCode exitCode = executeCompilerInDaemon(compiler, arguments, messageCollector);
+            if (exitCode != null) return exitCode;
+            LOG.debug("Compile daemon is not available, compiling in process");
+        }
         return compiler.exec(messageCollector, Services.EMPTY, arguments);
     }
 
+    @Nullable
+    private static ExitCode executeCompilerInDaemon(
+            @NotNull CLICompiler<?> compiler,
+            @NotNull CommonCompilerArguments arguments,
+            @NotNull MessageCollector messageCollector
+    ) {
+        try {
+            List<String> argumentList = ArgumentUtils.convertArgumentsToStringList(arguments);
+            return CompileDaemonClient.compile(compiler.getClass().getName(), argumentList, messageCollector);
+        }
+        catch (InstantiationException e) {
+            return null;
+        }
+        catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
     /**
      * Derived classes can register custom plugins or configurations
      */